@@ -0,0 +1,93 @@
+package com.miguel.spyzer.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.miguel.spyzer.entities.MarketData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparativa JSON (configuración actual de RedisConfig.cacheManager, con
+ * default typing) frente a MarketDataBinaryCodec para un MarketData típico.
+ *
+ * Ejecutar con: mvn -Pbenchmark test-compile exec:exec
+ * El tamaño en bytes de cada formato se imprime al arrancar cada fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MarketDataCodecBenchmark {
+
+    private RedisSerializer<Object> json;
+    private RedisSerializer<Object> binario;
+    private MarketData datos;
+    private byte[] jsonBytes;
+    private byte[] binarioBytes;
+
+    @Setup
+    public void setup() {
+        // Mismo ObjectMapper que RedisConfig.redisObjectMapper + default typing del cacheManager
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        mapper.activateDefaultTyping(mapper.getPolymorphicTypeValidator(),
+                ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+
+        json = new GenericJackson2JsonRedisSerializer(mapper);
+        binario = new MarketDataBinaryCodec(json);
+
+        datos = MarketData.builder()
+                .id(123456L)
+                .symbol("AAPL")
+                .precio(new BigDecimal("227.48"))
+                .timestamp(LocalDateTime.of(2025, 10, 17, 15, 45, 12, 345_678_000))
+                .open(new BigDecimal("225.10"))
+                .high(new BigDecimal("228.93"))
+                .low(new BigDecimal("224.77"))
+                .close(new BigDecimal("227.48"))
+                .volumen(48_213_775L)
+                .dataType(MarketData.DataType.REALTIME)
+                .precioAnterior(new BigDecimal("226.02"))
+                .variacionAbsoluta(new BigDecimal("1.46"))
+                .variacionPorcentual(new BigDecimal("0.6500"))
+                .build();
+
+        jsonBytes = json.serialize(datos);
+        binarioBytes = binario.serialize(datos);
+        System.out.println("\nTamaño MarketData -> JSON: " + jsonBytes.length + " bytes | binario: "
+                + binarioBytes.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serializarJson() {
+        return json.serialize(datos);
+    }
+
+    @Benchmark
+    public byte[] serializarBinario() {
+        return binario.serialize(datos);
+    }
+
+    @Benchmark
+    public Object deserializarJson() {
+        return json.deserialize(jsonBytes);
+    }
+
+    @Benchmark
+    public Object deserializarBinario() {
+        return binario.deserialize(binarioBytes);
+    }
+}
@@ -0,0 +1,77 @@
+package com.miguel.spyzer.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Canal Redis pub/sub para invalidar las cachés L1 de todas las réplicas.
+ *
+ * Cada escritura o invalidación en una caché de dos niveles publica un mensaje
+ * "instancia|región|clave" (clave "*" = región completa). Las demás réplicas
+ * eliminan la entrada de su L1 y la siguiente lectura vuelve a Redis (L2).
+ * Los mensajes propios se ignoran: la réplica que escribe ya actualizó su L1.
+ *
+ * Si Redis pub/sub no está disponible, las L1 siguen caducando por TTL.
+ */
+@Slf4j
+public class CacheInvalidationBus implements MessageListener {
+
+    public static final String CANAL = "spyzer:cache:invalidation";
+
+    private static final String TODAS_LAS_CLAVES = "*";
+
+    /**
+     * Receptor de invalidaciones remotas.
+     */
+    @FunctionalInterface
+    public interface Receptor {
+        /**
+         * @param region Nombre de la caché
+         * @param clave  Clave a invalidar, o null para toda la región
+         */
+        void invalidar(String region, String clave);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final String instanciaId = UUID.randomUUID().toString();
+    private final List<Receptor> receptores = new CopyOnWriteArrayList<>();
+
+    public CacheInvalidationBus(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public void registrar(Receptor receptor) {
+        receptores.add(receptor);
+    }
+
+    /**
+     * Publica la invalidación de una clave (o de toda la región si clave es null).
+     */
+    public void publicar(String region, Object clave) {
+        String mensaje = instanciaId + "|" + region + "|" + (clave != null ? clave.toString() : TODAS_LAS_CLAVES);
+        try {
+            redisTemplate.convertAndSend(CANAL, mensaje);
+        } catch (Exception e) {
+            log.warn("No se pudo publicar invalidación de caché {} / {}: {}", region, clave, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] partes = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 3);
+        if (partes.length != 3 || instanciaId.equals(partes[0])) {
+            return;
+        }
+        String clave = TODAS_LAS_CLAVES.equals(partes[2]) ? null : partes[2];
+        for (Receptor receptor : receptores) {
+            receptor.invalidar(partes[1], clave);
+        }
+    }
+}
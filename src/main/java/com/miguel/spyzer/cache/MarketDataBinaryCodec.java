@@ -0,0 +1,277 @@
+package com.miguel.spyzer.cache;
+
+import com.miguel.spyzer.entities.MarketData;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Codec binario compacto para MarketData en Redis (regiones de caché de precios).
+ *
+ * Formato v1 (todos los enteros en varint zigzag):
+ * <pre>
+ *   [MAGIC 0xD7][versión][bitmap de campos presentes]
+ *   [id][symbol: longitud + UTF-8][precio][timestamp: segundos epoch + nanos]
+ *   [open][high][low][close][volumen][dataType: ordinal]
+ *   [precioAnterior][variacionAbsoluta][variacionPorcentual]
+ *   [marketCap][week52High][week52Low][peRatio]
+ * </pre>
+ * Los BigDecimal se guardan en punto fijo: escala + valor sin escalar (exactos,
+ * sin texto). Solo se escriben los campos presentes en el bitmap.
+ *
+ * Compatibilidad:
+ * - Cualquier valor que no sea MarketData (o cuyo decimal no quepa en un long)
+ *   se delega en el serializador JSON.
+ * - Al leer, los valores que no empiezan por MAGIC se decodifican como JSON,
+ *   así que las entradas escritas antes del cambio siguen siendo legibles.
+ * - El byte de versión permite evolucionar el esquema: una versión desconocida
+ *   se rechaza con SerializationException (la caché lo trata como fallo de lectura).
+ */
+public class MarketDataBinaryCodec implements RedisSerializer<Object> {
+
+    static final byte MAGIC = (byte) 0xD7;
+    static final byte VERSION_1 = 1;
+
+    // Bits del bitmap de campos presentes (v1)
+    private static final int F_ID = 0;
+    private static final int F_PRECIO = 1;
+    private static final int F_TIMESTAMP = 2;
+    private static final int F_OPEN = 3;
+    private static final int F_HIGH = 4;
+    private static final int F_LOW = 5;
+    private static final int F_CLOSE = 6;
+    private static final int F_VOLUMEN = 7;
+    private static final int F_DATA_TYPE = 8;
+    private static final int F_PRECIO_ANTERIOR = 9;
+    private static final int F_VARIACION_ABSOLUTA = 10;
+    private static final int F_VARIACION_PORCENTUAL = 11;
+    private static final int F_MARKET_CAP = 12;
+    private static final int F_WEEK52_HIGH = 13;
+    private static final int F_WEEK52_LOW = 14;
+    private static final int F_PE_RATIO = 15;
+
+    private static final MarketData.DataType[] DATA_TYPES = MarketData.DataType.values();
+
+    private final RedisSerializer<Object> json;
+
+    /**
+     * @param json Serializador JSON usado para valores que no son MarketData y para leer entradas antiguas
+     */
+    public MarketDataBinaryCodec(RedisSerializer<Object> json) {
+        this.json = json;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value instanceof MarketData datos) {
+            try {
+                return codificar(datos);
+            } catch (ArithmeticException e) {
+                // Decimal fuera de rango para punto fijo en long: se guarda en JSON
+            }
+        }
+        return json.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return json.deserialize(bytes);
+        }
+        try {
+            return decodificar(bytes);
+        } catch (SerializationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new SerializationException("MarketData binario corrupto", e);
+        }
+    }
+
+    // ==================== CODIFICACIÓN ====================
+
+    private byte[] codificar(MarketData d) {
+        int bitmap = 0;
+        bitmap |= bit(F_ID, d.getId() != null);
+        bitmap |= bit(F_PRECIO, d.getPrecio() != null);
+        bitmap |= bit(F_TIMESTAMP, d.getTimestamp() != null);
+        bitmap |= bit(F_OPEN, d.getOpen() != null);
+        bitmap |= bit(F_HIGH, d.getHigh() != null);
+        bitmap |= bit(F_LOW, d.getLow() != null);
+        bitmap |= bit(F_CLOSE, d.getClose() != null);
+        bitmap |= bit(F_VOLUMEN, d.getVolumen() != null);
+        bitmap |= bit(F_DATA_TYPE, d.getDataType() != null);
+        bitmap |= bit(F_PRECIO_ANTERIOR, d.getPrecioAnterior() != null);
+        bitmap |= bit(F_VARIACION_ABSOLUTA, d.getVariacionAbsoluta() != null);
+        bitmap |= bit(F_VARIACION_PORCENTUAL, d.getVariacionPorcentual() != null);
+        bitmap |= bit(F_MARKET_CAP, d.getMarketCap() != null);
+        bitmap |= bit(F_WEEK52_HIGH, d.getWeek52High() != null);
+        bitmap |= bit(F_WEEK52_LOW, d.getWeek52Low() != null);
+        bitmap |= bit(F_PE_RATIO, d.getPeRatio() != null);
+
+        Salida out = new Salida(64);
+        out.write(MAGIC);
+        out.write(VERSION_1);
+        out.varint(bitmap);
+
+        if (d.getId() != null) out.zigzag(d.getId());
+        byte[] symbol = d.getSymbol() != null ? d.getSymbol().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        out.varint(symbol.length);
+        out.write(symbol, 0, symbol.length);
+        if (d.getPrecio() != null) out.decimal(d.getPrecio());
+        if (d.getTimestamp() != null) {
+            out.zigzag(d.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+            out.varint(d.getTimestamp().getNano());
+        }
+        if (d.getOpen() != null) out.decimal(d.getOpen());
+        if (d.getHigh() != null) out.decimal(d.getHigh());
+        if (d.getLow() != null) out.decimal(d.getLow());
+        if (d.getClose() != null) out.decimal(d.getClose());
+        if (d.getVolumen() != null) out.zigzag(d.getVolumen());
+        if (d.getDataType() != null) out.varint(d.getDataType().ordinal());
+        if (d.getPrecioAnterior() != null) out.decimal(d.getPrecioAnterior());
+        if (d.getVariacionAbsoluta() != null) out.decimal(d.getVariacionAbsoluta());
+        if (d.getVariacionPorcentual() != null) out.decimal(d.getVariacionPorcentual());
+        if (d.getMarketCap() != null) out.zigzag(d.getMarketCap());
+        if (d.getWeek52High() != null) out.decimal(d.getWeek52High());
+        if (d.getWeek52Low() != null) out.decimal(d.getWeek52Low());
+        if (d.getPeRatio() != null) out.decimal(d.getPeRatio());
+
+        return out.toByteArray();
+    }
+
+    private MarketData decodificar(byte[] bytes) {
+        Entrada in = new Entrada(bytes, 1);
+        int version = in.read();
+        if (version != VERSION_1) {
+            throw new SerializationException("Versión de codec MarketData no soportada: " + version);
+        }
+        int bitmap = in.varint();
+
+        MarketData d = new MarketData();
+        if (tiene(bitmap, F_ID)) d.setId(in.zigzag());
+        int longitudSymbol = in.varint();
+        d.setSymbol(new String(bytes, in.posicion(), longitudSymbol, StandardCharsets.UTF_8));
+        in.saltar(longitudSymbol);
+        d.setPrecio(tiene(bitmap, F_PRECIO) ? in.decimal() : null);
+        if (tiene(bitmap, F_TIMESTAMP)) {
+            long segundos = in.zigzag();
+            int nanos = in.varint();
+            d.setTimestamp(LocalDateTime.ofEpochSecond(segundos, nanos, ZoneOffset.UTC));
+        } else {
+            d.setTimestamp(null);
+        }
+        if (tiene(bitmap, F_OPEN)) d.setOpen(in.decimal());
+        if (tiene(bitmap, F_HIGH)) d.setHigh(in.decimal());
+        if (tiene(bitmap, F_LOW)) d.setLow(in.decimal());
+        if (tiene(bitmap, F_CLOSE)) d.setClose(in.decimal());
+        if (tiene(bitmap, F_VOLUMEN)) d.setVolumen(in.zigzag());
+        if (tiene(bitmap, F_DATA_TYPE)) d.setDataType(DATA_TYPES[in.varint()]);
+        if (tiene(bitmap, F_PRECIO_ANTERIOR)) d.setPrecioAnterior(in.decimal());
+        if (tiene(bitmap, F_VARIACION_ABSOLUTA)) d.setVariacionAbsoluta(in.decimal());
+        if (tiene(bitmap, F_VARIACION_PORCENTUAL)) d.setVariacionPorcentual(in.decimal());
+        if (tiene(bitmap, F_MARKET_CAP)) d.setMarketCap(in.zigzag());
+        if (tiene(bitmap, F_WEEK52_HIGH)) d.setWeek52High(in.decimal());
+        if (tiene(bitmap, F_WEEK52_LOW)) d.setWeek52Low(in.decimal());
+        if (tiene(bitmap, F_PE_RATIO)) d.setPeRatio(in.decimal());
+        return d;
+    }
+
+    private static int bit(int posicion, boolean presente) {
+        return presente ? 1 << posicion : 0;
+    }
+
+    private static boolean tiene(int bitmap, int posicion) {
+        return (bitmap & (1 << posicion)) != 0;
+    }
+
+    // ==================== E/S VARINT ====================
+
+    private static final class Salida extends ByteArrayOutputStream {
+
+        Salida(int capacidad) {
+            super(capacidad);
+        }
+
+        void varint(long valor) {
+            while ((valor & ~0x7FL) != 0) {
+                write((int) ((valor & 0x7F) | 0x80));
+                valor >>>= 7;
+            }
+            write((int) valor);
+        }
+
+        void zigzag(long valor) {
+            varint((valor << 1) ^ (valor >> 63));
+        }
+
+        void decimal(BigDecimal valor) {
+            BigInteger sinEscala = valor.unscaledValue();
+            if (sinEscala.bitLength() > 63) {
+                throw new ArithmeticException("Decimal fuera de rango para punto fijo: " + valor);
+            }
+            zigzag(valor.scale());
+            zigzag(sinEscala.longValue());
+        }
+    }
+
+    private static final class Entrada {
+        private final byte[] bytes;
+        private int posicion;
+
+        Entrada(byte[] bytes, int posicion) {
+            this.bytes = bytes;
+            this.posicion = posicion;
+        }
+
+        int read() {
+            return bytes[posicion++] & 0xFF;
+        }
+
+        int posicion() {
+            return posicion;
+        }
+
+        void saltar(int n) {
+            posicion += n;
+        }
+
+        long varlong() {
+            long resultado = 0;
+            int desplazamiento = 0;
+            while (true) {
+                int b = read();
+                resultado |= (long) (b & 0x7F) << desplazamiento;
+                if ((b & 0x80) == 0) {
+                    return resultado;
+                }
+                desplazamiento += 7;
+                if (desplazamiento > 63) {
+                    throw new SerializationException("Varint demasiado largo");
+                }
+            }
+        }
+
+        int varint() {
+            return (int) varlong();
+        }
+
+        long zigzag() {
+            long v = varlong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        BigDecimal decimal() {
+            int escala = (int) zigzag();
+            return BigDecimal.valueOf(zigzag(), escala);
+        }
+    }
+}
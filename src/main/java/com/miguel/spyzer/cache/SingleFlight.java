@@ -0,0 +1,101 @@
+package com.miguel.spyzer.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Coalescencia de cargas concurrentes por clave ("single-flight").
+ *
+ * Mientras hay una carga en curso para una clave, el resto de llamadas con la
+ * misma clave no lanzan otra: esperan y reciben el resultado de la primera.
+ * En cuanto la carga termina (bien o con error) la clave se libera y la
+ * siguiente llamada vuelve a cargar.
+ *
+ * @param <K> Tipo de la clave
+ * @param <V> Tipo del valor cargado
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> enVuelo = new ConcurrentHashMap<>();
+
+    /**
+     * Carga síncrona: la primera llamada ejecuta el cargador en su propio hilo,
+     * las concurrentes esperan su resultado.
+     *
+     * @param clave    Clave a cargar
+     * @param cargador Función de carga (solo se ejecuta una vez por ráfaga)
+     * @return Valor cargado (puede ser null)
+     */
+    public V cargar(K clave, Supplier<V> cargador) {
+        CompletableFuture<V> propio = new CompletableFuture<>();
+        CompletableFuture<V> existente = enVuelo.putIfAbsent(clave, propio);
+        if (existente != null) {
+            return esperar(existente);
+        }
+        return ejecutar(clave, propio, cargador);
+    }
+
+    /**
+     * Carga asíncrona en el executor indicado; si ya hay una carga en curso
+     * para la clave se devuelve esa misma.
+     *
+     * @param clave    Clave a cargar
+     * @param cargador Función de carga
+     * @param executor Executor donde se ejecuta la carga
+     * @return Future con el valor cargado
+     */
+    public CompletableFuture<V> cargarAsync(K clave, Supplier<V> cargador, Executor executor) {
+        CompletableFuture<V> propio = new CompletableFuture<>();
+        CompletableFuture<V> existente = enVuelo.putIfAbsent(clave, propio);
+        if (existente != null) {
+            return existente;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    ejecutar(clave, propio, cargador);
+                } catch (RuntimeException e) {
+                    // Ya propagado a través del future
+                }
+            });
+        } catch (RuntimeException e) {
+            enVuelo.remove(clave, propio);
+            propio.completeExceptionally(e);
+        }
+        return propio;
+    }
+
+    /**
+     * Indica si hay una carga en curso para la clave.
+     */
+    public boolean enCurso(K clave) {
+        return enVuelo.containsKey(clave);
+    }
+
+    private V ejecutar(K clave, CompletableFuture<V> propio, Supplier<V> cargador) {
+        try {
+            V valor = cargador.get();
+            propio.complete(valor);
+            return valor;
+        } catch (RuntimeException e) {
+            propio.completeExceptionally(e);
+            throw e;
+        } finally {
+            enVuelo.remove(clave, propio);
+        }
+    }
+
+    private V esperar(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.miguel.spyzer.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Caché de dos niveles: L1 en proceso (Caffeine) delante de L2 compartida (Redis).
+ *
+ * - Lecturas: L1 (búsqueda local, sin red ni deserialización); en fallo, L2 y
+ *   se rellena la L1.
+ * - Escrituras / invalidaciones: se aplican en L2 y en la L1 local, y se
+ *   publican por el CacheInvalidationBus para que el resto de réplicas
+ *   descarten su copia L1.
+ *
+ * Los valores null no se guardan en L1 (la L2 tampoco los cachea).
+ *
+ * Relleno de L1 tras leer de L2: entre la lectura de L2 y el relleno puede
+ * llegar (y aplicarse) la invalidación de un put más reciente; rellenar
+ * después dejaría el valor antiguo en L1 hasta que expire. Cada invalidación
+ * incrementa primero un contador de generación (por franja de claves) y el
+ * relleno, atómico sobre la entrada, solo se hace si la generación no ha
+ * cambiado desde antes de leer L2.
+ */
+public class TwoLevelCache implements Cache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> l1;
+    private final Cache l2;
+    private final CacheInvalidationBus invalidationBus;
+
+    // Generación de invalidaciones por franja de claves (las colisiones solo evitan algún relleno)
+    private static final int FRANJAS = 1024;
+    private final AtomicLongArray generaciones = new AtomicLongArray(FRANJAS);
+    private final AtomicLong vaciados = new AtomicLong();
+
+    public TwoLevelCache(String name,
+                         com.github.benmanes.caffeine.cache.Cache<Object, Object> l1,
+                         Cache l2,
+                         CacheInvalidationBus invalidationBus) {
+        this.name = name;
+        this.l1 = l1;
+        this.l2 = l2;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return l2.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object local = l1.getIfPresent(key);
+        if (local != null) {
+            return new SimpleValueWrapper(local);
+        }
+
+        long marca = marca(key);
+        ValueWrapper remoto = l2.get(key);
+        if (remoto != null && remoto.get() != null) {
+            rellenarLocal(key, remoto.get(), marca);
+        }
+        return remoto;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper valor = get(key);
+        if (valor == null || valor.get() == null) {
+            return null;
+        }
+        if (type != null && !type.isInstance(valor.get())) {
+            throw new IllegalStateException("Valor en caché " + name + " no es de tipo " + type.getName());
+        }
+        return (T) valor.get();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object local = l1.getIfPresent(key);
+        if (local != null) {
+            return (T) local;
+        }
+        long marca = marca(key);
+        T valor = l2.get(key, valueLoader);
+        if (valor != null) {
+            rellenarLocal(key, valor, marca);
+        }
+        return valor;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        l2.put(key, value);
+        generaciones.incrementAndGet(franja(key));
+        if (value != null) {
+            l1.put(key, value);
+        } else {
+            l1.invalidate(key);
+        }
+        invalidationBus.publicar(name, key);
+    }
+
+    @Override
+    public void evict(Object key) {
+        l2.evict(key);
+        generaciones.incrementAndGet(franja(key));
+        l1.invalidate(key);
+        invalidationBus.publicar(name, key);
+    }
+
+    @Override
+    public void clear() {
+        l2.clear();
+        vaciados.incrementAndGet();
+        l1.invalidateAll();
+        invalidationBus.publicar(name, null);
+    }
+
+    /**
+     * Valor en L1, sin consultar Redis (null si no está).
+     */
+    Object obtenerLocal(Object key) {
+        return l1.getIfPresent(key);
+    }
+
+    /**
+     * Generación de invalidaciones de una clave, a tomar antes de leer L2.
+     */
+    long marca(Object key) {
+        return generaciones.get(franja(key)) + vaciados.get();
+    }
+
+    /**
+     * Rellena la L1 con un valor leído de L2 (también por otra vía, como las
+     * operaciones en bloque), salvo que la clave se haya invalidado desde la marca.
+     *
+     * @param marca Resultado de marca(key) antes de leer L2
+     */
+    void rellenarLocal(Object key, Object value, long marca) {
+        l1.asMap().compute(key, (k, actual) -> marca(k) == marca ? value : actual);
+    }
+
+    /**
+     * Invalida solo la copia local (invalidación recibida de otra réplica).
+     *
+     * @param key Clave a invalidar, o null para vaciar toda la L1
+     */
+    void invalidarLocal(Object key) {
+        if (key == null) {
+            vaciados.incrementAndGet();
+            l1.invalidateAll();
+        } else {
+            generaciones.incrementAndGet(franja(key));
+            l1.invalidate(key);
+        }
+    }
+
+    private static int franja(Object key) {
+        return Math.floorMod(key.hashCode(), FRANJAS);
+    }
+}
@@ -0,0 +1,266 @@
+package com.miguel.spyzer.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CacheManager que antepone una L1 Caffeine a las regiones configuradas de un
+ * CacheManager remoto (Redis). El resto de regiones se sirven solo desde L2.
+ *
+ * Además ofrece lectura/escritura en bloque (obtenerEnBloque / guardarEnBloque)
+ * que resuelve muchas claves de varias regiones con una sola ida y vuelta a Redis.
+ *
+ * Las cachés devueltas son transaction-aware: put/evict dentro de una
+ * transacción se aplican (en L1, L2 y pub/sub) tras el commit.
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    /**
+     * Configuración de la L1 de una región.
+     *
+     * @param ttl       Expiración tras escritura (igual que el TTL de la región en Redis)
+     * @param maxSize   Número máximo de entradas en memoria
+     */
+    public record ConfiguracionL1(Duration ttl, long maxSize) {
+    }
+
+    private final CacheManager remoto;
+    private final RedisConnectionFactory connectionFactory;
+    private final Map<String, ConfiguracionL1> configuracionesL1;
+    private final CacheInvalidationBus invalidationBus;
+    private final Map<String, TwoLevelCache> dosNiveles = new ConcurrentHashMap<>();
+    private final Map<String, Cache> decoradas = new ConcurrentHashMap<>();
+
+    /**
+     * @param remoto            CacheManager L2 (sin transactionAware: la sincronización la aplica este manager)
+     * @param connectionFactory Conexiones Redis para las operaciones en bloque (MGET / SET en pipeline)
+     * @param configuracionesL1 Regiones con L1 y su configuración
+     * @param invalidationBus   Canal de invalidación entre réplicas
+     */
+    public TwoLevelCacheManager(CacheManager remoto,
+                                RedisConnectionFactory connectionFactory,
+                                Map<String, ConfiguracionL1> configuracionesL1,
+                                CacheInvalidationBus invalidationBus) {
+        this.remoto = remoto;
+        this.connectionFactory = connectionFactory;
+        this.configuracionesL1 = Map.copyOf(configuracionesL1);
+        this.invalidationBus = invalidationBus;
+        invalidationBus.registrar(this::invalidarLocal);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache existente = decoradas.get(name);
+        if (existente != null) {
+            return existente;
+        }
+
+        Cache l2 = remoto.getCache(name);
+        if (l2 == null) {
+            return null;
+        }
+
+        return decoradas.computeIfAbsent(name, region -> {
+            ConfiguracionL1 configuracion = configuracionesL1.get(region);
+            if (configuracion == null) {
+                return new TransactionAwareCacheDecorator(l2);
+            }
+            TwoLevelCache cache = new TwoLevelCache(region, Caffeine.newBuilder()
+                    .expireAfterWrite(configuracion.ttl())
+                    .maximumSize(configuracion.maxSize())
+                    .build(), l2, invalidationBus);
+            dosNiveles.put(region, cache);
+            return new TransactionAwareCacheDecorator(cache);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoto.getCacheNames();
+    }
+
+    /**
+     * Lectura en bloque de varias claves, cada una en su región.
+     *
+     * Primero se resuelven en L1; las restantes se piden a Redis en un único
+     * MGET (todas las regiones a la vez, una sola ida y vuelta) y los aciertos
+     * rellenan la L1. Las claves de regiones que no son RedisCache se leen una a una.
+     *
+     * @param regionPorClave Clave -> nombre de la región donde buscarla
+     * @return Clave -> valor, solo para las claves encontradas
+     */
+    public Map<String, Object> obtenerEnBloque(Map<String, String> regionPorClave) {
+        Map<String, Object> encontrados = new LinkedHashMap<>();
+        List<String> clavesRemotas = new ArrayList<>();
+        List<RedisCache> cachesRemotas = new ArrayList<>();
+        List<Long> marcas = new ArrayList<>();
+
+        for (Map.Entry<String, String> entrada : regionPorClave.entrySet()) {
+            String clave = entrada.getKey();
+            String region = entrada.getValue();
+            getCache(region); // Asegura que la L1 de la región existe
+
+            TwoLevelCache dosNivelesCache = dosNiveles.get(region);
+            if (dosNivelesCache != null) {
+                Object local = dosNivelesCache.obtenerLocal(clave);
+                if (local != null) {
+                    encontrados.put(clave, local);
+                    continue;
+                }
+            }
+
+            if (remoto.getCache(region) instanceof RedisCache redisCache) {
+                clavesRemotas.add(clave);
+                cachesRemotas.add(redisCache);
+                marcas.add(dosNivelesCache != null ? dosNivelesCache.marca(clave) : 0L);
+            } else {
+                Cache cache = getCache(region);
+                Cache.ValueWrapper valor = cache != null ? cache.get(clave) : null;
+                if (valor != null && valor.get() != null) {
+                    encontrados.put(clave, valor.get());
+                }
+            }
+        }
+
+        if (clavesRemotas.isEmpty()) {
+            return encontrados;
+        }
+
+        byte[][] clavesRedis = new byte[clavesRemotas.size()][];
+        for (int i = 0; i < clavesRemotas.size(); i++) {
+            clavesRedis[i] = claveRedis(cachesRemotas.get(i), clavesRemotas.get(i));
+        }
+
+        List<byte[]> valores;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            valores = connection.stringCommands().mGet(clavesRedis);
+        }
+        if (valores == null) {
+            return encontrados;
+        }
+
+        for (int i = 0; i < clavesRemotas.size() && i < valores.size(); i++) {
+            byte[] bytes = valores.get(i);
+            if (bytes == null) {
+                continue;
+            }
+            RedisCache redisCache = cachesRemotas.get(i);
+            Object valor = redisCache.getCacheConfiguration().getValueSerializationPair().read(ByteBuffer.wrap(bytes));
+            if (valor != null) {
+                encontrados.put(clavesRemotas.get(i), valor);
+                TwoLevelCache dosNivelesCache = dosNiveles.get(redisCache.getName());
+                if (dosNivelesCache != null) {
+                    dosNivelesCache.rellenarLocal(clavesRemotas.get(i), valor, marcas.get(i));
+                }
+            }
+        }
+        return encontrados;
+    }
+
+    /**
+     * Escritura en bloque de valores cargados desde BD tras un fallo de caché:
+     * un único pipeline de SET con el TTL de cada región.
+     *
+     * No publica invalidaciones: solo rellena entradas ausentes con el valor
+     * vigente en BD (igual que la carga de @Cacheable tras un fallo). Tampoco
+     * rellena la L1: la lectura en BD fue anterior a esta llamada y una
+     * invalidación recibida entretanto se perdería; la siguiente lectura
+     * rellena la L1 desde L2 comprobando la generación.
+     *
+     * @param regionPorClave Clave -> nombre de la región
+     * @param valores        Clave -> valor a guardar (los null se ignoran)
+     */
+    public void guardarEnBloque(Map<String, String> regionPorClave, Map<String, ?> valores) {
+        List<byte[]> clavesRedis = new ArrayList<>();
+        List<byte[]> valoresRedis = new ArrayList<>();
+        List<Duration> ttls = new ArrayList<>();
+
+        for (Map.Entry<String, ?> entrada : valores.entrySet()) {
+            String clave = entrada.getKey();
+            Object valor = entrada.getValue();
+            String region = regionPorClave.get(clave);
+            if (valor == null || region == null) {
+                continue;
+            }
+
+            getCache(region);
+
+            if (remoto.getCache(region) instanceof RedisCache redisCache) {
+                RedisCacheConfiguration configuracion = redisCache.getCacheConfiguration();
+                ByteBuffer serializado = configuracion.getValueSerializationPair().write(valor);
+                byte[] bytes = new byte[serializado.remaining()];
+                serializado.get(bytes);
+
+                clavesRedis.add(claveRedis(redisCache, clave));
+                valoresRedis.add(bytes);
+                ttls.add(configuracion.getTtlFunction().getTimeToLive(clave, valor));
+            } else {
+                Cache cache = remoto.getCache(region);
+                if (cache != null) {
+                    cache.put(clave, valor);
+                }
+            }
+        }
+
+        if (clavesRedis.isEmpty()) {
+            return;
+        }
+
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.openPipeline();
+            try {
+                for (int i = 0; i < clavesRedis.size(); i++) {
+                    Duration ttl = ttls.get(i);
+                    Expiration expiracion = ttl == null || ttl.isZero() || ttl.isNegative()
+                            ? Expiration.persistent()
+                            : Expiration.from(ttl);
+                    connection.stringCommands().set(clavesRedis.get(i), valoresRedis.get(i), expiracion,
+                            RedisStringCommands.SetOption.upsert());
+                }
+            } finally {
+                connection.closePipeline();
+            }
+        }
+    }
+
+    /**
+     * Clave Redis de una entrada, con el mismo prefijo y serialización que usa RedisCache.
+     */
+    private static byte[] claveRedis(RedisCache cache, String clave) {
+        RedisCacheConfiguration configuracion = cache.getCacheConfiguration();
+        String conPrefijo = configuracion.usePrefix()
+                ? configuracion.getKeyPrefixFor(cache.getName()) + clave
+                : clave;
+        ByteBuffer serializada = configuracion.getKeySerializationPair().write(conPrefijo);
+        byte[] bytes = new byte[serializada.remaining()];
+        serializada.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Aplica una invalidación recibida de otra réplica sobre la L1 local.
+     */
+    private void invalidarLocal(String region, String clave) {
+        TwoLevelCache cache = dosNiveles.get(region);
+        if (cache != null) {
+            cache.invalidarLocal(clave);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.miguel.spyzer.columnar;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reducción de series para gráficos: devuelve como mucho N puntos que
+ * conservan la forma de la serie, leyendo las columnas primitivas de la vista.
+ *
+ * - LTTB (Largest-Triangle-Three-Buckets) sobre el cierre: conserva el primer
+ *   y el último punto y, de cada cubo intermedio, el punto que forma el
+ *   triángulo de mayor área con el elegido antes y la media del cubo
+ *   siguiente. Devuelve puntos reales (útil para gráficos de líneas).
+ * - MINMAX: agrega cada cubo en una vela (apertura del primero, máximo,
+ *   mínimo, cierre del último, volumen sumado), así que no se pierde ningún
+ *   extremo (útil para velas).
+ *
+ * El resultado mantiene el orden de la vista de origen.
+ */
+public final class BarDownsampler {
+
+    public enum Metodo {
+        LTTB,
+        MINMAX
+    }
+
+    // LTTB necesita el primer punto, el último y al menos un cubo intermedio
+    public static final int MIN_PUNTOS = 3;
+
+    private BarDownsampler() {
+    }
+
+    /**
+     * @return la propia vista si ya tiene como mucho puntos filas
+     */
+    public static BarSlice reducir(BarSlice origen, int puntos, Metodo metodo) {
+        if (puntos < MIN_PUNTOS) {
+            throw new IllegalArgumentException("points debe ser al menos " + MIN_PUNTOS);
+        }
+        if (origen.size() <= puntos) {
+            return origen;
+        }
+        return metodo == Metodo.MINMAX ? minMax(origen, puntos) : lttb(origen, puntos);
+    }
+
+    private static BarSlice lttb(BarSlice origen, int puntos) {
+        int n = origen.size();
+        int[] elegidos = new int[puntos];
+        int cantidad = 0;
+
+        // Tamaño de cubo sin contar el primer y el último punto
+        double tamanoCubo = (double) (n - 2) / (puntos - 2);
+        int anterior = 0;
+        elegidos[cantidad++] = 0;
+
+        for (int cubo = 0; cubo < puntos - 2; cubo++) {
+            int inicio = (int) (cubo * tamanoCubo) + 1;
+            int fin = (int) ((cubo + 1) * tamanoCubo) + 1;
+
+            // Media del cubo siguiente (el último punto si es el último cubo)
+            int inicioSiguiente = fin;
+            int finSiguiente = Math.min((int) ((cubo + 2) * tamanoCubo) + 1, n);
+            double mediaX = 0;
+            double mediaY = 0;
+            int enSiguiente = finSiguiente - inicioSiguiente;
+            if (enSiguiente <= 0) {
+                mediaX = origen.tsMs(n - 1);
+                mediaY = origen.close(n - 1);
+            } else {
+                for (int i = inicioSiguiente; i < finSiguiente; i++) {
+                    mediaX += origen.tsMs(i);
+                    mediaY += origen.close(i);
+                }
+                mediaX /= enSiguiente;
+                mediaY /= enSiguiente;
+            }
+
+            // Área (doble) del triángulo anterior - candidato - media del cubo siguiente
+            double xA = origen.tsMs(anterior);
+            double yA = origen.close(anterior);
+            double mayorArea = -1;
+            int mejor = inicio;
+            for (int i = inicio; i < fin; i++) {
+                double area = Math.abs((xA - mediaX) * (origen.close(i) - yA)
+                        - (xA - origen.tsMs(i)) * (mediaY - yA));
+                if (area > mayorArea) {
+                    mayorArea = area;
+                    mejor = i;
+                }
+            }
+            elegidos[cantidad++] = mejor;
+            anterior = mejor;
+        }
+
+        elegidos[cantidad++] = n - 1;
+        return origen.copiar(elegidos, cantidad);
+    }
+
+    private static BarSlice minMax(BarSlice origen, int puntos) {
+        int n = origen.size();
+        ByteBuffer destino = ByteBuffer.allocate(BarSlice.tamanoArchivo(puntos));
+        double tamanoCubo = (double) n / puntos;
+
+        for (int cubo = 0; cubo < puntos; cubo++) {
+            int inicio = (int) (cubo * tamanoCubo);
+            int fin = cubo == puntos - 1 ? n : (int) ((cubo + 1) * tamanoCubo);
+
+            // Apertura y cierre por ts: la vista puede estar en orden descendente
+            int primero = inicio;
+            int ultimo = inicio;
+            double maximo = Double.NaN;
+            double minimo = Double.NaN;
+            long volumen = BarSlice.SIN_VOLUMEN;
+            for (int i = inicio; i < fin; i++) {
+                if (origen.tsMs(i) < origen.tsMs(primero)) {
+                    primero = i;
+                }
+                if (origen.tsMs(i) > origen.tsMs(ultimo)) {
+                    ultimo = i;
+                }
+                double high = origen.high(i);
+                double low = origen.low(i);
+                if (!Double.isNaN(high) && (Double.isNaN(maximo) || high > maximo)) {
+                    maximo = high;
+                }
+                if (!Double.isNaN(low) && (Double.isNaN(minimo) || low < minimo)) {
+                    minimo = low;
+                }
+                long v = origen.volumen(i);
+                if (v != BarSlice.SIN_VOLUMEN) {
+                    volumen = volumen == BarSlice.SIN_VOLUMEN ? v : volumen + v;
+                }
+            }
+            BarSlice.escribirFila(destino, puntos, cubo, origen.tsMs(primero), origen.open(primero),
+                    maximo, minimo, origen.close(ultimo), volumen);
+        }
+        return new BarSlice(origen.getSymbol(), origen.getGranularidad(), destino, puntos, 0, puntos, false);
+    }
+}
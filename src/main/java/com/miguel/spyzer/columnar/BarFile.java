@@ -0,0 +1,231 @@
+package com.miguel.spyzer.columnar;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Archivo columnar mapeado en memoria con las barras de un símbolo y granularidad.
+ *
+ * Cabecera (BarSlice.CABECERA bytes):
+ * - 0: magic "SPYB" (int), 4: versión (int)
+ * - 8: filas confirmadas (long), 16: capacidad (long)
+ * - 24: primer ts (long), 32: último ts (long)
+ *
+ * Tras la cabecera, las columnas de BarSlice con capacidad fija. Solo se
+ * añaden filas al final y en orden de ts: primero se escriben las columnas
+ * y después el número de filas, así que un lector nunca ve una fila a medias.
+ * Al llenarse, el archivo se copia a uno del doble de capacidad que sustituye
+ * al anterior con un move atómico; las vistas abiertas siguen leyendo el
+ * mapeo antiguo, que sigue siendo válido.
+ *
+ * Las escrituras están serializadas por instancia; las lecturas no bloquean.
+ */
+@Slf4j
+final class BarFile {
+
+    private static final int MAGIC = 0x53505942;
+    private static final int VERSION = 1;
+
+    private static final int POS_FILAS = 8;
+    private static final int POS_CAPACIDAD = 16;
+    private static final int POS_PRIMER_TS = 24;
+    private static final int POS_ULTIMO_TS = 32;
+
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    // Un mapeo no puede superar Integer.MAX_VALUE bytes
+    private static final int CAPACIDAD_MAXIMA = (Integer.MAX_VALUE - BarSlice.CABECERA) / (BarSlice.COLUMNAS * Long.BYTES);
+
+    /**
+     * Mapeo vigente y filas visibles, publicados juntos para que las lecturas sean coherentes.
+     */
+    record Estado(MappedByteBuffer buffer, int capacidad, int filas) {
+
+        long ultimoTs() {
+            return filas == 0 ? Long.MIN_VALUE : buffer.getLong(BarSlice.offset(BarSlice.TS, capacidad, filas - 1));
+        }
+    }
+
+    /**
+     * Contenido nuevo que se escribe aparte y sustituye al actual al publicarse.
+     */
+    final class Reconstruccion {
+        private final Path temporal;
+        private Estado estado;
+
+        private Reconstruccion(Path temporal, Estado estado) {
+            this.temporal = temporal;
+            this.estado = estado;
+        }
+
+        void anexar(List<HistoricalDataPoint> puntos) throws IOException {
+            estado = BarFile.anexar(temporal, estado, puntos);
+        }
+    }
+
+    private final Path ruta;
+    private volatile Estado estado;
+
+    private BarFile(Path ruta, Estado estado) {
+        this.ruta = ruta;
+        this.estado = estado;
+    }
+
+    /**
+     * Abre el archivo si existe y su cabecera es válida; si no, lo crea vacío.
+     */
+    static BarFile abrir(Path ruta) throws IOException {
+        if (Files.exists(ruta)) {
+            Estado existente = mapearExistente(ruta);
+            if (existente != null) {
+                return new BarFile(ruta, existente);
+            }
+            log.warn("Archivo columnar {} no válido, se recrea", ruta);
+        }
+        return new BarFile(ruta, crear(ruta, CAPACIDAD_INICIAL));
+    }
+
+    Estado estado() {
+        return estado;
+    }
+
+    /**
+     * Añade al final los puntos con ts posterior al último guardado (ordenados por ts).
+     */
+    synchronized void anexar(List<HistoricalDataPoint> puntos) throws IOException {
+        estado = anexar(ruta, estado, puntos);
+    }
+
+    Reconstruccion iniciarReconstruccion(int filasEstimadas) throws IOException {
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".nuevo");
+        return new Reconstruccion(temporal, crear(temporal, capacidadPara(filasEstimadas)));
+    }
+
+    /**
+     * Sustituye el contenido por el de la reconstrucción (move atómico del archivo).
+     */
+    synchronized void publicar(Reconstruccion reconstruccion) throws IOException {
+        Files.move(reconstruccion.temporal, ruta, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        estado = reconstruccion.estado;
+    }
+
+    // ==================== ESCRITURA ====================
+
+    private static Estado anexar(Path ruta, Estado estado, List<HistoricalDataPoint> puntos) throws IOException {
+        long ultimoTs = estado.ultimoTs();
+        int filas = estado.filas();
+        int nuevas = 0;
+        for (HistoricalDataPoint punto : puntos) {
+            if (punto.getTs() != null && punto.getTs().toEpochMilli() > ultimoTs) {
+                nuevas++;
+                ultimoTs = punto.getTs().toEpochMilli();
+            }
+        }
+        if (nuevas == 0) {
+            return estado;
+        }
+        if (filas + nuevas > estado.capacidad()) {
+            estado = crecer(ruta, estado, filas + nuevas);
+        }
+
+        MappedByteBuffer buffer = estado.buffer();
+        int capacidad = estado.capacidad();
+        ultimoTs = estado.ultimoTs();
+        for (HistoricalDataPoint punto : puntos) {
+            if (punto.getTs() != null && punto.getTs().toEpochMilli() > ultimoTs) {
+                BarSlice.escribirFila(buffer, capacidad, filas++, punto);
+                ultimoTs = punto.getTs().toEpochMilli();
+            }
+        }
+
+        // Las filas se confirman después de escribir las columnas
+        if (estado.filas() == 0) {
+            buffer.putLong(POS_PRIMER_TS, buffer.getLong(BarSlice.offset(BarSlice.TS, capacidad, 0)));
+        }
+        buffer.putLong(POS_ULTIMO_TS, ultimoTs);
+        buffer.putLong(POS_FILAS, filas);
+        buffer.force();
+        return new Estado(buffer, capacidad, filas);
+    }
+
+    /**
+     * Copia el archivo a uno con capacidad para al menos filasNecesarias y lo sustituye.
+     */
+    private static Estado crecer(Path ruta, Estado estado, int filasNecesarias) throws IOException {
+        int capacidad = capacidadPara(Math.max(filasNecesarias, estado.capacidad() * 2));
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".crecer");
+        Estado nuevo = crear(temporal, capacidad);
+
+        MappedByteBuffer origen = estado.buffer();
+        MappedByteBuffer destino = nuevo.buffer();
+        int bytes = estado.filas() * Long.BYTES;
+        for (int columna = 0; columna < BarSlice.COLUMNAS; columna++) {
+            destino.put(BarSlice.offset(columna, capacidad, 0), origen,
+                    BarSlice.offset(columna, estado.capacidad(), 0), bytes);
+        }
+        destino.putLong(POS_PRIMER_TS, origen.getLong(POS_PRIMER_TS));
+        destino.putLong(POS_ULTIMO_TS, origen.getLong(POS_ULTIMO_TS));
+        destino.putLong(POS_FILAS, estado.filas());
+        destino.force();
+
+        Files.move(temporal, ruta, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new Estado(destino, capacidad, estado.filas());
+    }
+
+    private static Estado crear(Path ruta, int capacidad) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, BarSlice.tamanoArchivo(capacidad));
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(POS_FILAS, 0);
+        buffer.putLong(POS_CAPACIDAD, capacidad);
+        buffer.putLong(POS_PRIMER_TS, Long.MIN_VALUE);
+        buffer.putLong(POS_ULTIMO_TS, Long.MIN_VALUE);
+        return new Estado(buffer, capacidad, 0);
+    }
+
+    /**
+     * Mapea un archivo existente, o null si la cabecera no es coherente con su tamaño.
+     */
+    private static Estado mapearExistente(Path ruta) throws IOException {
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long tamano = canal.size();
+            if (tamano < BarSlice.CABECERA || tamano > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+            long capacidad = buffer.getLong(POS_CAPACIDAD);
+            long filas = buffer.getLong(POS_FILAS);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || capacidad <= 0 || capacidad > CAPACIDAD_MAXIMA
+                    || tamano != BarSlice.tamanoArchivo((int) capacidad)
+                    || filas < 0 || filas > capacidad) {
+                return null;
+            }
+            return new Estado(buffer, (int) capacidad, (int) filas);
+        }
+    }
+
+    private static int capacidadPara(int filas) throws IOException {
+        if (filas > CAPACIDAD_MAXIMA) {
+            throw new IOException("Capacidad máxima del archivo columnar superada: " + filas + " filas");
+        }
+        int capacidad = CAPACIDAD_INICIAL;
+        while (capacidad < filas) {
+            capacidad = (int) Math.min((long) capacidad * 2, CAPACIDAD_MAXIMA);
+        }
+        return capacidad;
+    }
+}
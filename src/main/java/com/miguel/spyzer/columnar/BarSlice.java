@@ -0,0 +1,227 @@
+package com.miguel.spyzer.columnar;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Vista de solo lectura sobre un tramo de filas de un archivo columnar.
+ *
+ * No copia ni crea objetos por fila: los accesores leen directamente de las
+ * columnas del buffer (mapeado a disco o en heap). El buffer de una vista no
+ * cambia aunque el archivo crezca o se reconstruya después, así que la vista
+ * sigue siendo coherente mientras se recorre.
+ *
+ * Layout de las columnas (compartido con BarFile):
+ * - Cabecera de CABECERA bytes
+ * - Columnas TS, OPEN, HIGH, LOW, CLOSE, VOLUMEN, cada una de capacidad × 8 bytes
+ * - TS en epoch ms y VOLUMEN como long (SIN_VOLUMEN si no hay); precios como
+ *   double (NaN si no hay)
+ *
+ * Se serializa a JSON con el mismo formato que una lista de HistoricalDataPoint.
+ */
+@JsonSerialize(using = BarSlice.Serializador.class)
+public final class BarSlice {
+
+    static final int CABECERA = 64;
+    static final int COLUMNAS = 6;
+    static final int TS = 0;
+    static final int OPEN = 1;
+    static final int HIGH = 2;
+    static final int LOW = 3;
+    static final int CLOSE = 4;
+    static final int VOLUMEN = 5;
+
+    public static final long SIN_VOLUMEN = Long.MIN_VALUE;
+
+    private final String symbol;
+    private final Granularidad granularidad;
+    private final ByteBuffer buffer;
+    private final int capacidad;
+    private final int inicio;
+    private final int longitud;
+    private final boolean descendente;
+
+    BarSlice(String symbol, Granularidad granularidad, ByteBuffer buffer, int capacidad,
+             int inicio, int longitud, boolean descendente) {
+        this.symbol = symbol;
+        this.granularidad = granularidad;
+        this.buffer = buffer;
+        this.capacidad = capacidad;
+        this.inicio = inicio;
+        this.longitud = longitud;
+        this.descendente = descendente;
+    }
+
+    /**
+     * Vista en heap sobre puntos ya cargados (respuesta de la API, lectura de BD),
+     * en el mismo orden de la lista.
+     */
+    public static BarSlice desdePuntos(String symbol, Granularidad granularidad, List<HistoricalDataPoint> puntos) {
+        int filas = puntos.size();
+        ByteBuffer buffer = ByteBuffer.allocate(tamanoArchivo(filas));
+        int fila = 0;
+        for (HistoricalDataPoint punto : puntos) {
+            punto.derivarTimestamp();
+            escribirFila(buffer, filas, fila++, punto);
+        }
+        return new BarSlice(symbol, granularidad, buffer, filas, 0, filas, false);
+    }
+
+    public static BarSlice vacio(String symbol, Granularidad granularidad) {
+        return new BarSlice(symbol, granularidad, ByteBuffer.allocate(CABECERA), 0, 0, 0, false);
+    }
+
+    /**
+     * Vista en heap con las filas indicadas (índices de esta vista), en ese orden.
+     */
+    BarSlice copiar(int[] indices, int cantidad) {
+        ByteBuffer destino = ByteBuffer.allocate(tamanoArchivo(cantidad));
+        for (int j = 0; j < cantidad; j++) {
+            int i = indices[j];
+            escribirFila(destino, cantidad, j, tsMs(i), open(i), high(i), low(i), close(i), volumen(i));
+        }
+        return new BarSlice(symbol, granularidad, destino, cantidad, 0, cantidad, false);
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public Granularidad getGranularidad() {
+        return granularidad;
+    }
+
+    public int size() {
+        return longitud;
+    }
+
+    public boolean isEmpty() {
+        return longitud == 0;
+    }
+
+    /**
+     * Instante del punto i en epoch ms (Long.MIN_VALUE si no tiene).
+     */
+    public long tsMs(int i) {
+        return buffer.getLong(offset(TS, capacidad, fila(i)));
+    }
+
+    public double open(int i) {
+        return buffer.getDouble(offset(OPEN, capacidad, fila(i)));
+    }
+
+    public double high(int i) {
+        return buffer.getDouble(offset(HIGH, capacidad, fila(i)));
+    }
+
+    public double low(int i) {
+        return buffer.getDouble(offset(LOW, capacidad, fila(i)));
+    }
+
+    public double close(int i) {
+        return buffer.getDouble(offset(CLOSE, capacidad, fila(i)));
+    }
+
+    /**
+     * Volumen del punto i, o SIN_VOLUMEN.
+     */
+    public long volumen(int i) {
+        return buffer.getLong(offset(VOLUMEN, capacidad, fila(i)));
+    }
+
+    private int fila(int i) {
+        if (i < 0 || i >= longitud) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return descendente ? inicio + longitud - 1 - i : inicio + i;
+    }
+
+    // ==================== LAYOUT ====================
+
+    static int offset(int columna, int capacidad, int fila) {
+        return CABECERA + (columna * capacidad + fila) * Long.BYTES;
+    }
+
+    static int tamanoArchivo(int capacidad) {
+        return CABECERA + COLUMNAS * capacidad * Long.BYTES;
+    }
+
+    static void escribirFila(ByteBuffer buffer, int capacidad, int fila, HistoricalDataPoint punto) {
+        escribirFila(buffer, capacidad, fila,
+                punto.getTs() != null ? punto.getTs().toEpochMilli() : Long.MIN_VALUE,
+                aDouble(punto.getOpen()), aDouble(punto.getHigh()), aDouble(punto.getLow()), aDouble(punto.getClose()),
+                punto.getVolume() != null ? punto.getVolume() : SIN_VOLUMEN);
+    }
+
+    static void escribirFila(ByteBuffer buffer, int capacidad, int fila, long ts,
+                             double open, double high, double low, double close, long volumen) {
+        buffer.putLong(offset(TS, capacidad, fila), ts);
+        buffer.putDouble(offset(OPEN, capacidad, fila), open);
+        buffer.putDouble(offset(HIGH, capacidad, fila), high);
+        buffer.putDouble(offset(LOW, capacidad, fila), low);
+        buffer.putDouble(offset(CLOSE, capacidad, fila), close);
+        buffer.putLong(offset(VOLUMEN, capacidad, fila), volumen);
+    }
+
+    private static double aDouble(BigDecimal valor) {
+        return valor != null ? valor.doubleValue() : Double.NaN;
+    }
+
+    /**
+     * Escribe la vista como array JSON de puntos, sin materializar HistoricalDataPoint.
+     */
+    static class Serializador extends JsonSerializer<BarSlice> {
+
+        @Override
+        public void serialize(BarSlice slice, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartArray();
+            for (int i = 0; i < slice.size(); i++) {
+                long ts = slice.tsMs(i);
+                Instant instante = ts != Long.MIN_VALUE ? Instant.ofEpochMilli(ts) : null;
+
+                gen.writeStartObject();
+                gen.writeStringField("symbol", slice.getSymbol());
+                if (instante == null) {
+                    gen.writeNullField("date");
+                    gen.writeNullField("ts");
+                } else {
+                    gen.writeStringField("date", slice.getGranularidad() == Granularidad.DIARIA
+                            ? HistoricalDataPoint.diaDe(instante).toString()
+                            : instante.toString());
+                    gen.writeStringField("ts", instante.toString());
+                }
+                gen.writeStringField("granularidad", slice.getGranularidad().name());
+                escribirPrecio(gen, "open", slice.open(i));
+                escribirPrecio(gen, "high", slice.high(i));
+                escribirPrecio(gen, "low", slice.low(i));
+                escribirPrecio(gen, "close", slice.close(i));
+                long volumen = slice.volumen(i);
+                if (volumen == SIN_VOLUMEN) {
+                    gen.writeNullField("volume");
+                } else {
+                    gen.writeNumberField("volume", volumen);
+                }
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+
+        private static void escribirPrecio(JsonGenerator gen, String campo, double valor) throws IOException {
+            if (Double.isNaN(valor)) {
+                gen.writeNullField(campo);
+            } else {
+                gen.writeNumberField(campo, valor);
+            }
+        }
+    }
+}
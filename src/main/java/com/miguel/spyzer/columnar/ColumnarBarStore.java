@@ -0,0 +1,282 @@
+package com.miguel.spyzer.columnar;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+import com.miguel.spyzer.repository.HistoricalDataRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Almacén columnar local de históricos: un archivo mapeado en memoria por
+ * símbolo y granularidad (BarFile) con columnas primitivas, para servir
+ * lecturas repetidas (gráficos, indicadores) sin hidratar entidades JPA.
+ *
+ * MySQL sigue siendo la fuente de verdad; los archivos son una copia local
+ * que se mantiene así:
+ * - Escrituras de este proceso: se anexan al guardarse en BD (anexar). Si
+ *   corrigen puntos pasados, el archivo se marca para reconstruir (invalidar).
+ * - Revalidación perezosa: en la primera lectura tras abrir el archivo y
+ *   después cada revalidate-seconds, se compara el número de filas y el último
+ *   ts con BD. Si BD solo tiene filas nuevas al final se anexan; si difiere de
+ *   otra forma (borrados, huecos) se reconstruye desde BD por keyset.
+ *
+ * Las correcciones de valores de puntos ya copiados que haga otra réplica no
+ * se detectan hasta la siguiente reconstrucción (la verificación de
+ * históricos se ejecuta en cada réplica e invalida su propia copia).
+ */
+@Component
+@Slf4j
+public class ColumnarBarStore {
+
+    private static final int TAMANO_PAGINA = 5000;
+
+    // Cursor inicial del recorrido por keyset (anterior a cualquier punto)
+    private static final Instant ORIGEN = Instant.parse("1900-01-01T00:00:00Z");
+
+    private final HistoricalDataRepository historicalDataRepository;
+    private final Path directorio;
+    private final long revalidacionMs;
+
+    private final Map<String, Entrada> archivos = new ConcurrentHashMap<>();
+
+    /**
+     * Archivo abierto y estado de su revalidación con BD.
+     */
+    private static final class Entrada {
+        private final BarFile archivo;
+        private volatile long revisadoMs;
+        private volatile boolean reconstruir;
+
+        private Entrada(BarFile archivo) {
+            this.archivo = archivo;
+        }
+    }
+
+    public ColumnarBarStore(HistoricalDataRepository historicalDataRepository,
+                            @Value("${marketdata.columnar.dir:data/columnar}") String directorio,
+                            @Value("${marketdata.columnar.revalidate-seconds:300}") long revalidacionSegundos) {
+        this.historicalDataRepository = historicalDataRepository;
+        this.directorio = Path.of(directorio);
+        this.revalidacionMs = Duration.ofSeconds(revalidacionSegundos).toMillis();
+    }
+
+    /**
+     * Últimos n puntos, más reciente primero.
+     *
+     * @throws UncheckedIOException si el archivo no se puede abrir o escribir
+     */
+    public BarSlice ultimos(String symbol, Granularidad granularidad, int n) {
+        BarFile.Estado estado = estadoVigente(symbol, granularidad);
+        if (estado == null) {
+            return BarSlice.vacio(symbol, granularidad);
+        }
+        int longitud = Math.max(0, Math.min(n, estado.filas()));
+        return new BarSlice(symbol, granularidad, estado.buffer(), estado.capacidad(),
+                estado.filas() - longitud, longitud, true);
+    }
+
+    /**
+     * Puntos con ts en [desde, hasta], en orden cronológico (búsqueda binaria sobre la columna TS).
+     *
+     * @throws UncheckedIOException si el archivo no se puede abrir o escribir
+     */
+    public BarSlice rango(String symbol, Granularidad granularidad, Instant desde, Instant hasta) {
+        BarFile.Estado estado = estadoVigente(symbol, granularidad);
+        if (estado == null) {
+            return BarSlice.vacio(symbol, granularidad);
+        }
+        int inicio = primeraFilaDesde(estado, desde.toEpochMilli());
+        int fin = primeraFilaDesde(estado, hasta.toEpochMilli() + 1);
+        return new BarSlice(symbol, granularidad, estado.buffer(), estado.capacidad(),
+                inicio, Math.max(0, fin - inicio), false);
+    }
+
+    /**
+     * Copia al archivo (si ya está abierto) puntos recién guardados en BD. Si
+     * alguno no es posterior al último guardado, el archivo se reconstruirá en
+     * la siguiente lectura.
+     */
+    public void anexar(String symbol, Granularidad granularidad, Collection<HistoricalDataPoint> puntos) {
+        Entrada entrada = archivos.get(clave(symbol, granularidad));
+        if (entrada == null || puntos.isEmpty()) {
+            return;
+        }
+        List<HistoricalDataPoint> ordenados = new ArrayList<>(puntos);
+        ordenados.removeIf(punto -> punto.getTs() == null);
+        ordenados.sort(Comparator.comparing(HistoricalDataPoint::getTs));
+
+        synchronized (entrada) {
+            if (entrada.reconstruir || ordenados.isEmpty()) {
+                return;
+            }
+            if (ordenados.get(0).getTs().toEpochMilli() <= entrada.archivo.estado().ultimoTs()) {
+                entrada.reconstruir = true;
+                return;
+            }
+            try {
+                entrada.archivo.anexar(ordenados);
+            } catch (IOException e) {
+                log.warn("Error anexando al archivo columnar de {} ({}): {}", symbol, granularidad, e.getMessage());
+                entrada.reconstruir = true;
+            }
+        }
+    }
+
+    /**
+     * Marca el archivo para reconstruirlo desde BD en la siguiente lectura
+     * (puntos pasados corregidos o eliminados).
+     */
+    public void invalidar(String symbol, Granularidad granularidad) {
+        Entrada entrada = archivos.get(clave(symbol, granularidad));
+        if (entrada != null) {
+            entrada.reconstruir = true;
+        }
+    }
+
+    // ==================== REVALIDACIÓN ====================
+
+    /**
+     * Estado revalidado del archivo, o null si BD no tiene puntos del símbolo
+     * (no se crean archivos para símbolos sin histórico).
+     */
+    private BarFile.Estado estadoVigente(String symbol, Granularidad granularidad) {
+        String clave = clave(symbol, granularidad);
+        Entrada entrada = archivos.get(clave);
+        if (entrada == null) {
+            if (historicalDataRepository.countBySymbolAndGranularidad(symbol, granularidad) == 0) {
+                return null;
+            }
+            entrada = archivos.computeIfAbsent(clave, k -> abrir(symbol, granularidad));
+        }
+        if (entrada.reconstruir || System.currentTimeMillis() - entrada.revisadoMs >= revalidacionMs) {
+            synchronized (entrada) {
+                if (entrada.reconstruir || System.currentTimeMillis() - entrada.revisadoMs >= revalidacionMs) {
+                    revalidar(entrada, symbol, granularidad);
+                }
+            }
+        }
+        return entrada.archivo.estado();
+    }
+
+    private Entrada abrir(String symbol, Granularidad granularidad) {
+        try {
+            Files.createDirectories(directorio);
+            return new Entrada(BarFile.abrir(directorio.resolve(nombreArchivo(symbol, granularidad))));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se puede abrir el archivo columnar de " + symbol, e);
+        }
+    }
+
+    private void revalidar(Entrada entrada, String symbol, Granularidad granularidad) {
+        try {
+            BarFile.Estado estado = entrada.archivo.estado();
+            long filasBD = historicalDataRepository.countBySymbolAndGranularidad(symbol, granularidad);
+
+            if (!entrada.reconstruir && estado.filas() > 0 && filasBD >= estado.filas()) {
+                // La copia guarda ms: las filas posteriores son las de ts >= último + 1 ms (las
+                // anteriores a guardar ts en ms pueden tener µs dentro del último milisegundo)
+                Instant ultimo = Instant.ofEpochMilli(estado.ultimoTs());
+                Instant siguiente = ultimo.plusMillis(1);
+                long posteriores = historicalDataRepository
+                        .countBySymbolAndGranularidadAndTsGreaterThanEqual(symbol, granularidad, siguiente);
+                // La copia es un prefijo de BD: solo faltan las filas posteriores
+                if (estado.filas() + posteriores == filasBD && ultimoCoincide(symbol, granularidad, ultimo, posteriores)) {
+                    if (posteriores > 0) {
+                        cargarDesde(siguiente.minusNanos(1), symbol, granularidad, entrada.archivo::anexar);
+                    }
+                    entrada.revisadoMs = System.currentTimeMillis();
+                    return;
+                }
+            }
+
+            reconstruir(entrada, symbol, granularidad, filasBD);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error actualizando el archivo columnar de " + symbol, e);
+        }
+    }
+
+    /**
+     * Sin filas nuevas, el último punto de BD debe ser el último de la copia.
+     */
+    private boolean ultimoCoincide(String symbol, Granularidad granularidad, Instant ultimo, long posteriores) {
+        return posteriores > 0 || historicalDataRepository
+                .findFirstBySymbolAndGranularidadOrderByTsDesc(symbol, granularidad)
+                .map(punto -> ultimo.equals(punto.getTs().truncatedTo(ChronoUnit.MILLIS)))
+                .orElse(false);
+    }
+
+    private void reconstruir(Entrada entrada, String symbol, Granularidad granularidad, long filasBD) throws IOException {
+        BarFile.Reconstruccion reconstruccion = entrada.archivo.iniciarReconstruccion((int) Math.min(filasBD, Integer.MAX_VALUE));
+        int filas = cargarDesde(null, symbol, granularidad, reconstruccion::anexar);
+        entrada.archivo.publicar(reconstruccion);
+        entrada.reconstruir = false;
+        entrada.revisadoMs = System.currentTimeMillis();
+        log.info("Archivo columnar de {} ({}) reconstruido desde BD: {} filas", symbol, granularidad, filas);
+    }
+
+    @FunctionalInterface
+    private interface Destino {
+        void anexar(List<HistoricalDataPoint> puntos) throws IOException;
+    }
+
+    /**
+     * Recorre por keyset los puntos de BD posteriores a despues (todos si es null).
+     */
+    private int cargarDesde(Instant despues, String symbol, Granularidad granularidad, Destino destino) throws IOException {
+        Instant cursor = despues != null ? despues : ORIGEN;
+        Instant hasta = Instant.now().plus(Duration.ofDays(365));
+        int filas = 0;
+        while (true) {
+            List<HistoricalDataPoint> pagina = historicalDataRepository.findPagina(
+                    symbol, granularidad, cursor, hasta, Limit.of(TAMANO_PAGINA));
+            if (pagina.isEmpty()) {
+                return filas;
+            }
+            destino.anexar(pagina);
+            filas += pagina.size();
+            cursor = pagina.get(pagina.size() - 1).getTs();
+            if (pagina.size() < TAMANO_PAGINA) {
+                return filas;
+            }
+        }
+    }
+
+    private static int primeraFilaDesde(BarFile.Estado estado, long tsMs) {
+        int bajo = 0;
+        int alto = estado.filas();
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (estado.buffer().getLong(BarSlice.offset(BarSlice.TS, estado.capacidad(), medio)) < tsMs) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    private static String clave(String symbol, Granularidad granularidad) {
+        return symbol + "|" + granularidad;
+    }
+
+    private static String nombreArchivo(String symbol, Granularidad granularidad) {
+        return symbol.replaceAll("[^A-Za-z0-9._-]", "_") + "." + granularidad.name().toLowerCase(Locale.ROOT) + ".bars";
+    }
+}
@@ -3,20 +3,31 @@ package com.miguel.spyzer.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.miguel.spyzer.cache.CacheInvalidationBus;
+import com.miguel.spyzer.cache.MarketDataBinaryCodec;
+import com.miguel.spyzer.cache.TwoLevelCacheManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -28,11 +39,20 @@ import java.util.Map;
  * · Standard: 60 minutos
  * · Extended: 90 minutos
  *
- * - HISTÓRICOS: ZSET (Sorted Set) para series temporales
- * · Key: "historical:{symbol}"
- * · Score: timestamp
- * · Value: JSON del precio
- * · TTL: 24 horas (rolling window)
+ * - HISTÓRICOS: ticks binarios empaquetados por chunks horarios
+ * · Key: "ticks:{symbol}:{hora}"
+ * · Value: registros de 20 bytes (offset, precio en punto fijo, volumen)
+ * · TTL: 24 horas (rolling window, ver MarketDataRedisRepository)
+ *
+ * - FORMATO: los MarketData de las regiones de precios se guardan con
+ *   MarketDataBinaryCodec (binario versionado, decimales en punto fijo) en
+ *   lugar de JSON con nombres de clase; seleccionable por región
+ *   (cache.codec.binary-regions).
+ *
+ * - CACHÉ CERCANA (L1): las tres regiones de precios tienen además una copia
+ *   en proceso (Caffeine) con el mismo TTL, de modo que una lectura caliente es
+ *   una búsqueda local. Las escrituras/invalidaciones se propagan al resto de
+ *   réplicas por el canal pub/sub CacheInvalidationBus.CANAL.
  *
  * IMPORTANTE: Redis NO reduce llamadas a TwelveData API, solo reduce carga en
  * MySQL.
@@ -55,6 +75,14 @@ public class RedisConfig {
     private static final Duration EXTENDED_TTL = Duration.ofMinutes(90);
     private static final Duration RANKINGS_TTL = Duration.ofMinutes(5); // Rankings se actualizan frecuentemente
 
+    // Regiones de caché que guardan MarketData con el codec binario (el resto en JSON)
+    @Value("${cache.codec.binary-regions:premiumPrices,standardPrices,extendedPrices}")
+    private String[] regionesCodecBinario;
+
+    // Tamaño máximo de cada L1 de precios (entradas por región)
+    @Value("${cache.l1.max-size:1000}")
+    private long l1MaxSize;
+
     /**
      * ObjectMapper configurado para Redis con soporte para LocalDateTime y otros tipos de Java 8 Time.
      *
@@ -85,6 +113,7 @@ public class RedisConfig {
      * - Values: GenericJackson2JsonRedisSerializer (JSON automático para POJOs)
      */
     @Bean
+    @Primary
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory, ObjectMapper redisObjectMapper) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
@@ -119,7 +148,8 @@ public class RedisConfig {
      * @return CacheManager configurado con TTLs diferenciados
      */
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, ObjectMapper redisObjectMapper) {
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, ObjectMapper redisObjectMapper,
+                                     CacheInvalidationBus cacheInvalidationBus) {
         // Crear un ObjectMapper específico para caché con default typing habilitado
         ObjectMapper cacheObjectMapper = redisObjectMapper.copy();
         cacheObjectMapper.activateDefaultTyping(
@@ -129,41 +159,83 @@ public class RedisConfig {
         );
 
         // Configuración por defecto (usada como base)
+        GenericJackson2JsonRedisSerializer cacheJsonSerializer = new GenericJackson2JsonRedisSerializer(cacheObjectMapper);
         RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
                 .serializeKeysWith(
                         RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(
-                        RedisSerializationContext.SerializationPair
-                                .fromSerializer(new GenericJackson2JsonRedisSerializer(cacheObjectMapper)))
+                        RedisSerializationContext.SerializationPair.fromSerializer(cacheJsonSerializer))
                 .disableCachingNullValues(); // No cachear valores null
 
+        // Variante con codec binario para las regiones de MarketData configuradas
+        RedisCacheConfiguration binaryConfig = defaultConfig.serializeValuesWith(
+                RedisSerializationContext.SerializationPair
+                        .fromSerializer(new MarketDataBinaryCodec(cacheJsonSerializer)));
+        List<String> regionesBinarias = Arrays.asList(regionesCodecBinario);
+
         // Configuraciones específicas por caché
         Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
 
         // Premium: 20 minutos (símbolos más volátiles)
         cacheConfigurations.put(
                 CACHE_PREMIUM_PRICES,
-                defaultConfig.entryTtl(PREMIUM_TTL));
+                configuracionRegion(CACHE_PREMIUM_PRICES, regionesBinarias, defaultConfig, binaryConfig).entryTtl(PREMIUM_TTL));
 
         // Standard: 60 minutos (símbolos moderadamente volátiles)
         cacheConfigurations.put(
                 CACHE_STANDARD_PRICES,
-                defaultConfig.entryTtl(STANDARD_TTL));
+                configuracionRegion(CACHE_STANDARD_PRICES, regionesBinarias, defaultConfig, binaryConfig).entryTtl(STANDARD_TTL));
 
         // Extended: 90 minutos (símbolos menos volátiles)
         cacheConfigurations.put(
                 CACHE_EXTENDED_PRICES,
-                defaultConfig.entryTtl(EXTENDED_TTL));
+                configuracionRegion(CACHE_EXTENDED_PRICES, regionesBinarias, defaultConfig, binaryConfig).entryTtl(EXTENDED_TTL));
 
         // Rankings: 5 minutos (se actualiza con transacciones)
         cacheConfigurations.put(
                 CACHE_RANKINGS,
-                defaultConfig.entryTtl(RANKINGS_TTL));
+                configuracionRegion(CACHE_RANKINGS, regionesBinarias, defaultConfig, binaryConfig).entryTtl(RANKINGS_TTL));
 
-        return RedisCacheManager.builder(connectionFactory)
+        // L2 (Redis) sin transactionAware: la sincronización con transacciones
+        // de Spring la aplica TwoLevelCacheManager sobre L1 + L2 a la vez
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(defaultConfig)
                 .withInitialCacheConfigurations(cacheConfigurations)
-                .transactionAware() // Sincronizar con transacciones de Spring
                 .build();
+        redisCacheManager.afterPropertiesSet();
+
+        // L1 solo para precios (lecturas calientes); rankings se sirve directamente desde Redis
+        Map<String, TwoLevelCacheManager.ConfiguracionL1> configuracionesL1 = new HashMap<>();
+        configuracionesL1.put(CACHE_PREMIUM_PRICES, new TwoLevelCacheManager.ConfiguracionL1(PREMIUM_TTL, l1MaxSize));
+        configuracionesL1.put(CACHE_STANDARD_PRICES, new TwoLevelCacheManager.ConfiguracionL1(STANDARD_TTL, l1MaxSize));
+        configuracionesL1.put(CACHE_EXTENDED_PRICES, new TwoLevelCacheManager.ConfiguracionL1(EXTENDED_TTL, l1MaxSize));
+
+        return new TwoLevelCacheManager(redisCacheManager, connectionFactory, configuracionesL1, cacheInvalidationBus);
+    }
+
+    private static RedisCacheConfiguration configuracionRegion(String region, List<String> regionesBinarias,
+                                                              RedisCacheConfiguration json,
+                                                              RedisCacheConfiguration binario) {
+        return regionesBinarias.contains(region) ? binario : json;
+    }
+
+    /**
+     * Canal de invalidación de las cachés L1 entre réplicas.
+     */
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(StringRedisTemplate stringRedisTemplate) {
+        return new CacheInvalidationBus(stringRedisTemplate);
+    }
+
+    /**
+     * Suscripción al canal de invalidación de cachés L1.
+     */
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                           CacheInvalidationBus cacheInvalidationBus) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheInvalidationBus, new ChannelTopic(CacheInvalidationBus.CANAL));
+        return container;
     }
 }
@@ -13,14 +13,32 @@ import java.util.ArrayList;
  * - PREMIUM: 20 símbolos, actualizados cada 20 minutos (los más importantes/volátiles)
  * - STANDARD: 42 símbolos, actualizados cada 60 minutos (importantes pero menos volátiles)
  * - EXTENDED: 23 símbolos, actualizados cada 90 minutos (símbolos adicionales)
+ *
+ * Los grupos ya no son listas de refresco fijas: el AdaptiveRefreshScheduler usa
+ * el intervalo de cada grupo solo como intervalo base (prior) del símbolo, que
+ * luego se acorta o alarga según volatilidad, demanda y antigüedad del precio.
+ * También siguen determinando la región de caché de cada símbolo.
  */
 @Configuration
 public class SymbolGroupConfig {
 
     public enum UpdateFrequency {
-        PREMIUM_20MIN,
-        STANDARD_60MIN,
-        EXTENDED_90MIN
+        PREMIUM_20MIN(20),
+        STANDARD_60MIN(60),
+        EXTENDED_90MIN(90);
+
+        private final int minutosBase;
+
+        UpdateFrequency(int minutosBase) {
+            this.minutosBase = minutosBase;
+        }
+
+        /**
+         * Intervalo base de refresco del grupo en minutos.
+         */
+        public int getMinutosBase() {
+            return minutosBase;
+        }
     }
 
     // GRUPO PREMIUM (20 símbolos) - Cada 20 minutos
@@ -46,6 +46,7 @@ public class AlertController {
                     userId, 
                     request.getSymbol(), 
                     request.getTipo(), 
+                    request.getModoUmbral(), 
                     request.getValorTrigger(), 
                     request.getMensajePersonalizado()
             );
@@ -296,6 +297,7 @@ public class AlertController {
                     alertaId, 
                     userId, 
                     request.getTipo(), 
+                    request.getModoUmbral(), 
                     request.getValorTrigger(), 
                     request.getMensajePersonalizado()
             );
@@ -530,6 +532,7 @@ public class AlertController {
         private String symbol;
         @JsonProperty("tipo")
         private String tipoAlerta;
+        private String modoUmbral;
         private BigDecimal valorTrigger;
         private String mensajePersonalizado;
         private Boolean activa;
@@ -542,6 +545,7 @@ public class AlertController {
             dto.setId(alert.getId());
             dto.setSymbol(alert.getSymbol());
             dto.setTipoAlerta(alert.getTipo().name());
+            dto.setModoUmbral(alert.getModoUmbral() != null ? alert.getModoUmbral().name() : null);
             dto.setValorTrigger(alert.getValorTrigger());
             dto.setMensajePersonalizado(alert.getMensajePersonalizado());
             dto.setActiva(alert.getActiva());
@@ -558,6 +562,7 @@ public class AlertController {
     public static class CrearAlertaRequest {
         private String symbol;
         private Alert.TipoAlerta tipo;
+        private Alert.ModoUmbral modoUmbral; // Solo VOLUME_HIGH (por defecto ABSOLUTO)
         private BigDecimal valorTrigger;
         private String mensajePersonalizado;
     }
@@ -565,6 +570,7 @@ public class AlertController {
     @Data
     public static class ActualizarAlertaRequest {
         private Alert.TipoAlerta tipo;
+        private Alert.ModoUmbral modoUmbral; // Solo VOLUME_HIGH (por defecto ABSOLUTO)
         private BigDecimal valorTrigger;
         private String mensajePersonalizado;
     }
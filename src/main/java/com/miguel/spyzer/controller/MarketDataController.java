@@ -1,14 +1,25 @@
 package com.miguel.spyzer.controller;
 
+import com.miguel.spyzer.columnar.BarDownsampler;
+import com.miguel.spyzer.columnar.BarSlice;
 import com.miguel.spyzer.entities.MarketData;
 import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.indicator.IndicatorEngine;
+import com.miguel.spyzer.indicator.IndicatorSnapshot;
+import com.miguel.spyzer.service.ChartDownsamplingService;
 import com.miguel.spyzer.service.MarketDataService;
+import com.miguel.spyzer.service.OhlcRollupService;
+import com.miguel.spyzer.service.PriceBoard;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +31,47 @@ import java.util.Map;
 public class MarketDataController {
     
     private final MarketDataService marketDataService;
+    private final PriceBoard priceBoard;
+    private final OhlcRollupService ohlcRollupService;
+    private final ChartDownsamplingService chartDownsamplingService;
+    private final IndicatorEngine indicatorEngine;
+
+    /**
+     * Pizarra de precios en memoria (todas las cotizaciones o solo los cambios).
+     *
+     * - epoch + since: época y versión que ya tiene el cliente (las de la
+     *   respuesta anterior); se devuelven solo los símbolos que han cambiado
+     *   después. Si since es 0 o ausente, la época no es la de esta instancia
+     *   (reinicio u otra réplica) o since es posterior a la versión actual, se
+     *   devuelve la pizarra completa.
+     * - ETag = "época-versión": con If-None-Match igual se responde 304.
+     */
+    @GetMapping("/board")
+    public ResponseEntity<?> obtenerPizarra(@RequestParam(defaultValue = "0") long since,
+                                            @RequestParam(required = false) String epoch,
+                                            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        PriceBoard.Snapshot snapshot = priceBoard.snapshot();
+        long version = snapshot.version();
+        String epoca = priceBoard.getEpoca();
+        String etag = "\"" + epoca + "-" + version + "\"";
+
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        boolean completa = !priceBoard.admiteDelta(epoch, since, snapshot);
+        Map<String, MarketData> cotizaciones = PriceBoard.cambiosDesde(snapshot, completa ? 0 : since);
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .body(Map.of(
+                        "epoch", epoca,
+                        "version", version,
+                        "since", completa ? 0 : since,
+                        "completa", completa,
+                        "cotizaciones", cotizaciones
+                ));
+    }
     
     /**
      * Obtener datos de un símbolo específico
@@ -98,15 +150,78 @@ public class MarketDataController {
     }
     
     /**
-     * Obtener datos históricos de un símbolo
+     * Obtener datos históricos de un símbolo.
+     *
+     * Sin interval: serie diaria de BD (sincronización de históricos).
+     * Con interval (1m, 5m, 15m, 1h, 4h, 1d, 1w...): barras OHLCV pre-agregadas
+     * durante la ingesta, sin recorrer puntos en crudo.
+     *
+     * Con points=N la serie se reduce en el servidor a como mucho N puntos
+     * (method=lttb, por defecto, o minmax para velas) y el resultado se cachea.
      */
     @GetMapping("/{symbol}/historical")
     public ResponseEntity<?> obtenerHistorico(@PathVariable String symbol,
-                                               @RequestParam(defaultValue = "730") int days) {
-        log.info("GET /api/market-data/{}/historical?days={}", symbol.toUpperCase(), days);
-        
+                                               @RequestParam(defaultValue = "730") int days,
+                                               @RequestParam(required = false) String interval,
+                                               @RequestParam(required = false) Integer points,
+                                               @RequestParam(defaultValue = "lttb") String method) {
+        log.info("GET /api/market-data/{}/historical?days={}&interval={}&points={}", symbol.toUpperCase(), days,
+                interval, points);
+
+        BarDownsampler.Metodo metodo = null;
+        if (points != null) {
+            try {
+                metodo = BarDownsampler.Metodo.valueOf(method.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", "method no válido: " + method + " (lttb, minmax)"));
+            }
+            if (points < BarDownsampler.MIN_PUNTOS) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "points debe ser al menos " + BarDownsampler.MIN_PUNTOS));
+            }
+        }
+
         try {
-            List<HistoricalDataPoint> historical = marketDataService.obtenerHistorico(symbol, days);
+            if (interval != null && !interval.isBlank()) {
+                OhlcRollupService.Intervalo intervalo;
+                try {
+                    intervalo = OhlcRollupService.Intervalo.parse(interval);
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+                }
+
+                if (metodo != null) {
+                    BarSlice reducidas = chartDownsamplingService.barrasReducidas(symbol, intervalo, interval,
+                            days, points, metodo);
+                    return ResponseEntity.ok(Map.of(
+                            "symbol", symbol.toUpperCase(),
+                            "days", days,
+                            "interval", interval,
+                            "points", reducidas.size(),
+                            "data", reducidas
+                    ));
+                }
+
+                List<HistoricalDataPoint> barras = ohlcRollupService.obtenerBarras(symbol, intervalo, days);
+                return ResponseEntity.ok(Map.of(
+                        "symbol", symbol.toUpperCase(),
+                        "days", days,
+                        "interval", interval,
+                        "data", barras
+                ));
+            }
+
+            if (metodo != null) {
+                BarSlice reducido = chartDownsamplingService.historicoReducido(symbol, days, points, metodo);
+                return ResponseEntity.ok(Map.of(
+                        "symbol", symbol.toUpperCase(),
+                        "days", days,
+                        "points", reducido.size(),
+                        "data", reducido
+                ));
+            }
+
+            BarSlice historical = marketDataService.obtenerHistorico(symbol, days);
             
             return ResponseEntity.ok(Map.of(
                     "symbol", symbol.toUpperCase(),
@@ -121,6 +236,86 @@ public class MarketDataController {
         }
     }
     
+    /**
+     * Históricos de BD entre dos fechas, en orden cronológico y paginados por keyset.
+     *
+     * - from / to: fechas "yyyy-MM-dd" (inclusive)
+     * - granularity: DIARIA (por defecto) o INTRADIA
+     * - after: cursor devuelto como nextCursor por la página anterior
+     * - limit: puntos por página (1-5000)
+     */
+    @GetMapping("/{symbol}/historical/range")
+    public ResponseEntity<?> obtenerHistoricoRango(@PathVariable String symbol,
+                                                    @RequestParam String from,
+                                                    @RequestParam String to,
+                                                    @RequestParam(defaultValue = "DIARIA") String granularity,
+                                                    @RequestParam(required = false) String after,
+                                                    @RequestParam(defaultValue = "1000") int limit) {
+        log.info("GET /api/market-data/{}/historical/range?from={}&to={}&granularity={}&after={}&limit={}",
+                symbol.toUpperCase(), from, to, granularity, after, limit);
+
+        Instant desde;
+        Instant hasta;
+        Instant despues;
+        HistoricalDataPoint.Granularidad granularidad;
+        try {
+            desde = HistoricalDataPoint.inicioDia(LocalDate.parse(from));
+            // Hasta el final del día "to"
+            hasta = HistoricalDataPoint.inicioDia(LocalDate.parse(to).plusDays(1)).minusMillis(1);
+            despues = after != null && !after.isBlank() ? Instant.parse(after) : null;
+            granularidad = HistoricalDataPoint.Granularidad.valueOf(granularity.toUpperCase());
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Parámetros no válidos: " + e.getMessage()));
+        }
+        if (hasta.isBefore(desde) || limit < 1 || limit > 5000) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Rango o límite no válido"));
+        }
+
+        try {
+            List<HistoricalDataPoint> pagina = marketDataService.obtenerHistoricoRango(
+                    symbol, granularidad, desde, hasta, despues, limit);
+
+            Map<String, Object> respuesta = new LinkedHashMap<>();
+            respuesta.put("symbol", symbol.toUpperCase());
+            respuesta.put("from", from);
+            respuesta.put("to", to);
+            respuesta.put("granularity", granularidad);
+            respuesta.put("data", pagina);
+            // null = no hay más páginas
+            respuesta.put("nextCursor", pagina.size() == limit ? pagina.get(pagina.size() - 1).getTs().toString() : null);
+            return ResponseEntity.ok(respuesta);
+
+        } catch (Exception e) {
+            log.error("Error obteniendo rango histórico de {}: {}", symbol, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error interno del servidor"));
+        }
+    }
+
+    /**
+     * Indicadores técnicos actuales de un símbolo (SMA, EMA, RSI, MACD,
+     * Bollinger, ATR, VWAP), calculados de forma incremental durante la ingesta.
+     * Un indicador es null mientras no haya ticks suficientes para calcularlo.
+     */
+    @GetMapping("/{symbol}/indicators")
+    public ResponseEntity<?> obtenerIndicadores(@PathVariable String symbol) {
+        log.info("GET /api/market-data/{}/indicators", symbol.toUpperCase());
+
+        try {
+            IndicatorSnapshot indicadores = indicatorEngine.obtener(symbol);
+            if (indicadores == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Sin cotizaciones recientes para " + symbol.toUpperCase()));
+            }
+            return ResponseEntity.ok(indicadores);
+
+        } catch (Exception e) {
+            log.error("Error obteniendo indicadores de {}: {}", symbol, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error interno del servidor"));
+        }
+    }
+
     /**
      * Obtener cotización rápida (solo precio)
      */
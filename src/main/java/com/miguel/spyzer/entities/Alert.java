@@ -5,7 +5,10 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
@@ -28,11 +31,28 @@ public class Alert {
     private String symbol; // TSLA, AAPL, etc.
     
     @Enumerated(EnumType.STRING)
-    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.VARCHAR) // VARCHAR y no ENUM nativo: añadir tipos no requiere alterar la columna
+    @Column(nullable = false, length = 20)
     private TipoAlerta tipo; // PRICE_UP, PRICE_DOWN, VOLUME_HIGH
     
     @Column(name = "valor_trigger", precision = 15, scale = 2, nullable = false)
-    private BigDecimal valorTrigger; // Precio que dispara la alerta ($200.00)
+    private BigDecimal valorTrigger; // Precio que dispara la alerta ($200.00); en VOLUME_HIGH, volumen o múltiplo;
+                                     // en PERCENT_MOVE/TRAILING_STOP, porcentaje (3.00 = 3%)
+    
+    // Solo VOLUME_HIGH: ABSOLUTO (volumen del día >= valorTrigger) o RELATIVO
+    // (volumen del día >= valorTrigger x volumen medio diario); null = ABSOLUTO
+    @Enumerated(EnumType.STRING)
+    @Column(name = "modo_umbral", length = 10)
+    private ModoUmbral modoUmbral;
+    
+    // Estado de PERCENT_MOVE (precio de referencia de la sesión) y TRAILING_STOP
+    // (máximo alcanzado). Vive en memoria (AlertIndex) y se guarda por lotes:
+    // puede ir unos segundos por detrás
+    @Column(name = "precio_referencia", precision = 15, scale = 4)
+    private BigDecimal precioReferencia;
+    
+    @Column(name = "sesion_referencia")
+    private LocalDate sesionReferencia; // Solo PERCENT_MOVE: día (Nueva York) de precioReferencia
     
     @Builder.Default
     private Boolean activa = true; // Si está funcionando o pausada
@@ -62,6 +82,9 @@ public class Alert {
         this.disparada = false;
         this.triggeredAt = null;
         this.activa = true;
+        // Las alertas con estado empiezan de nuevo desde el siguiente tick
+        this.precioReferencia = null;
+        this.sesionReferencia = null;
     }
     
     // Método para verificar si debe dispararse
@@ -78,10 +101,65 @@ public class Alert {
         };
     }
     
+    // Método para verificar si una alerta de volumen debe dispararse
+    public boolean debeDispararseConVolumen(Long volumenDia, Double volumenMedio) {
+        if (!activa || disparada || volumenDia == null || tipo != TipoAlerta.VOLUME_HIGH) {
+            return false;
+        }
+        
+        if (esUmbralRelativo()) {
+            return volumenMedio != null && volumenMedio > 0
+                    && ratioVolumen(volumenDia, volumenMedio).compareTo(valorTrigger) >= 0;
+        }
+        return BigDecimal.valueOf(volumenDia).compareTo(valorTrigger) >= 0;
+    }
+    
+    // Tipos cuyo disparo depende de un estado que se actualiza con cada tick
+    public boolean esConEstado() {
+        return tipo != null && tipo.isConEstado();
+    }
+    
+    /**
+     * Regla de PERCENT_MOVE (|precio - referencia| >= porcentaje de la
+     * referencia) y TRAILING_STOP (precio al menos porcentaje por debajo del máximo).
+     */
+    public static boolean movimientoSuperaUmbral(TipoAlerta tipo, double porcentaje, double precio, double referencia) {
+        if (!(referencia > 0) || Double.isNaN(precio)) {
+            return false;
+        }
+        double movimiento = (precio - referencia) / referencia * 100.0;
+        return switch (tipo) {
+            case PERCENT_MOVE -> Math.abs(movimiento) >= porcentaje;
+            case TRAILING_STOP -> -movimiento >= porcentaje;
+            default -> false;
+        };
+    }
+    
+    public boolean esUmbralRelativo() {
+        return modoUmbral == ModoUmbral.RELATIVO;
+    }
+    
+    // Múltiplo del volumen medio que supone el volumen del día (mismo cálculo en el índice de alertas)
+    public static BigDecimal ratioVolumen(long volumenDia, double volumenMedio) {
+        return BigDecimal.valueOf(volumenDia / volumenMedio);
+    }
+    
     // Método para obtener mensaje completo
     public String getMensajeCompleto() {
-        String mensajeBase = String.format("Alerta de %s para %s: %s $%.2f", 
-            tipo.getDescripcion(), symbol, tipo.getAccion(), valorTrigger);
+        String mensajeBase;
+        if (esConEstado()) {
+            mensajeBase = String.format("Alerta de %s para %s: %s %.2f%%",
+                tipo.getDescripcion(), symbol, tipo.getAccion(), valorTrigger);
+        } else if (tipo == TipoAlerta.VOLUME_HIGH) {
+            mensajeBase = esUmbralRelativo()
+                    ? String.format("Alerta de %s para %s: %s %.2fx su volumen medio",
+                        tipo.getDescripcion(), symbol, tipo.getAccion(), valorTrigger)
+                    : String.format("Alerta de %s para %s: %s %,.0f",
+                        tipo.getDescripcion(), symbol, tipo.getAccion(), valorTrigger);
+        } else {
+            mensajeBase = String.format("Alerta de %s para %s: %s $%.2f", 
+                tipo.getDescripcion(), symbol, tipo.getAccion(), valorTrigger);
+        }
         
         if (mensajePersonalizado != null && !mensajePersonalizado.trim().isEmpty()) {
             return mensajeBase + " - " + mensajePersonalizado;
@@ -102,14 +180,26 @@ public class Alert {
         PRICE_UP("Precio Subió", "alcanzó"),
         PRICE_DOWN("Precio Bajó", "descendió a"),
         PRICE_EQUAL("Precio Exacto", "llegó exactamente a"),
-        VOLUME_HIGH("Volumen Alto", "volumen superó");
+        VOLUME_HIGH("Volumen Alto", "volumen superó"),
+        PERCENT_MOVE("Movimiento Intradía", "se movió respecto a la apertura un", true),
+        TRAILING_STOP("Trailing Stop", "cayó desde su máximo un", true);
         
         private final String descripcion;
         private final String accion;
+        private final boolean conEstado;
         
         TipoAlerta(String descripcion, String accion) {
+            this(descripcion, accion, false);
+        }
+        
+        TipoAlerta(String descripcion, String accion, boolean conEstado) {
             this.descripcion = descripcion;
             this.accion = accion;
+            this.conEstado = conEstado;
+        }
+        
+        public boolean isConEstado() {
+            return conEstado;
         }
         
         public String getDescripcion() {
@@ -120,4 +210,10 @@ public class Alert {
             return accion;
         }
     }
-}
\ No newline at end of file
+    
+    // Tipo de umbral de las alertas VOLUME_HIGH
+    public enum ModoUmbral {
+        ABSOLUTO,
+        RELATIVO
+    }
+}
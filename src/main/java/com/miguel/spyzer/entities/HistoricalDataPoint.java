@@ -6,35 +6,159 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 
+/**
+ * Punto OHLCV histórico de un símbolo.
+ *
+ * - date: fecha tal como la devuelve el proveedor ("yyyy-MM-dd" en los diarios,
+ *   instante ISO en los intradía). Se mantiene por compatibilidad con el JSON.
+ * - ts: instante tipado del punto, sobre el que se indexa y se consulta por
+ *   rangos. Los diarios usan la medianoche de Nueva York de su fecha (igual que
+ *   las barras diarias agregadas). Si no se informa se deriva de date al guardar.
+ *
+ * El índice único (symbol, ts) impide duplicados y sirve los rangos por
+ * símbolo; (symbol, granularidad, ts) sirve los que piden solo diarios.
+ */
 @Entity
-@Table(name = "historical_data_point")
+@Table(name = "historical_data_point",
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_hdp_symbol_ts", columnNames = {"symbol", "ts"})
+       },
+       indexes = {
+           @Index(name = "idx_hdp_symbol_granularidad_ts", columnList = "symbol, granularidad, ts")
+       })
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class HistoricalDataPoint {
-    
+
+    private static final ZoneId ZONA_MERCADO = ZoneId.of("America/New_York");
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
-    
+
     @Column(nullable = false)
     private String symbol;
-    
+
     @Column(nullable = false)
     private String date;
-    
+
+    // Nullable solo para las filas anteriores a la columna (ver HistoricalTimestampMigration)
+    @Column(name = "ts")
+    private Instant ts;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 10)
+    private Granularidad granularidad;
+
     private BigDecimal open;
     private BigDecimal high;
     private BigDecimal low;
     private BigDecimal close;
     private Long volume;
-}
\ No newline at end of file
+
+    public enum Granularidad {
+        DIARIA,
+        INTRADIA
+    }
+
+    /**
+     * Completa ts y granularidad a partir de date si no se han informado.
+     * ts se guarda con precisión de milisegundos, la de la copia columnar
+     * (ColumnarBarStore compara su último ts con el de BD).
+     *
+     * @return true si el punto queda con ts (date reconocible o ts ya informado)
+     */
+    public boolean derivarTimestamp() {
+        if (ts == null && date != null) {
+            LocalDate dia = parsearDia(date);
+            if (dia != null) {
+                ts = inicioDia(dia);
+                granularidad = Granularidad.DIARIA;
+            } else {
+                ts = parsearInstante(date);
+                granularidad = ts != null ? Granularidad.INTRADIA : null;
+            }
+        }
+        if (ts != null && granularidad == null) {
+            granularidad = Granularidad.INTRADIA;
+        }
+        if (ts != null) {
+            ts = ts.truncatedTo(ChronoUnit.MILLIS);
+        }
+        return ts != null;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        derivarTimestamp();
+    }
+
+    /**
+     * Instante con el que se guarda el punto diario de una fecha.
+     */
+    public static Instant inicioDia(LocalDate dia) {
+        return dia.atStartOfDay(ZONA_MERCADO).toInstant();
+    }
+
+    /**
+     * Fecha de un instante guardado como punto diario.
+     */
+    public static LocalDate diaDe(Instant ts) {
+        return ts.atZone(ZONA_MERCADO).toLocalDate();
+    }
+
+    /**
+     * "yyyy-MM-dd" (o con hora 00:00:00) como fecha de un punto diario; null si no lo es.
+     */
+    private static LocalDate parsearDia(String fecha) {
+        String texto = fecha.trim();
+        if (texto.length() != 10 && !(texto.length() == 19 && texto.endsWith("00:00:00"))) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(texto.substring(0, 10));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Instante ISO ("...Z") o fecha-hora local del mercado ("yyyy-MM-dd HH:mm:ss"); null si no se reconoce.
+     */
+    private static Instant parsearInstante(String fecha) {
+        String texto = fecha.trim();
+        try {
+            return Instant.parse(texto);
+        } catch (DateTimeParseException e) {
+            // Sin zona: fecha-hora de la bolsa
+        }
+        try {
+            return LocalDateTime.parse(texto.replace(' ', 'T')).atZone(ZONA_MERCADO).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.miguel.spyzer.indicator;
+
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.repository.MarketDataRedisRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Motor de indicadores técnicos (SMA, EMA, RSI, MACD, Bollinger, ATR, VWAP)
+ * por símbolo, actualizado en O(1) con cada cotización ingerida.
+ *
+ * - La ingesta entrega las cotizaciones confirmadas (registrar); cada una
+ *   actualiza el estado incremental de su símbolo (SymbolIndicators).
+ * - La primera vez que se ve un símbolo (tras un arranque) el estado se
+ *   calienta con los ticks intraday de Redis de las últimas VENTANA_CALENTAMIENTO,
+ *   para no empezar con los indicadores vacíos.
+ * - Las consultas devuelven el snapshot cacheado de la versión actual; nunca
+ *   se recalcula desde el histórico completo.
+ *
+ * El estado vive en memoria de cada instancia, igual que la PriceBoard.
+ */
+@Component
+@Slf4j
+public class IndicatorEngine {
+
+    private static final Duration VENTANA_CALENTAMIENTO = Duration.ofHours(24);
+
+    private final MarketDataRedisRepository marketDataRedisRepository;
+    private final Map<String, SymbolIndicators> estados = new ConcurrentHashMap<>();
+
+    public IndicatorEngine(MarketDataRedisRepository marketDataRedisRepository) {
+        this.marketDataRedisRepository = marketDataRedisRepository;
+    }
+
+    /**
+     * Aplica cotizaciones recién ingeridas (ya confirmadas en BD).
+     */
+    public void registrar(Collection<MarketData> datos) {
+        for (MarketData marketData : datos) {
+            if (marketData.getSymbol() == null || marketData.getPrecio() == null || marketData.getTimestamp() == null) {
+                continue;
+            }
+            SymbolIndicators estado = estado(marketData.getSymbol(), true);
+            estado.aplicar(marketData.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                    marketData.getPrecio().doubleValue(), marketData.getVolumen());
+        }
+    }
+
+    /**
+     * Indicadores actuales de un símbolo.
+     *
+     * @return snapshot, o null si no hay ticks del símbolo (ni en memoria ni en Redis)
+     */
+    public IndicatorSnapshot obtener(String symbol) {
+        SymbolIndicators estado = estado(symbol.toUpperCase(), false);
+        return estado != null ? estado.snapshot() : null;
+    }
+
+    /**
+     * Estado del símbolo; si es nuevo se calienta con los ticks de Redis antes
+     * de publicarlo, con su monitor tomado para que ningún tick en vivo se
+     * aplique antes que los del calentamiento.
+     *
+     * @param crearSinDatos false para no guardar estados de símbolos sin ticks
+     *                      (consultas de símbolos arbitrarios)
+     */
+    private SymbolIndicators estado(String symbol, boolean crearSinDatos) {
+        SymbolIndicators estado = estados.get(symbol);
+        if (estado != null) {
+            return estado;
+        }
+
+        SymbolIndicators nuevo = new SymbolIndicators(symbol);
+        synchronized (nuevo) {
+            calentar(symbol, nuevo);
+            if (!crearSinDatos && nuevo.getVersion() == 0) {
+                return null;
+            }
+            estado = estados.putIfAbsent(symbol, nuevo);
+        }
+        return estado != null ? estado : nuevo;
+    }
+
+    private void calentar(String symbol, SymbolIndicators estado) {
+        long ahora = System.currentTimeMillis();
+        try {
+            for (MarketDataRedisRepository.Tick tick : marketDataRedisRepository.getTicks(
+                    symbol, ahora - VENTANA_CALENTAMIENTO.toMillis(), ahora)) {
+                estado.aplicar(tick.epochMillis(), tick.precio().doubleValue(), tick.volumen());
+            }
+        } catch (Exception e) {
+            // Redis es opcional: los indicadores se construyen con los ticks en vivo
+            log.warn("No se pudieron cargar ticks de {} para calentar indicadores: {}", symbol, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.miguel.spyzer.indicator;
+
+import java.time.Instant;
+
+/**
+ * Valores de los indicadores de un símbolo en una versión de su serie.
+ *
+ * Cada indicador es null hasta que la serie tiene ticks suficientes para
+ * calcularlo (p. ej. 20 para SMA/Bollinger, 26 + 9 para la señal MACD).
+ *
+ * @param version   Ticks aplicados desde el arranque (incluido el calentamiento);
+ *                  cambia con cada tick nuevo
+ * @param timestamp Instante del último tick
+ */
+public record IndicatorSnapshot(
+        String symbol,
+        long version,
+        Instant timestamp,
+        Double precio,
+        Double sma20,
+        Double ema12,
+        Double ema26,
+        Double rsi14,
+        Double macd,
+        Double macdSenal,
+        Double macdHistograma,
+        Double bollingerMedia,
+        Double bollingerSuperior,
+        Double bollingerInferior,
+        Double atr14,
+        Double vwap) {
+}
@@ -0,0 +1,54 @@
+package com.miguel.spyzer.indicator;
+
+/**
+ * Ventana deslizante de doubles de capacidad fija sobre un array primitivo.
+ *
+ * Mantiene la suma y la suma de cuadrados de los valores de la ventana, así
+ * que media y desviación típica salen en O(1) sin recorrerla. No es thread-safe.
+ */
+final class RingBuffer {
+
+    private final double[] valores;
+    private int siguiente;
+    private int tamano;
+    private double suma;
+    private double sumaCuadrados;
+
+    RingBuffer(int capacidad) {
+        this.valores = new double[capacidad];
+    }
+
+    void anadir(double valor) {
+        if (tamano == valores.length) {
+            double saliente = valores[siguiente];
+            suma -= saliente;
+            sumaCuadrados -= saliente * saliente;
+        } else {
+            tamano++;
+        }
+        valores[siguiente] = valor;
+        siguiente = (siguiente + 1) % valores.length;
+        suma += valor;
+        sumaCuadrados += valor * valor;
+    }
+
+    boolean lleno() {
+        return tamano == valores.length;
+    }
+
+    double media() {
+        return tamano == 0 ? Double.NaN : suma / tamano;
+    }
+
+    /**
+     * Desviación típica poblacional de la ventana (la que usan las bandas de Bollinger).
+     */
+    double desviacion() {
+        if (tamano == 0) {
+            return Double.NaN;
+        }
+        double media = suma / tamano;
+        // max(0, ...) absorbe el error de redondeo de la resta
+        return Math.sqrt(Math.max(0, sumaCuadrados / tamano - media * media));
+    }
+}
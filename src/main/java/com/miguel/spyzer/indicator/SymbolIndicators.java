@@ -0,0 +1,202 @@
+package com.miguel.spyzer.indicator;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Estado incremental de los indicadores de un símbolo.
+ *
+ * Cada tick actualiza todos los indicadores en O(1) (sin recorrer la serie):
+ * - SMA(20) y Bollinger(20, 2): ventana RingBuffer con suma y suma de cuadrados
+ * - EMA(12), EMA(26), MACD(12, 26, 9): medias exponenciales sembradas con la
+ *   media simple de sus primeros valores
+ * - RSI(14) y ATR(14): suavizado de Wilder
+ * - VWAP: acumulados de la sesión (día de Nueva York) con el incremento del
+ *   volumen diario acumulado entre ticks
+ *
+ * Los indicadores se calculan sobre la serie de ticks ingeridos, sin velas:
+ * el rango verdadero del ATR es |precio - precio anterior|.
+ *
+ * El snapshot se cachea por versión: consultarlo sin ticks nuevos no recalcula nada.
+ */
+final class SymbolIndicators {
+
+    private static final int PERIODO_SMA = 20;
+    private static final double K_BOLLINGER = 2.0;
+    private static final int EMA_RAPIDA = 12;
+    private static final int EMA_LENTA = 26;
+    private static final int PERIODO_SENAL = 9;
+    private static final int PERIODO_RSI = 14;
+    private static final int PERIODO_ATR = 14;
+
+    private static final ZoneId ZONA_MERCADO = ZoneId.of("America/New_York");
+
+    /**
+     * Media exponencial; hasta tener periodo valores es la media simple.
+     */
+    private static final class Ema {
+        private final int periodo;
+        private final double alfa;
+        private long cuenta;
+        private double valor;
+
+        private Ema(int periodo) {
+            this.periodo = periodo;
+            this.alfa = 2.0 / (periodo + 1);
+        }
+
+        private void anadir(double x) {
+            cuenta++;
+            valor = cuenta <= periodo ? valor + (x - valor) / cuenta : valor + alfa * (x - valor);
+        }
+
+        private boolean lista() {
+            return cuenta >= periodo;
+        }
+    }
+
+    /**
+     * Media suavizada de Wilder; hasta tener periodo valores es la media simple.
+     */
+    private static final class Wilder {
+        private final int periodo;
+        private long cuenta;
+        private double valor;
+
+        private Wilder(int periodo) {
+            this.periodo = periodo;
+        }
+
+        private void anadir(double x) {
+            cuenta++;
+            valor = cuenta <= periodo ? valor + (x - valor) / cuenta : (valor * (periodo - 1) + x) / periodo;
+        }
+
+        private boolean lista() {
+            return cuenta >= periodo;
+        }
+    }
+
+    private final String symbol;
+
+    private final RingBuffer ventana = new RingBuffer(PERIODO_SMA);
+    private final Ema emaRapida = new Ema(EMA_RAPIDA);
+    private final Ema emaLenta = new Ema(EMA_LENTA);
+    private final Ema senalMacd = new Ema(PERIODO_SENAL);
+    private final Wilder ganancias = new Wilder(PERIODO_RSI);
+    private final Wilder perdidas = new Wilder(PERIODO_RSI);
+    private final Wilder rangoVerdadero = new Wilder(PERIODO_ATR);
+
+    private long version;
+    private long ultimoTs = Long.MIN_VALUE;
+    private double ultimoPrecio = Double.NaN;
+    private double macd = Double.NaN;
+
+    // VWAP de la sesión en curso
+    private LocalDate sesion;
+    private double sumaPrecioVolumen;
+    private double sumaVolumen;
+    private long volumenAnterior = -1;
+
+    private IndicatorSnapshot snapshot;
+
+    SymbolIndicators(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Aplica un tick. Los ticks no posteriores al último aplicado se ignoran
+     * (reentregas, calentamiento solapado con la ingesta).
+     *
+     * @param volumenDia Volumen acumulado del día, o null si el dato no lo trae
+     * @return true si el tick se aplicó
+     */
+    synchronized boolean aplicar(long tsMs, double precio, Long volumenDia) {
+        if (tsMs <= ultimoTs || Double.isNaN(precio)) {
+            return false;
+        }
+
+        if (!Double.isNaN(ultimoPrecio)) {
+            double cambio = precio - ultimoPrecio;
+            ganancias.anadir(Math.max(cambio, 0));
+            perdidas.anadir(Math.max(-cambio, 0));
+            rangoVerdadero.anadir(Math.abs(cambio));
+        }
+
+        ventana.anadir(precio);
+        emaRapida.anadir(precio);
+        emaLenta.anadir(precio);
+        if (emaLenta.lista()) {
+            macd = emaRapida.valor - emaLenta.valor;
+            senalMacd.anadir(macd);
+        }
+
+        actualizarVwap(tsMs, precio, volumenDia);
+
+        ultimoTs = tsMs;
+        ultimoPrecio = precio;
+        version++;
+        return true;
+    }
+
+    private void actualizarVwap(long tsMs, double precio, Long volumenDia) {
+        LocalDate dia = Instant.ofEpochMilli(tsMs).atZone(ZONA_MERCADO).toLocalDate();
+        if (!dia.equals(sesion) || (volumenDia != null && volumenDia < volumenAnterior)) {
+            sesion = dia;
+            sumaPrecioVolumen = 0;
+            sumaVolumen = 0;
+            volumenAnterior = -1;
+        }
+        if (volumenDia == null) {
+            return;
+        }
+        // El primer tick de la sesión pondera con todo el volumen acumulado hasta entonces
+        long incremento = volumenAnterior < 0 ? volumenDia : volumenDia - volumenAnterior;
+        sumaPrecioVolumen += precio * incremento;
+        sumaVolumen += incremento;
+        volumenAnterior = volumenDia;
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Valores actuales; se reconstruye solo si ha llegado algún tick desde el anterior.
+     */
+    synchronized IndicatorSnapshot snapshot() {
+        if (snapshot != null && snapshot.version() == version) {
+            return snapshot;
+        }
+
+        Double sma = ventana.lleno() ? ventana.media() : null;
+        Double desviacion = ventana.lleno() ? ventana.desviacion() : null;
+        Double rsi = null;
+        if (ganancias.lista()) {
+            double suma = ganancias.valor + perdidas.valor;
+            rsi = suma == 0 ? 50.0 : 100.0 * ganancias.valor / suma;
+        }
+        Double valorMacd = emaLenta.lista() ? macd : null;
+        Double senal = senalMacd.lista() ? senalMacd.valor : null;
+
+        snapshot = new IndicatorSnapshot(
+                symbol,
+                version,
+                ultimoTs != Long.MIN_VALUE ? Instant.ofEpochMilli(ultimoTs) : null,
+                Double.isNaN(ultimoPrecio) ? null : ultimoPrecio,
+                sma,
+                emaRapida.lista() ? emaRapida.valor : null,
+                emaLenta.lista() ? emaLenta.valor : null,
+                rsi,
+                valorMacd,
+                senal,
+                valorMacd != null && senal != null ? valorMacd - senal : null,
+                sma,
+                sma != null ? sma + K_BOLLINGER * desviacion : null,
+                sma != null ? sma - K_BOLLINGER * desviacion : null,
+                rangoVerdadero.lista() ? rangoVerdadero.valor : null,
+                sumaVolumen > 0 ? sumaPrecioVolumen / sumaVolumen : null);
+        return snapshot;
+    }
+}
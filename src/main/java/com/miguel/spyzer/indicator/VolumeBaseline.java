@@ -0,0 +1,152 @@
+package com.miguel.spyzer.indicator;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.service.OhlcRollupService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Volumen medio diario de los últimos N días cerrados, por símbolo (base de
+ * las alertas VOLUME_HIGH relativas).
+ *
+ * Cada símbolo guarda el volumen final de sus últimos N días en un RingBuffer
+ * (array primitivo con suma mantenida): la media sale en O(1). Cada tick
+ * actualiza el volumen acumulado del día en curso; al llegar el primer tick
+ * de un día nuevo el anterior se cierra y entra en la ventana.
+ *
+ * La primera vez que se ve un símbolo la ventana se siembra con sus barras
+ * OHLC diarias (1d, persistidas en Redis para todo símbolo ingerido y
+ * completadas con el histórico diario de BD en los índices), así la media
+ * sobrevive a los reinicios. Si no hay barras se va llenando con los días
+ * que se ingieren. Mientras no haya ningún día cerrado no hay media y las
+ * alertas relativas no pueden dispararse.
+ */
+@Component
+@Slf4j
+public class VolumeBaseline {
+
+    private static final ZoneId ZONA_MERCADO = ZoneId.of("America/New_York");
+
+    private static final OhlcRollupService.Intervalo DIARIO = OhlcRollupService.Intervalo.parse("1d");
+
+    /**
+     * Ventana de días cerrados y día en curso de un símbolo; se accede con su monitor tomado.
+     */
+    private static final class Serie {
+        private final RingBuffer dias;
+        private LocalDate ultimoDiaCerrado;
+        private LocalDate dia;
+        private long volumenDia = -1;
+
+        private Serie(int capacidad) {
+            this.dias = new RingBuffer(capacidad);
+        }
+
+        private void cerrarDia(LocalDate cerrado, long volumen) {
+            if (volumen >= 0 && (ultimoDiaCerrado == null || cerrado.isAfter(ultimoDiaCerrado))) {
+                dias.anadir(volumen);
+                ultimoDiaCerrado = cerrado;
+            }
+        }
+
+        private void aplicar(LocalDate diaTick, long volumenAcumulado) {
+            if (dia != null && diaTick.isBefore(dia)) {
+                return; // tick de un día ya superado
+            }
+            if (!diaTick.equals(dia)) {
+                if (dia != null) {
+                    cerrarDia(dia, volumenDia);
+                }
+                dia = diaTick;
+                volumenDia = -1;
+            }
+            volumenDia = Math.max(volumenDia, volumenAcumulado);
+        }
+    }
+
+    private final OhlcRollupService ohlcRollupService;
+    private final int numeroDias;
+    private final Map<String, Serie> series = new ConcurrentHashMap<>();
+
+    public VolumeBaseline(OhlcRollupService ohlcRollupService,
+                          @Value("${alerts.volume.baseline-days:20}") int numeroDias) {
+        this.ohlcRollupService = ohlcRollupService;
+        this.numeroDias = Math.max(1, numeroDias);
+    }
+
+    /**
+     * Aplica cotizaciones ingeridas (volumen acumulado del día de cada una).
+     */
+    public void registrar(Collection<MarketData> datos) {
+        for (MarketData marketData : datos) {
+            if (marketData.getSymbol() == null || marketData.getVolumen() == null || marketData.getTimestamp() == null) {
+                continue;
+            }
+            LocalDate dia = marketData.getTimestamp().atZone(ZoneId.systemDefault())
+                    .withZoneSameInstant(ZONA_MERCADO).toLocalDate();
+            Serie serie = serie(marketData.getSymbol());
+            synchronized (serie) {
+                serie.aplicar(dia, marketData.getVolumen());
+            }
+        }
+    }
+
+    /**
+     * Volumen medio diario de los últimos días cerrados (hasta N).
+     *
+     * @return media, o null si el símbolo no tiene ningún día cerrado
+     */
+    public Double media(String symbol) {
+        Serie serie = serie(symbol);
+        synchronized (serie) {
+            double media = serie.dias.media();
+            return Double.isNaN(media) ? null : media;
+        }
+    }
+
+    /**
+     * Serie del símbolo; la siembra (lectura de las barras diarias) se hace
+     * fuera del mapa para no bloquear a otros símbolos.
+     */
+    private Serie serie(String symbol) {
+        Serie serie = series.get(symbol);
+        if (serie != null) {
+            return serie;
+        }
+        Serie nueva = sembrar(symbol);
+        serie = series.putIfAbsent(symbol, nueva);
+        return serie != null ? serie : nueva;
+    }
+
+    private Serie sembrar(String symbol) {
+        Serie serie = new Serie(numeroDias);
+        try {
+            LocalDate hoy = LocalDate.now(ZONA_MERCADO);
+            // Días naturales que cubren numeroDias sesiones (fines de semana y festivos)
+            int diasNaturales = numeroDias * 7 / 5 + 7;
+            List<HistoricalDataPoint> barras = ohlcRollupService.obtenerBarras(symbol, DIARIO, diasNaturales);
+            // obtenerBarras() devuelve la más reciente primero; el RingBuffer se queda con las N últimas
+            for (int i = barras.size() - 1; i >= 0; i--) {
+                HistoricalDataPoint barra = barras.get(i);
+                LocalDate dia = HistoricalDataPoint.diaDe(barra.getTs());
+                // Volumen 0: barra sin volumen (p. ej. histórico de un índice)
+                if (barra.getVolume() != null && barra.getVolume() > 0 && dia.isBefore(hoy)) {
+                    serie.cerrarDia(dia, barra.getVolume());
+                }
+            }
+        } catch (Exception e) {
+            // Sin histórico la media se construye con los días que se ingieran
+            log.warn("No se pudo sembrar el volumen medio de {}: {}", symbol, e.getMessage());
+        }
+        return serie;
+    }
+}
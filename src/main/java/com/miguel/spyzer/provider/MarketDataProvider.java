@@ -0,0 +1,67 @@
+package com.miguel.spyzer.provider;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.MarketData;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Proveedor de datos de mercado (SPI).
+ *
+ * Abstrae la fuente de cotizaciones y series temporales para que
+ * MarketDataService no dependa de una API concreta. Implementaciones:
+ * - TwelveDataMarketDataProvider: API REST de TwelveData (por defecto)
+ * - ReplayMarketDataProvider: reproduce cotizaciones grabadas en ficheros locales
+ *
+ * Se selecciona con la propiedad marketdata.provider (twelvedata | replay).
+ *
+ * Las implementaciones NO aplican rate limiting: es responsabilidad del
+ * llamante pedir permisos a ApiRateLimiter cuando requiereRateLimit() es true.
+ */
+public interface MarketDataProvider {
+
+    /**
+     * Nombre del proveedor (para logging).
+     */
+    String getNombre();
+
+    /**
+     * Obtiene la cotización actual de un símbolo.
+     *
+     * @param symbol Símbolo a consultar
+     * @return MarketData con la cotización, o null si el proveedor no devolvió datos válidos
+     */
+    MarketData obtenerCotizacion(String symbol);
+
+    /**
+     * Obtiene las cotizaciones de varios símbolos en una sola petición.
+     *
+     * @param symbols Símbolos a consultar (como máximo getMaxSimbolosPorPeticion())
+     * @return Mapa symbol (mayúsculas) -> MarketData con los símbolos que devolvieron datos válidos
+     */
+    Map<String, MarketData> obtenerCotizaciones(List<String> symbols);
+
+    /**
+     * Obtiene una serie temporal OHLCV, ordenada de más reciente a más antigua.
+     *
+     * @param symbol     Símbolo a consultar
+     * @param interval   Intervalo de las velas (ej: "1day")
+     * @param outputsize Número máximo de puntos
+     * @return Lista de puntos (vacía si no hay datos)
+     */
+    List<HistoricalDataPoint> obtenerSerieTemporal(String symbol, String interval, int outputsize);
+
+    /**
+     * Máximo de símbolos que acepta una petición batch de cotizaciones.
+     */
+    int getMaxSimbolosPorPeticion();
+
+    /**
+     * Indica si las llamadas a este proveedor consumen cuota de API y deben
+     * pasar por el rate limiter.
+     */
+    default boolean requiereRateLimit() {
+        return true;
+    }
+}
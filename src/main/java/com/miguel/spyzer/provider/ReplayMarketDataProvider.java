@@ -0,0 +1,364 @@
+package com.miguel.spyzer.provider;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.MarketData;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static com.miguel.spyzer.entities.MarketData.DataType.REALTIME;
+
+/**
+ * Proveedor de replay: reproduce cotizaciones y series temporales grabadas en
+ * ficheros locales, sin red ni límite de API.
+ *
+ * Pensado para pruebas de carga de la ingesta, alertas y revalorización de
+ * portfolios (marketdata.provider=replay).
+ *
+ * Estructura del directorio marketdata.replay.dir:
+ * - quotes.ndjson o quotes.csv: cotizaciones grabadas
+ *   · NDJSON: {"symbol":"AAPL","timestamp":"2025-01-02T15:30:00","open":..,"high":..,
+ *             "low":..,"close":..,"volume":..,"previous_close":..}
+ *   · CSV (con cabecera): symbol,timestamp,open,high,low,close,volume,previous_close
+ * - timeseries/{SYMBOL}.csv o timeseries/{SYMBOL}.ndjson: velas OHLCV
+ *   · CSV (con cabecera): datetime,open,high,low,close,volume
+ *
+ * Velocidad (marketdata.replay.speed):
+ * - 0: cada petición de un símbolo avanza al siguiente tick grabado (máximo throughput)
+ * - N > 0: reloj de replay N veces más rápido que el tiempo real; cada petición
+ *   devuelve el último tick grabado anterior al reloj de replay
+ *
+ * Al llegar al final de la grabación vuelve a empezar si marketdata.replay.loop=true.
+ * Los MarketData devueltos llevan timestamp actual para que TTLs y ventanas
+ * de 24h del resto del sistema se comporten como con datos en vivo.
+ */
+@Component
+@ConditionalOnProperty(name = "marketdata.provider", havingValue = "replay")
+@Slf4j
+public class ReplayMarketDataProvider implements MarketDataProvider {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Value("${marketdata.replay.dir:replay}")
+    private String directorio;
+
+    @Value("${marketdata.replay.speed:0}")
+    private double velocidad;
+
+    @Value("${marketdata.replay.loop:true}")
+    private boolean enBucle;
+
+    @Value("${marketdata.replay.batch-size:1000}")
+    private int tamanoLote;
+
+    /**
+     * Tick grabado. Se parsea una sola vez al cargar para que el replay no
+     * tenga que leer ficheros ni parsear texto en caliente.
+     */
+    private record Tick(long epochMillis, BigDecimal open, BigDecimal high, BigDecimal low,
+                        BigDecimal close, Long volume, BigDecimal previousClose) {
+    }
+
+    // symbol -> ticks ordenados por tiempo
+    private final Map<String, Tick[]> ticksPorSimbolo = new HashMap<>();
+    // symbol -> posición del siguiente tick (modo speed=0)
+    private final Map<String, AtomicInteger> cursores = new ConcurrentHashMap<>();
+    // symbol -> serie temporal cargada bajo demanda
+    private final Map<String, List<HistoricalDataPoint>> seriesCargadas = new ConcurrentHashMap<>();
+
+    private long inicioGrabacionMillis;
+    private long inicioReplayMillis;
+
+    @PostConstruct
+    public void cargar() throws IOException {
+        Path base = Paths.get(directorio);
+        Map<String, List<Tick>> temporales = new HashMap<>();
+
+        Path ndjson = base.resolve("quotes.ndjson");
+        Path csv = base.resolve("quotes.csv");
+        if (Files.exists(ndjson)) {
+            leerCotizacionesNdjson(ndjson, temporales);
+        } else if (Files.exists(csv)) {
+            leerCotizacionesCsv(csv, temporales);
+        } else {
+            log.warn("Replay: no existe {} ni {}; no habrá cotizaciones", ndjson, csv);
+        }
+
+        long minimo = Long.MAX_VALUE;
+        int total = 0;
+        for (Map.Entry<String, List<Tick>> entry : temporales.entrySet()) {
+            Tick[] ticks = entry.getValue().toArray(new Tick[0]);
+            Arrays.sort(ticks, Comparator.comparingLong(Tick::epochMillis));
+            ticksPorSimbolo.put(entry.getKey(), ticks);
+            cursores.put(entry.getKey(), new AtomicInteger());
+            minimo = Math.min(minimo, ticks[0].epochMillis());
+            total += ticks.length;
+        }
+
+        inicioGrabacionMillis = minimo == Long.MAX_VALUE ? 0 : minimo;
+        inicioReplayMillis = System.currentTimeMillis();
+
+        log.info("Replay cargado desde {}: {} ticks de {} símbolos (velocidad {}, bucle {})",
+                base.toAbsolutePath(), total, ticksPorSimbolo.size(), velocidad, enBucle);
+    }
+
+    @Override
+    public String getNombre() {
+        return "Replay";
+    }
+
+    @Override
+    public int getMaxSimbolosPorPeticion() {
+        return tamanoLote;
+    }
+
+    @Override
+    public boolean requiereRateLimit() {
+        return false;
+    }
+
+    @Override
+    public MarketData obtenerCotizacion(String symbol) {
+        String upper = symbol.toUpperCase();
+        Tick[] ticks = ticksPorSimbolo.get(upper);
+        if (ticks == null || ticks.length == 0) {
+            return null;
+        }
+
+        Tick tick = velocidad > 0 ? tickSegunReloj(ticks) : siguienteTick(upper, ticks);
+        return tick != null ? construirMarketData(upper, tick) : null;
+    }
+
+    @Override
+    public Map<String, MarketData> obtenerCotizaciones(List<String> symbols) {
+        Map<String, MarketData> resultado = new HashMap<>();
+        for (String symbol : symbols) {
+            MarketData datos = obtenerCotizacion(symbol);
+            if (datos != null) {
+                resultado.put(datos.getSymbol(), datos);
+            }
+        }
+        return resultado;
+    }
+
+    @Override
+    public List<HistoricalDataPoint> obtenerSerieTemporal(String symbol, String interval, int outputsize) {
+        String upper = symbol.toUpperCase();
+        List<HistoricalDataPoint> serie = seriesCargadas.computeIfAbsent(upper, this::leerSerie);
+
+        // Igual que la API: más reciente primero, limitado a outputsize
+        return new ArrayList<>(serie.subList(0, Math.min(outputsize, serie.size())));
+    }
+
+    // ==================== REPLAY ====================
+
+    /**
+     * Modo speed=0: avanza un tick por petición. El cursor da la vuelta (en
+     * bucle) o se queda en el final, así nunca desborda en un replay largo.
+     */
+    private Tick siguienteTick(String symbol, Tick[] ticks) {
+        int longitud = ticks.length;
+        int posicion = cursores.get(symbol)
+                .getAndUpdate(i -> enBucle ? (i + 1) % longitud : Math.min(i + 1, longitud));
+        return ticks[Math.min(posicion, longitud - 1)];
+    }
+
+    /**
+     * Modo speed>0: último tick cuyo tiempo grabado es anterior al reloj de replay.
+     */
+    private Tick tickSegunReloj(Tick[] ticks) {
+        long duracionGrabacion = Math.max(1, ticks[ticks.length - 1].epochMillis() - inicioGrabacionMillis);
+        long transcurrido = (long) ((System.currentTimeMillis() - inicioReplayMillis) * velocidad);
+        if (enBucle) {
+            transcurrido = transcurrido % (duracionGrabacion + 1);
+        }
+        long reloj = inicioGrabacionMillis + transcurrido;
+
+        // Búsqueda binaria del último tick <= reloj
+        int bajo = 0;
+        int alto = ticks.length - 1;
+        int encontrado = -1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (ticks[medio].epochMillis() <= reloj) {
+                encontrado = medio;
+                bajo = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return encontrado >= 0 ? ticks[encontrado] : null;
+    }
+
+    private MarketData construirMarketData(String symbol, Tick tick) {
+        BigDecimal price = tick.close();
+        BigDecimal previousClose = tick.previousClose() != null ? tick.previousClose() : price;
+        BigDecimal change = price.subtract(previousClose);
+        BigDecimal changePercent = previousClose.compareTo(BigDecimal.ZERO) != 0
+                ? change.divide(previousClose, 4, RoundingMode.HALF_UP).multiply(new BigDecimal("100"))
+                : BigDecimal.ZERO;
+
+        return MarketData.builder()
+                .symbol(symbol)
+                .precio(price)
+                .open(tick.open() != null ? tick.open() : price)
+                .high(tick.high() != null ? tick.high() : price)
+                .low(tick.low() != null ? tick.low() : price)
+                .close(price)
+                .volumen(tick.volume())
+                .precioAnterior(previousClose)
+                .variacionAbsoluta(change)
+                .variacionPorcentual(changePercent)
+                .dataType(REALTIME)
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    // ==================== LECTURA DE FICHEROS ====================
+
+    private void leerCotizacionesNdjson(Path fichero, Map<String, List<Tick>> destino) throws IOException {
+        try (Stream<String> lineas = Files.lines(fichero, StandardCharsets.UTF_8)) {
+            lineas.filter(linea -> !linea.isBlank()).forEach(linea -> {
+                try {
+                    JsonNode nodo = JSON.readTree(linea);
+                    String symbol = nodo.path("symbol").asText().toUpperCase();
+                    Tick tick = new Tick(
+                            parsearTiempo(nodo.path("timestamp").asText()),
+                            decimal(nodo, "open"),
+                            decimal(nodo, "high"),
+                            decimal(nodo, "low"),
+                            decimal(nodo, "close"),
+                            nodo.hasNonNull("volume") ? nodo.get("volume").asLong() : null,
+                            decimal(nodo, "previous_close"));
+                    if (tick.close() != null) {
+                        destino.computeIfAbsent(symbol, k -> new ArrayList<>()).add(tick);
+                    }
+                } catch (Exception e) {
+                    log.warn("Replay: línea NDJSON ignorada ({}): {}", e.getMessage(), linea);
+                }
+            });
+        }
+    }
+
+    private void leerCotizacionesCsv(Path fichero, Map<String, List<Tick>> destino) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(fichero, StandardCharsets.UTF_8)) {
+            String linea = reader.readLine(); // cabecera
+            while ((linea = reader.readLine()) != null) {
+                if (linea.isBlank()) {
+                    continue;
+                }
+                try {
+                    String[] c = linea.split(",", -1);
+                    Tick tick = new Tick(
+                            parsearTiempo(c[1]),
+                            decimal(c[2]),
+                            decimal(c[3]),
+                            decimal(c[4]),
+                            decimal(c[5]),
+                            c.length > 6 && !c[6].isBlank() ? Long.parseLong(c[6].trim()) : null,
+                            c.length > 7 ? decimal(c[7]) : null);
+                    if (tick.close() != null) {
+                        destino.computeIfAbsent(c[0].trim().toUpperCase(), k -> new ArrayList<>()).add(tick);
+                    }
+                } catch (Exception e) {
+                    log.warn("Replay: línea CSV ignorada ({}): {}", e.getMessage(), linea);
+                }
+            }
+        }
+    }
+
+    private List<HistoricalDataPoint> leerSerie(String symbol) {
+        Path carpeta = Paths.get(directorio).resolve("timeseries");
+        Path csv = carpeta.resolve(symbol + ".csv");
+        Path ndjson = carpeta.resolve(symbol + ".ndjson");
+        List<HistoricalDataPoint> serie = new ArrayList<>();
+
+        try {
+            if (Files.exists(csv)) {
+                try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                    String linea = reader.readLine(); // cabecera
+                    while ((linea = reader.readLine()) != null) {
+                        if (linea.isBlank()) {
+                            continue;
+                        }
+                        String[] c = linea.split(",", -1);
+                        serie.add(HistoricalDataPoint.builder()
+                                .symbol(symbol)
+                                .date(c[0].trim())
+                                .open(decimal(c[1]))
+                                .high(decimal(c[2]))
+                                .low(decimal(c[3]))
+                                .close(decimal(c[4]))
+                                .volume(c.length > 5 && !c[5].isBlank() ? Long.parseLong(c[5].trim()) : null)
+                                .build());
+                    }
+                }
+            } else if (Files.exists(ndjson)) {
+                for (String linea : Files.readAllLines(ndjson, StandardCharsets.UTF_8)) {
+                    if (linea.isBlank()) {
+                        continue;
+                    }
+                    JsonNode nodo = JSON.readTree(linea);
+                    serie.add(HistoricalDataPoint.builder()
+                            .symbol(symbol)
+                            .date(nodo.path("datetime").asText())
+                            .open(decimal(nodo, "open"))
+                            .high(decimal(nodo, "high"))
+                            .low(decimal(nodo, "low"))
+                            .close(decimal(nodo, "close"))
+                            .volume(nodo.hasNonNull("volume") ? nodo.get("volume").asLong() : null)
+                            .build());
+                }
+            } else {
+                log.warn("Replay: no hay serie temporal para {} en {}", symbol, carpeta);
+            }
+        } catch (IOException e) {
+            log.error("Replay: error leyendo serie temporal de {}: {}", symbol, e.getMessage());
+        }
+
+        // Más reciente primero (mismo orden que TwelveData)
+        serie.sort(Comparator.comparing(HistoricalDataPoint::getDate).reversed());
+        return serie;
+    }
+
+    private static long parsearTiempo(String valor) {
+        String texto = valor.trim();
+        if (texto.length() == 10) {
+            return LocalDate.parse(texto).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+        return LocalDateTime.parse(texto.replace(' ', 'T')).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static BigDecimal decimal(String valor) {
+        return valor == null || valor.isBlank() ? null : new BigDecimal(valor.trim());
+    }
+
+    private static BigDecimal decimal(JsonNode nodo, String campo) {
+        return nodo.hasNonNull(campo) ? new BigDecimal(nodo.get(campo).asText()) : null;
+    }
+}
@@ -0,0 +1,367 @@
+package com.miguel.spyzer.provider;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.MarketData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.miguel.spyzer.entities.MarketData.DataType.REALTIME;
+
+/**
+ * Proveedor de datos de mercado basado en la API REST de TwelveData.
+ *
+ * - /quote: cotización actual (admite lista de símbolos separada por comas)
+ * - /time_series: series OHLCV
+ *
+ * Es el proveedor por defecto (marketdata.provider=twelvedata).
+ */
+@Component
+@ConditionalOnProperty(name = "marketdata.provider", havingValue = "twelvedata", matchIfMissing = true)
+public class TwelveDataMarketDataProvider implements MarketDataProvider {
+
+    private static final String TWELVE_DATA_URL = "https://api.twelvedata.com";
+
+    private final RestTemplate restTemplate;
+
+    @Value("${twelvedata.api.key:demo}")
+    private String twelveDataApiKey;
+
+    // Máximo de símbolos por petición batch a /quote (límite del proveedor: 120)
+    @Value("${twelvedata.batch.max-symbols:120}")
+    private int tamanoLoteCotizaciones;
+
+    public TwelveDataMarketDataProvider(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public String getNombre() {
+        return "TwelveData";
+    }
+
+    @Override
+    public int getMaxSimbolosPorPeticion() {
+        return tamanoLoteCotizaciones;
+    }
+
+    @Override
+    public MarketData obtenerCotizacion(String symbol) {
+        String url = String.format("%s/quote?symbol=%s&apikey=%s",
+                TWELVE_DATA_URL, symbol, twelveDataApiKey);
+
+        System.out.println("🔍 Llamando TwelveData para: " + symbol);
+        TwelveDataQuoteResponse response = restTemplate.getForObject(url, TwelveDataQuoteResponse.class);
+        return construirMarketDataDesdeCotizacion(symbol, response);
+    }
+
+    /**
+     * Obtiene cotizaciones de varios símbolos en una sola llamada a /quote.
+     *
+     * TwelveData acepta una lista separada por comas en el parámetro symbol y
+     * responde con un objeto indexado por símbolo. Si el lote tiene un solo
+     * símbolo la respuesta es plana.
+     */
+    @Override
+    public Map<String, MarketData> obtenerCotizaciones(List<String> simbolos) {
+        Map<String, MarketData> resultado = new HashMap<>();
+
+        if (simbolos.isEmpty()) {
+            return resultado;
+        }
+
+        if (simbolos.size() == 1) {
+            MarketData datos = obtenerCotizacion(simbolos.get(0));
+            if (datos != null) {
+                resultado.put(datos.getSymbol(), datos);
+            }
+            return resultado;
+        }
+
+        String url = String.format("%s/quote?symbol=%s&apikey=%s",
+                TWELVE_DATA_URL, String.join(",", simbolos), twelveDataApiKey);
+
+        System.out.println("🔍 Llamando TwelveData (batch " + simbolos.size() + " símbolos): " + simbolos);
+        Map<String, TwelveDataQuoteResponse> respuestas = restTemplate.exchange(url, HttpMethod.GET, null,
+                new ParameterizedTypeReference<Map<String, TwelveDataQuoteResponse>>() {
+                }).getBody();
+
+        if (respuestas == null || respuestas.isEmpty()) {
+            System.err.println("✗ Respuesta batch vacía para " + simbolos);
+            return resultado;
+        }
+
+        for (String symbol : simbolos) {
+            TwelveDataQuoteResponse response = respuestas.get(symbol);
+            if (response == null) {
+                response = respuestas.get(symbol.toUpperCase());
+            }
+
+            if (response != null && "error".equalsIgnoreCase(response.getStatus())) {
+                System.err.println("✗ Error del proveedor para " + symbol + ": " + response.getMessage());
+                continue;
+            }
+
+            MarketData datos = construirMarketDataDesdeCotizacion(symbol, response);
+            if (datos != null) {
+                resultado.put(datos.getSymbol(), datos);
+            }
+        }
+
+        return resultado;
+    }
+
+    @Override
+    public List<HistoricalDataPoint> obtenerSerieTemporal(String symbol, String interval, int outputsize) {
+        String url = String.format("%s/time_series?symbol=%s&interval=%s&outputsize=%s&apikey=%s",
+                TWELVE_DATA_URL, symbol, interval, outputsize, twelveDataApiKey);
+
+        System.out.println("Llamando a TwelveData time_series: " + symbol + " (" + interval + ", " + outputsize + ")");
+
+        TwelveDataTimeSeriesResponse response = restTemplate.getForObject(url,
+                TwelveDataTimeSeriesResponse.class);
+
+        if (response != null && response.getValues() != null && !response.getValues().isEmpty()) {
+            return parsearHistoricoTwelveData(response.getValues(), symbol);
+        }
+
+        System.err.println("Respuesta vacía de time_series para " + symbol);
+        return new ArrayList<>();
+    }
+
+    // ==================== PARSERS ====================
+
+    /**
+     * Convierte una cotización de TwelveData en una fila MarketData.
+     *
+     * @return MarketData construido, o null si la cotización no trae close/previous_close
+     */
+    private MarketData construirMarketDataDesdeCotizacion(String symbol, TwelveDataQuoteResponse response) {
+        if (response != null && response.getClose() != null && response.getPreviousClose() != null) {
+            BigDecimal price = new BigDecimal(response.getClose());
+            BigDecimal previousClose = new BigDecimal(response.getPreviousClose());
+            BigDecimal change = price.subtract(previousClose);
+            BigDecimal changePercent = previousClose.compareTo(BigDecimal.ZERO) != 0 ? change
+                    .divide(previousClose, 4, java.math.RoundingMode.HALF_UP).multiply(new BigDecimal("100"))
+                    : BigDecimal.ZERO;
+
+            System.out.println("✓ Datos obtenidos para " + symbol + " | Precio: $" + price);
+
+            return MarketData.builder()
+                    .symbol(symbol.toUpperCase())
+                    .precio(price)
+                    .open(response.getOpen() != null ? new BigDecimal(response.getOpen()) : price)
+                    .high(response.getHigh() != null ? new BigDecimal(response.getHigh()) : price)
+                    .low(response.getLow() != null ? new BigDecimal(response.getLow()) : price)
+                    .close(price)
+                    .volumen(response.getVolume() != null && !response.getVolume().isEmpty()
+                            ? Long.parseLong(response.getVolume())
+                            : null)
+                    .precioAnterior(previousClose)
+                    .variacionAbsoluta(change)
+                    .variacionPorcentual(changePercent)
+                    .dataType(REALTIME)
+                    .timestamp(LocalDateTime.now())
+                    .build();
+        }
+
+        System.err.println("✗ Respuesta vacía o incompleta para " + symbol);
+        if (response != null) {
+            System.err.println("  - Close: " + response.getClose());
+            System.err.println("  - PreviousClose: " + response.getPreviousClose());
+        }
+        return null;
+    }
+
+    private List<HistoricalDataPoint> parsearHistoricoTwelveData(List<TwelveDataValue> values, String symbol) {
+        List<HistoricalDataPoint> result = new ArrayList<>();
+
+        for (TwelveDataValue value : values) {
+            try {
+                result.add(HistoricalDataPoint.builder()
+                        .symbol(symbol.toUpperCase())
+                        .date(value.getDatetime())
+                        .open(value.getOpen() != null ? new BigDecimal(value.getOpen()) : null)
+                        .high(value.getHigh() != null ? new BigDecimal(value.getHigh()) : null)
+                        .low(value.getLow() != null ? new BigDecimal(value.getLow()) : null)
+                        .close(value.getClose() != null ? new BigDecimal(value.getClose()) : null)
+                        .volume(value.getVolume() != null && !value.getVolume().isEmpty()
+                                ? Long.parseLong(value.getVolume())
+                                : null)
+                        .build());
+            } catch (Exception e) {
+                System.err.println("Error parseando valor histórico: " + e.getMessage());
+            }
+        }
+
+        return result;
+    }
+
+    // ==================== DTOs ====================
+
+    public static class TwelveDataQuoteResponse {
+        private String symbol;
+        private String open;
+        private String high;
+        private String low;
+        private String close;
+        private String volume;
+        @JsonProperty("previous_close")
+        private String previousClose;
+        // Presentes solo cuando el proveedor devuelve error para este símbolo
+        private String status;
+        private String message;
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public String getOpen() {
+            return open;
+        }
+
+        public String getHigh() {
+            return high;
+        }
+
+        public String getLow() {
+            return low;
+        }
+
+        public String getClose() {
+            return close;
+        }
+
+        public String getVolume() {
+            return volume;
+        }
+
+        public String getPreviousClose() {
+            return previousClose;
+        }
+
+        public void setSymbol(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public void setOpen(String open) {
+            this.open = open;
+        }
+
+        public void setHigh(String high) {
+            this.high = high;
+        }
+
+        public void setLow(String low) {
+            this.low = low;
+        }
+
+        public void setClose(String close) {
+            this.close = close;
+        }
+
+        public void setVolume(String volume) {
+            this.volume = volume;
+        }
+
+        public void setPreviousClose(String previousClose) {
+            this.previousClose = previousClose;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+
+    public static class TwelveDataTimeSeriesResponse {
+        private List<TwelveDataValue> values;
+
+        public List<TwelveDataValue> getValues() {
+            return values;
+        }
+
+        public void setValues(List<TwelveDataValue> values) {
+            this.values = values;
+        }
+    }
+
+    public static class TwelveDataValue {
+        private String datetime;
+        private String open;
+        private String high;
+        private String low;
+        private String close;
+        private String volume;
+
+        public String getDatetime() {
+            return datetime;
+        }
+
+        public String getOpen() {
+            return open;
+        }
+
+        public String getHigh() {
+            return high;
+        }
+
+        public String getLow() {
+            return low;
+        }
+
+        public String getClose() {
+            return close;
+        }
+
+        public String getVolume() {
+            return volume;
+        }
+
+        public void setDatetime(String datetime) {
+            this.datetime = datetime;
+        }
+
+        public void setOpen(String open) {
+            this.open = open;
+        }
+
+        public void setHigh(String high) {
+            this.high = high;
+        }
+
+        public void setLow(String low) {
+            this.low = low;
+        }
+
+        public void setClose(String close) {
+            this.close = close;
+        }
+
+        public void setVolume(String volume) {
+            this.volume = volume;
+        }
+    }
+}
@@ -4,14 +4,43 @@ import com.miguel.spyzer.entities.Alert;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface AlertRepository extends JpaRepository<Alert, Long> {
+
+    /**
+     * Datos mínimos de una alerta para el índice de umbrales en memoria (AlertIndex)
+     */
+    interface TriggerAlerta {
+        Long getId();
+
+        String getSymbol();
+
+        Alert.TipoAlerta getTipo();
+
+        Alert.ModoUmbral getModoUmbral();
+
+        BigDecimal getValorTrigger();
+
+        Boolean getActiva();
+
+        Boolean getDisparada();
+
+        BigDecimal getPrecioReferencia();
+
+        LocalDate getSesionReferencia();
+    }
     
     // ========== MÉTODOS BÁSICOS ==========
     
@@ -46,6 +75,21 @@ public interface AlertRepository extends JpaRepository<Alert, Long> {
      * Obtener todas las alertas activas del sistema (para el job que las verifica)
      */
     List<Alert> findByActivaTrueAndDisparadaFalse();
+
+    /**
+     * Obtener las alertas activas de un tipo (verificación sin índice en memoria)
+     */
+    List<Alert> findByTipoAndActivaTrueAndDisparadaFalse(Alert.TipoAlerta tipo);
+
+    /**
+     * Triggers de todas las alertas activas, sin cargar las entidades (carga del índice en memoria)
+     */
+    List<TriggerAlerta> findTriggersByActivaTrueAndDisparadaFalse();
+
+    /**
+     * Trigger de una alerta (resincronización puntual del índice en memoria)
+     */
+    Optional<TriggerAlerta> findTriggerById(Long id);
     
     // ========== MÉTODOS DE ESTADÍSTICAS Y CONTEO ==========
     
@@ -65,6 +109,33 @@ public interface AlertRepository extends JpaRepository<Alert, Long> {
      * Buscar alertas disparadas antes de una fecha (para limpieza)
      */
     List<Alert> findByDisparadaTrueAndTriggeredAtBefore(LocalDateTime fecha);
+
+    /**
+     * Obtener alertas por id con su usuario cargado (para notificar fuera de la transacción)
+     */
+    @Query("SELECT a FROM Alert a JOIN FETCH a.user WHERE a.id IN :ids")
+    List<Alert> findWithUserByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Disparar en bloque: un único UPDATE condicional (solo las que siguen
+     * activas y sin disparar), así dos evaluadores concurrentes no pueden
+     * disparar la misma alerta, ni se dispara una que el usuario pausó después
+     * de leer las candidatas. Vacía el contexto de persistencia para no dejar entidades obsoletas.
+     *
+     * @param marca triggeredAt que identifica este disparo (ver findWithUserByIdInAndTriggeredAt)
+     * @return Número de alertas que cambiaron
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Alert a SET a.disparada = true, a.activa = false, a.triggeredAt = :marca "
+            + "WHERE a.id IN :ids AND a.activa = true AND a.disparada = false")
+    int dispararEnBloque(@Param("ids") Collection<Long> ids, @Param("marca") LocalDateTime marca);
+
+    /**
+     * Alertas que cambió un dispararEnBloque (las de su marca), con su usuario cargado
+     */
+    @Query("SELECT a FROM Alert a JOIN FETCH a.user WHERE a.id IN :ids AND a.triggeredAt = :marca")
+    List<Alert> findWithUserByIdInAndTriggeredAt(@Param("ids") Collection<Long> ids,
+                                                 @Param("marca") LocalDateTime marca);
     
     /**
      * Eliminar todas las alertas ya disparadas (para mantenimiento)
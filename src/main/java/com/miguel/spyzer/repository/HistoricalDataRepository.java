@@ -1,16 +1,63 @@
 package com.miguel.spyzer.repository;
 
 import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface HistoricalDataRepository extends JpaRepository<HistoricalDataPoint, Long> {
-    
-    @Query(value = "SELECT * FROM historical_data_point WHERE symbol = ?1 ORDER BY date DESC LIMIT ?2", nativeQuery = true)
-    List<HistoricalDataPoint> findBySymbolOrderByDateDesc(String symbol, int limit);
-    
+
+    /**
+     * Últimos N puntos de un símbolo y granularidad, más reciente primero.
+     */
+    List<HistoricalDataPoint> findBySymbolAndGranularidadOrderByTsDesc(String symbol, Granularidad granularidad,
+                                                                        Limit limit);
+
+    /**
+     * Puntos de un símbolo y granularidad en [desde, hasta], en orden cronológico.
+     */
+    List<HistoricalDataPoint> findBySymbolAndGranularidadAndTsBetweenOrderByTsAsc(String symbol,
+                                                                                   Granularidad granularidad,
+                                                                                   Instant desde, Instant hasta);
+
+    /**
+     * Página por keyset: puntos posteriores a despues (exclusive) y hasta hasta (inclusive).
+     * El cursor de la página siguiente es el ts del último punto devuelto.
+     */
+    @Query("SELECT p FROM HistoricalDataPoint p WHERE p.symbol = :symbol AND p.granularidad = :granularidad "
+            + "AND p.ts > :despues AND p.ts <= :hasta ORDER BY p.ts ASC")
+    List<HistoricalDataPoint> findPagina(@Param("symbol") String symbol,
+                                         @Param("granularidad") Granularidad granularidad,
+                                         @Param("despues") Instant despues,
+                                         @Param("hasta") Instant hasta,
+                                         Limit limit);
+
+    /**
+     * Punto más reciente de un símbolo y granularidad.
+     */
+    Optional<HistoricalDataPoint> findFirstBySymbolAndGranularidadOrderByTsDesc(String symbol,
+                                                                                Granularidad granularidad);
+
+    long countBySymbolAndGranularidad(String symbol, Granularidad granularidad);
+
+    long countBySymbolAndGranularidadAndTsGreaterThanEqual(String symbol, Granularidad granularidad, Instant ts);
+
+    List<HistoricalDataPoint> findBySymbolAndTsIn(String symbol, Collection<Instant> ts);
+
+    boolean existsBySymbolAndTs(String symbol, Instant ts);
+
+    /**
+     * Filas anteriores a la columna ts pendientes de migrar, paginadas por id.
+     */
+    List<HistoricalDataPoint> findByTsIsNullAndIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
     void deleteBySymbol(String symbol);
-}
\ No newline at end of file
+}
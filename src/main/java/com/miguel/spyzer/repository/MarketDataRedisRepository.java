@@ -1,82 +1,131 @@
 package com.miguel.spyzer.repository;
 
 import com.miguel.spyzer.entities.MarketData;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
- * Repositorio Redis para gestionar datos históricos de precios usando ZSET (Sorted Sets).
+ * Repositorio Redis para las series intraday de precios (últimas 24 horas),
+ * almacenadas como ticks binarios empaquetados en chunks de una hora.
  *
  * Estructura de datos:
- * - Key: "historical:{symbol}" (ej. "historical:AAPL")
- * - Score: Timestamp Unix en milisegundos (permite ordenación temporal)
- * - Value: Objeto MarketData serializado como JSON
+ * - Key: "ticks:{symbol}:{hora}" (ej. "ticks:{AAPL}:487234"), donde hora es
+ *   epochMillis / 3.600.000. Las llaves hacen que todos los chunks de un
+ *   símbolo compartan hash slot.
+ * - Value: string Redis con registros de tamaño fijo (TICK_BYTES = 20) añadidos con APPEND:
+ *     int  offset en ms desde el inicio de la hora (delta respecto a la base del chunk)
+ *     long precio en punto fijo (escala PRICE_SCALE = 4)
+ *     long volumen (NO_VOLUME si el dato no lo trae)
+ *   Big-endian; los registros de un chunk quedan ordenados por offset.
  *
- * Ventajas de usar ZSET:
- * - Ordenación automática por timestamp
- * - Queries eficientes por rango de tiempo (O(log(N) + M))
- * - Eliminación automática de datos antiguos
- * - Soporte nativo para time-series
+ * Frente a un ZSET con el MarketData completo por miembro (id, campos de 52
+ * semanas, PER y demás nulls, más el overhead de skiplist), cada tick ocupa
+ * 20 bytes y una lectura de rango solo decodifica los chunks que solapan la ventana.
  *
  * TTL Management:
- * - Los datos históricos se mantienen 24 horas (rolling window)
- * - Limpieza automática de datos antiguos en cada escritura
- * - Permite análisis intraday sin sobrecargar MySQL
+ * - Cada chunk expira (PEXPIREAT) 24 horas después del final de su hora:
+ *   rolling window sin ZREMRANGEBYSCORE.
+ * - Las lecturas filtran por la ventana pedida, así que el tick más antiguo
+ *   de un chunk aún no expirado nunca se devuelve fuera de rango.
+ *
+ * Escritura por lotes (addHistoricalDataBatch):
+ * - Un único script Lua (scripts/historical-append-ticks.lua) añade el tick de
+ *   todas las series del lote: una ida y vuelta por grupo.
+ * - El script descarta ticks con offset menor o igual que el último del chunk
+ *   (duplicados y desordenados), manteniendo el orden para la búsqueda binaria.
  */
 @Repository
 public class MarketDataRedisRepository {
 
     private final RedisTemplate<String, Object> redisTemplate;
-    private final ZSetOperations<String, Object> zSetOperations;
 
-    // Prefijo para keys de históricos
-    private static final String HISTORICAL_KEY_PREFIX = "historical:";
+    // Prefijo para keys de chunks de ticks
+    private static final String TICKS_KEY_PREFIX = "ticks:";
+
+    // Tamaño de un tick empaquetado: offset (4) + precio (8) + volumen (8)
+    static final int TICK_BYTES = 20;
+
+    // Decimales del precio en punto fijo
+    static final int PRICE_SCALE = 4;
+
+    // Marca de volumen ausente
+    static final long NO_VOLUME = Long.MIN_VALUE;
+
+    private static final long HORA_MS = 60 * 60 * 1000L;
 
     // TTL para datos históricos (24 horas en milisegundos)
-    private static final long HISTORICAL_TTL_MS = 24 * 60 * 60 * 1000L;
+    private static final long HISTORICAL_TTL_MS = 24 * HORA_MS;
+
+    // Estado devuelto por el script para una serie escrita correctamente
+    private static final String ESCRITURA_OK = "OK";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> APPEND_TICKS_SCRIPT = crearScript("scripts/historical-append-ticks.lua");
+
+    /**
+     * Tick intraday decodificado.
+     *
+     * @param epochMillis Instante del tick (ms Unix)
+     * @param precio      Precio (escala PRICE_SCALE)
+     * @param volumen     Volumen del día, o null si el dato no lo traía
+     */
+    public record Tick(long epochMillis, BigDecimal precio, Long volumen) {
+    }
 
     public MarketDataRedisRepository(RedisTemplate<String, Object> redisTemplate) {
         this.redisTemplate = redisTemplate;
-        this.zSetOperations = redisTemplate.opsForZSet();
     }
 
     /**
-     * Genera la key de Redis para históricos de un símbolo.
+     * Genera la key del chunk de un símbolo para una hora.
      *
      * @param symbol Símbolo del activo
-     * @return Key formateada (ej. "historical:AAPL")
+     * @param hora   Hora Unix (epochMillis / HORA_MS)
+     * @return Key formateada (ej. "ticks:{AAPL}:487234")
      */
-    private String getHistoricalKey(String symbol) {
-        return HISTORICAL_KEY_PREFIX + symbol.toUpperCase();
+    private String getChunkKey(String symbol, long hora) {
+        return TICKS_KEY_PREFIX + "{" + symbol.toUpperCase() + "}:" + hora;
     }
 
     /**
      * Convierte LocalDateTime a timestamp Unix en milisegundos.
      *
      * @param dateTime Fecha/hora a convertir
-     * @return Timestamp Unix en milisegundos (usado como score en ZSET)
+     * @return Timestamp Unix en milisegundos
      */
-    private double toTimestamp(LocalDateTime dateTime) {
+    private long toTimestamp(LocalDateTime dateTime) {
         return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     /**
-     * Convierte timestamp Unix (score) a LocalDateTime.
+     * Convierte timestamp Unix a LocalDateTime.
      *
      * @param timestamp Timestamp en milisegundos
      * @return LocalDateTime correspondiente
      */
-    private LocalDateTime fromTimestamp(double timestamp) {
+    private LocalDateTime fromTimestamp(long timestamp) {
         return LocalDateTime.ofInstant(
-            Instant.ofEpochMilli((long) timestamp),
+            Instant.ofEpochMilli(timestamp),
             ZoneId.systemDefault()
         );
     }
@@ -84,20 +133,112 @@ public class MarketDataRedisRepository {
     /**
      * Añade un nuevo dato de precio al histórico.
      *
-     * Usa el timestamp del objeto MarketData como score en el ZSET.
-     * Automáticamente limpia datos antiguos (>24h) después de añadir.
-     *
      * @param marketData Dato de mercado a almacenar
+     * @throws IllegalStateException si Redis rechaza la escritura
      */
     public void addHistoricalData(MarketData marketData) {
-        String key = getHistoricalKey(marketData.getSymbol());
-        double score = toTimestamp(marketData.getTimestamp());
+        Map<String, String> errores = addHistoricalDataBatch(List.of(marketData));
+        if (!errores.isEmpty()) {
+            throw new IllegalStateException("Error guardando tick de " + marketData.getSymbol() + ": " + errores);
+        }
+    }
+
+    /**
+     * Añade al histórico un tick por cada MarketData del lote, todo en una
+     * única ejecución del script Lua.
+     *
+     * Cada serie se procesa de forma independiente en el servidor: el fallo de
+     * una (p. ej. key con tipo incorrecto) no impide escribir el resto.
+     *
+     * @param datos Datos de mercado a almacenar (los que no tienen símbolo, timestamp o precio se rechazan)
+     * @return Símbolo -> mensaje de error de las series que no se pudieron escribir (vacío si todo OK)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Map<String, String> addHistoricalDataBatch(Collection<MarketData> datos) {
+        Map<String, String> errores = new LinkedHashMap<>();
+        List<String> symbols = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+
+        for (MarketData marketData : datos) {
+            if (marketData.getSymbol() == null || marketData.getTimestamp() == null || marketData.getPrecio() == null) {
+                errores.put(String.valueOf(marketData.getSymbol()), "MarketData sin símbolo, timestamp o precio");
+                continue;
+            }
+
+            long epochMillis = toTimestamp(marketData.getTimestamp());
+            long hora = Math.floorDiv(epochMillis, HORA_MS);
+            try {
+                byte[] tick = empaquetar(epochMillis - hora * HORA_MS, marketData.getPrecio(), marketData.getVolumen());
+                args.add(tick);
+            } catch (ArithmeticException e) {
+                errores.put(marketData.getSymbol().toUpperCase(), "Precio fuera de rango: " + marketData.getPrecio());
+                continue;
+            }
+            symbols.add(marketData.getSymbol().toUpperCase());
+            keys.add(getChunkKey(marketData.getSymbol(), hora));
+            args.add(utf8(String.valueOf((hora + 1) * HORA_MS + HISTORICAL_TTL_MS)));
+        }
+
+        if (keys.isEmpty()) {
+            return errores;
+        }
+
+        // Resultado: array de estados, cada elemento deserializado como String
+        List<Object> estados = redisTemplate.execute(APPEND_TICKS_SCRIPT, RedisSerializer.byteArray(),
+                (RedisSerializer) RedisSerializer.string(), keys, args.toArray());
+
+        for (int i = 0; i < symbols.size(); i++) {
+            Object estado = estados != null && i < estados.size() ? estados.get(i) : null;
+            if (!ESCRITURA_OK.equals(estado)) {
+                errores.put(symbols.get(i), estado != null ? estado.toString() : "Sin respuesta del script");
+            }
+        }
+        return errores;
+    }
 
-        // Añadir al ZSET
-        zSetOperations.add(key, marketData, score);
+    /**
+     * Ticks de un símbolo en un rango de tiempo.
+     *
+     * Lee con un único MGET solo los chunks horarios que solapan el rango y
+     * decodifica únicamente los registros dentro de él (búsqueda binaria en
+     * los chunks de los extremos).
+     *
+     * @param symbol    Símbolo del activo
+     * @param desdeMs   Inicio del rango en ms Unix (inclusive)
+     * @param hastaMs   Fin del rango en ms Unix (inclusive)
+     * @return Ticks ordenados por tiempo
+     */
+    public List<Tick> getTicks(String symbol, long desdeMs, long hastaMs) {
+        if (hastaMs < desdeMs) {
+            return List.of();
+        }
 
-        // Limpiar datos antiguos (más de 24 horas)
-        cleanOldData(marketData.getSymbol());
+        long primeraHora = Math.floorDiv(desdeMs, HORA_MS);
+        long ultimaHora = Math.floorDiv(hastaMs, HORA_MS);
+        List<byte[]> chunks = leerChunks(symbol, primeraHora, ultimaHora);
+
+        List<Tick> ticks = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            if (chunk == null || chunk.length < TICK_BYTES) {
+                continue;
+            }
+            long base = (primeraHora + i) * HORA_MS;
+            int registros = chunk.length / TICK_BYTES;
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+
+            int inicio = primerRegistroDesde(buffer, registros, desdeMs - base);
+            for (int r = inicio; r < registros; r++) {
+                int posicion = r * TICK_BYTES;
+                long epochMillis = base + buffer.getInt(posicion);
+                if (epochMillis > hastaMs) {
+                    break;
+                }
+                ticks.add(desempaquetar(buffer, posicion, epochMillis));
+            }
+        }
+        return ticks;
     }
 
     /**
@@ -106,25 +247,10 @@ public class MarketDataRedisRepository {
      * @param symbol Símbolo del activo
      * @param startTime Inicio del rango (inclusive)
      * @param endTime Fin del rango (inclusive)
-     * @return Lista ordenada de datos de mercado en el rango temporal
+     * @return Lista ordenada de datos de mercado en el rango temporal (solo precio, volumen y timestamp)
      */
     public List<MarketData> getHistoricalData(String symbol, LocalDateTime startTime, LocalDateTime endTime) {
-        String key = getHistoricalKey(symbol);
-        double minScore = toTimestamp(startTime);
-        double maxScore = toTimestamp(endTime);
-
-        // ZRANGEBYSCORE: Obtener elementos con score entre minScore y maxScore
-        Set<Object> results = zSetOperations.rangeByScore(key, minScore, maxScore);
-
-        if (results == null || results.isEmpty()) {
-            return List.of();
-        }
-
-        // Convertir y retornar
-        return results.stream()
-            .filter(obj -> obj instanceof MarketData)
-            .map(obj -> (MarketData) obj)
-            .collect(Collectors.toList());
+        return aMarketData(symbol, getTicks(symbol, toTimestamp(startTime), toTimestamp(endTime)));
     }
 
     /**
@@ -135,19 +261,14 @@ public class MarketDataRedisRepository {
      * @return Lista de los últimos N datos ordenados por timestamp (más reciente primero)
      */
     public List<MarketData> getLatestHistoricalData(String symbol, int count) {
-        String key = getHistoricalKey(symbol);
-
-        // ZREVRANGE: Obtener últimos N elementos en orden descendente (más reciente primero)
-        Set<Object> results = zSetOperations.reverseRange(key, 0, count - 1);
-
-        if (results == null || results.isEmpty()) {
+        if (count <= 0) {
             return List.of();
         }
-
-        return results.stream()
-            .filter(obj -> obj instanceof MarketData)
-            .map(obj -> (MarketData) obj)
-            .collect(Collectors.toList());
+        long ahora = System.currentTimeMillis();
+        List<Tick> ticks = getTicks(symbol, ahora - HISTORICAL_TTL_MS, ahora);
+        List<Tick> ultimos = new ArrayList<>(ticks.subList(Math.max(0, ticks.size() - count), ticks.size()));
+        Collections.reverse(ultimos);
+        return aMarketData(symbol, ultimos);
     }
 
     /**
@@ -157,59 +278,35 @@ public class MarketDataRedisRepository {
      * @return Lista completa de datos históricos ordenados por timestamp
      */
     public List<MarketData> getAllHistoricalData(String symbol) {
-        String key = getHistoricalKey(symbol);
-
-        // ZRANGE 0 -1: Obtener todos los elementos
-        Set<Object> results = zSetOperations.range(key, 0, -1);
-
-        if (results == null || results.isEmpty()) {
-            return List.of();
-        }
-
-        return results.stream()
-            .filter(obj -> obj instanceof MarketData)
-            .map(obj -> (MarketData) obj)
-            .collect(Collectors.toList());
-    }
-
-    /**
-     * Limpia datos históricos más antiguos que 24 horas.
-     *
-     * Se ejecuta automáticamente en addHistoricalData() para mantener
-     * un rolling window de 24 horas.
-     *
-     * @param symbol Símbolo a limpiar
-     * @return Número de entradas eliminadas
-     */
-    public Long cleanOldData(String symbol) {
-        String key = getHistoricalKey(symbol);
-        LocalDateTime cutoffTime = LocalDateTime.now().minusHours(24);
-        double maxScore = toTimestamp(cutoffTime);
-
-        // ZREMRANGEBYSCORE: Eliminar elementos con score < cutoffTime
-        return zSetOperations.removeRangeByScore(key, 0, maxScore);
+        long ahora = System.currentTimeMillis();
+        return aMarketData(symbol, getTicks(symbol, ahora - HISTORICAL_TTL_MS, ahora));
     }
 
     /**
      * Elimina todos los datos históricos de un símbolo.
      *
      * @param symbol Símbolo a limpiar completamente
-     * @return true si se eliminó la key, false si no existía
+     * @return true si se eliminó algún chunk, false si no existía ninguno
      */
     public Boolean deleteAllHistoricalData(String symbol) {
-        String key = getHistoricalKey(symbol);
-        return redisTemplate.delete(key);
+        long ultimaHora = Math.floorDiv(System.currentTimeMillis(), HORA_MS);
+        List<String> keys = new ArrayList<>();
+        for (long hora = ultimaHora - 25; hora <= ultimaHora; hora++) {
+            keys.add(getChunkKey(symbol, hora));
+        }
+        Long eliminadas = redisTemplate.delete(keys);
+        return eliminadas != null && eliminadas > 0;
     }
 
     /**
-     * Obtiene el número de entradas históricas almacenadas para un símbolo.
+     * Obtiene el número de ticks almacenados para un símbolo en las últimas 24h.
      *
      * @param symbol Símbolo a consultar
-     * @return Número de entradas en el ZSET
+     * @return Número de ticks
      */
     public Long getHistoricalDataCount(String symbol) {
-        String key = getHistoricalKey(symbol);
-        return zSetOperations.size(key);
+        long ahora = System.currentTimeMillis();
+        return (long) getTicks(symbol, ahora - HISTORICAL_TTL_MS, ahora).size();
     }
 
     /**
@@ -249,6 +346,85 @@ public class MarketDataRedisRepository {
         }
 
         String latestTime = latest != null ? latest.getTimestamp().toString() : "N/A";
-        return String.format("Symbol %s: %d entries | Latest: %s", symbol, count, latestTime);
+        return String.format("Symbol %s: %d entries (%d bytes) | Latest: %s", symbol, count, count * TICK_BYTES, latestTime);
+    }
+
+    /**
+     * Lee con un MGET los chunks de las horas [primeraHora, ultimaHora].
+     *
+     * @return Un elemento por hora, en orden (null si el chunk no existe)
+     */
+    private List<byte[]> leerChunks(String symbol, long primeraHora, long ultimaHora) {
+        int horas = (int) (ultimaHora - primeraHora + 1);
+        byte[][] keys = new byte[horas][];
+        for (int i = 0; i < horas; i++) {
+            keys[i] = utf8(getChunkKey(symbol, primeraHora + i));
+        }
+        List<byte[]> chunks = redisTemplate.execute(
+                (RedisCallback<List<byte[]>>) (RedisConnection connection) -> connection.stringCommands().mGet(keys));
+        return chunks != null ? chunks : List.of();
+    }
+
+    /**
+     * Índice del primer registro del chunk con offset >= offsetMinimo.
+     */
+    private static int primerRegistroDesde(ByteBuffer chunk, int registros, long offsetMinimo) {
+        int bajo = 0;
+        int alto = registros;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (chunk.getInt(medio * TICK_BYTES) < offsetMinimo) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    /**
+     * Empaqueta un tick en TICK_BYTES bytes.
+     *
+     * @throws ArithmeticException si el precio no cabe en punto fijo con PRICE_SCALE decimales
+     */
+    static byte[] empaquetar(long offsetMs, BigDecimal precio, Long volumen) {
+        long precioFijo = precio.setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        return ByteBuffer.allocate(TICK_BYTES)
+                .putInt((int) offsetMs)
+                .putLong(precioFijo)
+                .putLong(volumen != null ? volumen : NO_VOLUME)
+                .array();
+    }
+
+    private static Tick desempaquetar(ByteBuffer chunk, int posicion, long epochMillis) {
+        BigDecimal precio = BigDecimal.valueOf(chunk.getLong(posicion + 4), PRICE_SCALE);
+        long volumen = chunk.getLong(posicion + 12);
+        return new Tick(epochMillis, precio, volumen != NO_VOLUME ? volumen : null);
+    }
+
+    private List<MarketData> aMarketData(String symbol, List<Tick> ticks) {
+        List<MarketData> datos = new ArrayList<>(ticks.size());
+        for (Tick tick : ticks) {
+            datos.add(MarketData.builder()
+                    .symbol(symbol.toUpperCase())
+                    .precio(tick.precio())
+                    .volumen(tick.volumen())
+                    .timestamp(fromTimestamp(tick.epochMillis()))
+                    .dataType(MarketData.DataType.REALTIME)
+                    .build());
+        }
+        return datos;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static RedisScript<List> crearScript(String ruta) {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(ruta));
+        script.setResultType(List.class);
+        return script;
+    }
+
+    private static byte[] utf8(String valor) {
+        return valor.getBytes(StandardCharsets.UTF_8);
     }
 }
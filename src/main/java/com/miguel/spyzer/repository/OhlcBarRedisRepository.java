@@ -0,0 +1,231 @@
+package com.miguel.spyzer.repository;
+
+import com.miguel.spyzer.entities.MarketData;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Repositorio Redis de barras OHLCV pre-agregadas por símbolo y resolución.
+ *
+ * Estructura de datos:
+ * - Key: "bars:{symbol}:{resolución}" (ej. "bars:{AAPL}:5m")
+ * - Score: inicio de la barra (ms Unix)
+ * - Value: "inicio:open:high:low:close:volumen" (precios en punto fijo, escala PRICE_SCALE)
+ * - Estado auxiliar "bars:{symbol}:estado": último tick procesado y último
+ *   volumen acumulado, para calcular el volumen de cada barra por diferencias.
+ *
+ * Las barras se actualizan de forma incremental con cada tick ingerido
+ * (scripts/ohlc-rollup.lua): una única ejecución por micro-lote actualiza
+ * todas las resoluciones de todos los símbolos. Cada resolución tiene su
+ * propia retención; las barras más antiguas se recortan en cada escritura y la
+ * key caduca si el símbolo deja de actualizarse.
+ */
+@Repository
+public class OhlcBarRedisRepository {
+
+    // Prefijo para keys de barras
+    private static final String BARS_KEY_PREFIX = "bars:";
+
+    // Decimales de los precios en punto fijo
+    static final int PRICE_SCALE = 4;
+
+    // Los días de mercado (barras diarias) se cortan a medianoche de Nueva York
+    private static final ZoneId ZONA_MERCADO = ZoneId.of("America/New_York");
+
+    // Estados devueltos por el script
+    private static final String ESCRITURA_OK = "OK";
+    private static final String TICK_IGNORADO = "IGNORADO";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ROLLUP_SCRIPT = crearScript("scripts/ohlc-rollup.lua");
+
+    /**
+     * Resoluciones pre-agregadas y su retención.
+     */
+    public enum Resolucion {
+        M1("1m", Duration.ofMinutes(1), Duration.ofDays(2)),
+        M5("5m", Duration.ofMinutes(5), Duration.ofDays(14)),
+        H1("1h", Duration.ofHours(1), Duration.ofDays(180)),
+        D1("1d", Duration.ofDays(1), Duration.ofDays(730));
+
+        private final String codigo;
+        private final Duration duracion;
+        private final Duration retencion;
+
+        Resolucion(String codigo, Duration duracion, Duration retencion) {
+            this.codigo = codigo;
+            this.duracion = duracion;
+            this.retencion = retencion;
+        }
+
+        public String getCodigo() {
+            return codigo;
+        }
+
+        public Duration getDuracion() {
+            return duracion;
+        }
+
+        public Duration getRetencion() {
+            return retencion;
+        }
+
+        /**
+         * Inicio (ms Unix) de la barra que contiene el instante indicado.
+         * Las barras diarias empiezan a medianoche de Nueva York.
+         */
+        public long inicioBarra(long epochMillis) {
+            if (this == D1) {
+                return Instant.ofEpochMilli(epochMillis).atZone(ZONA_MERCADO)
+                        .toLocalDate().atStartOfDay(ZONA_MERCADO).toInstant().toEpochMilli();
+            }
+            long ms = duracion.toMillis();
+            return Math.floorDiv(epochMillis, ms) * ms;
+        }
+    }
+
+    /**
+     * Barra OHLCV.
+     *
+     * @param inicioMs Inicio de la barra (ms Unix)
+     * @param volumen  Volumen negociado durante la barra
+     */
+    public record Barra(long inicioMs, BigDecimal open, BigDecimal high, BigDecimal low, BigDecimal close,
+                        long volumen) {
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    public OhlcBarRedisRepository(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    private String getBarsKey(String symbol, Resolucion resolucion) {
+        return BARS_KEY_PREFIX + "{" + symbol.toUpperCase() + "}:" + resolucion.getCodigo();
+    }
+
+    private String getEstadoKey(String symbol) {
+        return BARS_KEY_PREFIX + "{" + symbol.toUpperCase() + "}:estado";
+    }
+
+    /**
+     * Aplica un tick por símbolo a las barras de todas las resoluciones, en
+     * una única ejecución del script.
+     *
+     * Un tick no posterior al último procesado para el símbolo se ignora, por
+     * lo que reintentos de un micro-lote no duplican volumen.
+     *
+     * @param datos Cotizaciones recién ingeridas
+     * @return Símbolo -> mensaje de error de los símbolos que no se pudieron agregar (vacío si todo OK)
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> actualizarBarras(Collection<MarketData> datos) {
+        Map<String, String> errores = new LinkedHashMap<>();
+        Resolucion[] resoluciones = Resolucion.values();
+        List<String> symbols = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(resoluciones.length));
+
+        long ahora = System.currentTimeMillis();
+        for (MarketData marketData : datos) {
+            if (marketData.getSymbol() == null || marketData.getTimestamp() == null || marketData.getPrecio() == null) {
+                errores.put(String.valueOf(marketData.getSymbol()), "MarketData sin símbolo, timestamp o precio");
+                continue;
+            }
+
+            String symbol = marketData.getSymbol().toUpperCase();
+            long epochMillis = marketData.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            long precio;
+            try {
+                precio = marketData.getPrecio().setScale(PRICE_SCALE, RoundingMode.HALF_UP)
+                        .unscaledValue().longValueExact();
+            } catch (ArithmeticException e) {
+                errores.put(symbol, "Precio fuera de rango: " + marketData.getPrecio());
+                continue;
+            }
+
+            symbols.add(symbol);
+            keys.add(getEstadoKey(symbol));
+            args.add(String.valueOf(epochMillis));
+            args.add(String.valueOf(precio));
+            args.add(String.valueOf(marketData.getVolumen() != null ? marketData.getVolumen() : -1));
+
+            for (Resolucion resolucion : resoluciones) {
+                keys.add(getBarsKey(symbol, resolucion));
+                args.add(String.valueOf(resolucion.inicioBarra(epochMillis)));
+                args.add(String.valueOf(ahora - resolucion.getRetencion().toMillis()));
+                args.add(String.valueOf(resolucion.getRetencion().plus(resolucion.getDuracion()).toMillis()));
+            }
+        }
+
+        if (symbols.isEmpty()) {
+            return errores;
+        }
+
+        List<Object> estados = redisTemplate.execute(ROLLUP_SCRIPT, keys, args.toArray());
+        for (int i = 0; i < symbols.size(); i++) {
+            Object estado = estados != null && i < estados.size() ? estados.get(i) : null;
+            if (!ESCRITURA_OK.equals(estado) && !TICK_IGNORADO.equals(estado)) {
+                errores.put(symbols.get(i), estado != null ? estado.toString() : "Sin respuesta del script");
+            }
+        }
+        return errores;
+    }
+
+    /**
+     * Barras de un símbolo en una resolución cuyo inicio cae en el rango.
+     *
+     * @param symbol     Símbolo del activo
+     * @param resolucion Resolución pre-agregada
+     * @param desdeMs    Inicio del rango (ms Unix, inclusive)
+     * @param hastaMs    Fin del rango (ms Unix, inclusive)
+     * @return Barras ordenadas por inicio
+     */
+    public List<Barra> getBarras(String symbol, Resolucion resolucion, long desdeMs, long hastaMs) {
+        Set<String> miembros = redisTemplate.opsForZSet()
+                .rangeByScore(getBarsKey(symbol, resolucion), desdeMs, hastaMs);
+        if (miembros == null || miembros.isEmpty()) {
+            return List.of();
+        }
+
+        List<Barra> barras = new ArrayList<>(miembros.size());
+        for (String miembro : miembros) {
+            String[] campos = miembro.split(":");
+            if (campos.length != 6) {
+                continue;
+            }
+            barras.add(new Barra(
+                    Long.parseLong(campos[0]),
+                    BigDecimal.valueOf(Long.parseLong(campos[1]), PRICE_SCALE),
+                    BigDecimal.valueOf(Long.parseLong(campos[2]), PRICE_SCALE),
+                    BigDecimal.valueOf(Long.parseLong(campos[3]), PRICE_SCALE),
+                    BigDecimal.valueOf(Long.parseLong(campos[4]), PRICE_SCALE),
+                    Long.parseLong(campos[5])));
+        }
+        return barras;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static RedisScript<List> crearScript(String ruta) {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(ruta));
+        script.setResultType(List.class);
+        return script;
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,6 +36,13 @@ public interface PortfolioRepository extends JpaRepository<Portfolio, Long> {
     long countByUser(User user);
     long countByUserId(Long userId);
 
+    // Obtener todas las posiciones abiertas en un conjunto de símbolos (revalorización tras refresco)
+    List<Portfolio> findBySymbolIn(Collection<String> symbols);
+
+    // Número de posiciones abiertas por símbolo: [symbol, count] (demanda para el refresco adaptativo)
+    @Query("SELECT p.symbol, COUNT(p) FROM Portfolio p GROUP BY p.symbol")
+    List<Object[]> countPositionsBySymbol();
+
     // Eliminar todas las posiciones de un usuario
     void deleteByUserId(Long userId);
 }
\ No newline at end of file
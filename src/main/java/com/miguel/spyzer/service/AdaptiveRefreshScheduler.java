@@ -0,0 +1,301 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.config.SymbolGroupConfig;
+import com.miguel.spyzer.provider.MarketDataProvider;
+import com.miguel.spyzer.repository.PortfolioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Scheduler adaptativo de refresco de precios (sustituye a los tres schedulers
+ * fijos PREMIUM/ESTÁNDAR/EXTENDIDO).
+ *
+ * Cada ciclo (por defecto cada minuto, solo con NYSE abierto) calcula la
+ * urgencia de cada símbolo y refresca los más urgentes con el presupuesto de
+ * API disponible en el rate limiter:
+ *
+ *   urgencia = (antigüedad / intervaloBase) × factorVolatilidad × factorDemanda
+ *
+ * - intervaloBase: el del grupo de SymbolGroupConfig (20/60/90 min), usado solo como prior.
+ * - factorVolatilidad: volatilidad reciente del símbolo relativa a la mediana del universo.
+ * - factorDemanda: posiciones abiertas en portfolios, alertas activas cerca de su
+ *   trigger y tasa reciente de peticiones de usuarios.
+ *
+ * Un símbolo es candidato cuando su urgencia llega a 1 y nunca se refresca más
+ * de una vez por intervalo mínimo. El producto de factores está acotado, de modo
+ * que un símbolo tranquilo y sin demanda se refresca como mucho cada
+ * 2 × intervaloBase (1 / FACTOR_MINIMO). Los tiers pasan a ser una propiedad
+ * emergente: un símbolo EXTENDED muy movido o vigilado se refresca con más
+ * frecuencia que uno PREMIUM parado.
+ */
+@Service
+@Slf4j
+public class AdaptiveRefreshScheduler {
+
+    // Cotas del factor volatilidad × demanda
+    private static final double FACTOR_MINIMO = 0.5;   // como mucho 2 × intervaloBase sin refrescar
+    private static final double FACTOR_MAXIMO = 8.0;
+
+    // Urgencia de un símbolo aún no refrescado desde el arranque (por encima de cualquier urgencia real)
+    private static final double URGENCIA_SIN_REFRESCO = 1_000_000;
+
+    // Intervalo base para símbolos que no están en ningún grupo
+    private static final int MINUTOS_BASE_POR_DEFECTO = 60;
+
+    // Pesos de la demanda
+    private static final double PESO_POSICIONES = 0.5;
+    private static final double PESO_ALERTAS_CERCANAS = 1.0;
+    private static final double PESO_PETICIONES = 0.5;
+
+    // Una alerta está "cerca" si el precio puede alcanzar el trigger en un intervalo base
+    // (K desviaciones de la volatilidad reciente), o a menos de DISTANCIA_MINIMA_ALERTA si no hay volatilidad
+    private static final double K_DESVIACIONES_ALERTA = 2.0;
+    private static final double DISTANCIA_MINIMA_ALERTA = 0.01;
+
+    private final MarketDataService marketDataService;
+    private final MarketDataProvider marketDataProvider;
+    private final MarketHoursService marketHoursService;
+    private final ApiRateLimiter apiRateLimiter;
+    private final SymbolGroupConfig symbolGroupConfig;
+    private final SymbolActivityTracker activityTracker;
+    private final PortfolioRepository portfolioRepository;
+    private final AlertIndex alertIndex;
+
+    @Value("${marketdata.adaptive.max-symbols-per-cycle:40}")
+    private int maxSimbolosPorCiclo;
+
+    @Value("${marketdata.adaptive.min-interval-minutes:5}")
+    private int minutosIntervaloMinimo;
+
+    @Value("${marketdata.adaptive.reserved-tokens:1}")
+    private int tokensReservados;
+
+    public AdaptiveRefreshScheduler(MarketDataService marketDataService,
+                                    MarketDataProvider marketDataProvider,
+                                    MarketHoursService marketHoursService,
+                                    ApiRateLimiter apiRateLimiter,
+                                    SymbolGroupConfig symbolGroupConfig,
+                                    SymbolActivityTracker activityTracker,
+                                    PortfolioRepository portfolioRepository,
+                                    AlertIndex alertIndex) {
+        this.marketDataService = marketDataService;
+        this.marketDataProvider = marketDataProvider;
+        this.marketHoursService = marketHoursService;
+        this.apiRateLimiter = apiRateLimiter;
+        this.symbolGroupConfig = symbolGroupConfig;
+        this.activityTracker = activityTracker;
+        this.portfolioRepository = portfolioRepository;
+        this.alertIndex = alertIndex;
+    }
+
+    /**
+     * Urgencia calculada de un símbolo en un ciclo.
+     */
+    record Candidato(String symbol, double urgencia, double demanda) {
+    }
+
+    /**
+     * Ciclo de refresco adaptativo (solo durante horario NYSE).
+     */
+    @Scheduled(fixedDelayString = "${marketdata.adaptive.tick-ms:60000}",
+            initialDelayString = "${marketdata.adaptive.initial-delay-ms:10000}")
+    public void ejecutarCiclo() {
+        if (!marketHoursService.isNYSEOpen()) {
+            log.debug("Refresco adaptativo pausado - Mercado NYSE cerrado | {}", marketHoursService.getMarketStatusInfo());
+            return;
+        }
+
+        int presupuesto = calcularPresupuesto();
+        if (presupuesto <= 0) {
+            log.debug("Refresco adaptativo: sin presupuesto de API en este ciclo");
+            return;
+        }
+
+        List<Candidato> seleccion = seleccionar(calcularCandidatos(), presupuesto);
+        if (seleccion.isEmpty()) {
+            return;
+        }
+
+        // Si algún símbolo seleccionado tiene demanda real, el lote va por el carril prioritario
+        boolean conDemanda = seleccion.stream().anyMatch(c -> c.demanda() > 1.0);
+        ApiRateLimiter.Prioridad carril = conDemanda ? ApiRateLimiter.Prioridad.PREMIUM : ApiRateLimiter.Prioridad.ESTANDAR;
+
+        List<String> simbolos = seleccion.stream().map(Candidato::symbol).toList();
+        log.info("Refresco adaptativo: {} símbolos (presupuesto {}, carril {}) | top: {}",
+                simbolos.size(), presupuesto, carril, describir(seleccion));
+
+        marketDataService.actualizarSimbolos(simbolos, "ADAPTATIVO", carril);
+    }
+
+    /**
+     * Número máximo de símbolos a refrescar en este ciclo: permisos disponibles
+     * (dejando una reserva para peticiones interactivas) por símbolos por petición.
+     */
+    private int calcularPresupuesto() {
+        if (!marketDataProvider.requiereRateLimit()) {
+            return maxSimbolosPorCiclo;
+        }
+        int permisos = apiRateLimiter.getPermisosDisponibles() - tokensReservados;
+        if (permisos <= 0 || apiRateLimiter.getProfundidadTotal() > 0) {
+            return 0;
+        }
+        long simbolos = (long) permisos * Math.max(1, marketDataProvider.getMaxSimbolosPorPeticion());
+        return (int) Math.min(simbolos, maxSimbolosPorCiclo);
+    }
+
+    /**
+     * Calcula la urgencia de todos los símbolos configurados.
+     */
+    List<Candidato> calcularCandidatos() {
+        List<String> simbolos = symbolGroupConfig.getAllSymbols();
+        Instant ahora = Instant.now();
+
+        Map<String, SymbolActivityTracker.Actividad> actividades = new HashMap<>();
+        List<Double> volatilidades = new ArrayList<>();
+        for (String symbol : simbolos) {
+            SymbolActivityTracker.Actividad actividad = activityTracker.getActividad(symbol);
+            actividades.put(symbol, actividad);
+            if (actividad.volatilidad() > 0) {
+                volatilidades.add(actividad.volatilidad());
+            }
+        }
+        double volatilidadMediana = mediana(volatilidades);
+
+        Map<String, Long> posiciones = contarPosiciones();
+        Map<String, Integer> alertasCercanas = contarAlertasCercanas(actividades);
+
+        List<Candidato> candidatos = new ArrayList<>();
+        for (String symbol : simbolos) {
+            SymbolActivityTracker.Actividad actividad = actividades.get(symbol);
+            SymbolGroupConfig.UpdateFrequency frecuencia = symbolGroupConfig.getFrequencyForSymbol(symbol);
+            double minutosBase = frecuencia != null ? frecuencia.getMinutosBase() : MINUTOS_BASE_POR_DEFECTO;
+
+            double demanda = 1.0
+                    + PESO_POSICIONES * Math.log1p(posiciones.getOrDefault(symbol, 0L))
+                    + PESO_ALERTAS_CERCANAS * alertasCercanas.getOrDefault(symbol, 0)
+                    + PESO_PETICIONES * Math.log1p(actividad.tasaPeticiones());
+
+            if (actividad.ultimoRefresco() == null) {
+                // Nunca refrescado desde el arranque: máxima urgencia, desempata la demanda
+                candidatos.add(new Candidato(symbol, URGENCIA_SIN_REFRESCO * demanda, demanda));
+                continue;
+            }
+
+            double edadMinutos = Duration.between(actividad.ultimoRefresco(), ahora).toMillis() / 60_000.0;
+            if (edadMinutos < minutosIntervaloMinimo) {
+                continue;
+            }
+
+            double factorVolatilidad = (volatilidadMediana > 0 && actividad.volatilidad() > 0)
+                    ? actividad.volatilidad() / volatilidadMediana
+                    : 1.0;
+            double factor = Math.max(FACTOR_MINIMO, Math.min(FACTOR_MAXIMO, factorVolatilidad * demanda));
+            double urgencia = edadMinutos / minutosBase * factor;
+
+            if (urgencia >= 1.0) {
+                candidatos.add(new Candidato(symbol, urgencia, demanda));
+            }
+        }
+        return candidatos;
+    }
+
+    /**
+     * Los presupuesto símbolos de mayor urgencia (cola de prioridad acotada).
+     */
+    private List<Candidato> seleccionar(List<Candidato> candidatos, int presupuesto) {
+        PriorityQueue<Candidato> cola = new PriorityQueue<>(Comparator.comparingDouble(Candidato::urgencia));
+        for (Candidato candidato : candidatos) {
+            cola.offer(candidato);
+            if (cola.size() > presupuesto) {
+                cola.poll(); // descarta el menos urgente
+            }
+        }
+        List<Candidato> seleccion = new ArrayList<>(cola);
+        seleccion.sort(Comparator.comparingDouble(Candidato::urgencia).reversed());
+        return seleccion;
+    }
+
+    private Map<String, Long> contarPosiciones() {
+        Map<String, Long> posiciones = new HashMap<>();
+        try {
+            for (Object[] fila : portfolioRepository.countPositionsBySymbol()) {
+                posiciones.put(((String) fila[0]).toUpperCase(), ((Number) fila[1]).longValue());
+            }
+        } catch (Exception e) {
+            log.warn("No se pudo obtener la demanda de portfolios: {}", e.getMessage());
+        }
+        return posiciones;
+    }
+
+    /**
+     * Cuenta por símbolo las alertas de precio activas cuyo trigger está al
+     * alcance del movimiento esperado del precio en un intervalo base.
+     *
+     * Se consulta el AlertIndex (rango de sus árboles de precio), sin leer
+     * alertas de BD; solo contiene niveles de precio, no los umbrales de
+     * volumen ni los porcentajes de PERCENT_MOVE/TRAILING_STOP. Hasta que el
+     * índice se carga no hay demanda por alertas.
+     */
+    private Map<String, Integer> contarAlertasCercanas(Map<String, SymbolActivityTracker.Actividad> actividades) {
+        Map<String, Integer> cercanas = new HashMap<>();
+        if (!alertIndex.isListo()) {
+            return cercanas;
+        }
+
+        actividades.forEach((symbol, actividad) -> {
+            if (actividad.ultimoPrecio() <= 0) {
+                return;
+            }
+            SymbolGroupConfig.UpdateFrequency frecuencia = symbolGroupConfig.getFrequencyForSymbol(symbol);
+            double minutosBase = frecuencia != null ? frecuencia.getMinutosBase() : MINUTOS_BASE_POR_DEFECTO;
+            double movimientoEsperado = K_DESVIACIONES_ALERTA * actividad.volatilidad() * Math.sqrt(minutosBase);
+            double distancia = Math.max(DISTANCIA_MINIMA_ALERTA, movimientoEsperado) * actividad.ultimoPrecio();
+
+            int alertas = alertIndex.contarUmbralesPrecioEntre(symbol,
+                    BigDecimal.valueOf(actividad.ultimoPrecio() - distancia),
+                    BigDecimal.valueOf(actividad.ultimoPrecio() + distancia));
+            if (alertas > 0) {
+                cercanas.put(symbol, alertas);
+            }
+        });
+        return cercanas;
+    }
+
+    private static double mediana(List<Double> valores) {
+        if (valores.isEmpty()) {
+            return 0;
+        }
+        double[] ordenados = valores.stream().mapToDouble(Double::doubleValue).toArray();
+        Arrays.sort(ordenados);
+        int medio = ordenados.length / 2;
+        return ordenados.length % 2 == 0 ? (ordenados[medio - 1] + ordenados[medio]) / 2 : ordenados[medio];
+    }
+
+    private static String describir(List<Candidato> seleccion) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Math.min(5, seleccion.size()); i++) {
+            Candidato c = seleccion.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(c.symbol());
+            if (c.urgencia() < URGENCIA_SIN_REFRESCO) {
+                sb.append(String.format("(%.1f)", c.urgencia()));
+            }
+        }
+        return sb.toString();
+    }
+}
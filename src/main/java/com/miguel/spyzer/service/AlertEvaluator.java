@@ -0,0 +1,246 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.entities.Alert;
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.indicator.VolumeBaseline;
+import com.miguel.spyzer.stream.TickStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Evaluación rápida de alertas por cotización, desacoplada de la persistencia.
+ *
+ * El pipeline de ingesta entrega cada lote nada más parsearlo (ofrecer, en el
+ * virtual thread del fetch). Las cotizaciones que cruzan algún umbral del
+ * AlertIndex (precio, volumen, o movimiento/trailing stop cumplido) se
+ * encolan y un hilo propio las evalúa enseguida, sin esperar a que el micro-lote se persista ni a que el
+ * consumer group "alertas" lea el stream. La latencia recepción -> disparo se publica como histograma
+ * (spyzer.alerts.latency).
+ *
+ * El consumer group "alertas" sigue evaluando cada tick como respaldo (cola
+ * llena, índice sin cargar, caída del proceso): el disparo es un UPDATE
+ * condicional, así que lo que ya disparó esta vía no se dispara ni notifica
+ * dos veces.
+ */
+@Component
+@Slf4j
+public class AlertEvaluator {
+
+    /**
+     * Cotización pendiente de evaluar y su instante de recepción (System.nanoTime).
+     */
+    private record Pendiente(MarketData datos, long recibidoNanos) {
+
+        private String symbol() {
+            return datos.getSymbol();
+        }
+    }
+
+    private final AlertService alertService;
+    private final AlertIndex alertIndex;
+    private final VolumeBaseline volumeBaseline;
+    private final NotificationService notificationService;
+    private final TickStream tickStream;
+    private final boolean activo;
+    private final boolean streamActivo;
+
+    private final BlockingQueue<Pendiente> pendientes;
+    private final AtomicBoolean drenando = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "alert-evaluator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Timer latencia;
+    private final Counter descartadas;
+
+    public AlertEvaluator(AlertService alertService,
+                          AlertIndex alertIndex,
+                          VolumeBaseline volumeBaseline,
+                          NotificationService notificationService,
+                          TickStream tickStream,
+                          MeterRegistry meterRegistry,
+                          @Value("${alerts.fast-path.enabled:true}") boolean activo,
+                          @Value("${alerts.fast-path.queue-capacity:10000}") int capacidadCola,
+                          @Value("${marketdata.stream.enabled:true}") boolean streamActivo) {
+        this.alertService = alertService;
+        this.alertIndex = alertIndex;
+        this.volumeBaseline = volumeBaseline;
+        this.notificationService = notificationService;
+        this.tickStream = tickStream;
+        this.activo = activo;
+        this.streamActivo = streamActivo;
+        this.pendientes = new ArrayBlockingQueue<>(Math.max(1, capacidadCola));
+
+        this.latencia = Timer.builder("spyzer.alerts.latency")
+                .description("Tiempo desde la recepción de la cotización hasta el disparo de la alerta")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.descartadas = Counter.builder("spyzer.alerts.fastpath.dropped")
+                .description("Cotizaciones no evaluadas por la vía rápida (cola llena); las evalúa el stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Recibe cotizaciones recién parseadas. No bloquea: solo consulta el
+     * índice y encola las que cruzan algún umbral.
+     */
+    public void ofrecer(List<MarketData> cotizaciones) {
+        if (!activo || !alertIndex.isListo()) {
+            return;
+        }
+        long recibido = System.nanoTime();
+        boolean encoladas = false;
+        for (MarketData datos : cotizaciones) {
+            if (datos.getSymbol() == null || datos.getPrecio() == null || !cruzaAlgunUmbral(datos)) {
+                continue;
+            }
+            if (pendientes.offer(new Pendiente(datos, recibido))) {
+                encoladas = true;
+            } else {
+                descartadas.increment();
+            }
+        }
+        if (encoladas && drenando.compareAndSet(false, true)) {
+            executor.execute(this::drenar);
+        }
+    }
+
+    /**
+     * Todos los ticks pasan por registrarTick (estado de PERCENT_MOVE y
+     * TRAILING_STOP), crucen o no un umbral de precio o volumen.
+     */
+    private boolean cruzaAlgunUmbral(MarketData datos) {
+        boolean movimientoCumplido = datos.getTimestamp() != null && alertIndex.registrarTick(datos.getSymbol(),
+                datos.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                datos.getPrecio(), datos.getOpen());
+        if (movimientoCumplido) {
+            return true;
+        }
+        if (!alertIndex.candidatos(datos.getSymbol(), datos.getPrecio()).isEmpty()) {
+            return true;
+        }
+        if (datos.getVolumen() == null) {
+            return false;
+        }
+        Double media = alertIndex.tieneAlertasVolumenRelativo(datos.getSymbol())
+                ? volumeBaseline.media(datos.getSymbol()) : null;
+        return !alertIndex.candidatosVolumen(datos.getSymbol(), datos.getVolumen(), media).isEmpty();
+    }
+
+    /**
+     * Evalúa todo lo encolado; si mientras tanto llega algo nuevo vuelve a programarse.
+     */
+    private void drenar() {
+        try {
+            List<Pendiente> lote = new ArrayList<>();
+            while (pendientes.drainTo(lote) > 0) {
+                evaluar(lote);
+                lote.clear();
+            }
+        } finally {
+            drenando.set(false);
+            if (!pendientes.isEmpty() && drenando.compareAndSet(false, true)) {
+                executor.execute(this::drenar);
+            }
+        }
+    }
+
+    /**
+     * Evalúa en rondas con como mucho una cotización por símbolo, en orden,
+     * para no perder un cruce intermedio del trigger.
+     */
+    private void evaluar(List<Pendiente> lote) {
+        List<Map<String, Pendiente>> rondas = new ArrayList<>();
+        for (Pendiente pendiente : lote) {
+            Map<String, Pendiente> ronda = rondas.stream()
+                    .filter(r -> !r.containsKey(pendiente.symbol()))
+                    .findFirst()
+                    .orElseGet(() -> {
+                        Map<String, Pendiente> nueva = new HashMap<>();
+                        rondas.add(nueva);
+                        return nueva;
+                    });
+            ronda.put(pendiente.symbol(), pendiente);
+        }
+
+        for (Map<String, Pendiente> ronda : rondas) {
+            Map<String, BigDecimal> precios = new HashMap<>();
+            Map<String, Long> volumenes = new HashMap<>();
+            ronda.forEach((symbol, pendiente) -> {
+                precios.put(symbol, pendiente.datos().getPrecio());
+                if (pendiente.datos().getVolumen() != null) {
+                    volumenes.put(symbol, pendiente.datos().getVolumen());
+                }
+            });
+            try {
+                List<Alert> disparadas = new ArrayList<>(alertService.verificarTodasLasAlertas(precios));
+                disparadas.addAll(alertService.verificarAlertasVolumen(volumenes));
+                // El tick ya se registró al encolarlo: registrarTick lo ignora y solo se disparan las cumplidas
+                disparadas.addAll(alertService.verificarAlertasConEstado(
+                        ronda.values().stream().map(Pendiente::datos).toList()));
+                long ahora = System.nanoTime();
+                for (Alert alerta : disparadas) {
+                    Pendiente origen = ronda.get(alerta.getSymbol());
+                    if (origen != null) {
+                        latencia.record(ahora - origen.recibidoNanos(), TimeUnit.NANOSECONDS);
+                    }
+                }
+                notificar(disparadas);
+            } catch (Exception e) {
+                // El consumer group "alertas" volverá a evaluar estos ticks
+                log.error("Error en la evaluación rápida de alertas ({} símbolos): {}", precios.size(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Igual que el consumer group "alertas": las disparadas se publican en el
+     * stream de notificaciones, o se notifican directamente sin stream.
+     */
+    private void notificar(List<Alert> disparadas) {
+        if (disparadas.isEmpty()) {
+            return;
+        }
+        log.info("Vía rápida: {} alertas disparadas", disparadas.size());
+        if (streamActivo) {
+            try {
+                tickStream.publicarAlertasDisparadas(disparadas.stream().map(Alert::getId).toList());
+                return;
+            } catch (Exception e) {
+                log.warn("Error publicando alertas disparadas en el stream, notificando directamente: {}", e.getMessage());
+            }
+        }
+        for (Alert alerta : disparadas) {
+            try {
+                notificationService.enviarNotificacionAlerta(alerta);
+            } catch (Exception e) {
+                log.error("Error enviando notificación para alerta {}: {}", alerta.getId(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,593 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.cache.CacheInvalidationBus;
+import com.miguel.spyzer.entities.Alert;
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.repository.AlertRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice en memoria de los umbrales de las alertas activas, por símbolo.
+ *
+ * Por cada símbolo:
+ * - PRICE_UP: árbol ascendente trigger -> ids; con un precio p se disparan
+ *   las del prefijo trigger <= p
+ * - PRICE_DOWN: árbol descendente trigger -> ids; se disparan las del
+ *   prefijo trigger >= p
+ * - PRICE_EQUAL: mapa exacto trigger -> ids
+ * - VOLUME_HIGH absolutas: árbol ascendente volumen -> ids (prefijo <= volumen del día)
+ * - VOLUME_HIGH relativas: árbol ascendente múltiplo -> ids (prefijo <=
+ *   volumen del día / volumen medio)
+ * - PERCENT_MOVE y TRAILING_STOP: estado en curso por alerta (referencia de
+ *   la sesión o máximo alcanzado) que cada tick del símbolo actualiza en O(1);
+ *   AlertStateCheckpoint lo guarda en BD por lotes y las recargas lo conservan
+ *
+ * Una cotización visita solo las alertas que cruza: O(log n + k) con k
+ * alertas disparadas, en lugar de recorrer todas las alertas del sistema.
+ *
+ * El índice solo propone candidatos: quien evalúa relee las alertas de BD y
+ * vuelve a comprobarlas, así que una entrada obsoleta nunca dispara nada
+ * (y se reindexa con el estado de BD al detectarla). Sincronización:
+ * - AlertService registra cada alta/cambio/borrado, aplicado tras el commit
+ * - los cambios se publican por el CacheInvalidationBus para que el resto de
+ *   réplicas relean esa alerta
+ * - recarga completa al arrancar y cada resync-interval-ms, por si se pierde
+ *   algún mensaje de pub/sub
+ *
+ * Hasta la primera carga el índice no está listo y la evaluación recorre las
+ * alertas activas como antes.
+ */
+@Component
+@Slf4j
+public class AlertIndex {
+
+    static final String REGION = "alert-index";
+
+    /**
+     * Umbral indexado de una alerta.
+     */
+    private record Entrada(String symbol, Alert.TipoAlerta tipo, Alert.ModoUmbral modo, BigDecimal valor) {
+    }
+
+    /**
+     * Alta/cambio (entrada != null) o baja (entrada == null) de una alerta,
+     * con el estado guardado en BD de las alertas PERCENT_MOVE/TRAILING_STOP.
+     */
+    private record Cambio(Long id, Entrada entrada, BigDecimal precioReferencia, LocalDate sesionReferencia) {
+        private Cambio(Long id, Entrada entrada) {
+            this(id, entrada, null, null);
+        }
+    }
+
+    /**
+     * Estado de una alerta PERCENT_MOVE/TRAILING_STOP a guardar en BD.
+     */
+    public record EstadoGuardable(Long id, BigDecimal precioReferencia, LocalDate sesionReferencia) {
+    }
+
+    /**
+     * Estado en curso de una alerta PERCENT_MOVE/TRAILING_STOP; se accede con
+     * el monitor del IndiceSimbolo que la contiene.
+     */
+    private static final class EstadoMovimiento {
+        private final Alert.TipoAlerta tipo;
+        private double porcentaje;
+        // PERCENT_MOVE: apertura (o primer precio) de la sesión; TRAILING_STOP: máximo alcanzado
+        private double referencia;
+        private LocalDate sesion;
+        private long ultimoTs = Long.MIN_VALUE;
+        // Umbral superado y pendiente de disparo (se mantiene aunque el precio vuelva)
+        private boolean cumplida;
+        private boolean pendienteGuardar;
+
+        private EstadoMovimiento(Alert.TipoAlerta tipo, BigDecimal porcentaje,
+                                 BigDecimal precioReferencia, LocalDate sesionReferencia) {
+            this.tipo = tipo;
+            this.porcentaje = porcentaje.doubleValue();
+            this.referencia = precioReferencia != null ? precioReferencia.doubleValue() : Double.NaN;
+            this.sesion = sesionReferencia;
+        }
+
+        private void cambiarPorcentaje(BigDecimal nuevo) {
+            if (nuevo.doubleValue() != porcentaje) {
+                porcentaje = nuevo.doubleValue();
+                cumplida = false;
+            }
+        }
+
+        /**
+         * Aplica un tick; los no posteriores al último aplicado se ignoran
+         * (la vía rápida y el stream entregan los mismos ticks).
+         */
+        private void aplicar(long tsMs, double precio, double apertura) {
+            if (tsMs <= ultimoTs) {
+                return;
+            }
+            ultimoTs = tsMs;
+            if (tipo == Alert.TipoAlerta.PERCENT_MOVE) {
+                LocalDate dia = HistoricalDataPoint.diaDe(Instant.ofEpochMilli(tsMs));
+                if (!dia.equals(sesion)) {
+                    sesion = dia;
+                    referencia = apertura > 0 ? apertura : precio;
+                    pendienteGuardar = true;
+                }
+            } else if (Double.isNaN(referencia) || precio > referencia) {
+                referencia = precio;
+                pendienteGuardar = true;
+            }
+            if (!cumplida && Alert.movimientoSuperaUmbral(tipo, porcentaje, precio, referencia)) {
+                cumplida = true;
+            }
+        }
+
+        private void heredar(EstadoMovimiento anterior) {
+            referencia = anterior.referencia;
+            sesion = anterior.sesion;
+            ultimoTs = anterior.ultimoTs;
+            cumplida = anterior.cumplida && anterior.porcentaje == porcentaje;
+            pendienteGuardar = anterior.pendienteGuardar;
+        }
+    }
+
+    /**
+     * Árboles de umbrales de un símbolo; se accede con su monitor tomado.
+     */
+    private static final class IndiceSimbolo {
+        private final NavigableMap<BigDecimal, Set<Long>> subida = new TreeMap<>();
+        private final NavigableMap<BigDecimal, Set<Long>> bajada = new TreeMap<>(Comparator.reverseOrder());
+        // Claves normalizadas con stripTrailingZeros (200.0 y 200.00 son el mismo umbral)
+        private final Map<BigDecimal, Set<Long>> exactas = new HashMap<>();
+        private final NavigableMap<BigDecimal, Set<Long>> volumenAbsoluto = new TreeMap<>();
+        private final NavigableMap<BigDecimal, Set<Long>> volumenRelativo = new TreeMap<>();
+        private final Map<Long, EstadoMovimiento> movimientos = new HashMap<>();
+
+        private Map<BigDecimal, Set<Long>> arbol(Entrada entrada) {
+            return switch (entrada.tipo()) {
+                case PRICE_UP -> subida;
+                case PRICE_DOWN -> bajada;
+                case PRICE_EQUAL -> exactas;
+                case VOLUME_HIGH -> entrada.modo() == Alert.ModoUmbral.RELATIVO ? volumenRelativo : volumenAbsoluto;
+                case PERCENT_MOVE, TRAILING_STOP -> throw new IllegalArgumentException("Tipo con estado: " + entrada.tipo());
+            };
+        }
+
+        private void poner(Long id, Entrada entrada) {
+            if (entrada.tipo().isConEstado()) {
+                return; // en movimientos, con su estado (Estado.aplicar)
+            }
+            arbol(entrada).computeIfAbsent(clave(entrada), v -> new HashSet<>()).add(id);
+        }
+
+        private void quitar(Long id, Entrada entrada) {
+            if (entrada.tipo().isConEstado()) {
+                return;
+            }
+            Map<BigDecimal, Set<Long>> arbol = arbol(entrada);
+            BigDecimal clave = clave(entrada);
+            Set<Long> ids = arbol.get(clave);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                arbol.remove(clave);
+            }
+        }
+
+        private static BigDecimal clave(Entrada entrada) {
+            return entrada.tipo() == Alert.TipoAlerta.PRICE_EQUAL
+                    ? entrada.valor().stripTrailingZeros() : entrada.valor();
+        }
+    }
+
+    /**
+     * Contenido completo del índice; las recargas construyen uno nuevo y lo sustituyen.
+     */
+    private static final class Estado {
+        private final Map<String, IndiceSimbolo> simbolos = new ConcurrentHashMap<>();
+        private final Map<Long, Entrada> entradas = new ConcurrentHashMap<>();
+
+        private void aplicar(Cambio cambio) {
+            Entrada previa = entradas.remove(cambio.id());
+            EstadoMovimiento movimientoPrevio = null;
+            if (previa != null) {
+                IndiceSimbolo indice = simbolos.get(previa.symbol());
+                synchronized (indice) {
+                    indice.quitar(cambio.id(), previa);
+                    movimientoPrevio = indice.movimientos.remove(cambio.id());
+                }
+            }
+            Entrada entrada = cambio.entrada();
+            if (entrada != null) {
+                entradas.put(cambio.id(), entrada);
+                IndiceSimbolo indice = simbolos.computeIfAbsent(entrada.symbol(), s -> new IndiceSimbolo());
+                synchronized (indice) {
+                    indice.poner(cambio.id(), entrada);
+                    if (entrada.tipo().isConEstado()) {
+                        // Un cambio de porcentaje o de mensaje conserva el estado en curso
+                        boolean conservar = movimientoPrevio != null && previa.tipo() == entrada.tipo()
+                                && previa.symbol().equals(entrada.symbol());
+                        EstadoMovimiento movimiento = conservar ? movimientoPrevio
+                                : new EstadoMovimiento(entrada.tipo(), entrada.valor(),
+                                        cambio.precioReferencia(), cambio.sesionReferencia());
+                        movimiento.cambiarPorcentaje(entrada.valor());
+                        indice.movimientos.put(cambio.id(), movimiento);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Traslada a este estado (recién cargado de BD) el estado en curso de
+         * las alertas con estado del anterior, más reciente que el guardado.
+         */
+        private void heredarMovimientos(Estado anterior) {
+            for (IndiceSimbolo indice : simbolos.values()) {
+                synchronized (indice) {
+                    indice.movimientos.forEach((id, movimiento) -> {
+                        Entrada previa = anterior.entradas.get(id);
+                        Entrada actual = entradas.get(id);
+                        IndiceSimbolo indiceAnterior = previa != null ? anterior.simbolos.get(previa.symbol()) : null;
+                        if (indiceAnterior == null || previa.tipo() != actual.tipo()
+                                || !previa.symbol().equals(actual.symbol())) {
+                            return;
+                        }
+                        synchronized (indiceAnterior) {
+                            EstadoMovimiento movimientoAnterior = indiceAnterior.movimientos.get(id);
+                            if (movimientoAnterior != null) {
+                                movimiento.heredar(movimientoAnterior);
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private final AlertRepository alertRepository;
+    private final CacheInvalidationBus invalidationBus;
+
+    // Serializa a los escritores y la sustitución del estado en las recargas
+    private final Object escritura = new Object();
+    private volatile Estado estado = new Estado();
+    private volatile boolean listo;
+    // Cambios aplicados mientras se recarga, para reaplicarlos sobre el estado nuevo
+    private List<Cambio> cambiosDuranteRecarga;
+
+    public AlertIndex(AlertRepository alertRepository, CacheInvalidationBus invalidationBus) {
+        this.alertRepository = alertRepository;
+        this.invalidationBus = invalidationBus;
+        invalidationBus.registrar((region, clave) -> {
+            if (REGION.equals(region)) {
+                recibirCambioRemoto(clave);
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlArrancar() {
+        recargar();
+    }
+
+    @Scheduled(fixedDelayString = "${alerts.index.resync-interval-ms:600000}",
+            initialDelayString = "${alerts.index.resync-interval-ms:600000}")
+    public void resincronizar() {
+        recargar();
+    }
+
+    /**
+     * true cuando el índice se ha cargado al menos una vez.
+     */
+    public boolean isListo() {
+        return listo;
+    }
+
+    /**
+     * Ids de las alertas de precio del símbolo que un precio cruza.
+     */
+    public List<Long> candidatos(String symbol, BigDecimal precio) {
+        IndiceSimbolo indice = estado.simbolos.get(symbol);
+        if (indice == null || precio == null) {
+            return List.of();
+        }
+        List<Long> ids = new ArrayList<>();
+        synchronized (indice) {
+            indice.subida.headMap(precio, true).values().forEach(ids::addAll);
+            // Árbol descendente: el prefijo hasta precio son los triggers >= precio
+            indice.bajada.headMap(precio, true).values().forEach(ids::addAll);
+            Set<Long> exactas = indice.exactas.get(precio.stripTrailingZeros());
+            if (exactas != null) {
+                ids.addAll(exactas);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Número de alertas de precio (PRICE_UP, PRICE_DOWN, PRICE_EQUAL) del
+     * símbolo con el trigger entre minimo y maximo, ambos incluidos.
+     */
+    public int contarUmbralesPrecioEntre(String symbol, BigDecimal minimo, BigDecimal maximo) {
+        IndiceSimbolo indice = estado.simbolos.get(symbol);
+        if (indice == null || minimo.compareTo(maximo) > 0) {
+            return 0;
+        }
+        int total = 0;
+        synchronized (indice) {
+            for (Set<Long> ids : indice.subida.subMap(minimo, true, maximo, true).values()) {
+                total += ids.size();
+            }
+            // Árbol descendente: el rango va de maximo a minimo
+            for (Set<Long> ids : indice.bajada.subMap(maximo, true, minimo, true).values()) {
+                total += ids.size();
+            }
+            for (Map.Entry<BigDecimal, Set<Long>> exacta : indice.exactas.entrySet()) {
+                if (exacta.getKey().compareTo(minimo) >= 0 && exacta.getKey().compareTo(maximo) <= 0) {
+                    total += exacta.getValue().size();
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Ids de las alertas VOLUME_HIGH del símbolo que un volumen diario cruza.
+     *
+     * @param volumenMedio Volumen medio diario (VolumeBaseline), o null si aún
+     *                     no se conoce (no se proponen alertas relativas)
+     */
+    public List<Long> candidatosVolumen(String symbol, Long volumenDia, Double volumenMedio) {
+        IndiceSimbolo indice = estado.simbolos.get(symbol);
+        if (indice == null || volumenDia == null) {
+            return List.of();
+        }
+        List<Long> ids = new ArrayList<>();
+        synchronized (indice) {
+            indice.volumenAbsoluto.headMap(BigDecimal.valueOf(volumenDia), true).values().forEach(ids::addAll);
+            if (volumenMedio != null && volumenMedio > 0) {
+                indice.volumenRelativo.headMap(Alert.ratioVolumen(volumenDia, volumenMedio), true)
+                        .values().forEach(ids::addAll);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * true si el símbolo tiene alguna alerta VOLUME_HIGH relativa (para no
+     * calcular su volumen medio sin necesidad).
+     */
+    public boolean tieneAlertasVolumenRelativo(String symbol) {
+        IndiceSimbolo indice = estado.simbolos.get(symbol);
+        if (indice == null) {
+            return false;
+        }
+        synchronized (indice) {
+            return !indice.volumenRelativo.isEmpty();
+        }
+    }
+
+    /**
+     * Aplica un tick al estado de las alertas PERCENT_MOVE/TRAILING_STOP del símbolo (O(1) por alerta).
+     *
+     * @param apertura Apertura de la sesión si la cotización la trae (referencia de PERCENT_MOVE)
+     * @return true si alguna alerta con estado del símbolo ha superado su umbral
+     */
+    public boolean registrarTick(String symbol, long tsMs, BigDecimal precio, BigDecimal apertura) {
+        IndiceSimbolo indice = estado.simbolos.get(symbol);
+        if (indice == null || precio == null) {
+            return false;
+        }
+        double valorPrecio = precio.doubleValue();
+        double valorApertura = apertura != null ? apertura.doubleValue() : Double.NaN;
+        boolean cumplidas = false;
+        synchronized (indice) {
+            for (EstadoMovimiento movimiento : indice.movimientos.values()) {
+                movimiento.aplicar(tsMs, valorPrecio, valorApertura);
+                cumplidas |= movimiento.cumplida;
+            }
+        }
+        return cumplidas;
+    }
+
+    /**
+     * Ids de las alertas con estado del símbolo que han superado su umbral.
+     */
+    public List<Long> movimientosCumplidos(String symbol) {
+        IndiceSimbolo indice = estado.simbolos.get(symbol);
+        if (indice == null) {
+            return List.of();
+        }
+        List<Long> ids = new ArrayList<>();
+        synchronized (indice) {
+            indice.movimientos.forEach((id, movimiento) -> {
+                if (movimiento.cumplida) {
+                    ids.add(id);
+                }
+            });
+        }
+        return ids;
+    }
+
+    /**
+     * Estados de alertas con estado cambiados desde la última extracción
+     * (quedan marcados como guardados).
+     */
+    public List<EstadoGuardable> extraerEstadosPendientes() {
+        List<EstadoGuardable> pendientes = new ArrayList<>();
+        for (IndiceSimbolo indice : estado.simbolos.values()) {
+            synchronized (indice) {
+                indice.movimientos.forEach((id, movimiento) -> {
+                    if (movimiento.pendienteGuardar && !Double.isNaN(movimiento.referencia)) {
+                        movimiento.pendienteGuardar = false;
+                        pendientes.add(new EstadoGuardable(id, BigDecimal.valueOf(movimiento.referencia),
+                                movimiento.sesion));
+                    }
+                });
+            }
+        }
+        return pendientes;
+    }
+
+    /**
+     * Vuelve a marcar como pendientes de guardar estados cuya escritura falló.
+     */
+    public void marcarPendientes(Collection<EstadoGuardable> estados) {
+        Estado actual = estado;
+        for (EstadoGuardable guardable : estados) {
+            Entrada entrada = actual.entradas.get(guardable.id());
+            IndiceSimbolo indice = entrada != null ? actual.simbolos.get(entrada.symbol()) : null;
+            if (indice == null) {
+                continue;
+            }
+            synchronized (indice) {
+                EstadoMovimiento movimiento = indice.movimientos.get(guardable.id());
+                if (movimiento != null) {
+                    movimiento.pendienteGuardar = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Registra el estado actual de una alerta (alta, cambio de trigger/tipo,
+     * activación, desactivación o disparo). Dentro de una transacción se
+     * aplica tras el commit; si hace rollback el índice no cambia.
+     */
+    public void actualizar(Alert alerta) {
+        registrar(new Cambio(alerta.getId(), entradaDe(alerta.getSymbol(), alerta.getTipo(), alerta.getModoUmbral(),
+                alerta.getValorTrigger(), alerta.getActiva(), alerta.getDisparada()),
+                alerta.getPrecioReferencia(), alerta.getSesionReferencia()));
+    }
+
+    /**
+     * Registra varias alertas (p. ej. las disparadas en una evaluación).
+     */
+    public void actualizar(Collection<Alert> alertas) {
+        alertas.forEach(this::actualizar);
+    }
+
+    /**
+     * Registra el borrado de una alerta (aplicado tras el commit, como actualizar).
+     */
+    public void eliminar(Long alertaId) {
+        registrar(new Cambio(alertaId, null));
+    }
+
+    private void registrar(Cambio cambio) {
+        if (cambio.id() == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    aplicarYPublicar(cambio);
+                }
+            });
+        } else {
+            aplicarYPublicar(cambio);
+        }
+    }
+
+    private void aplicarYPublicar(Cambio cambio) {
+        aplicar(cambio);
+        invalidationBus.publicar(REGION, cambio.id());
+    }
+
+    private void aplicar(Cambio cambio) {
+        synchronized (escritura) {
+            estado.aplicar(cambio);
+            if (cambiosDuranteRecarga != null) {
+                cambiosDuranteRecarga.add(cambio);
+            }
+        }
+    }
+
+    /**
+     * Otra réplica cambió una alerta: se relee de BD y se indexa su estado actual.
+     */
+    private void recibirCambioRemoto(String clave) {
+        try {
+            Long id = Long.valueOf(clave);
+            aplicar(alertRepository.findTriggerById(id)
+                    .map(AlertIndex::cambioDe)
+                    .orElseGet(() -> new Cambio(id, null)));
+        } catch (Exception e) {
+            // La resincronización periódica corregirá el índice
+            log.warn("No se pudo aplicar el cambio remoto de la alerta {} al índice: {}", clave, e.getMessage());
+        }
+    }
+
+    /**
+     * Reconstruye el índice completo desde BD sin bloquear las evaluaciones,
+     * que siguen usando el estado anterior hasta la sustitución.
+     */
+    private void recargar() {
+        synchronized (escritura) {
+            if (cambiosDuranteRecarga != null) {
+                return; // ya hay una recarga en curso
+            }
+            cambiosDuranteRecarga = new ArrayList<>();
+        }
+        try {
+            Estado nuevo = new Estado();
+            for (AlertRepository.TriggerAlerta t : alertRepository.findTriggersByActivaTrueAndDisparadaFalse()) {
+                Cambio cambio = cambioDe(t);
+                if (cambio.entrada() != null) {
+                    nuevo.aplicar(cambio);
+                }
+            }
+            synchronized (escritura) {
+                // Los cambios confirmados durante la carga pueden ser posteriores a lo leído,
+                // y el estado en memoria de las alertas con estado, posterior al guardado
+                cambiosDuranteRecarga.forEach(nuevo::aplicar);
+                nuevo.heredarMovimientos(estado);
+                estado = nuevo;
+                listo = true;
+            }
+            log.info("Índice de alertas cargado: {} alertas en {} símbolos",
+                    nuevo.entradas.size(), nuevo.simbolos.size());
+        } catch (Exception e) {
+            log.error("Error cargando el índice de alertas: {}", e.getMessage());
+        } finally {
+            synchronized (escritura) {
+                cambiosDuranteRecarga = null;
+            }
+        }
+    }
+
+    private static Cambio cambioDe(AlertRepository.TriggerAlerta t) {
+        return new Cambio(t.getId(), entradaDe(t.getSymbol(), t.getTipo(), t.getModoUmbral(), t.getValorTrigger(),
+                t.getActiva(), t.getDisparada()), t.getPrecioReferencia(), t.getSesionReferencia());
+    }
+
+    /**
+     * Entrada a indexar, o null si la alerta no debe estar en el índice
+     * (inactiva o disparada).
+     */
+    private static Entrada entradaDe(String symbol, Alert.TipoAlerta tipo, Alert.ModoUmbral modo, BigDecimal valor,
+                                     Boolean activa, Boolean disparada) {
+        if (symbol == null || tipo == null || valor == null
+                || !Boolean.TRUE.equals(activa) || Boolean.TRUE.equals(disparada)) {
+            return null;
+        }
+        return new Entrada(symbol, tipo, tipo == Alert.TipoAlerta.VOLUME_HIGH ? modo : null, valor);
+    }
+}
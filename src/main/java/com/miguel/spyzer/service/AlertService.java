@@ -1,7 +1,9 @@
 package com.miguel.spyzer.service;
 
 import com.miguel.spyzer.entities.Alert;
+import com.miguel.spyzer.entities.MarketData;
 import com.miguel.spyzer.entities.User;
+import com.miguel.spyzer.indicator.VolumeBaseline;
 import jakarta.persistence.EntityNotFoundException;
 import com.miguel.spyzer.repository.AlertRepository;
 import com.miguel.spyzer.repository.UserRepository;
@@ -14,7 +16,18 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 
 @Service
 @RequiredArgsConstructor
@@ -24,12 +37,25 @@ public class AlertService {
     
     private final AlertRepository alertRepository;
     private final UserRepository userRepository;
+    private final AlertIndex alertIndex;
+    private final VolumeBaseline volumeBaseline;
+    
+    private final AtomicReference<LocalDateTime> ultimaMarcaDisparo = new AtomicReference<>(LocalDateTime.MIN);
     
     /**
      * Crear una nueva alerta
      */
     public Alert crearAlerta(Long userId, String symbol, Alert.TipoAlerta tipo, 
                            BigDecimal valorTrigger, String mensajePersonalizado) {
+        return crearAlerta(userId, symbol, tipo, null, valorTrigger, mensajePersonalizado);
+    }
+    
+    /**
+     * Crear una nueva alerta indicando el modo de umbral (solo VOLUME_HIGH:
+     * volumen absoluto o múltiplo del volumen medio; null = ABSOLUTO)
+     */
+    public Alert crearAlerta(Long userId, String symbol, Alert.TipoAlerta tipo, Alert.ModoUmbral modoUmbral,
+                           BigDecimal valorTrigger, String mensajePersonalizado) {
         
         // Validaciones de parámetros
         validarParametrosAlerta(symbol, valorTrigger, tipo);
@@ -45,6 +71,7 @@ public class AlertService {
                 .user(user)
                 .symbol(symbol.toUpperCase().trim())
                 .tipo(tipo)
+                .modoUmbral(modoUmbralPara(tipo, modoUmbral))
                 .valorTrigger(valorTrigger)
                 .mensajePersonalizado(mensajePersonalizado)
                 .activa(true)
@@ -53,6 +80,7 @@ public class AlertService {
                 .build();
         
         Alert alertaGuardada = alertRepository.save(nuevaAlerta);
+        alertIndex.actualizar(alertaGuardada);
         log.info("Alerta creada con ID: {}", alertaGuardada.getId());
         
         return alertaGuardada;
@@ -117,6 +145,7 @@ public class AlertService {
         alerta.setActiva(!alerta.getActiva());
         
         Alert alertaActualizada = alertRepository.save(alerta);
+        alertIndex.actualizar(alertaActualizada);
         log.info("Alerta {} ahora está: {}", alertaId, alertaActualizada.getActiva() ? "ACTIVA" : "INACTIVA");
         
         return alertaActualizada;
@@ -137,6 +166,7 @@ public class AlertService {
         alerta.reactivar();
         
         Alert alertaReactivada = alertRepository.save(alerta);
+        alertIndex.actualizar(alertaReactivada);
         log.info("Alerta {} reactivada exitosamente", alertaId);
         
         return alertaReactivada;
@@ -150,6 +180,7 @@ public class AlertService {
         
         Alert alerta = buscarAlertaPorIdYUsuario(alertaId, userId);
         alertRepository.delete(alerta);
+        alertIndex.eliminar(alertaId);
         
         log.info("Alerta {} eliminada exitosamente", alertaId);
     }
@@ -168,14 +199,16 @@ public class AlertService {
         
         log.debug("Verificando alertas para {} a precio ${}", symbol, precioActual);
         
-        List<Alert> alertasActivas = obtenerAlertasActivasPorSimbolo(symbol);
-        List<Alert> alertasDisparadas = alertasActivas.stream()
-                .filter(alerta -> alerta.debeDispararseConPrecio(precioActual))
-                .map(alerta -> {
-                    alerta.disparar();
-                    return alertRepository.save(alerta);
-                })
-                .toList();
+        String symbolUpper = symbol.toUpperCase().trim();
+        List<Alert> alertasDisparadas;
+        if (alertIndex.isListo()) {
+            alertasDisparadas = dispararCandidatasPrecio(Map.of(symbolUpper, precioActual));
+        } else {
+            List<Alert> alertasActivas = obtenerAlertasActivasPorSimbolo(symbolUpper);
+            alertasDisparadas = dispararYGuardar(alertasActivas.stream()
+                    .filter(alerta -> alerta.debeDispararseConPrecio(precioActual))
+                    .toList());
+        }
         
         if (!alertasDisparadas.isEmpty()) {
             log.info("Se dispararon {} alertas para {}", alertasDisparadas.size(), symbol);
@@ -197,18 +230,21 @@ public class AlertService {
         log.info("Ejecutando verificación masiva de alertas. Precios disponibles: {}", 
                 preciosActuales.size());
         
+        if (alertIndex.isListo()) {
+            List<Alert> alertasDisparadas = dispararCandidatasPrecio(preciosActuales);
+            log.info("Verificación masiva completada (índice). Alertas disparadas: {}", alertasDisparadas.size());
+            return alertasDisparadas;
+        }
+        
+        // Índice aún sin cargar (arranque): recorrido completo de las alertas activas
         List<Alert> todasLasAlertas = obtenerTodasLasAlertasActivas();
         
-        List<Alert> alertasDisparadas = todasLasAlertas.stream()
+        List<Alert> alertasDisparadas = dispararYGuardar(todasLasAlertas.stream()
                 .filter(alerta -> {
                     BigDecimal precioActual = preciosActuales.get(alerta.getSymbol());
                     return precioActual != null && alerta.debeDispararseConPrecio(precioActual);
                 })
-                .map(alerta -> {
-                    alerta.disparar();
-                    return alertRepository.save(alerta);
-                })
-                .toList();
+                .toList());
         
         log.info("Verificación masiva completada. Alertas disparadas: {}/{}", 
                 alertasDisparadas.size(), todasLasAlertas.size());
@@ -216,6 +252,83 @@ public class AlertService {
         return alertasDisparadas;
     }
     
+    /**
+     * Verificar las alertas PERCENT_MOVE y TRAILING_STOP con una serie de
+     * cotizaciones (en orden). Cada tick actualiza en memoria el estado de las
+     * alertas de su símbolo (AlertIndex) y se disparan las que han superado su
+     * umbral; el estado no se relee de BD. Sin índice cargado no se evalúan
+     * (el estado vive en él).
+     */
+    public List<Alert> verificarAlertasConEstado(Collection<MarketData> cotizaciones) {
+        if (cotizaciones == null || cotizaciones.isEmpty() || !alertIndex.isListo()) {
+            return List.of();
+        }
+        
+        Set<String> simbolosCumplidos = new LinkedHashSet<>();
+        for (MarketData datos : cotizaciones) {
+            if (datos == null || datos.getSymbol() == null || datos.getPrecio() == null || datos.getTimestamp() == null) {
+                continue;
+            }
+            long tsMs = datos.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            if (alertIndex.registrarTick(datos.getSymbol(), tsMs, datos.getPrecio(), datos.getOpen())) {
+                simbolosCumplidos.add(datos.getSymbol());
+            }
+        }
+        if (simbolosCumplidos.isEmpty()) {
+            return List.of();
+        }
+        
+        List<Long> ids = new ArrayList<>();
+        simbolosCumplidos.forEach(symbol -> ids.addAll(alertIndex.movimientosCumplidos(symbol)));
+        List<Alert> alertasDisparadas = dispararCandidatas(ids, alerta -> alerta.esConEstado()
+                && Boolean.TRUE.equals(alerta.getActiva()) && !Boolean.TRUE.equals(alerta.getDisparada()));
+        
+        if (!alertasDisparadas.isEmpty()) {
+            log.info("Alertas de movimiento/trailing stop disparadas: {}", alertasDisparadas.size());
+        }
+        return alertasDisparadas;
+    }
+    
+    /**
+     * Verificar las alertas VOLUME_HIGH con el volumen acumulado del día de
+     * cada símbolo (symbol -> volumen). Las relativas se comparan con el
+     * volumen medio diario de VolumeBaseline.
+     */
+    public List<Alert> verificarAlertasVolumen(Map<String, Long> volumenesDia) {
+        if (volumenesDia == null || volumenesDia.isEmpty()) {
+            return List.of();
+        }
+        
+        Map<String, Double> medias = new HashMap<>();
+        Predicate<Alert> debeDispararse = alerta -> alerta.debeDispararseConVolumen(
+                volumenesDia.get(alerta.getSymbol()), medias.get(alerta.getSymbol()));
+        
+        List<Alert> alertasDisparadas;
+        if (alertIndex.isListo()) {
+            List<Long> ids = new ArrayList<>();
+            volumenesDia.forEach((symbol, volumen) -> {
+                Double media = alertIndex.tieneAlertasVolumenRelativo(symbol) ? volumeBaseline.media(symbol) : null;
+                medias.put(symbol, media);
+                ids.addAll(alertIndex.candidatosVolumen(symbol, volumen, media));
+            });
+            alertasDisparadas = dispararCandidatas(ids, debeDispararse);
+        } else {
+            // Índice aún sin cargar (arranque): recorrido de las alertas de volumen activas
+            List<Alert> alertasVolumen = alertRepository.findByTipoAndActivaTrueAndDisparadaFalse(Alert.TipoAlerta.VOLUME_HIGH);
+            for (Alert alerta : alertasVolumen) {
+                if (alerta.esUmbralRelativo() && volumenesDia.containsKey(alerta.getSymbol())) {
+                    medias.computeIfAbsent(alerta.getSymbol(), volumeBaseline::media);
+                }
+            }
+            alertasDisparadas = dispararYGuardar(alertasVolumen.stream().filter(debeDispararse).toList());
+        }
+        
+        if (!alertasDisparadas.isEmpty()) {
+            log.info("Alertas de volumen disparadas: {}", alertasDisparadas.size());
+        }
+        return alertasDisparadas;
+    }
+    
     /**
      * Contar alertas activas de un usuario
      */
@@ -292,6 +405,7 @@ public class AlertService {
                 alertaId, userId, nuevoValor);
         
         Alert alerta = buscarAlertaPorIdYUsuario(alertaId, userId);
+        validarPorcentajeTrailing(alerta.getTipo(), nuevoValor);
         alerta.setValorTrigger(nuevoValor);
         
         // Si la alerta estaba disparada, la reactivamos al cambiar el trigger
@@ -300,7 +414,9 @@ public class AlertService {
             alerta.reactivar();
         }
         
-        return alertRepository.save(alerta);
+        Alert alertaActualizada = alertRepository.save(alerta);
+        alertIndex.actualizar(alertaActualizada);
+        return alertaActualizada;
     }
     
     /**
@@ -308,17 +424,27 @@ public class AlertService {
      */
     public Alert actualizarAlerta(Long alertaId, Long userId, Alert.TipoAlerta nuevoTipo, 
                                  BigDecimal nuevoValor, String nuevoMensaje) {
+        return actualizarAlerta(alertaId, userId, nuevoTipo, null, nuevoValor, nuevoMensaje);
+    }
+    
+    /**
+     * Actualizar una alerta completa indicando el modo de umbral (solo VOLUME_HIGH)
+     */
+    public Alert actualizarAlerta(Long alertaId, Long userId, Alert.TipoAlerta nuevoTipo, Alert.ModoUmbral nuevoModo,
+                                 BigDecimal nuevoValor, String nuevoMensaje) {
         if (nuevoTipo == null) {
             throw new IllegalArgumentException("El tipo de alerta no puede ser nulo");
         }
         if (nuevoValor == null || nuevoValor.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("El valor trigger debe ser positivo");
         }
+        validarPorcentajeTrailing(nuevoTipo, nuevoValor);
         
         log.info("Actualizando alerta {} para usuario {}", alertaId, userId);
         
         Alert alerta = buscarAlertaPorIdYUsuario(alertaId, userId);
         alerta.setTipo(nuevoTipo);
+        alerta.setModoUmbral(modoUmbralPara(nuevoTipo, nuevoModo));
         alerta.setValorTrigger(nuevoValor);
         alerta.setMensajePersonalizado(nuevoMensaje);
         
@@ -328,7 +454,9 @@ public class AlertService {
             alerta.reactivar();
         }
         
-        return alertRepository.save(alerta);
+        Alert alertaActualizada = alertRepository.save(alerta);
+        alertIndex.actualizar(alertaActualizada);
+        return alertaActualizada;
     }
     
     /**
@@ -357,6 +485,79 @@ public class AlertService {
     
     // ========== MÉTODOS AUXILIARES PRIVADOS ==========
     
+    /**
+     * Dispara las alertas de precio que el índice propone para cada precio (symbol -> precio).
+     */
+    private List<Alert> dispararCandidatasPrecio(Map<String, BigDecimal> preciosActuales) {
+        List<Long> ids = new ArrayList<>();
+        preciosActuales.forEach((symbol, precio) -> ids.addAll(alertIndex.candidatos(symbol, precio)));
+        return dispararCandidatas(ids, alerta -> alerta.debeDispararseConPrecio(preciosActuales.get(alerta.getSymbol())));
+    }
+    
+    /**
+     * Dispara las candidatas que propone el índice. Se releen de BD y se
+     * vuelven a comprobar: las entradas obsoletas del índice no disparan y se
+     * reindexan con su estado real.
+     */
+    private List<Alert> dispararCandidatas(List<Long> ids, Predicate<Alert> debeDispararse) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        
+        List<Alert> aDisparar = new ArrayList<>();
+        Set<Long> encontradas = new HashSet<>();
+        for (Alert alerta : alertRepository.findAllById(ids)) {
+            encontradas.add(alerta.getId());
+            if (debeDispararse.test(alerta)) {
+                aDisparar.add(alerta);
+            } else {
+                alertIndex.actualizar(alerta);
+            }
+        }
+        ids.stream()
+                .filter(id -> !encontradas.contains(id))
+                .forEach(alertIndex::eliminar);
+        
+        return dispararYGuardar(aDisparar);
+    }
+    
+    /**
+     * Dispara las alertas con un único UPDATE condicional y las retira del
+     * índice (tras el commit). Solo devuelve las que este disparo cambió: las
+     * que otro evaluador disparó antes no se devuelven (ni se notifican dos veces).
+     *
+     * MySQL no tiene UPDATE ... RETURNING: las alertas cambiadas se identifican
+     * por la marca triggeredAt única de este disparo. Las filas que dispara otra
+     * transacción quedan bloqueadas hasta su commit y luego no cumplen disparada = false.
+     */
+    private List<Alert> dispararYGuardar(List<Alert> alertas) {
+        if (alertas.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = alertas.stream().map(Alert::getId).toList();
+        LocalDateTime marca = siguienteMarcaDisparo();
+        int cambiadas = alertRepository.dispararEnBloque(ids, marca);
+        if (cambiadas == 0) {
+            return List.of();
+        }
+        List<Alert> disparadas = alertRepository.findWithUserByIdInAndTriggeredAt(ids, marca);
+        if (disparadas.size() != cambiadas) {
+            log.warn("Disparo en bloque: {} alertas cambiadas pero {} con la marca {}", cambiadas, disparadas.size(), marca);
+        }
+        alertIndex.actualizar(disparadas);
+        return disparadas;
+    }
+    
+    /**
+     * Marca de disparo estrictamente creciente en esta instancia, a la
+     * precisión de la columna (microsegundos) para poder buscarla por igualdad.
+     */
+    private LocalDateTime siguienteMarcaDisparo() {
+        LocalDateTime ahora = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        return ultimaMarcaDisparo.accumulateAndGet(ahora,
+                (ultima, nueva) -> nueva.isAfter(ultima) ? nueva : ultima.plus(1, ChronoUnit.MICROS));
+    }
+    
     /**
      * Buscar alerta por ID y validar que pertenece al usuario
      */
@@ -385,6 +586,26 @@ public class AlertService {
         if (tipo == null) {
             throw new IllegalArgumentException("El tipo de alerta no puede ser nulo");
         }
+        validarPorcentajeTrailing(tipo, valorTrigger);
+    }
+    
+    /**
+     * Un trailing stop del 100% o más no se dispararía nunca
+     */
+    private void validarPorcentajeTrailing(Alert.TipoAlerta tipo, BigDecimal valorTrigger) {
+        if (tipo == Alert.TipoAlerta.TRAILING_STOP && valorTrigger.compareTo(BigDecimal.valueOf(100)) >= 0) {
+            throw new IllegalArgumentException("El porcentaje del trailing stop debe ser menor que 100");
+        }
+    }
+    
+    /**
+     * Modo de umbral a guardar: solo las alertas VOLUME_HIGH lo tienen (ABSOLUTO por defecto)
+     */
+    private Alert.ModoUmbral modoUmbralPara(Alert.TipoAlerta tipo, Alert.ModoUmbral modoUmbral) {
+        if (tipo != Alert.TipoAlerta.VOLUME_HIGH) {
+            return null;
+        }
+        return modoUmbral != null ? modoUmbral : Alert.ModoUmbral.ABSOLUTO;
     }
     
     /**
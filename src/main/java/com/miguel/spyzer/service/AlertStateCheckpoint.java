@@ -0,0 +1,58 @@
+package com.miguel.spyzer.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Guarda en BD, por lotes, el estado en curso de las alertas PERCENT_MOVE y
+ * TRAILING_STOP que mantiene AlertIndex (referencia de la sesión, máximo).
+ *
+ * Cada checkpoint escribe solo las alertas cuyo estado cambió desde el
+ * anterior, con un único batch JDBC de UPDATEs (sin cargar entidades). Si
+ * falla, los estados vuelven a quedar pendientes para el siguiente. Tras una
+ * caída se pierde como mucho un intervalo: al recargar, el estado sale del
+ * último checkpoint y los ticks siguientes lo ponen al día.
+ */
+@Component
+@Slf4j
+public class AlertStateCheckpoint {
+
+    private static final String SQL_GUARDAR =
+            "UPDATE alerts SET precio_referencia = ?, sesion_referencia = ? WHERE id = ? AND disparada = false";
+
+    private final AlertIndex alertIndex;
+    private final JdbcTemplate jdbcTemplate;
+
+    public AlertStateCheckpoint(AlertIndex alertIndex, JdbcTemplate jdbcTemplate) {
+        this.alertIndex = alertIndex;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${alerts.state.checkpoint-interval-ms:30000}",
+            initialDelayString = "${alerts.state.checkpoint-interval-ms:30000}")
+    public void guardar() {
+        List<AlertIndex.EstadoGuardable> pendientes = alertIndex.extraerEstadosPendientes();
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(SQL_GUARDAR, pendientes.stream()
+                    .map(estado -> new Object[]{estado.precioReferencia(), estado.sesionReferencia(), estado.id()})
+                    .toList());
+            log.debug("Checkpoint de estado de alertas: {} alertas", pendientes.size());
+        } catch (Exception e) {
+            alertIndex.marcarPendientes(pendientes);
+            log.warn("Error guardando el estado de {} alertas: {}", pendientes.size(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void guardarAlDetener() {
+        guardar();
+    }
+}
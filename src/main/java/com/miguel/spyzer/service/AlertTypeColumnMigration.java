@@ -0,0 +1,49 @@
+package com.miguel.spyzer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Migración de la columna alerts.tipo de ENUM nativo de MySQL a VARCHAR.
+ *
+ * Las tablas creadas por Hibernate antes de mapear tipo como VARCHAR tienen
+ * un ENUM con los valores de entonces, y ddl-auto=update no modifica columnas
+ * existentes: sin esta migración no se podrían guardar alertas de los tipos
+ * nuevos (PERCENT_MOVE, TRAILING_STOP). En los arranques siguientes la
+ * columna ya es VARCHAR y solo cuesta una consulta a information_schema.
+ */
+@Component
+@Slf4j
+public class AlertTypeColumnMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AlertTypeColumnMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void migrar() {
+        try {
+            List<String> tipos = jdbcTemplate.queryForList(
+                    "SELECT DATA_TYPE FROM information_schema.COLUMNS "
+                            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'alerts' AND COLUMN_NAME = 'tipo'",
+                    String.class);
+            if (tipos.isEmpty() || !"enum".equalsIgnoreCase(tipos.get(0))) {
+                return;
+            }
+            jdbcTemplate.execute("ALTER TABLE alerts MODIFY COLUMN tipo VARCHAR(20) NOT NULL");
+            log.info("Columna alerts.tipo migrada de ENUM a VARCHAR(20)");
+        } catch (Exception e) {
+            log.error("No se pudo migrar la columna alerts.tipo: {}", e.getMessage());
+        }
+    }
+}
@@ -1,113 +1,346 @@
 package com.miguel.spyzer.service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import java.time.Instant;
-import java.util.concurrent.ConcurrentLinkedQueue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 /**
- * Rate Limiter global para llamadas API.
+ * Rate Limiter global para llamadas API (ventana deslizante no bloqueante).
  *
  * Garantiza que NUNCA se supere el límite de 8 llamadas por minuto,
  * sin importar cuántos schedulers estén activos simultáneamente.
  *
- * Usa un sistema de ventanas deslizantes (sliding window) para rastrear
- * las llamadas realizadas en los últimos 60 segundos.
+ * Funcionamiento:
+ * - Se guardan los instantes de los permisos concedidos en los últimos 60
+ *   segundos; solo se concede otro si hay menos de 8 en la ventana, así que
+ *   ningún intervalo de 60 segundos tiene más de 8 llamadas.
+ * - Cada llamada pide un permiso con adquirir(prioridad), que devuelve un
+ *   CompletableFuture que se completa cuando hay hueco en la ventana.
+ * - Las peticiones esperan en colas separadas por prioridad (carriles) y se
+ *   sirven con round-robin ponderado, de forma que ningún carril se queda
+ *   sin permisos aunque otro esté saturado.
+ * - Un único hilo despachador completa los permisos; nunca se duerme con el
+ *   lock tomado ni bloquea a los hilos del scheduler.
+ *
+ * Métricas (Micrometer):
+ * - spyzer.ratelimiter.wait  (Timer, tag lane): tiempo de espera hasta obtener permiso
+ * - spyzer.ratelimiter.queue (Gauge, tag lane): peticiones pendientes por carril
+ * - spyzer.ratelimiter.permits (Gauge): permisos disponibles en la ventana actual
  */
 @Service
 public class ApiRateLimiter {
 
     private static final int MAX_LLAMADAS_POR_MINUTO = 8;
     private static final long VENTANA_TIEMPO_MS = 60_000; // 60 segundos
+    // Margen para que la latencia entre el permiso y la llamada no la meta en la ventana anterior
+    private static final long MARGEN_MS = 100;
+    private static final long VENTANA_TIEMPO_NANOS = TimeUnit.MILLISECONDS.toNanos(VENTANA_TIEMPO_MS + MARGEN_MS);
+
+    /**
+     * Carriles de prioridad. El peso indica cuántos permisos consecutivos
+     * puede recibir el carril en cada ronda cuando hay contención.
+     */
+    public enum Prioridad {
+        PREMIUM(4),          // Refresco adaptativo de símbolos con demanda (portfolios, alertas, peticiones)
+        INTERACTIVA(3),      // Peticiones iniciadas por usuarios (históricos bajo demanda)
+        ESTANDAR(2),         // Refresco adaptativo de símbolos sin demanda
+        SEGUNDO_PLANO(1);    // Cierres post-mercado, recargas de históricos
+
+        private final int peso;
+
+        Prioridad(int peso) {
+            this.peso = peso;
+        }
+
+        public int getPeso() {
+            return peso;
+        }
+    }
 
-    // Cola thread-safe que almacena los timestamps de las últimas llamadas
-    private final ConcurrentLinkedQueue<Long> llamadasRecientes = new ConcurrentLinkedQueue<>();
+    private record Solicitud(Prioridad prioridad, long encoladaEnNanos, CompletableFuture<Void> future) {
+    }
 
-    // Lock para sincronizar el acceso crítico
+    // Ventana y colas (protegidas por lock; secciones críticas cortas, sin esperas)
     private final Object lock = new Object();
+    private final Map<Prioridad, ArrayDeque<Solicitud>> colas = new EnumMap<>(Prioridad.class);
+    private final Map<Prioridad, Integer> creditosRonda = new EnumMap<>(Prioridad.class);
+    // Instantes (nanos) de los permisos concedidos en la ventana, del más antiguo al más reciente
+    private final ArrayDeque<Long> concesiones = new ArrayDeque<>();
+    private ScheduledFuture<?> despachoProgramado;
+
+    private final ScheduledExecutorService despachador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "api-rate-limiter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<Prioridad, Timer> tiemposEspera = new EnumMap<>(Prioridad.class);
+
+    // Fuente de tiempo en nanosegundos (System.nanoTime salvo en tests)
+    private final LongSupplier reloj;
+
+    @Autowired
+    public ApiRateLimiter(MeterRegistry meterRegistry) {
+        this(meterRegistry, System::nanoTime);
+    }
+
+    ApiRateLimiter(MeterRegistry meterRegistry, LongSupplier reloj) {
+        this.reloj = reloj;
+        for (Prioridad prioridad : Prioridad.values()) {
+            colas.put(prioridad, new ArrayDeque<>());
+            creditosRonda.put(prioridad, prioridad.getPeso());
+
+            tiemposEspera.put(prioridad, Timer.builder("spyzer.ratelimiter.wait")
+                    .description("Tiempo de espera hasta obtener permiso de llamada API")
+                    .tag("lane", prioridad.name())
+                    .register(meterRegistry));
+
+            Gauge.builder("spyzer.ratelimiter.queue", this, limiter -> limiter.getProfundidadCola(prioridad))
+                    .description("Peticiones pendientes de permiso")
+                    .tag("lane", prioridad.name())
+                    .register(meterRegistry);
+        }
+
+        Gauge.builder("spyzer.ratelimiter.permits", this, ApiRateLimiter::getPermisosDisponibles)
+                .description("Permisos disponibles en la ventana de 60 segundos")
+                .register(meterRegistry);
+    }
 
     /**
-     * Espera hasta que sea seguro hacer una llamada API respetando el rate limit.
+     * Solicita un permiso de llamada API de forma asíncrona.
      *
-     * Este método:
-     * 1. Limpia llamadas antiguas (fuera de la ventana de 60s)
-     * 2. Si hay menos de 8 llamadas en los últimos 60s, permite la llamada inmediatamente
-     * 3. Si ya hay 8 llamadas, espera hasta que la más antigua salga de la ventana
-     * 4. Registra la nueva llamada
+     * El future se completa desde el hilo despachador: las continuaciones
+     * deben usar las variantes *Async si hacen trabajo pesado.
+     * Cancelar el future retira la petición de la cola sin consumir permiso.
      *
-     * @throws InterruptedException si el thread es interrumpido durante la espera
+     * @param prioridad Carril de prioridad de la petición
+     * @return Future que se completa cuando la llamada está permitida
      */
-    public void esperarSiEsNecesario() throws InterruptedException {
+    public CompletableFuture<Void> adquirir(Prioridad prioridad) {
+        Solicitud solicitud = new Solicitud(prioridad, reloj.getAsLong(), new CompletableFuture<>());
+
         synchronized (lock) {
-            long ahora = Instant.now().toEpochMilli();
+            colas.get(prioridad).addLast(solicitud);
+        }
 
-            // 1. Limpiar llamadas antiguas (fuera de la ventana de 60 segundos)
-            limpiarLlamadasAntiguas(ahora);
+        despachar();
+        return solicitud.future();
+    }
 
-            // 2. Si ya hay 8 llamadas en la ventana, esperar
-            while (llamadasRecientes.size() >= MAX_LLAMADAS_POR_MINUTO) {
-                // Calcular cuánto tiempo esperar hasta que la llamada más antigua expire
-                Long llamadaMasAntigua = llamadasRecientes.peek();
-                if (llamadaMasAntigua == null) {
-                    break; // No debería pasar, pero por seguridad
+    /**
+     * Variante bloqueante para código síncrono: espera (fuera de cualquier lock)
+     * hasta obtener el permiso.
+     *
+     * @param prioridad Carril de prioridad de la petición
+     * @throws InterruptedException si el thread es interrumpido durante la espera
+     */
+    public void esperarSiEsNecesario(Prioridad prioridad) throws InterruptedException {
+        CompletableFuture<Void> permiso = adquirir(prioridad);
+        try {
+            permiso.get();
+        } catch (InterruptedException e) {
+            permiso.cancel(false);
+            throw e;
+        } catch (ExecutionException | CancellationException e) {
+            throw new IllegalStateException("No se pudo obtener permiso del rate limiter", e);
+        }
+    }
+
+    /**
+     * Entrega todos los permisos que caben en la ventana y, si quedan
+     * peticiones pendientes, programa el siguiente despacho para cuando salga
+     * de la ventana el permiso más antiguo.
+     */
+    void despachar() {
+        List<Solicitud> concedidas = new ArrayList<>();
+        long esperaNanos = -1;
+
+        synchronized (lock) {
+            long ahora = reloj.getAsLong();
+            limpiarVentana(ahora);
+            descartarCanceladas();
+
+            while (concesiones.size() < MAX_LLAMADAS_POR_MINUTO) {
+                Solicitud siguiente = siguienteSolicitud();
+                if (siguiente == null) {
+                    break;
                 }
+                concesiones.addLast(ahora);
+                concedidas.add(siguiente);
+            }
+
+            if (despachoProgramado == null && hayPendientes()) {
+                esperaNanos = concesiones.isEmpty() ? 0
+                        : Math.max(0, concesiones.peekFirst() + VENTANA_TIEMPO_NANOS - ahora);
+                despachoProgramado = despachador.schedule(() -> {
+                    synchronized (lock) {
+                        despachoProgramado = null;
+                    }
+                    despachar();
+                }, esperaNanos, TimeUnit.NANOSECONDS);
+            }
+        }
 
-                long tiempoExpiracion = llamadaMasAntigua + VENTANA_TIEMPO_MS;
-                long tiempoEspera = tiempoExpiracion - ahora;
-
-                if (tiempoEspera > 0) {
-                    System.out.println("⏳ Rate limit alcanzado (" + MAX_LLAMADAS_POR_MINUTO
-                            + " llamadas/min). Esperando " + (tiempoEspera / 1000) + "s...");
-                    Thread.sleep(tiempoEspera + 100); // +100ms de margen de seguridad
-                    ahora = Instant.now().toEpochMilli();
-                    limpiarLlamadasAntiguas(ahora);
-                } else {
-                    // La llamada más antigua ya expiró, limpiar y continuar
-                    llamadasRecientes.poll();
+        // Completar fuera del lock: las continuaciones nunca corren con el lock tomado
+        long ahora = reloj.getAsLong();
+        for (Solicitud solicitud : concedidas) {
+            tiemposEspera.get(solicitud.prioridad()).record(ahora - solicitud.encoladaEnNanos(), TimeUnit.NANOSECONDS);
+            solicitud.future().complete(null);
+        }
+
+        if (concedidas.size() > 0) {
+            System.out.println("✅ Llamadas API permitidas: " + concedidas.size() + " | Pendientes: "
+                    + getProfundidadTotal() + " | Permisos restantes: " + getPermisosDisponibles());
+        }
+
+        if (esperaNanos >= 0) {
+            System.out.println("⏳ Rate limit alcanzado (" + MAX_LLAMADAS_POR_MINUTO
+                    + " llamadas/min). Próximo permiso en " + TimeUnit.NANOSECONDS.toMillis(esperaNanos) + "ms");
+        }
+    }
+
+    /**
+     * Saca de la ventana los permisos concedidos hace más de 60 segundos (más el margen).
+     * Debe llamarse con el lock tomado.
+     */
+    private void limpiarVentana(long ahoraNanos) {
+        while (!concesiones.isEmpty() && ahoraNanos - concesiones.peekFirst() >= VENTANA_TIEMPO_NANOS) {
+            concesiones.pollFirst();
+        }
+    }
+
+    /**
+     * Retira de las colas las peticiones canceladas por el llamante.
+     * Debe llamarse con el lock tomado.
+     */
+    private void descartarCanceladas() {
+        for (ArrayDeque<Solicitud> cola : colas.values()) {
+            cola.removeIf(solicitud -> solicitud.future().isDone());
+        }
+    }
+
+    /**
+     * Round-robin ponderado: sirve el carril de mayor prioridad que aún tenga
+     * créditos en la ronda actual. Cuando ningún carril con peticiones tiene
+     * créditos, empieza una nueva ronda. Debe llamarse con el lock tomado.
+     */
+    private Solicitud siguienteSolicitud() {
+        if (!hayPendientes()) {
+            return null;
+        }
+
+        for (int intento = 0; intento < 2; intento++) {
+            for (Prioridad prioridad : Prioridad.values()) {
+                ArrayDeque<Solicitud> cola = colas.get(prioridad);
+                // Una cancelada después de descartarCanceladas no gasta créditos del carril
+                while (!cola.isEmpty() && cola.peekFirst().future().isDone()) {
+                    cola.pollFirst();
                 }
+                int creditos = creditosRonda.get(prioridad);
+                if (!cola.isEmpty() && creditos > 0) {
+                    creditosRonda.put(prioridad, creditos - 1);
+                    return cola.pollFirst();
+                }
+            }
+            // Nueva ronda
+            for (Prioridad prioridad : Prioridad.values()) {
+                creditosRonda.put(prioridad, prioridad.getPeso());
             }
+        }
 
-            // 3. Registrar esta nueva llamada
-            llamadasRecientes.offer(ahora);
+        return null;
+    }
 
-            int llamadasEnVentana = llamadasRecientes.size();
-            System.out.println("✅ Llamada API permitida (" + llamadasEnVentana + "/"
-                    + MAX_LLAMADAS_POR_MINUTO + " en ventana de 60s)");
+    private boolean hayPendientes() {
+        for (ArrayDeque<Solicitud> cola : colas.values()) {
+            if (!cola.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Número de peticiones esperando permiso en un carril.
+     */
+    public int getProfundidadCola(Prioridad prioridad) {
+        synchronized (lock) {
+            return colas.get(prioridad).size();
         }
     }
 
     /**
-     * Limpia las llamadas que están fuera de la ventana de tiempo (más de 60s atrás)
+     * Número total de peticiones esperando permiso.
      */
-    private void limpiarLlamadasAntiguas(long ahora) {
-        long limiteVentana = ahora - VENTANA_TIEMPO_MS;
-
-        // Eliminar todas las llamadas más antiguas que el límite
-        while (!llamadasRecientes.isEmpty()) {
-            Long primeraLlamada = llamadasRecientes.peek();
-            if (primeraLlamada != null && primeraLlamada < limiteVentana) {
-                llamadasRecientes.poll();
-            } else {
-                break; // La primera llamada aún está dentro de la ventana
+    public int getProfundidadTotal() {
+        synchronized (lock) {
+            int total = 0;
+            for (ArrayDeque<Solicitud> cola : colas.values()) {
+                total += cola.size();
             }
+            return total;
         }
     }
 
     /**
-     * Obtiene el número de llamadas realizadas en la ventana actual (últimos 60s)
+     * Permisos que se pueden conceder ahora mismo sin superar el límite de la ventana.
      */
-    public int getLlamadasEnVentana() {
+    public int getPermisosDisponibles() {
         synchronized (lock) {
-            limpiarLlamadasAntiguas(Instant.now().toEpochMilli());
-            return llamadasRecientes.size();
+            limpiarVentana(reloj.getAsLong());
+            return MAX_LLAMADAS_POR_MINUTO - concesiones.size();
         }
     }
 
     /**
-     * Resetea el rate limiter (útil para testing)
+     * Tiempo medio de espera (ms) de un carril desde el arranque.
+     */
+    public double getEsperaMediaMs(Prioridad prioridad) {
+        return tiemposEspera.get(prioridad).mean(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resetea el rate limiter (útil para testing). Cancela las peticiones
+     * pendientes y el despacho programado, y vacía la ventana.
      */
     public void reset() {
+        List<Solicitud> pendientes = new ArrayList<>();
         synchronized (lock) {
-            llamadasRecientes.clear();
+            for (ArrayDeque<Solicitud> cola : colas.values()) {
+                pendientes.addAll(cola);
+                cola.clear();
+            }
+            for (Prioridad prioridad : Prioridad.values()) {
+                creditosRonda.put(prioridad, prioridad.getPeso());
+            }
+            concesiones.clear();
+            if (despachoProgramado != null) {
+                despachoProgramado.cancel(false);
+                despachoProgramado = null;
+            }
         }
+        pendientes.forEach(solicitud -> solicitud.future().cancel(false));
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        despachador.shutdownNow();
     }
 }
@@ -0,0 +1,68 @@
+package com.miguel.spyzer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.miguel.spyzer.columnar.BarDownsampler;
+import com.miguel.spyzer.columnar.BarSlice;
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Históricos reducidos a N puntos para gráficos (ver BarDownsampler).
+ *
+ * Los resultados se cachean en proceso por (símbolo, días, intervalo, N,
+ * método) durante cache-ttl-seconds: varios clientes mirando el mismo gráfico
+ * comparten una única reducción, y la respuesta ya reducida es pequeña.
+ */
+@Service
+public class ChartDownsamplingService {
+
+    /**
+     * @param intervalo Intervalo de barras, o null para la serie diaria de BD
+     */
+    private record Clave(String symbol, int days, String intervalo, int puntos, BarDownsampler.Metodo metodo) {
+    }
+
+    private final MarketDataService marketDataService;
+    private final OhlcRollupService ohlcRollupService;
+    private final Cache<Clave, BarSlice> cache;
+
+    public ChartDownsamplingService(MarketDataService marketDataService,
+                                    OhlcRollupService ohlcRollupService,
+                                    @Value("${marketdata.downsampling.cache-ttl-seconds:60}") long ttlSegundos,
+                                    @Value("${marketdata.downsampling.cache-max-size:2000}") long maxEntradas) {
+        this.marketDataService = marketDataService;
+        this.ohlcRollupService = ohlcRollupService;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+                .maximumSize(maxEntradas)
+                .build();
+    }
+
+    /**
+     * Serie diaria de los últimos days días reducida a como mucho puntos.
+     */
+    public BarSlice historicoReducido(String symbol, int days, int puntos, BarDownsampler.Metodo metodo) {
+        String symbolUpper = symbol.toUpperCase();
+        return cache.get(new Clave(symbolUpper, days, null, puntos, metodo),
+                clave -> BarDownsampler.reducir(marketDataService.obtenerHistorico(symbolUpper, days), puntos, metodo));
+    }
+
+    /**
+     * Barras del intervalo pedido de los últimos days días reducidas a como mucho puntos.
+     *
+     * @param textoIntervalo Intervalo tal como llega en la petición (parte de la clave)
+     */
+    public BarSlice barrasReducidas(String symbol, OhlcRollupService.Intervalo intervalo, String textoIntervalo,
+                                    int days, int puntos, BarDownsampler.Metodo metodo) {
+        String symbolUpper = symbol.toUpperCase();
+        Granularidad granularidad = intervalo.duracion().compareTo(Duration.ofDays(1)) >= 0
+                ? Granularidad.DIARIA : Granularidad.INTRADIA;
+        return cache.get(new Clave(symbolUpper, days, textoIntervalo.trim().toLowerCase(), puntos, metodo),
+                clave -> BarDownsampler.reducir(BarSlice.desdePuntos(symbolUpper, granularidad,
+                        ohlcRollupService.obtenerBarras(symbolUpper, intervalo, days)), puntos, metodo));
+    }
+}
@@ -0,0 +1,351 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.columnar.ColumnarBarStore;
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+import com.miguel.spyzer.provider.MarketDataProvider;
+import com.miguel.spyzer.repository.HistoricalDataRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Sincronización incremental de los históricos diarios de los índices
+ * principales (sustituye al borrado y recarga completa mensual).
+ *
+ * - Sincronización (diaria y al arrancar): busca la última fecha diaria
+ *   guardada de cada símbolo y pide al proveedor solo el tramo que falta,
+ *   incluida esa última fecha (por si se guardó con la sesión aún abierta).
+ *   Sin datos previos se cargan HISTORICO_DIAS días.
+ * - Upsert por lotes: inserta las fechas nuevas, actualiza solo las filas
+ *   que difieren y no toca las que ya son correctas. La tabla nunca se vacía.
+ * - Verificación (primer domingo de cada mes, opcional): descarga la ventana
+ *   completa, compara por meses el CRC32 de lo guardado con el de lo
+ *   recibido y repara solo los meses que no coinciden (incluidas las fechas
+ *   sobrantes).
+ *
+ * Solo se consideran las filas diarias (granularidad DIARIA, identificadas
+ * por su ts); los puntos intradía de índices que guarda la ingesta no se tocan.
+ */
+@Service
+@Slf4j
+public class HistoricalSyncService {
+
+    // Ventana de histórico diario (~2 años)
+    private static final int HISTORICO_DIAS = 730;
+
+    // Filas por transacción en el upsert
+    private static final int TAMANO_LOTE = 200;
+
+    // Escala con la que la BD guarda los precios (DECIMAL(38,2) por defecto):
+    // comparar con otra escala marcaría como distintas filas iguales
+    private static final int ESCALA_BD = 2;
+
+    private static final ZoneId ZONA_MERCADO = ZoneId.of("America/New_York");
+
+    /**
+     * Resultado de sincronizar o verificar un símbolo.
+     *
+     * @param insertadas   Filas nuevas
+     * @param actualizadas Filas existentes corregidas
+     * @param eliminadas   Filas sobrantes eliminadas (solo verificación)
+     * @param sinCambios   Filas recibidas que ya eran correctas
+     */
+    public record Resultado(int insertadas, int actualizadas, int eliminadas, int sinCambios) {
+    }
+
+    private final MarketDataProvider marketDataProvider;
+    private final ApiRateLimiter apiRateLimiter;
+    private final HistoricalDataRepository historicalDataRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ColumnarBarStore columnarBarStore;
+
+    @Value("${marketdata.historical.verify.enabled:true}")
+    private boolean verificacionActiva;
+
+    public HistoricalSyncService(MarketDataProvider marketDataProvider,
+                                 ApiRateLimiter apiRateLimiter,
+                                 HistoricalDataRepository historicalDataRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 ColumnarBarStore columnarBarStore) {
+        this.marketDataProvider = marketDataProvider;
+        this.apiRateLimiter = apiRateLimiter;
+        this.historicalDataRepository = historicalDataRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.columnarBarStore = columnarBarStore;
+    }
+
+    /**
+     * Sincronización incremental de todos los índices.
+     */
+    @Scheduled(fixedDelayString = "${marketdata.historical.sync-interval-ms:86400000}",
+            initialDelayString = "${marketdata.historical.sync-initial-delay-ms:60000}")
+    public void sincronizarIndices() {
+        log.info("=== Sincronización incremental de históricos ({} símbolos) ===", MarketDataService.INDICES.size());
+        for (String symbol : MarketDataService.INDICES) {
+            try {
+                Resultado resultado = sincronizar(symbol);
+                log.info("Históricos de {} sincronizados: {}", symbol, resultado);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error sincronizando históricos de {}: {}", symbol, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Verificación mensual por checksums de todos los índices. Con cron (y no
+     * con un intervalo desde el arranque) cada despliegue no lanza otra
+     * verificación completa.
+     */
+    @Scheduled(cron = "${marketdata.historical.verify.cron:0 0 6 * * SUN#1}", zone = "America/New_York")
+    public void verificarIndices() {
+        if (!verificacionActiva) {
+            return;
+        }
+        log.info("=== Verificación de históricos ({} símbolos) ===", MarketDataService.INDICES.size());
+        for (String symbol : MarketDataService.INDICES) {
+            try {
+                Resultado resultado = verificar(symbol);
+                log.info("Históricos de {} verificados: {}", symbol, resultado);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error verificando históricos de {}: {}", symbol, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Descarga solo el tramo posterior a la última fecha diaria guardada y lo aplica con upsert.
+     */
+    public Resultado sincronizar(String symbol) throws InterruptedException {
+        String upper = symbol.toUpperCase();
+        LocalDate hoy = LocalDate.now(ZONA_MERCADO);
+        LocalDate ultima = historicalDataRepository.findFirstBySymbolAndGranularidadOrderByTsDesc(upper, Granularidad.DIARIA)
+                .map(punto -> HistoricalDataPoint.diaDe(punto.getTs()))
+                .orElse(null);
+
+        int puntos = ultima == null ? HISTORICO_DIAS : diasHabilesEntre(ultima, hoy) + 1;
+        List<HistoricalDataPoint> recibidos = descargar(upper, puntos);
+
+        String desde = ultima != null ? ultima.toString() : "";
+        List<HistoricalDataPoint> nuevos = recibidos.stream()
+                .filter(punto -> punto.getDate().compareTo(desde) >= 0)
+                .toList();
+        return upsert(upper, nuevos, Map.of());
+    }
+
+    /**
+     * Compara por meses el CRC32 de lo guardado con lo que devuelve el proveedor
+     * y repara solo los meses distintos.
+     */
+    public Resultado verificar(String symbol) throws InterruptedException {
+        String upper = symbol.toUpperCase();
+        List<HistoricalDataPoint> recibidos = descargar(upper, HISTORICO_DIAS);
+        if (recibidos.isEmpty()) {
+            return new Resultado(0, 0, 0, 0);
+        }
+
+        Instant desde = recibidos.get(recibidos.size() - 1).getTs();
+        Instant hasta = recibidos.get(0).getTs();
+        List<HistoricalDataPoint> guardados = historicalDataRepository
+                .findBySymbolAndGranularidadAndTsBetweenOrderByTsAsc(upper, Granularidad.DIARIA, desde, hasta);
+
+        Map<String, List<HistoricalDataPoint>> recibidosPorMes = porMes(recibidos);
+        Map<String, List<HistoricalDataPoint>> guardadosPorMes = porMes(guardados);
+
+        List<HistoricalDataPoint> aReparar = new ArrayList<>();
+        Map<String, List<HistoricalDataPoint>> guardadosAReparar = new LinkedHashMap<>();
+        for (Map.Entry<String, List<HistoricalDataPoint>> mes : recibidosPorMes.entrySet()) {
+            List<HistoricalDataPoint> guardadosMes = guardadosPorMes.getOrDefault(mes.getKey(), List.of());
+            if (checksum(mes.getValue()) != checksum(guardadosMes)) {
+                log.warn("Históricos de {} difieren en {}: se repara el mes", upper, mes.getKey());
+                aReparar.addAll(mes.getValue());
+                guardadosAReparar.put(mes.getKey(), guardadosMes);
+            }
+        }
+
+        Resultado resultado = upsert(upper, aReparar, guardadosAReparar);
+        return new Resultado(resultado.insertadas(), resultado.actualizadas(), resultado.eliminadas(),
+                recibidos.size() - aReparar.size() + resultado.sinCambios());
+    }
+
+    private List<HistoricalDataPoint> descargar(String symbol, int puntos) throws InterruptedException {
+        if (marketDataProvider.requiereRateLimit()) {
+            apiRateLimiter.esperarSiEsNecesario(ApiRateLimiter.Prioridad.SEGUNDO_PLANO);
+        }
+        List<HistoricalDataPoint> recibidos = new ArrayList<>();
+        for (HistoricalDataPoint punto : marketDataProvider.obtenerSerieTemporal(symbol, "1day", puntos)) {
+            LocalDate fecha = parsearFecha(punto.getDate());
+            if (fecha != null) {
+                punto.setDate(fecha.toString());
+                punto.setSymbol(symbol);
+                punto.setTs(HistoricalDataPoint.inicioDia(fecha));
+                punto.setGranularidad(Granularidad.DIARIA);
+                recibidos.add(punto);
+            }
+        }
+        // Más reciente primero, como la API
+        recibidos.sort((a, b) -> b.getDate().compareTo(a.getDate()));
+        return recibidos;
+    }
+
+    /**
+     * Inserta o corrige los puntos recibidos en lotes de TAMANO_LOTE filas.
+     *
+     * @param guardadosARevisar Filas guardadas de los meses en reparación: las que
+     *                          sobran (fecha no recibida) se eliminan
+     */
+    private Resultado upsert(String symbol, List<HistoricalDataPoint> recibidos,
+                             Map<String, List<HistoricalDataPoint>> guardadosARevisar) {
+        Set<Instant> instantes = new HashSet<>();
+        recibidos.forEach(punto -> instantes.add(punto.getTs()));
+
+        Map<Instant, HistoricalDataPoint> existentes = new LinkedHashMap<>();
+        List<HistoricalDataPoint> sobrantes = new ArrayList<>();
+        if (!instantes.isEmpty()) {
+            for (HistoricalDataPoint existente : historicalDataRepository.findBySymbolAndTsIn(symbol, instantes)) {
+                existentes.put(existente.getTs(), existente);
+            }
+        }
+        for (List<HistoricalDataPoint> guardadosMes : guardadosARevisar.values()) {
+            for (HistoricalDataPoint guardado : guardadosMes) {
+                if (!instantes.contains(guardado.getTs())) {
+                    sobrantes.add(guardado);
+                }
+            }
+        }
+
+        List<HistoricalDataPoint> aGuardar = new ArrayList<>();
+        int insertadas = 0;
+        int actualizadas = 0;
+        int sinCambios = 0;
+        for (HistoricalDataPoint recibido : recibidos) {
+            HistoricalDataPoint existente = existentes.get(recibido.getTs());
+            if (existente == null) {
+                aGuardar.add(recibido);
+                insertadas++;
+            } else if (!iguales(existente, recibido)) {
+                existente.setDate(recibido.getDate());
+                existente.setGranularidad(Granularidad.DIARIA);
+                existente.setOpen(recibido.getOpen());
+                existente.setHigh(recibido.getHigh());
+                existente.setLow(recibido.getLow());
+                existente.setClose(recibido.getClose());
+                existente.setVolume(recibido.getVolume());
+                aGuardar.add(existente);
+                actualizadas++;
+            } else {
+                sinCambios++;
+            }
+        }
+
+        for (int i = 0; i < aGuardar.size(); i += TAMANO_LOTE) {
+            List<HistoricalDataPoint> lote = aGuardar.subList(i, Math.min(i + TAMANO_LOTE, aGuardar.size()));
+            transactionTemplate.executeWithoutResult(status -> historicalDataRepository.saveAll(lote));
+        }
+        if (!sobrantes.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> historicalDataRepository.deleteAllInBatch(sobrantes));
+        }
+
+        // Copia columnar local: las fechas nuevas se anexan; corregir o borrar
+        // fechas ya copiadas obliga a reconstruirla
+        if (actualizadas > 0 || !sobrantes.isEmpty()) {
+            columnarBarStore.invalidar(symbol, Granularidad.DIARIA);
+        } else if (insertadas > 0) {
+            columnarBarStore.anexar(symbol, Granularidad.DIARIA, aGuardar);
+        }
+
+        return new Resultado(insertadas, actualizadas, sobrantes.size(), sinCambios);
+    }
+
+    private static boolean iguales(HistoricalDataPoint a, HistoricalDataPoint b) {
+        return Objects.equals(a.getDate(), b.getDate())
+                && Objects.equals(normalizar(a.getOpen()), normalizar(b.getOpen()))
+                && Objects.equals(normalizar(a.getHigh()), normalizar(b.getHigh()))
+                && Objects.equals(normalizar(a.getLow()), normalizar(b.getLow()))
+                && Objects.equals(normalizar(a.getClose()), normalizar(b.getClose()))
+                && Objects.equals(a.getVolume(), b.getVolume());
+    }
+
+    /**
+     * CRC32 de las filas de un mes en forma canónica (ordenadas por fecha, precios
+     * con la escala de la BD).
+     */
+    private static long checksum(List<HistoricalDataPoint> puntos) {
+        List<HistoricalDataPoint> ordenados = new ArrayList<>(puntos);
+        ordenados.sort((a, b) -> a.getDate().compareTo(b.getDate()));
+
+        CRC32 crc = new CRC32();
+        for (HistoricalDataPoint punto : ordenados) {
+            String linea = punto.getDate() + "|" + normalizar(punto.getOpen()) + "|" + normalizar(punto.getHigh())
+                    + "|" + normalizar(punto.getLow()) + "|" + normalizar(punto.getClose())
+                    + "|" + punto.getVolume() + "\n";
+            crc.update(linea.getBytes(StandardCharsets.UTF_8));
+        }
+        return crc.getValue();
+    }
+
+    private static Map<String, List<HistoricalDataPoint>> porMes(List<HistoricalDataPoint> puntos) {
+        Map<String, List<HistoricalDataPoint>> porMes = new TreeMap<>();
+        for (HistoricalDataPoint punto : puntos) {
+            porMes.computeIfAbsent(punto.getDate().substring(0, 7), mes -> new ArrayList<>()).add(punto);
+        }
+        return porMes;
+    }
+
+    private static String normalizar(BigDecimal valor) {
+        return valor != null ? valor.setScale(ESCALA_BD, RoundingMode.HALF_UP).toPlainString() : null;
+    }
+
+    /**
+     * Fecha de un punto diario ("yyyy-MM-dd", admite sufijo de hora), o null si no lo es.
+     */
+    private static LocalDate parsearFecha(String fecha) {
+        if (fecha == null || fecha.length() < 10) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(fecha.substring(0, 10));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Días laborables (lunes a viernes) en (desde, hasta].
+     */
+    private static int diasHabilesEntre(LocalDate desde, LocalDate hasta) {
+        int dias = 0;
+        for (LocalDate dia = desde.plusDays(1); !dia.isAfter(hasta); dia = dia.plusDays(1)) {
+            if (dia.getDayOfWeek() != DayOfWeek.SATURDAY && dia.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                dias++;
+            }
+        }
+        return dias;
+    }
+}
@@ -0,0 +1,108 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.repository.HistoricalDataRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Migración de las filas de historical_data_point anteriores a la columna ts.
+ *
+ * Al arrancar recorre por id (keyset, lotes de TAMANO_LOTE en su propia
+ * transacción) las filas con ts nulo y les asigna ts y granularidad a partir
+ * de date. Si otra fila del símbolo ya tiene ese ts, la fila es un duplicado
+ * (p. ej. el mismo día guardado dos veces) y se elimina para respetar el
+ * índice único. Las filas con un date no reconocible se dejan sin ts y se
+ * registran; quedan fuera de las consultas por rango.
+ *
+ * Una vez migrada la tabla la primera consulta no devuelve filas, así que en
+ * los arranques siguientes no tiene coste.
+ */
+@Component
+@Slf4j
+public class HistoricalTimestampMigration {
+
+    private static final int TAMANO_LOTE = 500;
+
+    private final HistoricalDataRepository historicalDataRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public HistoricalTimestampMigration(HistoricalDataRepository historicalDataRepository,
+                                        TransactionTemplate transactionTemplate) {
+        this.historicalDataRepository = historicalDataRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Resultado de un lote.
+     */
+    private record Lote(int migradas, int duplicadas, int invalidas) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrar() {
+        long ultimoId = 0;
+        int migradas = 0;
+        int duplicadas = 0;
+        int invalidas = 0;
+
+        while (true) {
+            List<HistoricalDataPoint> filas = historicalDataRepository
+                    .findByTsIsNullAndIdGreaterThanOrderByIdAsc(ultimoId, Limit.of(TAMANO_LOTE));
+            if (filas.isEmpty()) {
+                break;
+            }
+            ultimoId = filas.get(filas.size() - 1).getId();
+
+            Lote lote = transactionTemplate.execute(status -> migrarLote(filas));
+            if (lote != null) {
+                migradas += lote.migradas();
+                duplicadas += lote.duplicadas();
+                invalidas += lote.invalidas();
+            }
+        }
+
+        if (migradas + duplicadas + invalidas > 0) {
+            log.info("Migración de ts de históricos: {} filas migradas, {} duplicadas eliminadas, {} sin fecha válida",
+                    migradas, duplicadas, invalidas);
+        }
+    }
+
+    private Lote migrarLote(List<HistoricalDataPoint> filas) {
+        Set<String> claves = new HashSet<>();
+        List<HistoricalDataPoint> aGuardar = new ArrayList<>();
+        List<HistoricalDataPoint> aEliminar = new ArrayList<>();
+        int invalidas = 0;
+
+        for (HistoricalDataPoint fila : filas) {
+            if (!fila.derivarTimestamp()) {
+                log.warn("Punto histórico {} de {} con fecha no reconocible: '{}'",
+                        fila.getId(), fila.getSymbol(), fila.getDate());
+                invalidas++;
+                continue;
+            }
+            // Se conserva la fila más antigua (menor id) de cada (symbol, ts)
+            boolean nueva = claves.add(fila.getSymbol() + "|" + fila.getTs());
+            if (!nueva || historicalDataRepository.existsBySymbolAndTs(fila.getSymbol(), fila.getTs())) {
+                aEliminar.add(fila);
+            } else {
+                aGuardar.add(fila);
+            }
+        }
+
+        if (!aEliminar.isEmpty()) {
+            historicalDataRepository.deleteAllInBatch(aEliminar);
+        }
+        historicalDataRepository.saveAll(aGuardar);
+        return new Lote(aGuardar.size(), aEliminar.size(), invalidas);
+    }
+}
@@ -0,0 +1,266 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.entities.MarketData;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Pipeline de ingesta concurrente de cotizaciones.
+ *
+ * Etapas:
+ * 1. FETCH: cada lote de símbolos se pide en su propio virtual thread en cuanto
+ *    el rate limiter concede el permiso (las llamadas HTTP se solapan).
+ * 2. PARSE/VALIDACIÓN: se hace en el mismo virtual thread al llegar la respuesta.
+ *    Los datos válidos se entregan además, ya en ese momento, al observador
+ *    opcional (evaluación rápida de alertas), sin esperar a la persistencia.
+ * 3. CONSUMO: los resultados válidos pasan por una cola acotada al hilo que
+ *    lanzó la ingesta, que persiste y publica en el stream de ticks por
+ *    micro-lotes según van llegando (cada micro-lote en su propia transacción).
+ *    Series, portfolios y alertas los procesan después los consumer groups del stream.
+ *
+ * La cola acotada aplica backpressure: si el consumidor va lento, los
+ * productores se bloquean (barato en virtual threads) en lugar de acumular
+ * respuestas en memoria. Si el llamante abandona (timeout), los lotes que aún
+ * no han pedido sus datos no los piden y los productores dejan de esperar.
+ *
+ * Con esto el tiempo total de un grupo se acerca al mínimo impuesto por el
+ * rate limiter en vez de sumar los round trips de red de cada símbolo.
+ */
+@Service
+@Slf4j
+public class MarketDataIngestionPipeline {
+
+    // Reintento de encolar mientras la cola está llena, comprobando si el llamante abandonó
+    private static final long ESPERA_ENCOLAR_MS = 500;
+
+    private final ApiRateLimiter apiRateLimiter;
+
+    // Un virtual thread por lote: el bloqueo en red no consume hilos de plataforma
+    private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${marketdata.ingestion.queue-capacity:64}")
+    private int capacidadCola;
+
+    @Value("${marketdata.ingestion.timeout-minutes:15}")
+    private long timeoutMinutos;
+
+    public MarketDataIngestionPipeline(ApiRateLimiter apiRateLimiter) {
+        this.apiRateLimiter = apiRateLimiter;
+    }
+
+    /**
+     * Resultado de procesar un lote en la etapa de fetch/parse.
+     */
+    private record ResultadoLote(List<String> simbolos, List<MarketData> validos, Map<String, String> fallos) {
+    }
+
+    /**
+     * Resumen de una ejecución completa del pipeline.
+     *
+     * @param exitosos Símbolos entregados al consumidor
+     * @param fallidos Símbolos que no se pudieron obtener, con el motivo
+     */
+    public record ResultadoIngesta(List<String> exitosos, Map<String, String> fallidos) {
+    }
+
+    /**
+     * Ejecuta la ingesta de un conjunto de lotes.
+     *
+     * El consumidor se invoca SIEMPRE en el hilo llamante (nunca en los
+     * virtual threads), con micro-lotes de MarketData ya validados.
+     *
+     * @param lotes       Lotes de símbolos (uno por petición al proveedor)
+     * @param prioridad   Carril del rate limiter para los permisos (null = proveedor sin límite de API)
+     * @param fetcher     Función que obtiene y parsea un lote (symbol -> MarketData); no debe pedir permisos
+     * @param observador  Recibe los MarketData válidos de cada lote en su virtual thread, nada más
+     *                    validarlos (null = ninguno); no debe bloquear ni lanzar excepciones
+     * @param consumidor  Recibe los MarketData válidos según van llegando
+     * @return Resumen con símbolos exitosos y fallidos
+     */
+    public ResultadoIngesta ejecutar(List<List<String>> lotes,
+                                     ApiRateLimiter.Prioridad prioridad,
+                                     Function<List<String>, Map<String, MarketData>> fetcher,
+                                     Consumer<List<MarketData>> observador,
+                                     Consumer<List<MarketData>> consumidor) {
+
+        BlockingQueue<ResultadoLote> cola = new ArrayBlockingQueue<>(Math.max(1, capacidadCola));
+        // El llamante dejó de esperar (timeout o interrupción): no se piden más datos ni se encola
+        AtomicBoolean abandonada = new AtomicBoolean();
+        List<CompletableFuture<Void>> permisos = new ArrayList<>();
+
+        for (List<String> lote : lotes) {
+            CompletableFuture<Void> permiso = prioridad != null
+                    ? apiRateLimiter.adquirir(prioridad)
+                    : CompletableFuture.completedFuture(null);
+            permisos.add(permiso);
+            permiso.thenRunAsync(() -> {
+                        if (!abandonada.get()) {
+                            encolar(cola, procesarLote(lote, fetcher, observador), abandonada);
+                        }
+                    }, virtualThreads)
+                    .exceptionally(e -> {
+                        encolar(cola, loteFallido(lote, e.getMessage()), abandonada);
+                        return null;
+                    });
+        }
+
+        List<String> exitosos = new ArrayList<>();
+        Map<String, String> fallidos = new LinkedHashMap<>();
+        long limite = System.nanoTime() + TimeUnit.MINUTES.toNanos(timeoutMinutos);
+        int pendientes = lotes.size();
+
+        try {
+            while (pendientes > 0) {
+                long restante = limite - System.nanoTime();
+                ResultadoLote primero = cola.poll(Math.max(0, restante), TimeUnit.NANOSECONDS);
+                if (primero == null) {
+                    log.warn("Timeout de ingesta: {} lotes sin respuesta", pendientes);
+                    break;
+                }
+
+                // Agrupar todo lo que ya esté disponible en un único micro-lote
+                List<ResultadoLote> disponibles = new ArrayList<>();
+                disponibles.add(primero);
+                cola.drainTo(disponibles);
+                pendientes -= disponibles.size();
+
+                List<MarketData> microLote = new ArrayList<>();
+                for (ResultadoLote resultado : disponibles) {
+                    microLote.addAll(resultado.validos());
+                    fallidos.putAll(resultado.fallos());
+                }
+
+                if (!microLote.isEmpty()) {
+                    try {
+                        consumidor.accept(microLote);
+                        microLote.forEach(datos -> exitosos.add(datos.getSymbol()));
+                    } catch (Exception e) {
+                        log.error("Error procesando micro-lote de {} símbolos: {}", microLote.size(), e.getMessage(), e);
+                        microLote.forEach(datos -> fallidos.put(datos.getSymbol(), "error en consumidor: " + e.getMessage()));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Ingesta interrumpida con {} lotes pendientes", pendientes);
+        }
+
+        if (pendientes > 0) {
+            // Los permisos aún en cola del rate limiter se retiran sin consumir token
+            abandonada.set(true);
+            permisos.forEach(permiso -> permiso.cancel(false));
+            Set<String> simbolosExitosos = new HashSet<>(exitosos);
+            for (List<String> lote : lotes) {
+                for (String symbol : lote) {
+                    String upper = symbol.toUpperCase();
+                    if (!simbolosExitosos.contains(upper) && !fallidos.containsKey(upper)) {
+                        fallidos.put(upper, "sin respuesta (timeout)");
+                    }
+                }
+            }
+        }
+
+        return new ResultadoIngesta(exitosos, fallidos);
+    }
+
+    /**
+     * Etapa fetch + parse + validación de un lote (corre en un virtual thread).
+     */
+    private ResultadoLote procesarLote(List<String> lote, Function<List<String>, Map<String, MarketData>> fetcher,
+                                       Consumer<List<MarketData>> observador) {
+        Map<String, MarketData> respuesta;
+        try {
+            respuesta = fetcher.apply(lote);
+        } catch (Exception e) {
+            return loteFallido(lote, e.getMessage());
+        }
+
+        List<MarketData> validos = new ArrayList<>();
+        Map<String, String> fallos = new LinkedHashMap<>();
+
+        for (String symbol : lote) {
+            String upper = symbol.toUpperCase();
+            MarketData datos = respuesta != null ? respuesta.get(upper) : null;
+            String error = validar(datos);
+            if (error == null) {
+                validos.add(datos);
+            } else {
+                fallos.put(upper, error);
+            }
+        }
+
+        if (observador != null && !validos.isEmpty()) {
+            try {
+                observador.accept(validos);
+            } catch (Exception e) {
+                log.warn("Error en el observador de ingesta: {}", e.getMessage());
+            }
+        }
+
+        return new ResultadoLote(lote, validos, fallos);
+    }
+
+    /**
+     * Valida un MarketData recién parseado.
+     *
+     * @return Motivo del rechazo, o null si es válido
+     */
+    private String validar(MarketData datos) {
+        if (datos == null) {
+            return "respuesta vacía";
+        }
+        if (datos.getSymbol() == null || datos.getTimestamp() == null) {
+            return "datos incompletos";
+        }
+        if (datos.getPrecio() == null || datos.getPrecio().compareTo(BigDecimal.ZERO) <= 0) {
+            return "precio inválido: " + datos.getPrecio();
+        }
+        return null;
+    }
+
+    private ResultadoLote loteFallido(List<String> lote, String motivo) {
+        Map<String, String> fallos = new LinkedHashMap<>();
+        lote.forEach(symbol -> fallos.put(symbol.toUpperCase(), motivo));
+        return new ResultadoLote(lote, List.of(), fallos);
+    }
+
+    /**
+     * Encola el resultado de un lote; si el llamante ya no espera se descarta
+     * (con la cola llena y nadie drenándola el virtual thread no quedaría bloqueado para siempre).
+     */
+    private void encolar(BlockingQueue<ResultadoLote> cola, ResultadoLote resultado, AtomicBoolean abandonada) {
+        try {
+            while (!abandonada.get()) {
+                if (cola.offer(resultado, ESPERA_ENCOLAR_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        virtualThreads.shutdownNow();
+    }
+}
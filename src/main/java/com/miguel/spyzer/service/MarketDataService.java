@@ -4,48 +4,76 @@ import com.miguel.spyzer.entities.Alert;
 import com.miguel.spyzer.entities.MarketData;
 import com.miguel.spyzer.entities.HistoricalDataPoint;
 import com.miguel.spyzer.entities.Portfolio;
+import com.miguel.spyzer.provider.MarketDataProvider;
 import com.miguel.spyzer.repository.MarketDataRepository;
 import com.miguel.spyzer.repository.HistoricalDataRepository;
 import com.miguel.spyzer.repository.PortfolioRepository;
 import com.miguel.spyzer.repository.MarketDataRedisRepository;
+import com.miguel.spyzer.cache.SingleFlight;
+import com.miguel.spyzer.cache.TwoLevelCacheManager;
+import com.miguel.spyzer.columnar.BarSlice;
+import com.miguel.spyzer.columnar.ColumnarBarStore;
+import com.miguel.spyzer.config.RedisConfig;
+import com.miguel.spyzer.indicator.IndicatorEngine;
+import com.miguel.spyzer.indicator.VolumeBaseline;
+import com.miguel.spyzer.stream.TickStream;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
-import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 import static com.miguel.spyzer.entities.MarketData.DataType.REALTIME;
 
 @Service
 public class MarketDataService {
 
-    @Value("${twelvedata.api.key:demo}")
-    private String twelveDataApiKey;
+    @Autowired
+    private MarketDataProvider marketDataProvider;
 
-    private static final String TWELVE_DATA_URL = "https://api.twelvedata.com";
+    @Autowired
+    private MarketDataRepository marketDataRepository;
 
-    private final Object historicalLock = new Object();
+    @Autowired
+    private HistoricalDataRepository historicalDataRepository;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private ColumnarBarStore columnarBarStore;
 
     @Autowired
-    private MarketDataRepository marketDataRepository;
+    private IndicatorEngine indicatorEngine;
 
     @Autowired
-    private HistoricalDataRepository historicalDataRepository;
+    private VolumeBaseline volumeBaseline;
 
     @Autowired
     private PortfolioRepository portfolioRepository;
@@ -53,6 +81,9 @@ public class MarketDataService {
     @Autowired
     private AlertService alertService;
 
+    @Autowired
+    private AlertEvaluator alertEvaluator;
+
     @Autowired
     private NotificationService notificationService;
 
@@ -68,6 +99,43 @@ public class MarketDataService {
     @Autowired
     private ApiRateLimiter apiRateLimiter;
 
+    @Autowired
+    private MarketDataIngestionPipeline ingestionPipeline;
+
+    @Autowired
+    private SymbolActivityTracker activityTracker;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private PriceBoard priceBoard;
+
+    @Autowired
+    private OhlcRollupService ohlcRollupService;
+
+    @Autowired
+    private TickStream tickStream;
+
+    // Con el stream activo el trabajo posterior a la persistencia lo hacen sus consumer groups
+    @Value("${marketdata.stream.enabled:true}")
+    private boolean streamActivo;
+
+    // Cargas en curso por símbolo (coalescencia de misses concurrentes)
+    private final SingleFlight<String, MarketData> cargasPrecio = new SingleFlight<>();
+
+    // Último valor servido por símbolo: se devuelve mientras se recarga una entrada invalidada
+    private final Map<String, MarketData> ultimosValoresConocidos = new ConcurrentHashMap<>();
+
+    // Cotización más reciente ya evaluada por símbolo en verificarAlertas (descarta entradas reclamadas atrasadas)
+    private final Map<String, LocalDateTime> ultimosTicksAlertas = new ConcurrentHashMap<>();
+
+    // Recargas refresh-ahead en segundo plano
+    private final ExecutorService recargasCache = Executors.newVirtualThreadPerTaskExecutor();
+
     // Self-injection para acceder al proxy de Spring y hacer que @Cacheable funcione
     // @Lazy rompe la referencia circular permitiendo que Spring termine de crear el bean primero
     @Lazy
@@ -76,10 +144,9 @@ public class MarketDataService {
 
     // Lista maestra de TODOS los símbolos (80 total)
     // Usada para validaciones y como referencia completa
-    // Los símbolos se actualizan en 3 grupos según SymbolGroupConfig:
-    // - PREMIUM (20): cada 20 min
-    // - STANDARD (42): cada 60 min
-    // - EXTENDED (18): cada 90 min
+    // Los símbolos se refrescan desde AdaptiveRefreshScheduler; los grupos de
+    // SymbolGroupConfig (PREMIUM 20 / STANDARD 60 / EXTENDED 90 min) solo fijan
+    // el intervalo base de cada símbolo y su región de caché
     private static final List<String> TODOS_LOS_SIMBOLOS = Arrays.asList(
             // === GRUPO PREMIUM (20 símbolos) ===
             // Índices principales
@@ -140,65 +207,59 @@ public class MarketDataService {
             "NET", "CRWD", "ZS");
 
     // Solo los 4 índices para históricos
-    private static final List<String> INDICES = Arrays.asList("SPY", "QQQ", "DAX", "FXI");
+    static final List<String> INDICES = Arrays.asList("SPY", "QQQ", "DAX", "FXI");
 
-    // ==================== ACTUALIZACIÓN PRECIOS ACTUALES (CADA 100 MINUTOS)
-    // ====================
-
-    // ==================== MÉTODO REFACTORIZADO PARA ACTUALIZACIÓN POR GRUPOS
+    // ==================== ACTUALIZACIÓN PRECIOS ACTUALES
     // ====================
 
     /**
-     * Actualiza un grupo específico de símbolos.
-     * Este método reemplaza la lógica de actualizarTodosLosDatos() permitiendo
-     * actualizaciones parciales de símbolos según su grupo.
+     * Actualiza un conjunto arbitrario de símbolos.
+     * Lo invoca AdaptiveRefreshScheduler con los símbolos más urgentes de cada
+     * ciclo (ya no hay grupos fijos con su propio scheduler).
+     *
+     * Cada micro-lote que entrega el pipeline se persiste en su propia
+     * transacción: en cuanto hace commit, sus precios ya están en caché
+     * (write-through) sin esperar al resto de lotes del refresco.
      *
      * @param simbolos    Lista de símbolos a actualizar
-     * @param grupoNombre Nombre del grupo para logging (ej: "PREMIUM", "STANDARD")
+     * @param grupoNombre Nombre del origen para logging (ej: "ADAPTATIVO")
+     * @param prioridad   Carril del rate limiter desde el que se piden los permisos
+     * @return Resumen con símbolos exitosos y fallidos
      */
-    @Transactional
-    private void actualizarGrupoDeSimbolos(List<String> simbolos, String grupoNombre) {
+    public MarketDataIngestionPipeline.ResultadoIngesta actualizarSimbolos(List<String> simbolos, String grupoNombre,
+            ApiRateLimiter.Prioridad prioridad) {
         System.out.println(
                 "=== Iniciando actualización " + grupoNombre + " (" + simbolos.size() + " símbolos) | "
                         + marketHoursService.getMarketStatusInfo() + " ===");
 
-        List<MarketData> datosNuevos = new ArrayList<>();
-        List<String> simbolosExitosos = new ArrayList<>();
+        // Los símbolos se piden en lotes (una sola llamada /quote por lote) para
+        // consumir un único permiso del rate limiter por petición. Cada lote se
+        // descarga en su propio virtual thread y los resultados llegan a este
+        // hilo por una cola acotada, donde se persisten por micro-lotes.
+        int tamanoLote = marketDataProvider.getMaxSimbolosPorPeticion();
+        List<List<String>> lotes = particionarEnLotes(simbolos, tamanoLote);
+        System.out.println(grupoNombre + ": " + simbolos.size() + " símbolos en " + lotes.size()
+                + " lotes (máx. " + tamanoLote + " símbolos por llamada, proveedor "
+                + marketDataProvider.getNombre() + ")");
+
+        long inicio = System.currentTimeMillis();
+        MarketDataIngestionPipeline.ResultadoIngesta resultado = ingestionPipeline.ejecutar(
+                lotes,
+                marketDataProvider.requiereRateLimit() ? prioridad : null,
+                marketDataProvider::obtenerCotizaciones,
+                alertEvaluator::ofrecer,
+                microLote -> transactionTemplate.executeWithoutResult(
+                        status -> procesarDatosIngeridos(microLote, grupoNombre, simbolos.size())));
+        long duracionMs = System.currentTimeMillis() - inicio;
+
+        List<String> simbolosExitosos = resultado.exitosos();
         List<String> simbolosFallidos = new ArrayList<>();
-        int llamadasExitosas = 0;
-
-        for (String symbol : simbolos) {
-            try {
-                MarketData datos = obtenerDatosTwelveData(symbol);
-                if (datos != null) {
-                    datosNuevos.add(datos);
-                    simbolosExitosos.add(symbol);
-                    llamadasExitosas++;
-
-                    if (llamadasExitosas % 10 == 0) {
-                        System.out.println("Progreso " + grupoNombre + ": " + llamadasExitosas + "/" + simbolos.size());
-                    }
-                } else {
-                    simbolosFallidos.add(symbol + " (respuesta vacía)");
-                }
-                // El rate limiting ahora se maneja dentro de obtenerDatosTwelveData()
-
-            } catch (Exception e) {
-                simbolosFallidos.add(symbol + " (" + e.getMessage() + ")");
-                System.err.println("Error obteniendo " + symbol + ": " + e.getMessage());
-            }
-        }
-
-        if (llamadasExitosas > 0) {
-            // Guardar nuevos datos en BD
-            for (String symbol : simbolos) {
-                marketDataRepository.deleteBySymbol(symbol);
-            }
-            marketDataRepository.saveAll(datosNuevos);
+        resultado.fallidos().forEach((symbol, motivo) -> simbolosFallidos.add(symbol + " (" + motivo + ")"));
 
+        if (!simbolosExitosos.isEmpty()) {
             // RESUMEN DETALLADO
             System.out.println("\n========================================");
-            System.out.println("RESUMEN ACTUALIZACIÓN " + grupoNombre);
+            System.out.println("RESUMEN ACTUALIZACIÓN " + grupoNombre + " (" + duracionMs + " ms)");
             System.out.println("========================================");
             System.out.println("✅ EXITOSOS (" + simbolosExitosos.size() + "/" + simbolos.size() + "):");
             System.out.println("   " + String.join(", ", simbolosExitosos));
@@ -210,134 +271,187 @@ public class MarketDataService {
                 }
             }
             System.out.println("========================================\n");
-
-            // 1. GUARDAR EN REDIS ZSET (históricos de todos los símbolos actualizados)
-            guardarEnRedisZSET(datosNuevos);
-
-            // 2. GUARDAR PUNTOS HISTÓRICOS DE LOS 4 ÍNDICES PRINCIPALES
-            guardarPuntosHistoricosIndices(datosNuevos);
-
-            // 3. VERIFICAR Y DISPARAR ALERTAS
-            verificarAlertasConNuevosPrecios(datosNuevos);
         } else {
             System.err.println("\n========================================");
             System.err.println("❌ ACTUALIZACIÓN " + grupoNombre + " COMPLETAMENTE FALLIDA");
             System.err.println("Símbolos fallidos: " + String.join(", ", simbolosFallidos));
             System.err.println("========================================\n");
         }
+
+        return resultado;
     }
 
     /**
-     * Guarda datos de mercado en Redis ZSET para históricos intraday.
-     *
-     * Cada símbolo tiene su propio ZSET con:
-     * - Key: "historical:{symbol}"
-     * - Score: timestamp (para ordenación temporal)
-     * - Value: objeto MarketData
-     * - TTL: 24 horas (rolling window automático)
+     * Etapa de consumo del pipeline de ingesta: recibe un micro-lote de datos
+     * ya validados (en el hilo del scheduler, dentro de la transacción del micro-lote).
      *
-     * Esto permite análisis de tendencias intraday sin golpear MySQL.
+     * Solo se reemplazan las filas de los símbolos que llegaron con datos: los
+     * símbolos fallidos conservan su último precio conocido. Los precios nuevos
+     * se escriben directamente en caché (el CacheManager es transaccional: la
+     * escritura se aplica tras el commit), así que los lectores nunca ven la
+     * región vacía durante un refresco.
      */
-    private void guardarEnRedisZSET(List<MarketData> datosNuevos) {
-        try {
-            System.out.println("=== Guardando en Redis ZSET: " + datosNuevos.size() + " símbolos ===");
-            int guardados = 0;
+    private void procesarDatosIngeridos(List<MarketData> datosNuevos, String grupoNombre, int totalGrupo) {
+        // Guardar nuevos datos en BD
+        for (MarketData datos : datosNuevos) {
+            marketDataRepository.deleteBySymbol(datos.getSymbol());
+        }
+        marketDataRepository.saveAll(datosNuevos);
+        System.out.println("Progreso " + grupoNombre + ": +" + datosNuevos.size() + " símbolos persistidos (grupo de "
+                + totalGrupo + ")");
+
+        // Write-through a caché, publicación en la pizarra e indicadores (tras el
+        // commit) y registro de volatilidad/antigüedad para el scheduler adaptativo
+        escribirEnCachePrecios(datosNuevos);
+        publicarEnPizarraTrasCommit(datosNuevos);
+        activityTracker.registrarCotizaciones(datosNuevos);
+
+        // Series, portfolios y alertas: consumer groups del stream de ticks (tras el commit)
+        publicarParaProcesoPosterior(datosNuevos);
+    }
 
-            for (MarketData datos : datosNuevos) {
-                try {
-                    marketDataRedisRepository.addHistoricalData(datos);
-                    guardados++;
+    /**
+     * Escribe el precio nuevo de cada símbolo en su región de caché
+     * (premium/standard/extended) en lugar de invalidarla.
+     */
+    private void escribirEnCachePrecios(List<MarketData> datosNuevos) {
+        for (MarketData datos : datosNuevos) {
+            ultimosValoresConocidos.put(datos.getSymbol(), datos);
 
-                    if (guardados % 20 == 0) {
-                        System.out.println("Redis ZSET progreso: " + guardados + "/" + datosNuevos.size());
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error guardando en Redis ZSET " + datos.getSymbol() + ": " + e.getMessage());
+            String region = regionCache(datos.getSymbol());
+            if (region == null) {
+                continue;
+            }
+            try {
+                Cache cache = cacheManager.getCache(region);
+                if (cache != null) {
+                    cache.put(datos.getSymbol(), datos);
                 }
+            } catch (Exception e) {
+                // Redis es opcional: el siguiente lector cargará desde BD
+                System.err.println("Error escribiendo en caché " + region + " para " + datos.getSymbol() + ": "
+                        + e.getMessage());
             }
-
-            System.out.println("=== Redis ZSET guardado: " + guardados + " símbolos ===");
-        } catch (Exception e) {
-            System.err.println("Error general guardando en Redis ZSET: " + e.getMessage());
-            // No lanzar excepción - Redis es opcional, el sistema debe funcionar sin él
         }
     }
 
-    // ==================== SCHEDULERS POR GRUPO (SOLO DURANTE HORARIO NYSE)
-    // ====================
+    /**
+     * Publica las cotizaciones en la PriceBoard y las aplica al motor de
+     * indicadores y al volumen medio de las alertas cuando la transacción
+     * actual hace commit, para que ninguno adelante datos que luego se deshacen.
+     */
+    private void publicarEnPizarraTrasCommit(List<MarketData> datosNuevos) {
+        List<MarketData> copia = List.copyOf(datosNuevos);
+        trasCommit(() -> {
+            priceBoard.publicar(copia);
+            indicatorEngine.registrar(copia);
+            volumeBaseline.registrar(copia);
+        });
+    }
 
     /**
-     * Actualiza símbolos PREMIUM cada 20 minutos (solo durante horario NYSE).
-     * Grupo: 20 símbolos de mayor importancia/volatilidad.
-     *
-     * Cache Eviction: Limpia caché de premiumPrices después de actualizar.
+     * Publica las cotizaciones en el stream de ticks tras el commit. Si el
+     * stream está desactivado o Redis no responde, el trabajo posterior se
+     * ejecuta en línea en una transacción nueva (comportamiento sin streams).
      */
-    @Scheduled(fixedRate = 1200000) // 20 minutos
-    @Transactional
-    @CacheEvict(value = "premiumPrices", allEntries = true, beforeInvocation = true)
-    public void actualizarGrupoPremium() {
-      
-        if (!marketHoursService.isNYSEOpen()) {
-        System.out.println("⏸️ Scheduler PREMIUM pausado - Mercado NYSE cerrado | "
-        + marketHoursService.getMarketStatusInfo());
-        return;
+    private void publicarParaProcesoPosterior(List<MarketData> datosNuevos) {
+        List<MarketData> copia = List.copyOf(datosNuevos);
+        trasCommit(() -> {
+            if (streamActivo) {
+                try {
+                    tickStream.publicarTicks(copia);
+                    return;
+                } catch (Exception e) {
+                    System.err.println("Error publicando en el stream de ticks, procesando en línea: " + e.getMessage());
+                }
+            }
+            procesarEnLinea(copia);
+        });
+    }
+
+    /**
+     * Ejecuta la acción cuando la transacción actual hace commit
+     * (inmediatamente si no hay transacción activa).
+     */
+    private void trasCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
         }
+    }
 
-        actualizarGrupoDeSimbolos(
-                symbolGroupConfig.getSymbolsByFrequency(
-                        com.miguel.spyzer.config.SymbolGroupConfig.UpdateFrequency.PREMIUM_20MIN),
-                "PREMIUM");
+    /**
+     * Trabajo posterior a la persistencia sin stream: cada etapa por separado
+     * (un fallo no impide las demás) y en una transacción nueva, porque en
+     * afterCommit la transacción original ya no admite escrituras.
+     */
+    private void procesarEnLinea(List<MarketData> datosNuevos) {
+        TransactionTemplate nueva = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        nueva.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
 
-        // ACTUALIZAR TODOS LOS PORTFOLIOS (solo aquí, cada 20 min)
-        actualizarPreciosEnPortfolios();
+        try {
+            nueva.executeWithoutResult(status -> procesarSeries(datosNuevos));
+        } catch (Exception e) {
+            System.err.println("Error guardando series: " + e.getMessage());
+            // No lanzar excepción - Redis es opcional, el sistema debe funcionar sin él
+        }
+        try {
+            nueva.executeWithoutResult(status -> revalorizarPortfolios(datosNuevos));
+        } catch (Exception e) {
+            System.err.println("Error actualizando portfolios: " + e.getMessage());
+        }
+        try {
+            List<Alert> disparadas = nueva.execute(status -> verificarAlertas(datosNuevos));
+            notificarAlertas(disparadas);
+        } catch (Exception e) {
+            System.err.println("Error verificando alertas: " + e.getMessage());
+        }
     }
 
     /**
-     * Actualiza símbolos ESTÁNDAR cada 60 minutos (solo durante horario NYSE).
-     * Grupo: 42 símbolos de importancia media.
+     * Series de las cotizaciones: ticks intraday y barras OHLC (1m/5m/1h/1d) en
+     * Redis, y puntos históricos de los índices principales en BD.
+     * Las series de Redis son idempotentes (los ticks no posteriores al último
+     * guardado se descartan).
      *
-     * Cache Eviction: Limpia caché de standardPrices después de actualizar.
+     * @throws org.springframework.dao.DataAccessException si Redis o la BD no están disponibles
      */
-    @Scheduled(fixedRate = 3600000) // 60 minutos
-    @Transactional
-    @CacheEvict(value = "standardPrices", allEntries = true, beforeInvocation = true)
-    public void actualizarGrupoEstandar() {
-     
-        if (!marketHoursService.isNYSEOpen()) {
-        System.out.println("⏸️ Scheduler ESTÁNDAR pausado - Mercado NYSE cerrado | "
-        + marketHoursService.getMarketStatusInfo());
-        return;
-        }
-
-        actualizarGrupoDeSimbolos(
-                symbolGroupConfig.getSymbolsByFrequency(
-                        com.miguel.spyzer.config.SymbolGroupConfig.UpdateFrequency.STANDARD_60MIN),
-                "ESTÁNDAR");
+    public void procesarSeries(List<MarketData> datosNuevos) {
+        guardarTicksIntraday(datosNuevos);
+        ohlcRollupService.registrarTicks(datosNuevos);
+        guardarPuntosHistoricosIndices(datosNuevos);
     }
 
     /**
-     * Actualiza símbolos EXTENDIDOS cada 90 minutos (solo durante horario NYSE).
-     * Grupo: 18 símbolos adicionales (ETFs temáticos, sectores específicos).
+     * Guarda los datos de mercado como ticks intraday en Redis.
+     *
+     * Cada símbolo tiene su serie de chunks horarios:
+     * - Key: "ticks:{symbol}:{hora}"
+     * - Value: ticks empaquetados de 20 bytes (timestamp, precio, volumen)
+     * - TTL: 24 horas (rolling window automático)
      *
-     * Cache Eviction: Limpia caché de extendedPrices después de actualizar.
+     * Esto permite análisis de tendencias intraday sin golpear MySQL.
      */
-    @Scheduled(fixedRate = 5400000) // 90 minutos
-    @Transactional
-    @CacheEvict(value = "extendedPrices", allEntries = true, beforeInvocation = true)
-    public void actualizarGrupoExtendido() {
-        
-        if (!marketHoursService.isNYSEOpen()) {
-        System.out.println("⏸️ Scheduler EXTENDIDO pausado - Mercado NYSE cerrado | "
-        + marketHoursService.getMarketStatusInfo());
-        return;
-        }
+    private void guardarTicksIntraday(List<MarketData> datosNuevos) {
+        System.out.println("=== Guardando ticks intraday en Redis: " + datosNuevos.size() + " símbolos ===");
+
+        // Un único script Lua para todo el micro-lote
+        Map<String, String> errores = marketDataRedisRepository.addHistoricalDataBatch(datosNuevos);
+        errores.forEach((symbol, error) ->
+                System.err.println("Error guardando ticks en Redis " + symbol + ": " + error));
 
-        actualizarGrupoDeSimbolos(
-                symbolGroupConfig.getSymbolsByFrequency(
-                        com.miguel.spyzer.config.SymbolGroupConfig.UpdateFrequency.EXTENDED_90MIN),
-                "EXTENDIDO");
+        System.out.println("=== Ticks intraday guardados: " + (datosNuevos.size() - errores.size()) + " símbolos ===");
     }
 
+    // ==================== ACTUALIZACIÓN POST-CIERRE
+    // ====================
+
     /**
      * Actualiza los 4 índices principales 30 minutos después del cierre del mercado.
      * Se ejecuta a las 4:30 PM ET (22:30 hora España) de lunes a viernes.
@@ -395,9 +509,11 @@ public class MarketDataService {
             System.out.println("❌ Fallidos: " + fallidos);
             System.out.println("========================================\n");
 
-            // Guardar en Redis y crear puntos históricos
-            guardarEnRedisZSET(datosNuevos);
-            guardarPuntosHistoricosIndices(datosNuevos);
+            escribirEnCachePrecios(datosNuevos);
+            publicarEnPizarraTrasCommit(datosNuevos);
+
+            // Series, puntos históricos, portfolios y alertas con el cierre oficial
+            publicarParaProcesoPosterior(datosNuevos);
         }
 
         System.out.println("=== Actualización post-cierre completada ===\n");
@@ -413,28 +529,22 @@ public class MarketDataService {
      */
     private MarketData obtenerCierreOficialDesdeHistoricos(String symbol) {
         try {
-            // RATE LIMITING
-            apiRateLimiter.esperarSiEsNecesario();
-
-            String interval = "1day";
-            String outputsize = "1"; // Solo el día más reciente
-
-            String url = String.format("%s/time_series?symbol=%s&interval=%s&outputsize=%s&apikey=%s",
-                    TWELVE_DATA_URL, symbol, interval, outputsize, twelveDataApiKey);
+            // RATE LIMITING (carril de segundo plano: no compite con los refrescos PREMIUM)
+            esperarPermisoApi(ApiRateLimiter.Prioridad.SEGUNDO_PLANO);
 
             System.out.println("🔍 Obteniendo cierre oficial desde históricos: " + symbol);
 
-            TwelveDataTimeSeriesResponse response = restTemplate.getForObject(url,
-                    TwelveDataTimeSeriesResponse.class);
+            // Solo el día más reciente
+            List<HistoricalDataPoint> serie = marketDataProvider.obtenerSerieTemporal(symbol, "1day", 1);
 
-            if (response != null && response.getValues() != null && !response.getValues().isEmpty()) {
-                TwelveDataValue dayData = response.getValues().get(0); // Día más reciente
+            if (!serie.isEmpty()) {
+                HistoricalDataPoint dayData = serie.get(0); // Día más reciente
 
                 if (dayData.getClose() != null) {
-                    BigDecimal close = new BigDecimal(dayData.getClose());
-                    BigDecimal open = dayData.getOpen() != null ? new BigDecimal(dayData.getOpen()) : close;
-                    BigDecimal high = dayData.getHigh() != null ? new BigDecimal(dayData.getHigh()) : close;
-                    BigDecimal low = dayData.getLow() != null ? new BigDecimal(dayData.getLow()) : close;
+                    BigDecimal close = dayData.getClose();
+                    BigDecimal open = dayData.getOpen() != null ? dayData.getOpen() : close;
+                    BigDecimal high = dayData.getHigh() != null ? dayData.getHigh() : close;
+                    BigDecimal low = dayData.getLow() != null ? dayData.getLow() : close;
 
                     // Calcular previous close si hay más de 1 día disponible
                     BigDecimal previousClose = close; // Fallback
@@ -453,9 +563,7 @@ public class MarketDataService {
                             .high(high)
                             .low(low)
                             .close(close)
-                            .volumen(dayData.getVolume() != null && !dayData.getVolume().isEmpty()
-                                    ? Long.parseLong(dayData.getVolume())
-                                    : null)
+                            .volumen(dayData.getVolume())
                             .precioAnterior(previousClose)
                             .variacionAbsoluta(change)
                             .variacionPorcentual(changePercent)
@@ -478,14 +586,19 @@ public class MarketDataService {
 
     /**
      * Guardar puntos históricos de los 4 índices principales cada vez que se
-     * actualiza
+     * actualiza.
+     *
+     * El ts del punto es el timestamp de la cotización, así que reprocesar el
+     * mismo lote (reentrega del stream) no duplica filas: los puntos que ya
+     * existen se omiten.
      */
-    private void guardarPuntosHistoricosIndices(List<MarketData> datosNuevos) {
+    public void guardarPuntosHistoricosIndices(List<MarketData> datosNuevos) {
         System.out.println("=== Guardando puntos históricos de índices principales ===");
         System.out.println("Total de datos nuevos recibidos: " + datosNuevos.size());
         System.out.println("Índices a buscar: " + INDICES);
 
         List<HistoricalDataPoint> puntosHistoricos = new ArrayList<>();
+        Set<String> claves = new HashSet<>();
         int guardados = 0;
 
         for (MarketData datos : datosNuevos) {
@@ -495,9 +608,21 @@ public class MarketDataService {
             // Solo guardar si es uno de los 4 índices principales
             if (INDICES.contains(datos.getSymbol())) {
                 try {
+                    // Misma precisión (ms) con la que se guarda, para detectar el duplicado
+                    Instant ts = (datos.getTimestamp() != null
+                            ? datos.getTimestamp().atZone(ZoneId.systemDefault()).toInstant()
+                            : Instant.now()).truncatedTo(ChronoUnit.MILLIS);
+                    if (!claves.add(datos.getSymbol() + "|" + ts)
+                            || historicalDataRepository.existsBySymbolAndTs(datos.getSymbol(), ts)) {
+                        System.out.println("Punto histórico ya guardado para " + datos.getSymbol() + " (" + ts + ")");
+                        continue;
+                    }
+
                     HistoricalDataPoint punto = HistoricalDataPoint.builder()
                             .symbol(datos.getSymbol())
-                            .date(java.time.Instant.now().toString())
+                            .date(ts.toString())
+                            .ts(ts)
+                            .granularidad(HistoricalDataPoint.Granularidad.INTRADIA)
                             .open(datos.getOpen())
                             .high(datos.getHigh())
                             .low(datos.getLow())
@@ -520,179 +645,240 @@ public class MarketDataService {
         if (!puntosHistoricos.isEmpty()) {
             historicalDataRepository.saveAll(puntosHistoricos);
             System.out.println("=== Puntos históricos guardados en BD: " + guardados + " índices ===");
+
+            // Copia local columnar, solo con lo ya confirmado en BD
+            trasCommit(() -> puntosHistoricos.stream()
+                    .collect(Collectors.groupingBy(HistoricalDataPoint::getSymbol))
+                    .forEach((symbol, puntos) -> columnarBarStore.anexar(symbol,
+                            HistoricalDataPoint.Granularidad.INTRADIA, puntos)));
         } else {
-            System.err.println("⚠️ ADVERTENCIA: No se guardaron puntos históricos. ¿No hay índices en datosNuevos?");
+            // Con la ingesta por micro-lotes es normal que un lote no contenga índices
+            System.out.println("Sin índices principales en este lote, no se guardan puntos históricos");
         }
     }
 
     /**
-     * Actualizar precios actuales en todos los portfolios después de actualizar
-     * MarketData
+     * Actualizar precios actuales de las posiciones abiertas en los símbolos
+     * recién refrescados (el resto de posiciones no ha cambiado de precio).
+     * Idempotente: con varias cotizaciones de un símbolo gana la última.
+     *
+     * Una entrada del stream reclamada tras claim-idle-seconds se procesa
+     * después de ticks más nuevos: si su cotización es anterior a la de la
+     * pizarra se ignora, para no sobrescribir el precio actual con uno viejo.
      */
-    private void actualizarPreciosEnPortfolios() {
-        System.out.println("=== Actualizando precios en Portfolios ===");
-
-        List<Portfolio> todasLasPosiciones = portfolioRepository.findAll();
-        int actualizadas = 0;
-        int noEncontradas = 0;
+    public void revalorizarPortfolios(List<MarketData> datosNuevos) {
+        Map<String, MarketData> preciosPorSimbolo = new HashMap<>();
+        for (MarketData datos : datosNuevos) {
+            if (datos.getPrecio() != null && !esAnteriorAPizarra(datos)) {
+                preciosPorSimbolo.put(datos.getSymbol(), datos);
+            }
+        }
+        if (preciosPorSimbolo.isEmpty()) {
+            return;
+        }
 
-        for (Portfolio posicion : todasLasPosiciones) {
-            try {
-                MarketData datos = obtenerDatos(posicion.getSymbol());
-
-                if (datos != null && datos.getPrecio() != null) {
-                    posicion.setPrecioActual(datos.getPrecio());
-                    posicion.calcularValorMercado();
-                    posicion.calcularGananciaPerdida();
-                    portfolioRepository.save(posicion);
-                    actualizadas++;
-
-                    System.out.println("Portfolio actualizado: " + posicion.getSymbol() +
-                            " | Precio: $" + datos.getPrecio() +
-                            " | G/P: $" + posicion.getGananciaPerdida());
-                } else {
-                    noEncontradas++;
-                    System.err.println("No se encontraron datos para " + posicion.getSymbol());
-                }
-            } catch (Exception e) {
-                System.err.println("Error actualizando portfolio para " + posicion.getSymbol() + ": " + e.getMessage());
+        List<Portfolio> posiciones = portfolioRepository.findBySymbolIn(preciosPorSimbolo.keySet());
+        for (Portfolio posicion : posiciones) {
+            MarketData datos = preciosPorSimbolo.get(posicion.getSymbol());
+            if (datos == null) {
+                continue;
             }
+            posicion.setPrecioActual(datos.getPrecio());
+            posicion.calcularValorMercado();
+            posicion.calcularGananciaPerdida();
         }
+        portfolioRepository.saveAll(posiciones);
+
+        System.out.println("=== Portfolios revalorizados: " + posiciones.size() + " posiciones en "
+                + preciosPorSimbolo.size() + " símbolos ===");
+    }
 
-        System.out.println("=== Portfolios actualizados: " + actualizadas + "/" + todasLasPosiciones.size() +
-                " (sin datos: " + noEncontradas + ") ===");
+    private boolean esAnteriorAPizarra(MarketData datos) {
+        MarketData enPizarra = priceBoard.obtener(datos.getSymbol());
+        return enPizarra != null && enPizarra.getTimestamp() != null && datos.getTimestamp() != null
+                && datos.getTimestamp().isBefore(enPizarra.getTimestamp());
     }
 
     /**
-     * Verificar todas las alertas activas con los nuevos precios obtenidos
+     * Verificar todas las alertas activas con los nuevos precios obtenidos.
+     *
+     * Si el lote trae varias cotizaciones de un símbolo (lote del stream que
+     * abarca varios refrescos) se evalúan todas, en orden, para no perder un
+     * cruce intermedio del trigger. Las cotizaciones anteriores a la última
+     * ya evaluada del símbolo (entradas reclamadas que llegan después de
+     * ticks más nuevos) se descartan: dispararían con un precio que ya no es
+     * el actual. La última evaluada se anota tras el commit, para que un lote
+     * que falla se reintente completo.
+     *
+     * @return Alertas disparadas (ya marcadas y guardadas), sin notificar
      */
-    private void verificarAlertasConNuevosPrecios(List<MarketData> datosNuevos) {
+    public List<Alert> verificarAlertas(List<MarketData> datosNuevos) {
         System.out.println("=== Verificando alertas con nuevos precios ===");
 
-        try {
-            // Crear mapa de precios actuales: symbol -> precio
-            Map<String, BigDecimal> preciosActuales = new HashMap<>();
-            for (MarketData datos : datosNuevos) {
-                if (datos != null && datos.getSymbol() != null && datos.getPrecio() != null) {
-                    preciosActuales.put(datos.getSymbol(), datos.getPrecio());
-                }
+        List<MarketData> vigentes = new ArrayList<>(datosNuevos.size());
+        Map<String, LocalDateTime> masRecientes = new HashMap<>();
+        for (MarketData datos : datosNuevos) {
+            if (datos == null || datos.getSymbol() == null || datos.getPrecio() == null) {
+                continue;
             }
-
-            if (preciosActuales.isEmpty()) {
-                System.out.println("No hay precios disponibles para verificar alertas");
-                return;
+            LocalDateTime ultimo = ultimosTicksAlertas.get(datos.getSymbol());
+            if (datos.getTimestamp() != null && ultimo != null && datos.getTimestamp().isBefore(ultimo)) {
+                System.out.println("Cotización atrasada de " + datos.getSymbol() + " (" + datos.getTimestamp()
+                        + "), no se evalúan sus alertas");
+                continue;
             }
+            vigentes.add(datos);
+            if (datos.getTimestamp() != null) {
+                masRecientes.merge(datos.getSymbol(), datos.getTimestamp(), (a, b) -> a.isAfter(b) ? a : b);
+            }
+        }
+        trasCommit(() -> masRecientes.forEach((symbol, ts) ->
+                ultimosTicksAlertas.merge(symbol, ts, (a, b) -> a.isAfter(b) ? a : b)));
+
+        // Rondas de cotizaciones symbol -> datos con como mucho una cotización por símbolo
+        List<Map<String, MarketData>> rondas = new ArrayList<>();
+        for (MarketData datos : vigentes) {
+            Map<String, MarketData> ronda = rondas.stream()
+                    .filter(r -> !r.containsKey(datos.getSymbol()))
+                    .findFirst()
+                    .orElseGet(() -> {
+                        Map<String, MarketData> nueva = new HashMap<>();
+                        rondas.add(nueva);
+                        return nueva;
+                    });
+            ronda.put(datos.getSymbol(), datos);
+        }
 
-            // Verificar todas las alertas activas del sistema
-            List<Alert> alertasDisparadas = alertService.verificarTodasLasAlertas(preciosActuales);
-
-            if (!alertasDisparadas.isEmpty()) {
-                System.out.println("=== ¡ALERTAS DISPARADAS! ===");
-                for (Alert alerta : alertasDisparadas) {
-
-                    System.out.println("🔔 ALERTA: " + alerta.getSymbol() +
-                            " | Tipo: " + alerta.getTipo() +
-                            " | Trigger: $" + alerta.getValorTrigger() +
-                            " | Usuario: " + alerta.getUser().getId() +
-                            " | Mensaje: " + alerta.getMensajeCompleto());
-
-                    try {
-                        notificationService.enviarNotificacionAlerta(alerta);
-                        System.out.println("✅ Notificación enviada para alerta " + alerta.getId());
-                    } catch (Exception e) {
-                        System.err.println(
-                                "❌ Error enviando notificación para alerta " + alerta.getId() + ": " + e.getMessage());
-                    }
+        if (rondas.isEmpty()) {
+            System.out.println("No hay precios disponibles para verificar alertas");
+            return List.of();
+        }
 
+        // Verificar las alertas de precio y de volumen de cada ronda
+        List<Alert> alertasDisparadas = new ArrayList<>();
+        for (Map<String, MarketData> ronda : rondas) {
+            Map<String, BigDecimal> preciosActuales = new HashMap<>();
+            Map<String, Long> volumenes = new HashMap<>();
+            ronda.forEach((symbol, datos) -> {
+                preciosActuales.put(symbol, datos.getPrecio());
+                if (datos.getVolumen() != null) {
+                    volumenes.put(symbol, datos.getVolumen());
                 }
-                System.out.println("=== Total alertas disparadas: " + alertasDisparadas.size() + " ===");
-            } else {
-                System.out.println("No se dispararon alertas en esta actualización");
+            });
+            alertasDisparadas.addAll(alertService.verificarTodasLasAlertas(preciosActuales));
+            alertasDisparadas.addAll(alertService.verificarAlertasVolumen(volumenes));
+        }
+        // Movimiento porcentual y trailing stop: estado incremental con todos los ticks, en orden
+        alertasDisparadas.addAll(alertService.verificarAlertasConEstado(vigentes));
+
+        if (!alertasDisparadas.isEmpty()) {
+            System.out.println("=== ¡ALERTAS DISPARADAS! ===");
+            for (Alert alerta : alertasDisparadas) {
+                System.out.println("🔔 ALERTA: " + alerta.getSymbol() +
+                        " | Tipo: " + alerta.getTipo() +
+                        " | Trigger: $" + alerta.getValorTrigger() +
+                        " | Usuario: " + alerta.getUser().getId() +
+                        " | Mensaje: " + alerta.getMensajeCompleto());
             }
-
-        } catch (Exception e) {
-            System.err.println("Error verificando alertas: " + e.getMessage());
-            e.printStackTrace();
+            System.out.println("=== Total alertas disparadas: " + alertasDisparadas.size() + " ===");
+        } else {
+            System.out.println("No se dispararon alertas en esta actualización");
         }
+        return alertasDisparadas;
     }
 
-    // ==================== RESETEO Y RECARGA HISTÓRICOS (CADA MES)
-    // ====================
-
-    @Scheduled(fixedRate = 2592000000L) // 30 días (30 * 24 * 60 * 60 * 1000)
-    @Transactional
-    public void resetearYRecargarHistoricos() {
-        System.out.println("=== Iniciando reseteo y recarga de históricos (" + INDICES.size() + " símbolos) ===");
-
-        // 1. ELIMINAR TODOS LOS DATOS HISTÓRICOS
-        System.out.println("Eliminando todos los datos históricos...");
-        historicalDataRepository.deleteAll();
-        System.out.println("Datos históricos eliminados ✓");
-
-        int actualizados = 0;
-
-        // 2. RECARGAR HISTÓRICOS DE LOS ÚLTIMOS 2 AÑOS
-        for (String symbol : INDICES) {
-            synchronized (historicalLock) {
-                try {
-                    System.out.println("Cargando históricos de " + symbol + " (2 años)...");
-                    // El rate limiting se maneja dentro de obtenerHistoricoDesdeAPI()
-
-                    List<HistoricalDataPoint> datos = obtenerHistoricoDesdeAPI(symbol, 730); // 730 días = ~2 años
-
-                    if (!datos.isEmpty()) {
-                        // Guardar nuevos
-                        historicalDataRepository.saveAll(datos);
-
-                        actualizados++;
-                        System.out.println("Históricos de " + symbol + " cargados: " + datos.size() + " puntos");
-                    }
-
-                } catch (Exception e) {
-                    System.err.println("Error cargando históricos de " + symbol + ": " + e.getMessage());
-                }
+    /**
+     * Envía la notificación de cada alerta disparada (los fallos de una no impiden las demás).
+     *
+     * @return ids de las alertas cuya notificación falló
+     */
+    public List<Long> notificarAlertas(List<Alert> alertasDisparadas) {
+        if (alertasDisparadas == null) {
+            return List.of();
+        }
+        List<Long> fallidas = new ArrayList<>();
+        for (Alert alerta : alertasDisparadas) {
+            boolean enviada;
+            try {
+                enviada = notificationService.intentarNotificacionAlerta(alerta);
+            } catch (Exception e) {
+                enviada = false;
+            }
+            if (enviada) {
+                System.out.println("✅ Notificación enviada para alerta " + alerta.getId());
+            } else {
+                System.err.println("❌ Error enviando notificación para alerta " + alerta.getId());
+                fallidas.add(alerta.getId());
             }
         }
-
-        System.out.println("=== Reseteo y recarga completada: " + actualizados + "/" + INDICES.size() + " ===");
+        return fallidas;
     }
 
+    // Los históricos diarios se sincronizan de forma incremental en HistoricalSyncService
+
     // ==================== DATOS HISTÓRICOS - LEER DESDE BD ====================
 
-    public List<HistoricalDataPoint> obtenerHistorico(String symbol, int days) {
-        // Leer directamente de BD
-        List<HistoricalDataPoint> historicos = historicalDataRepository
-                .findBySymbolOrderByDateDesc(symbol.toUpperCase(), days);
+    /**
+     * Últimos N puntos diarios, más reciente primero.
+     *
+     * Se leen del almacén columnar local (copia de BD mapeada en memoria, sin
+     * crear objetos por fila); si falla el archivo se leen de BD y, si BD no
+     * tiene histórico del símbolo, de la API.
+     */
+    public BarSlice obtenerHistorico(String symbol, int days) {
+        String symbolUpper = symbol.toUpperCase();
+        BarSlice historicos;
+        try {
+            historicos = columnarBarStore.ultimos(symbolUpper, HistoricalDataPoint.Granularidad.DIARIA, days);
+        } catch (UncheckedIOException e) {
+            System.err.println("Error leyendo almacén columnar de " + symbolUpper + ", leyendo de BD: " + e.getMessage());
+            historicos = BarSlice.desdePuntos(symbolUpper, HistoricalDataPoint.Granularidad.DIARIA,
+                    historicalDataRepository.findBySymbolAndGranularidadOrderByTsDesc(
+                            symbolUpper, HistoricalDataPoint.Granularidad.DIARIA, Limit.of(days)));
+        }
 
         if (historicos.isEmpty()) {
             System.out.println("No hay históricos en BD para " + symbol + ", obteniendo de API...");
-            return obtenerHistoricoDesdeAPI(symbol, days);
+            return BarSlice.desdePuntos(symbolUpper, HistoricalDataPoint.Granularidad.DIARIA,
+                    obtenerHistoricoDesdeAPI(symbol, days, ApiRateLimiter.Prioridad.INTERACTIVA));
         }
 
         return historicos;
     }
 
-    private List<HistoricalDataPoint> obtenerHistoricoDesdeAPI(String symbol, int days) {
+    /**
+     * Página de históricos de BD en un rango de fechas, en orden cronológico.
+     *
+     * Paginación por keyset: la primera página se pide con despues = null y
+     * las siguientes con el ts del último punto de la anterior. Cada página es
+     * un recorrido del índice (symbol, granularidad, ts) sin OFFSET.
+     *
+     * @param desde   Inicio del rango (inclusive)
+     * @param hasta   Fin del rango (inclusive)
+     * @param despues Cursor: ts del último punto ya recibido, o null
+     * @param limite  Puntos máximos de la página
+     */
+    public List<HistoricalDataPoint> obtenerHistoricoRango(String symbol, HistoricalDataPoint.Granularidad granularidad,
+            Instant desde, Instant hasta, Instant despues, int limite) {
+        Instant cursor = despues != null && despues.isAfter(desde) ? despues : desde.minusMillis(1);
+        return historicalDataRepository.findPagina(symbol.toUpperCase(), granularidad, cursor, hasta,
+                Limit.of(limite));
+    }
+
+    private List<HistoricalDataPoint> obtenerHistoricoDesdeAPI(String symbol, int days,
+            ApiRateLimiter.Prioridad prioridad) {
         try {
             // RATE LIMITING GLOBAL: Esperar si es necesario para respetar límite de 8
-            // llamadas/min
-            apiRateLimiter.esperarSiEsNecesario();
-
-            String interval = "1day";
-            String outputsize = String.valueOf(days);
+            // llamadas/min (la espera no bloquea a otros carriles)
+            esperarPermisoApi(prioridad);
 
-            String url = String.format("%s/time_series?symbol=%s&interval=%s&outputsize=%s&apikey=%s",
-                    TWELVE_DATA_URL, symbol, interval, outputsize, twelveDataApiKey);
+            System.out.println("Llamando a " + marketDataProvider.getNombre() + " histórico: " + symbol);
 
-            System.out.println("Llamando a TwelveData histórico: " + symbol);
+            List<HistoricalDataPoint> datos = marketDataProvider.obtenerSerieTemporal(symbol, "1day", days);
 
-            TwelveDataTimeSeriesResponse response = restTemplate.getForObject(url,
-                    TwelveDataTimeSeriesResponse.class);
-
-            if (response != null && response.getValues() != null && !response.getValues().isEmpty()) {
-                System.out.println(
-                        "Históricos obtenidos de API: " + symbol + " (" + response.getValues().size() + " puntos)");
-                return parsearHistoricoTwelveData(response.getValues(), symbol);
+            if (!datos.isEmpty()) {
+                System.out.println("Históricos obtenidos de API: " + symbol + " (" + datos.size() + " puntos)");
+                return datos;
             } else {
                 System.err.println("Respuesta vacía para históricos de " + symbol);
             }
@@ -716,26 +902,100 @@ public class MarketDataService {
      *
      * El método determina automáticamente qué caché usar basándose en el grupo del
      * símbolo.
+     *
+     * Primero se consulta la PriceBoard (memoria local, sin red); la caché y la
+     * BD solo se usan para símbolos que aún no están en la pizarra.
+     *
+     * Protección frente a avalanchas tras una invalidación:
+     * - Single-flight: los misses concurrentes de un mismo símbolo comparten una
+     *   única consulta a MySQL.
+     * - Refresh-ahead: si ya se conocía un valor anterior, se devuelve al instante
+     *   mientras la recarga corre en segundo plano.
      */
     public MarketData obtenerDatos(String symbol) {
         String upperSymbol = symbol.toUpperCase();
 
+        // Cada lectura de un símbolo conocido cuenta como demanda para el scheduler adaptativo
+        // (los desconocidos no: el tracker crecería con cualquier símbolo que se pida)
+        if (estaDisponible(upperSymbol)) {
+            activityTracker.registrarPeticion(upperSymbol);
+        }
+
+        // 0. PIZARRA EN MEMORIA: lectura wait-free de la última cotización publicada
+        MarketData enPizarra = priceBoard.obtener(upperSymbol);
+        if (enPizarra != null) {
+            return enPizarra;
+        }
+
         // Determinar el grupo del símbolo para usar la caché correcta
-        com.miguel.spyzer.config.SymbolGroupConfig.UpdateFrequency frequency = symbolGroupConfig
-                .getFrequencyForSymbol(upperSymbol);
+        String region = regionCache(upperSymbol);
 
-        if (frequency == null) {
-            // Símbolo no está en ningún grupo, no cachear
-            return marketDataRepository.findTopBySymbolOrderByTimestampDesc(upperSymbol);
+        if (region == null) {
+            // Símbolo no está en ningún grupo, no cachear (pero sí coalescer lecturas concurrentes)
+            return cargasPrecio.cargar(upperSymbol,
+                    () -> marketDataRepository.findTopBySymbolOrderByTimestampDesc(upperSymbol));
+        }
+
+        // 1. HIT: valor en caché
+        MarketData enCache = leerDeCache(region, upperSymbol);
+        if (enCache != null) {
+            ultimosValoresConocidos.put(upperSymbol, enCache);
+            return enCache;
         }
 
+        // 2. MISS con valor anterior conocido: refresh-ahead. Se sirve el valor
+        // anterior y se recarga en segundo plano (una sola carga por símbolo)
+        MarketData anterior = ultimosValoresConocidos.get(upperSymbol);
+        if (anterior != null) {
+            cargasPrecio.cargarAsync(upperSymbol, () -> cargarEnCache(upperSymbol), recargasCache)
+                    .exceptionally(e -> {
+                        System.err.println("Error recargando caché de " + upperSymbol + ": " + e.getMessage());
+                        return null;
+                    });
+            return anterior;
+        }
+
+        // 3. MISS en frío: los llamantes concurrentes comparten una única carga
+        return cargasPrecio.cargar(upperSymbol, () -> cargarEnCache(upperSymbol));
+    }
+
+    /**
+     * Carga el precio desde BD a través del proxy (self) para que @Cacheable lo
+     * guarde en su región, y lo registra como último valor conocido.
+     */
+    private MarketData cargarEnCache(String upperSymbol) {
+        com.miguel.spyzer.config.SymbolGroupConfig.UpdateFrequency frequency = symbolGroupConfig
+                .getFrequencyForSymbol(upperSymbol);
+
         // Llamar a través del proxy (self) para que @Cacheable funcione correctamente
         // Si llamamos directamente (this.metodo), Spring AOP no puede interceptar la llamada
-        return switch (frequency) {
+        MarketData datos = switch (frequency) {
             case PREMIUM_20MIN -> self.obtenerDatosPremiumCache(upperSymbol);
             case STANDARD_60MIN -> self.obtenerDatosStandardCache(upperSymbol);
             case EXTENDED_90MIN -> self.obtenerDatosExtendedCache(upperSymbol);
         };
+
+        if (datos != null) {
+            ultimosValoresConocidos.put(upperSymbol, datos);
+        }
+        return datos;
+    }
+
+    /**
+     * Lectura directa de la región de caché (null si no está o Redis no responde).
+     */
+    private MarketData leerDeCache(String region, String upperSymbol) {
+        try {
+            Cache cache = cacheManager.getCache(region);
+            if (cache == null) {
+                return null;
+            }
+            Cache.ValueWrapper valor = cache.get(upperSymbol);
+            return valor != null ? (MarketData) valor.get() : null;
+        } catch (Exception e) {
+            System.err.println("Error leyendo caché " + region + " para " + upperSymbol + ": " + e.getMessage());
+            return null;
+        }
     }
 
     @Cacheable(value = "premiumPrices", key = "#symbol")
@@ -754,254 +1014,144 @@ public class MarketDataService {
     }
 
     public Map<String, MarketData> obtenerMultiplesDatos(String... symbols) {
-        Map<String, MarketData> resultados = new HashMap<>();
-
-        for (String symbol : symbols) {
-            MarketData data = obtenerDatos(symbol);
-            if (data != null) {
-                resultados.put(symbol.toUpperCase(), data);
-            }
-        }
-
-        return resultados;
+        return obtenerDatosEnBloque(Arrays.asList(symbols));
     }
 
     public Map<String, MarketData> obtenerIndicesPrincipales() {
-        Map<String, MarketData> indices = new HashMap<>();
-
-        for (String symbol : INDICES) {
-            MarketData data = obtenerDatos(symbol);
-            if (data != null) {
-                indices.put(symbol, data);
-            }
-        }
-
-        return indices;
-    }
-
-    public boolean estaDisponible(String symbol) {
-        return TODOS_LOS_SIMBOLOS.contains(symbol.toUpperCase());
-    }
-
-    public List<String> obtenerSimbolosDisponibles() {
-        return new ArrayList<>(TODOS_LOS_SIMBOLOS);
+        return obtenerDatosEnBloque(INDICES);
     }
 
-    // ==================== PARSERS ====================
-
-    private MarketData obtenerDatosTwelveData(String symbol) {
-        try {
-            // RATE LIMITING GLOBAL: Esperar si es necesario para respetar límite de 8
-            // llamadas/min
-            apiRateLimiter.esperarSiEsNecesario();
-
-            String url = String.format("%s/quote?symbol=%s&apikey=%s",
-                    TWELVE_DATA_URL, symbol, twelveDataApiKey);
-
-            System.out.println("🔍 Llamando TwelveData para: " + symbol);
-            TwelveDataQuoteResponse response = restTemplate.getForObject(url, TwelveDataQuoteResponse.class);
-
-            if (response != null && response.getClose() != null && response.getPreviousClose() != null) {
-                BigDecimal price = new BigDecimal(response.getClose());
-                BigDecimal previousClose = new BigDecimal(response.getPreviousClose());
-                BigDecimal change = price.subtract(previousClose);
-                BigDecimal changePercent = previousClose.compareTo(BigDecimal.ZERO) != 0 ? change
-                        .divide(previousClose, 4, java.math.RoundingMode.HALF_UP).multiply(new BigDecimal("100"))
-                        : BigDecimal.ZERO;
-
-                System.out.println("✓ Datos obtenidos para " + symbol + " | Precio: $" + price);
-
-                return MarketData.builder()
-                        .symbol(symbol.toUpperCase())
-                        .precio(price)
-                        .open(response.getOpen() != null ? new BigDecimal(response.getOpen()) : price)
-                        .high(response.getHigh() != null ? new BigDecimal(response.getHigh()) : price)
-                        .low(response.getLow() != null ? new BigDecimal(response.getLow()) : price)
-                        .close(price)
-                        .volumen(response.getVolume() != null && !response.getVolume().isEmpty()
-                                ? Long.parseLong(response.getVolume())
-                                : null)
-                        .precioAnterior(previousClose)
-                        .variacionAbsoluta(change)
-                        .variacionPorcentual(changePercent)
-                        .dataType(REALTIME)
-                        .timestamp(LocalDateTime.now())
-                        .build();
-            } else {
-                System.err.println("✗ Respuesta vacía o incompleta para " + symbol);
-                if (response != null) {
-                    System.err.println("  - Close: " + response.getClose());
-                    System.err.println("  - PreviousClose: " + response.getPreviousClose());
-                }
+    /**
+     * Obtiene los datos de varios símbolos con el mínimo de idas y vueltas:
+     *
+     * 0. PriceBoard en memoria.
+     * 1. L1 + un único MGET en Redis para todas las regiones de precios.
+     * 2. Los que falten (o no se cachean) se cargan con una sola consulta IN.
+     * 3. Los cargados desde BD se guardan en caché en un único pipeline.
+     *
+     * @param symbols Símbolos solicitados (se normalizan a mayúsculas y se deduplican)
+     * @return Mapa symbol -> MarketData, solo con los símbolos encontrados
+     */
+    public Map<String, MarketData> obtenerDatosEnBloque(Collection<String> symbols) {
+        Set<String> pendientes = new LinkedHashSet<>();
+        for (String symbol : symbols) {
+            if (symbol != null && !symbol.isBlank()) {
+                pendientes.add(symbol.toUpperCase());
             }
-
-        } catch (Exception e) {
-            System.err.println("✗ Error obteniendo datos de " + symbol + ": " + e.getMessage());
-            e.printStackTrace();
         }
+        pendientes.stream().filter(this::estaDisponible).forEach(activityTracker::registrarPeticion);
 
-        return null;
-    }
-
-    private List<HistoricalDataPoint> parsearHistoricoTwelveData(List<TwelveDataValue> values, String symbol) {
-        List<HistoricalDataPoint> result = new ArrayList<>();
+        Map<String, MarketData> resultados = new HashMap<>();
 
-        for (TwelveDataValue value : values) {
-            try {
-                result.add(HistoricalDataPoint.builder()
-                        .symbol(symbol.toUpperCase())
-                        .date(value.getDatetime())
-                        .open(value.getOpen() != null ? new BigDecimal(value.getOpen()) : null)
-                        .high(value.getHigh() != null ? new BigDecimal(value.getHigh()) : null)
-                        .low(value.getLow() != null ? new BigDecimal(value.getLow()) : null)
-                        .close(value.getClose() != null ? new BigDecimal(value.getClose()) : null)
-                        .volume(value.getVolume() != null && !value.getVolume().isEmpty()
-                                ? Long.parseLong(value.getVolume())
-                                : null)
-                        .build());
-            } catch (Exception e) {
-                System.err.println("Error parseando valor histórico: " + e.getMessage());
+        // 0. PIZARRA EN MEMORIA
+        for (String symbol : pendientes) {
+            MarketData enPizarra = priceBoard.obtener(symbol);
+            if (enPizarra != null) {
+                resultados.put(symbol, enPizarra);
             }
         }
-
-        return result;
-    }
-
-    // ==================== DTOs ====================
-
-    public static class TwelveDataQuoteResponse {
-        private String symbol;
-        private String open;
-        private String high;
-        private String low;
-        private String close;
-        private String volume;
-        @JsonProperty("previous_close")
-        private String previousClose;
-
-        public String getSymbol() {
-            return symbol;
-        }
-
-        public String getOpen() {
-            return open;
+        pendientes.removeAll(resultados.keySet());
+        if (pendientes.isEmpty()) {
+            return resultados;
         }
 
-        public String getHigh() {
-            return high;
-        }
-
-        public String getLow() {
-            return low;
-        }
-
-        public String getClose() {
-            return close;
-        }
-
-        public String getVolume() {
-            return volume;
-        }
-
-        public String getPreviousClose() {
-            return previousClose;
-        }
-
-        public void setSymbol(String symbol) {
-            this.symbol = symbol;
-        }
-
-        public void setOpen(String open) {
-            this.open = open;
+        Map<String, String> regionPorSimbolo = new HashMap<>();
+        for (String symbol : pendientes) {
+            String region = regionCache(symbol);
+            if (region != null) {
+                regionPorSimbolo.put(symbol, region);
+            }
         }
 
-        public void setHigh(String high) {
-            this.high = high;
+        // 1. CACHÉ: L1 y un único MGET a Redis
+        if (!regionPorSimbolo.isEmpty() && cacheManager instanceof TwoLevelCacheManager cacheEnBloque) {
+            try {
+                cacheEnBloque.obtenerEnBloque(regionPorSimbolo).forEach((symbol, valor) -> {
+                    if (valor instanceof MarketData datos) {
+                        resultados.put(symbol, datos);
+                    }
+                });
+            } catch (Exception e) {
+                System.err.println("Error en lectura en bloque de caché: " + e.getMessage());
+            }
         }
-
-        public void setLow(String low) {
-            this.low = low;
+        pendientes.removeAll(resultados.keySet());
+        if (pendientes.isEmpty()) {
+            resultados.values().forEach(datos -> ultimosValoresConocidos.put(datos.getSymbol(), datos));
+            return resultados;
         }
 
-        public void setClose(String close) {
-            this.close = close;
+        // 2. BD: una sola consulta IN para todos los fallos (la primera fila por símbolo es la más reciente)
+        Map<String, MarketData> cargados = new HashMap<>();
+        for (MarketData datos : marketDataRepository.findBySymbolInOrderBySymbolAndTimestampDesc(
+                new ArrayList<>(pendientes))) {
+            cargados.putIfAbsent(datos.getSymbol().toUpperCase(), datos);
         }
+        resultados.putAll(cargados);
 
-        public void setVolume(String volume) {
-            this.volume = volume;
+        // 3. Guardar en caché los cargados desde BD en un único pipeline
+        if (!cargados.isEmpty() && cacheManager instanceof TwoLevelCacheManager cacheEnBloque) {
+            try {
+                cacheEnBloque.guardarEnBloque(regionPorSimbolo, cargados);
+            } catch (Exception e) {
+                System.err.println("Error guardando en bloque en caché: " + e.getMessage());
+            }
         }
 
-        public void setPreviousClose(String previousClose) {
-            this.previousClose = previousClose;
-        }
+        resultados.values().forEach(datos -> ultimosValoresConocidos.put(datos.getSymbol(), datos));
+        return resultados;
     }
 
-    public static class TwelveDataTimeSeriesResponse {
-        private List<TwelveDataValue> values;
-
-        public List<TwelveDataValue> getValues() {
-            return values;
-        }
-
-        public void setValues(List<TwelveDataValue> values) {
-            this.values = values;
-        }
+    public boolean estaDisponible(String symbol) {
+        return TODOS_LOS_SIMBOLOS.contains(symbol.toUpperCase());
     }
 
-    public static class TwelveDataValue {
-        private String datetime;
-        private String open;
-        private String high;
-        private String low;
-        private String close;
-        private String volume;
-
-        public String getDatetime() {
-            return datetime;
-        }
-
-        public String getOpen() {
-            return open;
-        }
-
-        public String getHigh() {
-            return high;
-        }
-
-        public String getLow() {
-            return low;
-        }
-
-        public String getClose() {
-            return close;
-        }
-
-        public String getVolume() {
-            return volume;
-        }
-
-        public void setDatetime(String datetime) {
-            this.datetime = datetime;
-        }
+    public List<String> obtenerSimbolosDisponibles() {
+        return new ArrayList<>(TODOS_LOS_SIMBOLOS);
+    }
 
-        public void setOpen(String open) {
-            this.open = open;
-        }
+    // ==================== UTILIDADES ====================
 
-        public void setHigh(String high) {
-            this.high = high;
-        }
+    @PreDestroy
+    public void cerrar() {
+        recargasCache.shutdownNow();
+    }
 
-        public void setLow(String low) {
-            this.low = low;
+    /**
+     * Región de caché de un símbolo según su grupo, o null si no se cachea.
+     */
+    private String regionCache(String symbol) {
+        com.miguel.spyzer.config.SymbolGroupConfig.UpdateFrequency frequency = symbolGroupConfig
+                .getFrequencyForSymbol(symbol);
+        if (frequency == null) {
+            return null;
         }
+        return switch (frequency) {
+            case PREMIUM_20MIN -> RedisConfig.CACHE_PREMIUM_PRICES;
+            case STANDARD_60MIN -> RedisConfig.CACHE_STANDARD_PRICES;
+            case EXTENDED_90MIN -> RedisConfig.CACHE_EXTENDED_PRICES;
+        };
+    }
 
-        public void setClose(String close) {
-            this.close = close;
+    /**
+     * Pide permiso al rate limiter solo si el proveedor activo consume cuota de API
+     * (el proveedor de replay no tiene límite).
+     */
+    private void esperarPermisoApi(ApiRateLimiter.Prioridad prioridad) throws InterruptedException {
+        if (marketDataProvider.requiereRateLimit()) {
+            apiRateLimiter.esperarSiEsNecesario(prioridad);
         }
+    }
 
-        public void setVolume(String volume) {
-            this.volume = volume;
+    /**
+     * Divide una lista de símbolos en lotes de como máximo tamanoLote elementos.
+     */
+    private static List<List<String>> particionarEnLotes(List<String> simbolos, int tamanoLote) {
+        int tamano = Math.max(1, tamanoLote);
+        List<List<String>> lotes = new ArrayList<>();
+        for (int i = 0; i < simbolos.size(); i += tamano) {
+            lotes.add(new ArrayList<>(simbolos.subList(i, Math.min(i + tamano, simbolos.size()))));
         }
+        return lotes;
     }
-}
\ No newline at end of file
+}
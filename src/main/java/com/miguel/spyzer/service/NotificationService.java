@@ -34,9 +34,19 @@ public class NotificationService {
      */
     @Async
     public void enviarNotificacionAlerta(Alert alerta) {
+        intentarNotificacionAlerta(alerta);
+    }
+    
+    /**
+     * Enviar notificación de alerta disparada (síncrono)
+     * 
+     * @return false si el envío falló (se puede reintentar); true si se envió
+     *         o no había que enviarla (notificaciones deshabilitadas, usuario sin email)
+     */
+    public boolean intentarNotificacionAlerta(Alert alerta) {
         if (!notificationsEnabled) {
             log.info("Notificaciones deshabilitadas. Alerta no enviada: {}", alerta.getId());
-            return;
+            return true;
         }
         
         try {
@@ -44,14 +54,16 @@ public class NotificationService {
             
             if (emailUsuario == null || emailUsuario.isBlank()) {
                 log.warn("Usuario {} no tiene email configurado", alerta.getUser().getId());
-                return;
+                return true;
             }
             
             enviarEmailAlerta(alerta, emailUsuario);
             log.info("Notificación enviada exitosamente para alerta {} a {}", alerta.getId(), emailUsuario);
+            return true;
             
         } catch (Exception e) {
             log.error("Error enviando notificación para alerta {}: {}", alerta.getId(), e.getMessage(), e);
+            return false;
         }
     }
     
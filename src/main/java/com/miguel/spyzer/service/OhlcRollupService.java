@@ -0,0 +1,218 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.columnar.BarSlice;
+import com.miguel.spyzer.columnar.ColumnarBarStore;
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.repository.OhlcBarRedisRepository;
+import com.miguel.spyzer.repository.OhlcBarRedisRepository.Barra;
+import com.miguel.spyzer.repository.OhlcBarRedisRepository.Resolucion;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Motor de rollups OHLCV: mantiene barras pre-agregadas (1m/5m/1h/1d) que se
+ * actualizan de forma incremental con cada tick ingerido, y sirve cualquier
+ * intervalo componiendo la resolución almacenada más gruesa que lo divide
+ * (p. ej. 15m desde barras de 5m, 4h desde 1h, 1w = 7d desde 1d).
+ *
+ * Las barras diarias solo existen desde que el motor está en marcha; para
+ * días anteriores a la primera barra se completa con los puntos diarios
+ * de BD (sincronización de históricos), leídos de la copia columnar local.
+ */
+@Service
+@Slf4j
+public class OhlcRollupService {
+
+    // Intervalos aceptados: 1m, 15min, 4h, 1d, 1day, 1w, 1week
+    private static final Pattern INTERVALO = Pattern.compile("(\\d+)\\s*(m|min|h|d|day|w|week)");
+
+    private static final ZoneId ZONA_MERCADO = ZoneId.of("America/New_York");
+
+    // Días del lunes 1969-12-29 al epoch day 0 (jueves 1970-01-01): con él las semanas empiezan en lunes
+    private static final long DESFASE_LUNES = 3;
+
+    /**
+     * Intervalo pedido y resolución almacenada desde la que se compone.
+     *
+     * @param duracion Duración de cada barra servida
+     * @param base     Resolución pre-agregada de la que se agrega
+     */
+    public record Intervalo(Duration duracion, Resolucion base) {
+
+        boolean esDiario() {
+            return base == Resolucion.D1;
+        }
+
+        /**
+         * Parsea un intervalo ("5m", "15min", "4h", "1d", "1w"...).
+         *
+         * @throws IllegalArgumentException si el formato no es válido o no se puede componer
+         */
+        public static Intervalo parse(String texto) {
+            Matcher matcher = INTERVALO.matcher(texto == null ? "" : texto.trim().toLowerCase());
+            if (!matcher.matches() || Integer.parseInt(matcher.group(1)) <= 0) {
+                throw new IllegalArgumentException("Intervalo no válido: " + texto + " (ej. 1m, 15m, 4h, 1d, 1w)");
+            }
+            long cantidad = Long.parseLong(matcher.group(1));
+            Duration duracion = switch (matcher.group(2)) {
+                case "m", "min" -> Duration.ofMinutes(cantidad);
+                case "h" -> Duration.ofHours(cantidad);
+                case "d", "day" -> Duration.ofDays(cantidad);
+                default -> Duration.ofDays(7 * cantidad);
+            };
+
+            // Resolución más gruesa que divide exactamente el intervalo
+            Resolucion base = null;
+            for (Resolucion resolucion : Resolucion.values()) {
+                if (duracion.toMillis() % resolucion.getDuracion().toMillis() == 0) {
+                    base = resolucion;
+                }
+            }
+            if (base == null) {
+                throw new IllegalArgumentException("Intervalo no soportado: " + texto);
+            }
+            if (duracion.compareTo(Duration.ofDays(1)) > 0 && base != Resolucion.D1) {
+                throw new IllegalArgumentException("Los intervalos de más de un día deben ser días enteros: " + texto);
+            }
+            return new Intervalo(duracion, base);
+        }
+    }
+
+    private final OhlcBarRedisRepository barRepository;
+    private final ColumnarBarStore columnarBarStore;
+
+    public OhlcRollupService(OhlcBarRedisRepository barRepository,
+                             ColumnarBarStore columnarBarStore) {
+        this.barRepository = barRepository;
+        this.columnarBarStore = columnarBarStore;
+    }
+
+    /**
+     * Aplica las cotizaciones recién ingeridas a las barras de todas las resoluciones.
+     * Los errores de símbolos concretos se registran; un fallo de Redis se
+     * propaga para que el consumidor del stream reintente el lote.
+     */
+    public void registrarTicks(List<MarketData> datosNuevos) {
+        if (datosNuevos == null || datosNuevos.isEmpty()) {
+            return;
+        }
+        Map<String, String> errores = barRepository.actualizarBarras(datosNuevos);
+        errores.forEach((symbol, error) -> log.warn("Error agregando barras OHLC de {}: {}", symbol, error));
+    }
+
+    /**
+     * Barras OHLCV de un símbolo en el intervalo pedido, para los últimos N días.
+     *
+     * @param symbol    Símbolo del activo
+     * @param intervalo Intervalo ya parseado
+     * @param days      Días hacia atrás desde ahora
+     * @return Barras con el mismo formato que el histórico diario, más reciente primero
+     */
+    public List<HistoricalDataPoint> obtenerBarras(String symbol, Intervalo intervalo, int days) {
+        String symbolUpper = symbol.toUpperCase();
+        long hastaMs = System.currentTimeMillis();
+        long desdeMs = intervalo.base().inicioBarra(hastaMs - Duration.ofDays(days).toMillis());
+
+        List<Barra> barras = barRepository.getBarras(symbolUpper, intervalo.base(), desdeMs, hastaMs);
+        if (intervalo.esDiario()) {
+            barras = completarConDiariosDeBD(symbolUpper, barras, desdeMs);
+        }
+
+        List<HistoricalDataPoint> resultado = new ArrayList<>();
+        Barra actual = null;
+        long grupoActual = Long.MIN_VALUE;
+        for (Barra barra : barras) {
+            long grupo = grupo(barra.inicioMs(), intervalo);
+            if (actual == null || grupo != grupoActual) {
+                if (actual != null) {
+                    resultado.add(aPunto(symbolUpper, actual, intervalo));
+                }
+                actual = barra;
+                grupoActual = grupo;
+            } else {
+                actual = new Barra(actual.inicioMs(), actual.open(),
+                        actual.high().max(barra.high()), actual.low().min(barra.low()), barra.close(),
+                        actual.volumen() + barra.volumen());
+            }
+        }
+        if (actual != null) {
+            resultado.add(aPunto(symbolUpper, actual, intervalo));
+        }
+
+        Collections.reverse(resultado);
+        return resultado;
+    }
+
+    /**
+     * Grupo (barra de salida) al que pertenece una barra base. Los intervalos
+     * de semanas completas empiezan en lunes (el epoch day 0 es jueves).
+     */
+    private static long grupo(long inicioMs, Intervalo intervalo) {
+        if (intervalo.esDiario()) {
+            long epochDay = Instant.ofEpochMilli(inicioMs).atZone(ZONA_MERCADO).toLocalDate().toEpochDay();
+            long dias = intervalo.duracion().toDays();
+            return dias % 7 == 0
+                    ? Math.floorDiv(epochDay + DESFASE_LUNES, dias)
+                    : Math.floorDiv(epochDay, dias);
+        }
+        return Math.floorDiv(inicioMs, intervalo.duracion().toMillis());
+    }
+
+    /**
+     * Antepone los puntos diarios de BD anteriores a la primera barra diaria agregada.
+     */
+    private List<Barra> completarConDiariosDeBD(String symbol, List<Barra> barras, long desdeMs) {
+        long primeraBarra = barras.isEmpty() ? Long.MAX_VALUE : barras.get(0).inicioMs();
+        if (primeraBarra <= desdeMs) {
+            return barras;
+        }
+
+        // Los diarios de BD se guardan con ts = medianoche de Nueva York, como las barras D1
+        Instant hasta = primeraBarra == Long.MAX_VALUE ? Instant.now() : Instant.ofEpochMilli(primeraBarra - 1);
+        List<Barra> completas = new ArrayList<>();
+        BarSlice puntos = columnarBarStore.rango(symbol, Granularidad.DIARIA, Instant.ofEpochMilli(desdeMs), hasta);
+        for (int i = 0; i < puntos.size(); i++) {
+            if (Double.isNaN(puntos.open(i)) || Double.isNaN(puntos.high(i)) || Double.isNaN(puntos.low(i))
+                    || Double.isNaN(puntos.close(i))) {
+                continue;
+            }
+            long volumen = puntos.volumen(i);
+            completas.add(new Barra(puntos.tsMs(i), BigDecimal.valueOf(puntos.open(i)),
+                    BigDecimal.valueOf(puntos.high(i)), BigDecimal.valueOf(puntos.low(i)),
+                    BigDecimal.valueOf(puntos.close(i)), volumen != BarSlice.SIN_VOLUMEN ? volumen : 0));
+        }
+        completas.addAll(barras);
+        return completas;
+    }
+
+    private static HistoricalDataPoint aPunto(String symbol, Barra barra, Intervalo intervalo) {
+        String fecha = intervalo.esDiario()
+                ? Instant.ofEpochMilli(barra.inicioMs()).atZone(ZONA_MERCADO).toLocalDate().toString()
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(barra.inicioMs()), ZoneId.systemDefault()).toString();
+        return HistoricalDataPoint.builder()
+                .symbol(symbol)
+                .date(fecha)
+                .ts(Instant.ofEpochMilli(barra.inicioMs()))
+                .granularidad(intervalo.esDiario() ? Granularidad.DIARIA : Granularidad.INTRADIA)
+                .open(barra.open())
+                .high(barra.high())
+                .low(barra.low())
+                .close(barra.close())
+                .volume(barra.volumen())
+                .build();
+    }
+}
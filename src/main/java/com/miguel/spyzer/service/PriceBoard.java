@@ -0,0 +1,193 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.config.SymbolGroupConfig;
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.repository.MarketDataRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pizarra de precios en memoria: última cotización de cada símbolo.
+ *
+ * Es un mapa inmutable symbol -> cotización que se reconstruye (copy-on-write)
+ * cada vez que la ingesta confirma un micro-lote y se publica con un único
+ * intercambio atómico. Las lecturas son wait-free y sin asignaciones: una
+ * lectura volátil de la referencia y un get sobre un mapa inmutable.
+ *
+ * Versionado:
+ * - Cada publicación incrementa la versión global (monótona creciente).
+ * - Cada símbolo guarda la versión en la que cambió por última vez, lo que
+ *   permite respuestas delta (cambiosDesde) y ETags baratos.
+ * - La versión es un contador de este proceso que empieza en 0 al arrancar:
+ *   solo tiene sentido junto con la época (identificador aleatorio de la
+ *   instancia). Una versión de otra época (reinicio, otra réplica tras el
+ *   balanceador) no dice nada de lo que tiene el cliente.
+ *
+ * Los MarketData publicados son compartidos entre hilos: no deben modificarse.
+ */
+@Component
+@Slf4j
+public class PriceBoard {
+
+    /**
+     * Cotización publicada y versión de la pizarra en la que cambió.
+     */
+    public record Cotizacion(MarketData datos, long version) {
+    }
+
+    /**
+     * Estado inmutable de la pizarra en una versión.
+     */
+    public record Snapshot(long version, Map<String, Cotizacion> cotizaciones) {
+    }
+
+    private static final Snapshot VACIO = new Snapshot(0, Map.of());
+
+    private final AtomicReference<Snapshot> actual = new AtomicReference<>(VACIO);
+
+    // Época de esta instancia: distingue sus versiones de las de otro arranque u otra réplica
+    private final String epoca = Long.toString(System.currentTimeMillis(), 36)
+            + Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36);
+
+    // Serializa a los escritores (los lectores nunca bloquean)
+    private final Object escritura = new Object();
+
+    private final MarketDataRepository marketDataRepository;
+    private final SymbolGroupConfig symbolGroupConfig;
+
+    public PriceBoard(MarketDataRepository marketDataRepository, SymbolGroupConfig symbolGroupConfig) {
+        this.marketDataRepository = marketDataRepository;
+        this.symbolGroupConfig = symbolGroupConfig;
+    }
+
+    /**
+     * Última cotización publicada de un símbolo (el símbolo debe ir en mayúsculas).
+     *
+     * @return MarketData, o null si el símbolo no está en la pizarra
+     */
+    public MarketData obtener(String symbol) {
+        Cotizacion cotizacion = actual.get().cotizaciones().get(symbol);
+        return cotizacion != null ? cotizacion.datos() : null;
+    }
+
+    /**
+     * Estado completo actual (consistente: todas las cotizaciones de la misma versión).
+     */
+    public Snapshot snapshot() {
+        return actual.get();
+    }
+
+    public long getVersion() {
+        return actual.get().version();
+    }
+
+    public String getEpoca() {
+        return epoca;
+    }
+
+    /**
+     * Indica si un cliente que tiene la versión indicada de la época indicada
+     * puede recibir solo los cambios posteriores del snapshot: la época debe
+     * ser la de esta instancia y la versión no puede ser posterior a la del snapshot.
+     */
+    public boolean admiteDelta(String epoca, long version, Snapshot snapshot) {
+        return this.epoca.equals(epoca) && version > 0 && version <= snapshot.version();
+    }
+
+    /**
+     * Cotizaciones que han cambiado después de la versión indicada.
+     *
+     * @param version Versión que ya conoce el cliente (0 = todas)
+     * @return Símbolo -> MarketData cambiado desde esa versión
+     */
+    public Map<String, MarketData> cambiosDesde(long version) {
+        return cambiosDesde(actual.get(), version);
+    }
+
+    /**
+     * Cotizaciones de un snapshot concreto que cambiaron después de la versión indicada
+     * (para responder de forma consistente con la versión usada como ETag).
+     */
+    public static Map<String, MarketData> cambiosDesde(Snapshot snapshot, long version) {
+        Map<String, MarketData> cambios = new LinkedHashMap<>();
+        if (version >= snapshot.version()) {
+            return cambios;
+        }
+        snapshot.cotizaciones().forEach((symbol, cotizacion) -> {
+            if (cotizacion.version() > version) {
+                cambios.put(symbol, cotizacion.datos());
+            }
+        });
+        return cambios;
+    }
+
+    /**
+     * Publica nuevas cotizaciones: copia el mapa actual, aplica los cambios y
+     * lo intercambia atómicamente con una versión nueva.
+     *
+     * Una cotización más antigua que la publicada para el mismo símbolo se ignora.
+     *
+     * @param datosNuevos Cotizaciones ya persistidas
+     */
+    public void publicar(Collection<MarketData> datosNuevos) {
+        if (datosNuevos == null || datosNuevos.isEmpty()) {
+            return;
+        }
+
+        synchronized (escritura) {
+            Snapshot anterior = actual.get();
+            long version = anterior.version() + 1;
+            Map<String, Cotizacion> copia = new HashMap<>(anterior.cotizaciones());
+            int cambios = 0;
+
+            for (MarketData datos : datosNuevos) {
+                if (datos == null || datos.getSymbol() == null || datos.getPrecio() == null) {
+                    continue;
+                }
+                String symbol = datos.getSymbol().toUpperCase();
+                Cotizacion previa = copia.get(symbol);
+                if (previa != null && esMasAntigua(datos, previa.datos())) {
+                    continue;
+                }
+                copia.put(symbol, new Cotizacion(datos, version));
+                cambios++;
+            }
+
+            if (cambios > 0) {
+                actual.set(new Snapshot(version, Map.copyOf(copia)));
+            }
+        }
+    }
+
+    /**
+     * Carga inicial desde BD al arrancar, para no servir la pizarra vacía hasta el primer refresco.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarInicial() {
+        try {
+            Map<String, MarketData> ultimos = new LinkedHashMap<>();
+            for (MarketData datos : marketDataRepository.findBySymbolInOrderBySymbolAndTimestampDesc(
+                    symbolGroupConfig.getAllSymbols())) {
+                ultimos.putIfAbsent(datos.getSymbol().toUpperCase(), datos);
+            }
+            publicar(ultimos.values());
+            log.info("PriceBoard inicializada con {} símbolos (versión {})", ultimos.size(), getVersion());
+        } catch (Exception e) {
+            log.warn("No se pudo inicializar la PriceBoard desde BD: {}", e.getMessage());
+        }
+    }
+
+    private static boolean esMasAntigua(MarketData nueva, MarketData publicada) {
+        return nueva.getTimestamp() != null && publicada.getTimestamp() != null
+                && nueva.getTimestamp().isBefore(publicada.getTimestamp());
+    }
+}
@@ -0,0 +1,132 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.entities.MarketData;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro en memoria de la actividad reciente de cada símbolo, usado por el
+ * AdaptiveRefreshScheduler para decidir qué símbolos merece la pena refrescar.
+ *
+ * Por símbolo mantiene:
+ * - Volatilidad reciente: EWMA del |log-retorno| entre refrescos, normalizado
+ *   por la raíz del tiempo transcurrido (comparable entre intervalos distintos).
+ * - Tasa de peticiones: contador con decaimiento exponencial (vida media de
+ *   15 min). Cada lectura de precio solo incrementa un LongAdder (sin locks,
+ *   apto para el camino caliente); el decaimiento se aplica al consultar.
+ * - Último refresco: instante en que llegó la última cotización.
+ *
+ * Estado volátil: al reiniciar la aplicación todos los símbolos se consideran
+ * sin refrescar y se recuperan en los primeros ciclos.
+ */
+@Component
+public class SymbolActivityTracker {
+
+    // Peso de la última observación en la EWMA de volatilidad
+    private static final double ALFA_VOLATILIDAD = 0.3;
+
+    // Vida media del contador de peticiones (15 minutos)
+    private static final double VIDA_MEDIA_PETICIONES_MS = Duration.ofMinutes(15).toMillis();
+
+    /**
+     * Vista inmutable del estado de un símbolo en un instante.
+     *
+     * @param volatilidad       |log-retorno| medio por raíz de minuto (0 si aún no hay dos observaciones)
+     * @param tasaPeticiones    Peticiones recientes con decaimiento (≈ peticiones en la última vida media)
+     * @param ultimoRefresco    Instante de la última cotización recibida (null si nunca)
+     * @param ultimoPrecio      Último precio recibido (0 si nunca)
+     */
+    public record Actividad(double volatilidad, double tasaPeticiones, Instant ultimoRefresco, double ultimoPrecio) {
+    }
+
+    private static final class Estado {
+        private double ultimoPrecio;
+        private double volatilidad;
+        private boolean volatilidadInicializada;
+        private Instant ultimoRefresco;
+        private final LongAdder peticionesPendientes = new LongAdder();
+        private double tasaPeticiones;
+        private long ultimoAcumuladoMs = System.currentTimeMillis();
+    }
+
+    private final Map<String, Estado> estados = new ConcurrentHashMap<>();
+
+    /**
+     * Anota una lectura de precio del símbolo (demanda de usuarios).
+     */
+    public void registrarPeticion(String symbol) {
+        Estado estado = estados.get(symbol);
+        if (estado == null) {
+            estado = estado(symbol);
+        }
+        estado.peticionesPendientes.increment();
+    }
+
+    /**
+     * Anota las cotizaciones recién ingeridas: actualiza volatilidad y antigüedad.
+     */
+    public void registrarCotizaciones(List<MarketData> datosNuevos) {
+        Instant ahora = Instant.now();
+        for (MarketData datos : datosNuevos) {
+            if (datos.getSymbol() == null || datos.getPrecio() == null) {
+                continue;
+            }
+            double precio = datos.getPrecio().doubleValue();
+            if (precio <= 0) {
+                continue;
+            }
+
+            Estado estado = estado(datos.getSymbol());
+            synchronized (estado) {
+                if (estado.ultimoRefresco != null && estado.ultimoPrecio > 0) {
+                    double minutos = Math.max(1.0, Duration.between(estado.ultimoRefresco, ahora).toMillis() / 60_000.0);
+                    double retorno = Math.abs(Math.log(precio / estado.ultimoPrecio)) / Math.sqrt(minutos);
+                    if (estado.volatilidadInicializada) {
+                        estado.volatilidad = ALFA_VOLATILIDAD * retorno + (1 - ALFA_VOLATILIDAD) * estado.volatilidad;
+                    } else {
+                        estado.volatilidad = retorno;
+                        estado.volatilidadInicializada = true;
+                    }
+                }
+                estado.ultimoPrecio = precio;
+                estado.ultimoRefresco = ahora;
+            }
+        }
+    }
+
+    /**
+     * Estado actual de un símbolo (valores por defecto si nunca se ha visto).
+     */
+    public Actividad getActividad(String symbol) {
+        Estado estado = estados.get(symbol.toUpperCase());
+        if (estado == null) {
+            return new Actividad(0, 0, null, 0);
+        }
+        synchronized (estado) {
+            acumularPeticiones(estado, System.currentTimeMillis());
+            return new Actividad(estado.volatilidad, estado.tasaPeticiones,
+                    estado.ultimoRefresco, estado.ultimoPrecio);
+        }
+    }
+
+    private Estado estado(String symbol) {
+        return estados.computeIfAbsent(symbol.toUpperCase(), s -> new Estado());
+    }
+
+    /**
+     * Decae la tasa hasta el instante indicado y suma las peticiones acumuladas
+     * desde la última consulta. Debe llamarse con el lock del estado.
+     */
+    private static void acumularPeticiones(Estado estado, long ahoraMs) {
+        long transcurrido = Math.max(0, ahoraMs - estado.ultimoAcumuladoMs);
+        estado.tasaPeticiones = estado.tasaPeticiones * Math.pow(0.5, transcurrido / VIDA_MEDIA_PETICIONES_MS)
+                + estado.peticionesPendientes.sumThenReset();
+        estado.ultimoAcumuladoMs = ahoraMs;
+    }
+}
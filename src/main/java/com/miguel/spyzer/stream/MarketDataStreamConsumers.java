@@ -0,0 +1,180 @@
+package com.miguel.spyzer.stream;
+
+import com.miguel.spyzer.entities.Alert;
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.repository.AlertRepository;
+import com.miguel.spyzer.service.MarketDataService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Consumer groups que procesan el stream de ticks fuera del bucle de ingesta.
+ *
+ * Grupos sobre TickStream.STREAM_TICKS:
+ * - "series": ticks intraday, barras OHLC y puntos históricos de índices
+ * - "portfolios": revalorización de posiciones abiertas
+ * - "alertas": evaluación de alertas; las disparadas se publican en
+ *   TickStream.STREAM_ALERTAS_DISPARADAS. Es el respaldo de la vía rápida
+ *   (AlertEvaluator), que normalmente ya las ha disparado al recibir la cotización
+ *
+ * Grupo sobre TickStream.STREAM_ALERTAS_DISPARADAS:
+ * - "notificaciones": envío de emails de alertas disparadas
+ *
+ * Cada grupo avanza, confirma y se recupera por separado: una caída del
+ * servidor de correo no retrasa la revalorización de portfolios. Con varias
+ * réplicas, cada una es un consumidor más de cada grupo y las entradas se
+ * reparten entre ellas.
+ */
+@Component
+@Slf4j
+public class MarketDataStreamConsumers {
+
+    private final RedisConnectionFactory connectionFactory;
+    private final MarketDataService marketDataService;
+    private final AlertRepository alertRepository;
+    private final TickStream tickStream;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final String consumidor = "spyzer-" + UUID.randomUUID();
+    private final List<StreamConsumerGroup> grupos = new ArrayList<>();
+
+    @Value("${marketdata.stream.enabled:true}")
+    private boolean streamActivo;
+
+    @Value("${marketdata.stream.batch-size:100}")
+    private int tamanoLote;
+
+    @Value("${marketdata.stream.block-ms:2000}")
+    private long bloqueoMs;
+
+    @Value("${marketdata.stream.claim-idle-seconds:60}")
+    private long inactividadReclamoSegundos;
+
+    @Value("${marketdata.stream.max-deliveries:5}")
+    private int maxEntregas;
+
+    public MarketDataStreamConsumers(RedisConnectionFactory connectionFactory,
+                                     MarketDataService marketDataService,
+                                     AlertRepository alertRepository,
+                                     TickStream tickStream,
+                                     TransactionTemplate transactionTemplate,
+                                     MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+        this.marketDataService = marketDataService;
+        this.alertRepository = alertRepository;
+        this.tickStream = tickStream;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void iniciar() {
+        if (!streamActivo || !grupos.isEmpty()) {
+            return;
+        }
+
+        StreamConsumerGroup.Configuracion configuracion = new StreamConsumerGroup.Configuracion(
+                tamanoLote, Duration.ofMillis(bloqueoMs), Duration.ofSeconds(inactividadReclamoSegundos), maxEntregas);
+
+        grupos.add(grupo(TickStream.STREAM_TICKS, "series", configuracion,
+                registros -> marketDataService.procesarSeries(ticks(registros))));
+        grupos.add(grupo(TickStream.STREAM_TICKS, "portfolios", configuracion,
+                registros -> transactionTemplate.executeWithoutResult(
+                        status -> marketDataService.revalorizarPortfolios(ticks(registros)))));
+        grupos.add(grupo(TickStream.STREAM_TICKS, "alertas", configuracion, this::procesarAlertas));
+        grupos.add(grupo(TickStream.STREAM_ALERTAS_DISPARADAS, "notificaciones", configuracion,
+                this::procesarNotificaciones));
+
+        grupos.forEach(StreamConsumerGroup::iniciar);
+        log.info("Consumidores de streams iniciados: {} grupos (consumidor {})", grupos.size(), consumidor);
+    }
+
+    @PreDestroy
+    public synchronized void detener() {
+        grupos.forEach(StreamConsumerGroup::detener);
+    }
+
+    /**
+     * Estado de los grupos (lag y pendientes), para diagnóstico.
+     */
+    public List<StreamConsumerGroup> getGrupos() {
+        return List.copyOf(grupos);
+    }
+
+    private StreamConsumerGroup grupo(String stream, String nombre, StreamConsumerGroup.Configuracion configuracion,
+                                      StreamConsumerGroup.Procesador procesador) {
+        return new StreamConsumerGroup(connectionFactory, stream, nombre, consumidor, procesador, configuracion,
+                meterRegistry);
+    }
+
+    /**
+     * Evalúa las alertas y publica las disparadas. El disparo y la publicación
+     * no son atómicos: si la publicación falla el lote se reintenta, pero las
+     * alertas ya disparadas no vuelven a dispararse (ni a notificarse).
+     */
+    private void procesarAlertas(List<? extends MapRecord<String, String, String>> registros) {
+        List<Alert> disparadas = transactionTemplate.execute(
+                status -> marketDataService.verificarAlertas(ticks(registros)));
+        if (disparadas != null && !disparadas.isEmpty()) {
+            tickStream.publicarAlertasDisparadas(disparadas.stream().map(Alert::getId).toList());
+        }
+    }
+
+    /**
+     * Notifica las alertas disparadas. Las entradas cuya notificación falla
+     * quedan pendientes (FalloParcial): se reintentan y, agotadas las
+     * entregas, acaban en la DLQ; las enviadas se confirman y no se repiten.
+     */
+    private void procesarNotificaciones(List<? extends MapRecord<String, String, String>> registros)
+            throws StreamConsumerGroup.FalloParcial {
+        Map<Long, List<RecordId>> registrosPorAlerta = new HashMap<>();
+        for (MapRecord<String, String, String> registro : registros) {
+            String id = registro.getValue().get(TickStream.CAMPO_ALERTA_ID);
+            if (id != null) {
+                registrosPorAlerta.computeIfAbsent(Long.valueOf(id), k -> new ArrayList<>()).add(registro.getId());
+            }
+        }
+        if (registrosPorAlerta.isEmpty()) {
+            return;
+        }
+
+        List<Long> fallidas = marketDataService.notificarAlertas(
+                alertRepository.findWithUserByIdIn(List.copyOf(registrosPorAlerta.keySet())));
+        if (!fallidas.isEmpty()) {
+            List<RecordId> pendientes = new ArrayList<>();
+            fallidas.forEach(id -> pendientes.addAll(registrosPorAlerta.getOrDefault(id, List.of())));
+            throw new StreamConsumerGroup.FalloParcial(
+                    "Fallo notificando " + fallidas.size() + " alertas: " + fallidas, pendientes);
+        }
+    }
+
+    private static List<MarketData> ticks(List<? extends MapRecord<String, String, String>> registros) {
+        List<MarketData> datos = new ArrayList<>(registros.size());
+        for (MapRecord<String, String, String> registro : registros) {
+            try {
+                datos.add(TickStream.desdeCampos(registro.getValue()));
+            } catch (RuntimeException e) {
+                // Entrada corrupta: se descarta (reintentarla no la arreglaría)
+                log.warn("Entrada {} del stream de ticks no válida: {}", registro.getId(), e.getMessage());
+            }
+        }
+        return datos;
+    }
+}
@@ -0,0 +1,330 @@
+package com.miguel.spyzer.stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.DefaultStringRedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.connection.stream.StringRecord;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consumidor de un consumer group de Redis Streams en su propio virtual thread.
+ *
+ * Bucle:
+ * 1. Al (re)conectar, reprocesa primero las entradas pendientes propias
+ *    (entregadas a este consumidor y nunca confirmadas, p. ej. tras un reinicio).
+ * 2. XREADGROUP bloqueante de hasta tamanoLote entradas nuevas; el lote se
+ *    entrega al procesador y, si termina sin excepción, se confirma con XACK.
+ *    Si falla, las entradas quedan pendientes y se reintentan más tarde; con
+ *    FalloParcial solo quedan pendientes las fallidas.
+ * 3. Periódicamente reclama (XCLAIM) las entradas pendientes inactivas más de
+ *    inactividadReclamo, sean propias o de réplicas caídas, y las reprocesa.
+ *    Las que superan maxEntregas se mueven a "{stream}:dlq" y se confirman.
+ *
+ * El procesamiento es at-least-once: los procesadores deben ser idempotentes.
+ *
+ * Métricas (tag group):
+ * - spyzer.stream.lag (Gauge): entradas del stream aún no entregadas al grupo
+ * - spyzer.stream.pending (Gauge): entradas entregadas sin confirmar
+ * - spyzer.stream.processed / failed / deadletter (Counter)
+ * - spyzer.stream.process (Timer): tiempo de procesamiento de cada lote
+ */
+@Slf4j
+public class StreamConsumerGroup {
+
+    /**
+     * Procesa un lote de entradas; una excepción deja el lote sin confirmar.
+     */
+    @FunctionalInterface
+    public interface Procesador {
+        void procesar(List<? extends MapRecord<String, String, String>> registros) throws Exception;
+    }
+
+    /**
+     * Fallo de solo parte de un lote: se confirman las demás entradas y las
+     * fallidas quedan pendientes (reintento, XCLAIM y, al agotarse, DLQ).
+     */
+    public static class FalloParcial extends Exception {
+
+        private final Set<RecordId> fallidas;
+
+        public FalloParcial(String mensaje, Collection<RecordId> fallidas) {
+            super(mensaje);
+            this.fallidas = Set.copyOf(fallidas);
+        }
+
+        public Set<RecordId> getFallidas() {
+            return fallidas;
+        }
+    }
+
+    /**
+     * @param tamanoLote          Entradas máximas por lectura
+     * @param bloqueo             Espera máxima de XREADGROUP sin entradas nuevas
+     * @param inactividadReclamo  Tiempo sin confirmar tras el que una entrada pendiente se reclama
+     * @param maxEntregas         Entregas tras las que una entrada va a la cola de mensajes muertos
+     */
+    public record Configuracion(int tamanoLote, Duration bloqueo, Duration inactividadReclamo, int maxEntregas) {
+    }
+
+    private static final Duration ESPERA_RECONEXION = Duration.ofSeconds(5);
+
+    private final RedisConnectionFactory connectionFactory;
+    private final String stream;
+    private final String grupo;
+    private final String consumidor;
+    private final Procesador procesador;
+    private final Configuracion configuracion;
+
+    private final AtomicLong lag = new AtomicLong();
+    private final AtomicLong pendientes = new AtomicLong();
+    private final Counter procesadas;
+    private final Counter fallidas;
+    private final Counter muertas;
+    private final Timer tiempoProceso;
+
+    private volatile boolean activo;
+    private Thread hilo;
+
+    public StreamConsumerGroup(RedisConnectionFactory connectionFactory, String stream, String grupo,
+                               String consumidor, Procesador procesador, Configuracion configuracion,
+                               MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+        this.stream = stream;
+        this.grupo = grupo;
+        this.consumidor = consumidor;
+        this.procesador = procesador;
+        this.configuracion = configuracion;
+
+        Gauge.builder("spyzer.stream.lag", lag, AtomicLong::get).tag("group", grupo)
+                .description("Entradas del stream aún no entregadas al grupo").register(meterRegistry);
+        Gauge.builder("spyzer.stream.pending", pendientes, AtomicLong::get).tag("group", grupo)
+                .description("Entradas entregadas sin confirmar").register(meterRegistry);
+        this.procesadas = Counter.builder("spyzer.stream.processed").tag("group", grupo).register(meterRegistry);
+        this.fallidas = Counter.builder("spyzer.stream.failed").tag("group", grupo).register(meterRegistry);
+        this.muertas = Counter.builder("spyzer.stream.deadletter").tag("group", grupo).register(meterRegistry);
+        this.tiempoProceso = Timer.builder("spyzer.stream.process").tag("group", grupo).register(meterRegistry);
+    }
+
+    public String getGrupo() {
+        return grupo;
+    }
+
+    public long getLag() {
+        return lag.get();
+    }
+
+    public long getPendientes() {
+        return pendientes.get();
+    }
+
+    public synchronized void iniciar() {
+        if (activo) {
+            return;
+        }
+        activo = true;
+        hilo = Thread.ofVirtual().name("stream-" + grupo).start(this::bucle);
+    }
+
+    public synchronized void detener() {
+        activo = false;
+        if (hilo != null) {
+            hilo.interrupt();
+        }
+    }
+
+    private void bucle() {
+        while (activo) {
+            try (StringRedisConnection conexion = new DefaultStringRedisConnection(connectionFactory.getConnection())) {
+                crearGrupoSiNoExiste(conexion);
+                leerPendientesPropios(conexion);
+
+                long proximoMantenimiento = 0;
+                while (activo) {
+                    if (System.currentTimeMillis() >= proximoMantenimiento) {
+                        reclamarInactivas(conexion);
+                        actualizarLag(conexion);
+                        proximoMantenimiento = System.currentTimeMillis() + configuracion.inactividadReclamo().toMillis() / 2;
+                    }
+
+                    List<StringRecord> registros = conexion.xReadGroupAsString(
+                            Consumer.from(grupo, consumidor),
+                            StreamReadOptions.empty().count(configuracion.tamanoLote()).block(configuracion.bloqueo()),
+                            StreamOffset.create(stream, ReadOffset.lastConsumed()));
+                    procesarYConfirmar(conexion, registros);
+                }
+            } catch (Exception e) {
+                if (!activo) {
+                    break;
+                }
+                log.warn("Consumidor del stream {} (grupo {}) interrumpido: {}. Reintentando en {}s",
+                        stream, grupo, e.getMessage(), ESPERA_RECONEXION.toSeconds());
+                try {
+                    Thread.sleep(ESPERA_RECONEXION);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        log.info("Consumidor del stream {} (grupo {}) detenido", stream, grupo);
+    }
+
+    /**
+     * Crea el grupo (y el stream si no existe) empezando por las entradas nuevas.
+     */
+    private void crearGrupoSiNoExiste(StringRedisConnection conexion) {
+        try {
+            conexion.xGroupCreate(stream, ReadOffset.latest(), grupo, true);
+            log.info("Consumer group {} creado en {}", grupo, stream);
+        } catch (Exception e) {
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")
+                    && !(e.getCause() != null && String.valueOf(e.getCause().getMessage()).contains("BUSYGROUP"))) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reprocesa las entradas que este consumidor recibió y no llegó a confirmar.
+     */
+    private void leerPendientesPropios(StringRedisConnection conexion) {
+        while (activo) {
+            List<StringRecord> registros = conexion.xReadGroupAsString(
+                    Consumer.from(grupo, consumidor),
+                    StreamReadOptions.empty().count(configuracion.tamanoLote()),
+                    StreamOffset.create(stream, ReadOffset.from("0-0")));
+            if (registros == null || registros.isEmpty() || !procesarYConfirmar(conexion, registros)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reclama las entradas pendientes inactivas del grupo (de cualquier consumidor)
+     * y las reprocesa; las que agotaron sus entregas van a la cola de mensajes muertos.
+     */
+    private void reclamarInactivas(StringRedisConnection conexion) {
+        PendingMessages pendientesGrupo = conexion.xPending(stream, grupo, Range.unbounded(),
+                (long) configuracion.tamanoLote());
+        if (pendientesGrupo == null || pendientesGrupo.isEmpty()) {
+            return;
+        }
+
+        List<RecordId> inactivas = new ArrayList<>();
+        List<RecordId> agotadas = new ArrayList<>();
+        for (PendingMessage pendiente : pendientesGrupo) {
+            if (pendiente.getElapsedTimeSinceLastDelivery().compareTo(configuracion.inactividadReclamo()) < 0) {
+                continue;
+            }
+            if (pendiente.getTotalDeliveryCount() >= configuracion.maxEntregas()) {
+                agotadas.add(pendiente.getId());
+            } else {
+                inactivas.add(pendiente.getId());
+            }
+        }
+
+        if (!agotadas.isEmpty()) {
+            List<StringRecord> registros = conexion.xClaim(stream, grupo, consumidor,
+                    configuracion.inactividadReclamo(), agotadas.toArray(RecordId[]::new));
+            for (StringRecord registro : registros) {
+                conexion.xAdd(StreamRecords.string(registro.getValue()).withStreamKey(stream + ":dlq"));
+                conexion.xAck(stream, grupo, registro.getId());
+                muertas.increment();
+                log.error("Entrada {} del stream {} movida a DLQ tras {} entregas (grupo {})",
+                        registro.getId(), stream, configuracion.maxEntregas(), grupo);
+            }
+        }
+
+        if (!inactivas.isEmpty()) {
+            List<StringRecord> registros = conexion.xClaim(stream, grupo, consumidor,
+                    configuracion.inactividadReclamo(), inactivas.toArray(RecordId[]::new));
+            if (!registros.isEmpty()) {
+                log.info("Reclamadas {} entradas inactivas del grupo {}", registros.size(), grupo);
+                procesarYConfirmar(conexion, registros);
+            }
+        }
+    }
+
+    /**
+     * @return true si el lote se procesó y confirmó (o estaba vacío)
+     */
+    private boolean procesarYConfirmar(StringRedisConnection conexion, List<StringRecord> registros) {
+        if (registros == null || registros.isEmpty()) {
+            return true;
+        }
+
+        Timer.Sample muestra = Timer.start();
+        try {
+            procesador.procesar(registros);
+        } catch (FalloParcial e) {
+            RecordId[] confirmadas = registros.stream().map(StringRecord::getId)
+                    .filter(id -> !e.getFallidas().contains(id)).toArray(RecordId[]::new);
+            if (confirmadas.length > 0) {
+                conexion.xAck(stream, grupo, confirmadas);
+                procesadas.increment(confirmadas.length);
+            }
+            fallidas.increment(registros.size() - confirmadas.length);
+            log.warn("Error procesando {} de {} entradas del grupo {} (quedan pendientes para reintento): {}",
+                    registros.size() - confirmadas.length, registros.size(), grupo, e.getMessage());
+            return false;
+        } catch (Exception e) {
+            fallidas.increment(registros.size());
+            log.warn("Error procesando {} entradas del grupo {} (quedan pendientes para reintento): {}",
+                    registros.size(), grupo, e.getMessage());
+            return false;
+        } finally {
+            muestra.stop(tiempoProceso);
+        }
+
+        conexion.xAck(stream, grupo, registros.stream().map(StringRecord::getId).toArray(RecordId[]::new));
+        procesadas.increment(registros.size());
+        return true;
+    }
+
+    /**
+     * Lee de XINFO GROUPS el lag (Redis 7+; en versiones anteriores queda en 0) y las pendientes.
+     */
+    private void actualizarLag(StringRedisConnection conexion) {
+        StreamInfo.XInfoGroups grupos = conexion.xInfoGroups(stream);
+        if (grupos == null) {
+            return;
+        }
+        grupos.forEach(info -> {
+            if (grupo.equals(info.groupName())) {
+                pendientes.set(info.pendingCount());
+                Object valorLag = info.getRaw().get("lag");
+                if (valorLag instanceof Number numero) {
+                    lag.set(numero.longValue());
+                } else if (valorLag != null) {
+                    try {
+                        lag.set(Long.parseLong(valorLag.toString()));
+                    } catch (NumberFormatException ignored) {
+                        // lag nulo si Redis no puede calcularlo (entradas borradas por MAXLEN)
+                    }
+                }
+            }
+        });
+    }
+}
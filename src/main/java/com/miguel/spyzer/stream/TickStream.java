@@ -0,0 +1,140 @@
+package com.miguel.spyzer.stream;
+
+import com.miguel.spyzer.entities.MarketData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Log duradero de cotizaciones ingeridas sobre Redis Streams.
+ *
+ * Streams:
+ * - STREAM_TICKS: una entrada por cotización persistida. Lo consumen, cada uno
+ *   con su propio consumer group (ack y lag independientes), las alertas, la
+ *   revalorización de portfolios y las series (ticks intraday, barras OHLC y
+ *   puntos históricos de índices). Ver MarketDataStreamConsumers.
+ * - STREAM_ALERTAS_DISPARADAS: una entrada por alerta disparada, consumida por
+ *   el grupo de notificaciones.
+ *
+ * Cada entrada de ticks guarda los campos de MarketData como texto (legible con
+ * XRANGE desde redis-cli). Los streams se recortan de forma aproximada
+ * (MAXLEN ~) para acotar memoria; un consumidor con más retraso que eso pierde
+ * las entradas más antiguas.
+ */
+@Component
+@Slf4j
+public class TickStream {
+
+    public static final String STREAM_TICKS = "spyzer:stream:ticks";
+    public static final String STREAM_ALERTAS_DISPARADAS = "spyzer:stream:alertas-disparadas";
+
+    // Campo con el id de la alerta en STREAM_ALERTAS_DISPARADAS
+    public static final String CAMPO_ALERTA_ID = "alertaId";
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${marketdata.stream.max-len:100000}")
+    private long maxLen;
+
+    public TickStream(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Añade una entrada por cotización al stream de ticks (XADD en un único pipeline).
+     *
+     * @throws org.springframework.dao.DataAccessException si Redis no está disponible
+     */
+    public void publicarTicks(Collection<MarketData> datos) {
+        if (datos == null || datos.isEmpty()) {
+            return;
+        }
+        XAddOptions opciones = XAddOptions.maxlen(maxLen).approximateTrimming(true);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conexion = (StringRedisConnection) connection;
+            for (MarketData marketData : datos) {
+                conexion.xAdd(StreamRecords.string(aCampos(marketData)).withStreamKey(STREAM_TICKS), opciones);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Añade una entrada por alerta disparada al stream de notificaciones.
+     *
+     * @throws org.springframework.dao.DataAccessException si Redis no está disponible
+     */
+    public void publicarAlertasDisparadas(Collection<Long> alertaIds) {
+        if (alertaIds == null || alertaIds.isEmpty()) {
+            return;
+        }
+        XAddOptions opciones = XAddOptions.maxlen(maxLen).approximateTrimming(true);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conexion = (StringRedisConnection) connection;
+            for (Long alertaId : alertaIds) {
+                conexion.xAdd(StreamRecords.string(Map.of(CAMPO_ALERTA_ID, String.valueOf(alertaId)))
+                        .withStreamKey(STREAM_ALERTAS_DISPARADAS), opciones);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Campos de la entrada del stream para una cotización (los null se omiten).
+     */
+    public static Map<String, String> aCampos(MarketData datos) {
+        Map<String, String> campos = new LinkedHashMap<>();
+        BiConsumer<String, Object> poner = (campo, valor) -> {
+            if (valor != null) {
+                campos.put(campo, valor instanceof BigDecimal decimal ? decimal.toPlainString() : valor.toString());
+            }
+        };
+        poner.accept("symbol", datos.getSymbol());
+        poner.accept("precio", datos.getPrecio());
+        poner.accept("timestamp", datos.getTimestamp());
+        poner.accept("open", datos.getOpen());
+        poner.accept("high", datos.getHigh());
+        poner.accept("low", datos.getLow());
+        poner.accept("close", datos.getClose());
+        poner.accept("volumen", datos.getVolumen());
+        poner.accept("dataType", datos.getDataType());
+        poner.accept("precioAnterior", datos.getPrecioAnterior());
+        poner.accept("variacionAbsoluta", datos.getVariacionAbsoluta());
+        poner.accept("variacionPorcentual", datos.getVariacionPorcentual());
+        return campos;
+    }
+
+    /**
+     * Reconstruye la cotización de una entrada del stream de ticks.
+     */
+    public static MarketData desdeCampos(Map<String, String> campos) {
+        Function<String, BigDecimal> decimal = campo -> campos.get(campo) != null ? new BigDecimal(campos.get(campo)) : null;
+        return MarketData.builder()
+                .symbol(campos.get("symbol"))
+                .precio(decimal.apply("precio"))
+                .timestamp(campos.get("timestamp") != null ? LocalDateTime.parse(campos.get("timestamp")) : null)
+                .open(decimal.apply("open"))
+                .high(decimal.apply("high"))
+                .low(decimal.apply("low"))
+                .close(decimal.apply("close"))
+                .volumen(campos.get("volumen") != null ? Long.valueOf(campos.get("volumen")) : null)
+                .dataType(campos.get("dataType") != null ? MarketData.DataType.valueOf(campos.get("dataType")) : null)
+                .precioAnterior(decimal.apply("precioAnterior"))
+                .variacionAbsoluta(decimal.apply("variacionAbsoluta"))
+                .variacionPorcentual(decimal.apply("variacionPorcentual"))
+                .build();
+    }
+}
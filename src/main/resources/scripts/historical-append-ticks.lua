@@ -0,0 +1,34 @@
+-- Añade un tick empaquetado al chunk horario de cada serie intraday.
+--
+-- KEYS[i]          : ticks:{SYMBOL}:{hora}
+-- ARGV[2*i-1]      : tick de KEYS[i] (20 bytes: offset int32, precio int64, volumen int64; big-endian)
+-- ARGV[2*i]        : instante de expiración del chunk (ms epoch, PEXPIREAT)
+--
+-- Devuelve un array con un estado por key: "OK" o el mensaje de error.
+-- Un tick con offset menor o igual que el último del chunk (duplicado o
+-- desordenado) se descarta con estado "OK": el chunk sigue ordenado.
+-- Cada key se procesa con pcall: un fallo en una serie no aborta el resto.
+local TICK_BYTES = 20
+local resultado = {}
+
+for i, key in ipairs(KEYS) do
+    local tick = ARGV[2 * i - 1]
+    local expiracion = ARGV[2 * i]
+    local ultimo = redis.pcall('GETRANGE', key, -TICK_BYTES, -TICK_BYTES + 3)
+
+    if type(ultimo) == 'table' and ultimo.err then
+        resultado[i] = ultimo.err
+    elseif string.len(ultimo) == 4 and struct.unpack('>i4', ultimo) >= struct.unpack('>i4', tick) then
+        resultado[i] = 'OK'
+    else
+        local r = redis.pcall('APPEND', key, tick)
+        if type(r) == 'table' and r.err then
+            resultado[i] = r.err
+        else
+            redis.pcall('PEXPIREAT', key, expiracion)
+            resultado[i] = 'OK'
+        end
+    end
+end
+
+return resultado
@@ -0,0 +1,91 @@
+-- Actualiza de forma incremental las barras OHLCV de varias resoluciones con
+-- el tick más reciente de cada símbolo del lote.
+--
+-- ARGV[1]  : R, número de resoluciones por símbolo
+-- Por cada símbolo s (0..n-1), con kb = s*(R+1) y ab = 1 + s*(3+3R):
+--   KEYS[kb+1]        : bars:{SYMBOL}:estado (hash t = último tick, v = último volumen acumulado)
+--   KEYS[kb+1+r]      : bars:{SYMBOL}:{resolución r} (ZSET score = inicio de la barra)
+--   ARGV[ab+1]        : timestamp del tick (ms epoch)
+--   ARGV[ab+2]        : precio en punto fijo (entero)
+--   ARGV[ab+3]        : volumen acumulado del día (-1 si no hay)
+--   ARGV[ab+3+3r-2]   : inicio de la barra en la resolución r (ms epoch)
+--   ARGV[ab+3+3r-1]   : corte de retención (se eliminan barras con inicio <= corte)
+--   ARGV[ab+3+3r]     : TTL de la key en ms
+--
+-- Miembro de cada barra: "inicio:open:high:low:close:volumen" (enteros).
+-- El volumen de la barra es la suma de incrementos del volumen acumulado.
+--
+-- Devuelve un estado por símbolo: "OK", "IGNORADO" (tick no posterior al
+-- último procesado: reintentos y duplicados son idempotentes) o el error.
+local R = tonumber(ARGV[1])
+local n = #KEYS / (R + 1)
+local resultado = {}
+
+local function entero(x)
+    return string.format('%.0f', x)
+end
+
+local function procesar(kb, ab)
+    local estado = KEYS[kb + 1]
+    local t = tonumber(ARGV[ab + 1])
+    local precio = tonumber(ARGV[ab + 2])
+    local volumen = tonumber(ARGV[ab + 3])
+
+    local previo = redis.call('HMGET', estado, 't', 'v')
+    local tPrevio = tonumber(previo[1])
+    if tPrevio and t <= tPrevio then
+        return 'IGNORADO'
+    end
+
+    local incremento = 0
+    if volumen >= 0 then
+        local vPrevio = tonumber(previo[2])
+        if vPrevio == nil or volumen < vPrevio then
+            -- Primer tick o nuevo día (el acumulado se reinicia)
+            incremento = volumen
+        else
+            incremento = volumen - vPrevio
+        end
+        redis.call('HSET', estado, 'v', entero(volumen))
+    end
+    redis.call('HSET', estado, 't', entero(t))
+    redis.call('PEXPIRE', estado, 2 * 24 * 60 * 60 * 1000)
+
+    for r = 1, R do
+        local key = KEYS[kb + 1 + r]
+        local inicio = ARGV[ab + 3 + 3 * r - 2]
+        local corte = ARGV[ab + 3 + 3 * r - 1]
+        local ttl = ARGV[ab + 3 + 3 * r]
+
+        local o, h, l, c, v = precio, precio, precio, precio, incremento
+        local existente = redis.call('ZRANGEBYSCORE', key, inicio, inicio)
+        if #existente > 0 then
+            local _, eo, eh, el, _, ev = string.match(existente[1],
+                '^(%-?%d+):(%-?%d+):(%-?%d+):(%-?%d+):(%-?%d+):(%-?%d+)$')
+            if eo then
+                o = tonumber(eo)
+                h = math.max(tonumber(eh), precio)
+                l = math.min(tonumber(el), precio)
+                v = tonumber(ev) + incremento
+            end
+            redis.call('ZREMRANGEBYSCORE', key, inicio, inicio)
+        end
+
+        redis.call('ZADD', key, inicio,
+            table.concat({ inicio, entero(o), entero(h), entero(l), entero(c), entero(v) }, ':'))
+        redis.call('ZREMRANGEBYSCORE', key, '-inf', corte)
+        redis.call('PEXPIRE', key, ttl)
+    end
+    return 'OK'
+end
+
+for s = 0, n - 1 do
+    local ok, r = pcall(procesar, s * (R + 1), 1 + s * (3 + 3 * R))
+    if ok then
+        resultado[s + 1] = r
+    else
+        resultado[s + 1] = tostring(r)
+    end
+end
+
+return resultado
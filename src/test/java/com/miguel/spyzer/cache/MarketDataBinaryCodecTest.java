@@ -0,0 +1,126 @@
+package com.miguel.spyzer.cache;
+
+import com.miguel.spyzer.entities.MarketData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class MarketDataBinaryCodecTest {
+
+    private RedisSerializer<Object> json;
+    private MarketDataBinaryCodec codec;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        json = mock(RedisSerializer.class);
+        codec = new MarketDataBinaryCodec(json);
+    }
+
+    @Test
+    void idaYVueltaConTodosLosCampos() {
+        MarketData datos = MarketData.builder()
+                .id(-42L)
+                .symbol("^GSPC")
+                .precio(new BigDecimal("5432.1000"))
+                .timestamp(LocalDateTime.of(2025, 10, 17, 15, 59, 59, 123_456_789))
+                .open(new BigDecimal("5400.00"))
+                .high(new BigDecimal("5450.5"))
+                .low(new BigDecimal("5399"))
+                .close(new BigDecimal("5432.10"))
+                .volumen(3_456_789_012L)
+                .dataType(MarketData.DataType.DAILY)
+                .precioAnterior(new BigDecimal("5500.00"))
+                .variacionAbsoluta(new BigDecimal("-67.90"))
+                .variacionPorcentual(new BigDecimal("-1.2345"))
+                .marketCap(Long.MAX_VALUE)
+                .week52High(new BigDecimal("6000"))
+                .week52Low(new BigDecimal("4E+3"))
+                .peRatio(new BigDecimal("0.000001"))
+                .build();
+
+        byte[] bytes = codec.serialize(datos);
+
+        assertThat(bytes[0]).isEqualTo(MarketDataBinaryCodec.MAGIC);
+        assertThat(bytes[1]).isEqualTo(MarketDataBinaryCodec.VERSION_1);
+        // equals de BigDecimal compara también la escala
+        assertThat(codec.deserialize(bytes)).isEqualTo(datos);
+        verifyNoInteractions(json);
+    }
+
+    @Test
+    void losCamposNulosSiguenSiendoNulos() {
+        MarketData datos = MarketData.builder()
+                .symbol("SPY")
+                .precio(new BigDecimal("580.25"))
+                .timestamp(null)
+                .build();
+
+        MarketData leido = (MarketData) codec.deserialize(codec.serialize(datos));
+
+        assertThat(leido).isEqualTo(datos);
+        assertThat(leido.getTimestamp()).isNull();
+        assertThat(leido.getId()).isNull();
+        assertThat(leido.getVolumen()).isNull();
+        assertThat(leido.getDataType()).isNull();
+    }
+
+    @Test
+    void unSimboloNoAsciiSeConserva() {
+        MarketData datos = MarketData.builder().symbol("ÑÁ.MC").build();
+
+        assertThat(codec.deserialize(codec.serialize(datos))).isEqualTo(datos);
+    }
+
+    @Test
+    void unaVersionDesconocidaSeRechaza() {
+        byte[] bytes = codec.serialize(MarketData.builder().symbol("SPY").build());
+        bytes[1] = 2;
+
+        assertThatThrownBy(() -> codec.deserialize(bytes))
+                .isInstanceOf(SerializationException.class)
+                .hasMessageContaining("2");
+    }
+
+    @Test
+    void unValorTruncadoSeRechazaComoCorrupto() {
+        byte[] bytes = codec.serialize(MarketData.builder().symbol("SPY").precio(new BigDecimal("1.5")).build());
+        byte[] truncado = Arrays.copyOf(bytes, bytes.length - 2);
+
+        assertThatThrownBy(() -> codec.deserialize(truncado)).isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    void unDecimalFueraDeRangoSeGuardaEnJson() {
+        MarketData datos = MarketData.builder()
+                .symbol("SPY")
+                .precio(new BigDecimal("123456789012345678901234567890.5"))
+                .build();
+        when(json.serialize(datos)).thenReturn("{}".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(codec.serialize(datos)).isEqualTo("{}".getBytes(StandardCharsets.UTF_8));
+        verify(json).serialize(datos);
+    }
+
+    @Test
+    void lasEntradasSinMagicSeLeenComoJson() {
+        byte[] entradaAntigua = "{\"symbol\":\"SPY\"}".getBytes(StandardCharsets.UTF_8);
+        when(json.deserialize(entradaAntigua)).thenReturn("leido");
+
+        assertThat(codec.deserialize(entradaAntigua)).isEqualTo("leido");
+        assertThat(codec.deserialize(new byte[0])).isNull();
+    }
+}
@@ -0,0 +1,98 @@
+package com.miguel.spyzer.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Relleno de la L1 tras leer de L2 frente a invalidaciones concurrentes.
+ */
+class TwoLevelCacheTest {
+
+    private Cache l2;
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        l2 = mock(Cache.class);
+        cache = new TwoLevelCache("precios", Caffeine.newBuilder().build(), l2, mock(CacheInvalidationBus.class));
+    }
+
+    @Test
+    void unaLecturaDeL2RellenaLaL1() {
+        when(l2.get("SPY")).thenReturn(new SimpleValueWrapper("580"));
+
+        assertThat(cache.get("SPY").get()).isEqualTo("580");
+        assertThat(cache.obtenerLocal("SPY")).isEqualTo("580");
+    }
+
+    @Test
+    void unaInvalidacionRecibidaDuranteLaLecturaDeL2NoSePierde() {
+        // Otra réplica hace put mientras se lee el valor antiguo de Redis
+        when(l2.get("SPY")).thenAnswer(invocacion -> {
+            cache.invalidarLocal("SPY");
+            return new SimpleValueWrapper("antiguo");
+        });
+
+        assertThat(cache.get("SPY").get()).isEqualTo("antiguo");
+        assertThat(cache.obtenerLocal("SPY")).isNull();
+    }
+
+    @Test
+    void unVaciadoDuranteLaLecturaDeL2TambienEvitaElRelleno() {
+        when(l2.get("SPY")).thenAnswer(invocacion -> {
+            cache.invalidarLocal(null);
+            return new SimpleValueWrapper("antiguo");
+        });
+
+        cache.get("SPY");
+
+        assertThat(cache.obtenerLocal("SPY")).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void laCargaConValueLoaderTambienCompruebaLaGeneracion() {
+        when(l2.get(eq("SPY"), any(Callable.class))).thenAnswer(invocacion -> {
+            cache.evict("SPY");
+            return "antiguo";
+        });
+
+        assertThat(cache.get("SPY", () -> "antiguo")).isEqualTo("antiguo");
+        assertThat(cache.obtenerLocal("SPY")).isNull();
+    }
+
+    @Test
+    void elRellenoEnBloqueUsaLaMarcaTomadaAntesDeLeer() {
+        long marca = cache.marca("SPY");
+        cache.invalidarLocal("SPY");
+
+        cache.rellenarLocal("SPY", "antiguo", marca);
+        assertThat(cache.obtenerLocal("SPY")).isNull();
+
+        cache.rellenarLocal("SPY", "nuevo", cache.marca("SPY"));
+        assertThat(cache.obtenerLocal("SPY")).isEqualTo("nuevo");
+    }
+
+    @Test
+    void unaInvalidacionDeOtraClaveNoImpideElRelleno() {
+        when(l2.get("SPY")).thenAnswer(invocacion -> {
+            cache.invalidarLocal("QQQ");
+            return new SimpleValueWrapper("580");
+        });
+
+        cache.get("SPY");
+
+        assertThat(cache.obtenerLocal("SPY")).isEqualTo("580");
+    }
+}
@@ -0,0 +1,86 @@
+package com.miguel.spyzer.columnar;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.miguel.spyzer.columnar.BarFileTest.puntos;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BarDownsamplerTest {
+
+    @Test
+    void lttbConservaElPrimerYElUltimoPuntoYNoSuperaN() {
+        BarSlice origen = BarSlice.desdePuntos("SPY", Granularidad.INTRADIA, puntos(0, 1000));
+
+        BarSlice reducida = BarDownsampler.reducir(origen, 50, BarDownsampler.Metodo.LTTB);
+
+        assertThat(reducida.size()).isEqualTo(50);
+        assertThat(reducida.tsMs(0)).isEqualTo(origen.tsMs(0));
+        assertThat(reducida.tsMs(49)).isEqualTo(origen.tsMs(999));
+        for (int i = 1; i < reducida.size(); i++) {
+            assertThat(reducida.tsMs(i)).isGreaterThan(reducida.tsMs(i - 1));
+        }
+    }
+
+    @Test
+    void lttbConservaUnPicoAislado() {
+        List<HistoricalDataPoint> puntos = puntos(0, 300);
+        puntos.forEach(punto -> punto.setClose(BigDecimal.valueOf(100)));
+        puntos.get(137).setClose(BigDecimal.valueOf(500));
+        BarSlice origen = BarSlice.desdePuntos("SPY", Granularidad.INTRADIA, puntos);
+
+        BarSlice reducida = BarDownsampler.reducir(origen, 10, BarDownsampler.Metodo.LTTB);
+
+        List<Double> cierres = new ArrayList<>();
+        for (int i = 0; i < reducida.size(); i++) {
+            cierres.add(reducida.close(i));
+        }
+        assertThat(cierres).contains(500.0);
+    }
+
+    @Test
+    void minMaxConservaLosExtremosDeUnaVistaDescendente() {
+        List<HistoricalDataPoint> puntos = puntos(0, 100);
+        puntos.get(3).setHigh(BigDecimal.valueOf(900));
+        puntos.get(96).setLow(BigDecimal.valueOf(1));
+        Collections.reverse(puntos);
+        BarSlice origen = BarSlice.desdePuntos("SPY", Granularidad.INTRADIA, puntos);
+
+        BarSlice reducida = BarDownsampler.reducir(origen, 4, BarDownsampler.Metodo.MINMAX);
+
+        assertThat(reducida.size()).isEqualTo(4);
+        // Se mantiene el orden de origen: el primer cubo agrupa los puntos 99..75
+        assertThat(reducida.tsMs(0)).isEqualTo(origen.tsMs(24));
+        assertThat(reducida.open(0)).isEqualTo(175.0);
+        assertThat(reducida.close(0)).isEqualTo(199.0);
+        assertThat(reducida.low(0)).isEqualTo(1.0);
+        assertThat(reducida.high(3)).isEqualTo(900.0);
+        long volumen = 0;
+        for (int i = 0; i < reducida.size(); i++) {
+            volumen += reducida.volumen(i);
+        }
+        assertThat(volumen).isEqualTo(100 * 1000L + 99 * 100 / 2);
+    }
+
+    @Test
+    void unaVistaQueYaCabeSeDevuelveSinCopiar() {
+        BarSlice origen = BarSlice.desdePuntos("SPY", Granularidad.INTRADIA, puntos(0, 20));
+
+        assertThat(BarDownsampler.reducir(origen, 20, BarDownsampler.Metodo.LTTB)).isSameAs(origen);
+    }
+
+    @Test
+    void rechazaMenosPuntosQueElMinimo() {
+        BarSlice origen = BarSlice.desdePuntos("SPY", Granularidad.INTRADIA, puntos(0, 20));
+
+        assertThatThrownBy(() -> BarDownsampler.reducir(origen, BarDownsampler.MIN_PUNTOS - 1,
+                BarDownsampler.Metodo.MINMAX)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
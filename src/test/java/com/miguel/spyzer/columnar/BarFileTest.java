@@ -0,0 +1,137 @@
+package com.miguel.spyzer.columnar;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BarFileTest {
+
+    private static final long INICIO_MS = Instant.parse("2025-10-17T13:30:00Z").toEpochMilli();
+    private static final long MINUTO_MS = 60_000;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void anexaSoloLosPuntosPosterioresAlUltimo() throws IOException {
+        BarFile archivo = BarFile.abrir(directorio.resolve("SPY.intradia.bars"));
+
+        archivo.anexar(puntos(0, 3));
+        archivo.anexar(puntos(2, 3));
+
+        BarSlice vista = vista(archivo.estado());
+        assertThat(vista.size()).isEqualTo(5);
+        for (int i = 0; i < vista.size(); i++) {
+            assertThat(vista.tsMs(i)).isEqualTo(INICIO_MS + i * MINUTO_MS);
+            assertThat(vista.close(i)).isEqualTo(100.0 + i);
+        }
+    }
+
+    @Test
+    void creceAlLlenarseSinCambiarLasVistasAbiertas() throws IOException {
+        BarFile archivo = BarFile.abrir(directorio.resolve("SPY.intradia.bars"));
+        archivo.anexar(puntos(0, 1000));
+        BarSlice anterior = vista(archivo.estado());
+
+        archivo.anexar(puntos(1000, 500));
+
+        BarFile.Estado estado = archivo.estado();
+        assertThat(estado.capacidad()).isEqualTo(2048);
+        assertThat(estado.filas()).isEqualTo(1500);
+        BarSlice vista = vista(estado);
+        assertThat(vista.tsMs(0)).isEqualTo(INICIO_MS);
+        assertThat(vista.close(999)).isEqualTo(1099.0);
+        assertThat(vista.tsMs(1499)).isEqualTo(INICIO_MS + 1499 * MINUTO_MS);
+        assertThat(anterior.size()).isEqualTo(1000);
+        assertThat(anterior.close(999)).isEqualTo(1099.0);
+        assertThat(directorio.resolve("SPY.intradia.bars.crecer")).doesNotExist();
+    }
+
+    @Test
+    void alReabrirConservaLasFilasConfirmadas() throws IOException {
+        Path ruta = directorio.resolve("SPY.intradia.bars");
+        BarFile.abrir(ruta).anexar(puntos(0, 1500));
+
+        BarFile reabierto = BarFile.abrir(ruta);
+
+        BarFile.Estado estado = reabierto.estado();
+        assertThat(estado.filas()).isEqualTo(1500);
+        assertThat(estado.ultimoTs()).isEqualTo(INICIO_MS + 1499 * MINUTO_MS);
+        assertThat(vista(estado).volumen(10)).isEqualTo(1010);
+    }
+
+    @Test
+    void laReconstruccionSoloSeVeAlPublicarla() throws IOException {
+        Path ruta = directorio.resolve("SPY.intradia.bars");
+        BarFile archivo = BarFile.abrir(ruta);
+        archivo.anexar(puntos(0, 10));
+        BarSlice anterior = vista(archivo.estado());
+
+        BarFile.Reconstruccion reconstruccion = archivo.iniciarReconstruccion(3000);
+        reconstruccion.anexar(puntos(100, 3000));
+        assertThat(archivo.estado().filas()).isEqualTo(10);
+
+        archivo.publicar(reconstruccion);
+
+        assertThat(archivo.estado().filas()).isEqualTo(3000);
+        assertThat(vista(archivo.estado()).tsMs(0)).isEqualTo(INICIO_MS + 100 * MINUTO_MS);
+        assertThat(anterior.tsMs(0)).isEqualTo(INICIO_MS);
+        assertThat(ruta.resolveSibling("SPY.intradia.bars.nuevo")).doesNotExist();
+        assertThat(BarFile.abrir(ruta).estado().filas()).isEqualTo(3000);
+    }
+
+    @Test
+    void unaCabeceraNoValidaSeRecreaVacia() throws IOException {
+        Path ruta = directorio.resolve("SPY.intradia.bars");
+        Files.write(ruta, new byte[BarSlice.tamanoArchivo(1024)]);
+
+        BarFile archivo = BarFile.abrir(ruta);
+
+        assertThat(archivo.estado().filas()).isZero();
+        archivo.anexar(puntos(0, 2));
+        assertThat(BarFile.abrir(ruta).estado().filas()).isEqualTo(2);
+    }
+
+    @Test
+    void unArchivoTruncadoSeRecreaVacio() throws IOException {
+        Path ruta = directorio.resolve("SPY.intradia.bars");
+        BarFile.abrir(ruta).anexar(puntos(0, 5));
+        byte[] contenido = Files.readAllBytes(ruta);
+        Files.write(ruta, Arrays.copyOf(contenido, contenido.length / 2));
+
+        assertThat(BarFile.abrir(ruta).estado().filas()).isZero();
+    }
+
+    static List<HistoricalDataPoint> puntos(int desde, int cantidad) {
+        List<HistoricalDataPoint> puntos = new ArrayList<>();
+        for (int i = desde; i < desde + cantidad; i++) {
+            puntos.add(HistoricalDataPoint.builder()
+                    .symbol("SPY")
+                    .granularidad(Granularidad.INTRADIA)
+                    .ts(Instant.ofEpochMilli(INICIO_MS + i * MINUTO_MS))
+                    .open(BigDecimal.valueOf(100 + i))
+                    .high(BigDecimal.valueOf(101 + i))
+                    .low(BigDecimal.valueOf(99 + i))
+                    .close(BigDecimal.valueOf(100 + i))
+                    .volume(1000L + i)
+                    .build());
+        }
+        return puntos;
+    }
+
+    private static BarSlice vista(BarFile.Estado estado) {
+        return new BarSlice("SPY", Granularidad.INTRADIA, estado.buffer(), estado.capacidad(), 0, estado.filas(), false);
+    }
+}
@@ -0,0 +1,89 @@
+package com.miguel.spyzer.columnar;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint.Granularidad;
+import com.miguel.spyzer.repository.HistoricalDataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static com.miguel.spyzer.columnar.BarFileTest.puntos;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Lecturas de ColumnarBarStore sobre un archivo reconstruido desde un repositorio simulado.
+ */
+class ColumnarBarStoreTest {
+
+    private static final Instant INICIO = Instant.parse("2025-10-17T13:30:00Z");
+
+    @TempDir
+    Path directorio;
+
+    private HistoricalDataRepository historicalDataRepository;
+    private ColumnarBarStore store;
+
+    @BeforeEach
+    void setUp() {
+        historicalDataRepository = mock(HistoricalDataRepository.class);
+        when(historicalDataRepository.countBySymbolAndGranularidad("SPY", Granularidad.INTRADIA)).thenReturn(100L);
+        when(historicalDataRepository.findPagina(eq("SPY"), eq(Granularidad.INTRADIA), any(), any(), any()))
+                .thenReturn(puntos(0, 100), List.of());
+        store = new ColumnarBarStore(historicalDataRepository, directorio.toString(), 3600);
+    }
+
+    @Test
+    void rangoIncluyeAmbosExtremos() {
+        BarSlice rango = store.rango("SPY", Granularidad.INTRADIA, minuto(10), minuto(20));
+
+        assertThat(rango.size()).isEqualTo(11);
+        assertThat(rango.tsMs(0)).isEqualTo(minuto(10).toEpochMilli());
+        assertThat(rango.tsMs(10)).isEqualTo(minuto(20).toEpochMilli());
+    }
+
+    @Test
+    void rangoConExtremosEntreFilasTomaLasInteriores() {
+        BarSlice rango = store.rango("SPY", Granularidad.INTRADIA,
+                minuto(10).plusSeconds(30), minuto(20).plusSeconds(30));
+
+        assertThat(rango.size()).isEqualTo(10);
+        assertThat(rango.tsMs(0)).isEqualTo(minuto(11).toEpochMilli());
+        assertThat(rango.close(9)).isEqualTo(120.0);
+    }
+
+    @Test
+    void rangoFueraDeLosDatosSeRecortaOQuedaVacio() {
+        assertThat(store.rango("SPY", Granularidad.INTRADIA, minuto(-50), minuto(2)).size()).isEqualTo(3);
+        assertThat(store.rango("SPY", Granularidad.INTRADIA, minuto(98), minuto(500)).size()).isEqualTo(2);
+        assertThat(store.rango("SPY", Granularidad.INTRADIA, minuto(100), minuto(500)).isEmpty()).isTrue();
+        assertThat(store.rango("SPY", Granularidad.INTRADIA, minuto(20), minuto(10)).isEmpty()).isTrue();
+    }
+
+    @Test
+    void ultimosDevuelveElMasRecientePrimero() {
+        BarSlice ultimos = store.ultimos("SPY", Granularidad.INTRADIA, 3);
+
+        assertThat(ultimos.size()).isEqualTo(3);
+        assertThat(ultimos.tsMs(0)).isEqualTo(minuto(99).toEpochMilli());
+        assertThat(ultimos.tsMs(2)).isEqualTo(minuto(97).toEpochMilli());
+    }
+
+    @Test
+    void sinHistoricoNoSeCreaArchivo() {
+        BarSlice rango = store.rango("QQQ", Granularidad.INTRADIA, minuto(0), minuto(10));
+
+        assertThat(rango.isEmpty()).isTrue();
+        assertThat(directorio).isEmptyDirectory();
+    }
+
+    private static Instant minuto(int minuto) {
+        return INICIO.plusSeconds(minuto * 60L);
+    }
+}
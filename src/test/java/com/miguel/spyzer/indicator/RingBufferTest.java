@@ -0,0 +1,43 @@
+package com.miguel.spyzer.indicator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RingBufferTest {
+
+    @Test
+    void mediaYDesviacionSonLasDeLosUltimosValores() {
+        RingBuffer ventana = new RingBuffer(4);
+        for (double valor : new double[]{100, 200, 2, 4, 4, 5}) {
+            ventana.anadir(valor);
+        }
+
+        // Ventana [2, 4, 4, 5]
+        assertThat(ventana.lleno()).isTrue();
+        assertThat(ventana.media()).isCloseTo(3.75, within(1e-12));
+        assertThat(ventana.desviacion()).isCloseTo(Math.sqrt(1.1875), within(1e-12));
+    }
+
+    @Test
+    void unaVentanaConstanteTieneDesviacionCero() {
+        RingBuffer ventana = new RingBuffer(20);
+        for (int i = 0; i < 1_000; i++) {
+            ventana.anadir(1234.56);
+        }
+
+        assertThat(ventana.desviacion()).isZero();
+    }
+
+    @Test
+    void sinValoresNoHayMedia() {
+        RingBuffer ventana = new RingBuffer(3);
+
+        assertThat(ventana.lleno()).isFalse();
+        assertThat(ventana.media()).isNaN();
+        ventana.anadir(6);
+        assertThat(ventana.media()).isEqualTo(6.0);
+        assertThat(ventana.lleno()).isFalse();
+    }
+}
@@ -0,0 +1,143 @@
+package com.miguel.spyzer.indicator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Indicadores incrementales frente a valores de referencia calculados sobre la
+ * serie completa (SMA y desviación poblacional de las últimas 20, EMA sembrada
+ * con la media simple, Wilder sembrado con la media de los primeros 14 cambios).
+ */
+class SymbolIndicatorsTest {
+
+    // Los 15 primeros son el ejemplo clásico de Wilder (RSI 70,46 en el cambio 14)
+    private static final double[] PRECIOS = {
+            44.34, 44.09, 44.15, 43.61, 44.33, 44.83, 45.10, 45.42, 45.84, 46.08,
+            45.89, 46.03, 45.61, 46.28, 46.28, 46.00, 46.03, 46.41, 46.22, 45.64,
+            46.21, 46.25, 45.71, 46.45, 45.78, 45.35, 44.03, 44.29, 44.83, 45.10,
+            45.42, 45.84, 46.08, 45.89, 46.03, 45.61, 46.28, 46.28, 46.00, 46.03};
+
+    private static final double PRECISION = 1e-9;
+
+    // 09:30 en Nueva York del 17/10/2025
+    private static final long APERTURA_MS = Instant.parse("2025-10-17T13:30:00Z").toEpochMilli();
+    private static final long MINUTO_MS = 60_000;
+    private static final long DIA_MS = 24 * 60 * MINUTO_MS;
+
+    private SymbolIndicators indicadores;
+
+    @BeforeEach
+    void setUp() {
+        indicadores = new SymbolIndicators("SPY");
+    }
+
+    @Test
+    void coincideConLosValoresDeReferencia() {
+        aplicarPrecios(PRECIOS.length);
+
+        IndicatorSnapshot snapshot = indicadores.snapshot();
+        assertThat(snapshot.precio()).isEqualTo(46.03);
+        assertThat(snapshot.sma20()).isCloseTo(45.673, within(PRECISION));
+        assertThat(snapshot.bollingerMedia()).isEqualTo(snapshot.sma20());
+        assertThat(snapshot.bollingerSuperior()).isCloseTo(46.96919597283743, within(PRECISION));
+        assertThat(snapshot.bollingerInferior()).isCloseTo(44.37680402716256, within(PRECISION));
+        assertThat(snapshot.ema12()).isCloseTo(45.86421549412605, within(PRECISION));
+        assertThat(snapshot.ema26()).isCloseTo(45.657114944216175, within(PRECISION));
+        assertThat(snapshot.macd()).isCloseTo(0.2071005499098746, within(PRECISION));
+        assertThat(snapshot.macdSenal()).isCloseTo(0.15737366321144627, within(PRECISION));
+        assertThat(snapshot.macdHistograma()).isCloseTo(0.04972688669842831, within(PRECISION));
+        assertThat(snapshot.rsi14()).isCloseTo(55.127048729504175, within(PRECISION));
+        assertThat(snapshot.atr14()).isCloseTo(0.34421156430701416, within(PRECISION));
+    }
+
+    @Test
+    void rsiDeWilderConLosPrimerosCatorceCambios() {
+        aplicarPrecios(15);
+
+        assertThat(indicadores.snapshot().rsi14()).isCloseTo(70.46413502109705, within(PRECISION));
+    }
+
+    @Test
+    void losIndicadoresSinDatosSuficientesSonNulos() {
+        aplicarPrecios(14);
+
+        IndicatorSnapshot snapshot = indicadores.snapshot();
+        assertThat(snapshot.ema12()).isNotNull();
+        assertThat(snapshot.rsi14()).isNull();
+        assertThat(snapshot.atr14()).isNull();
+        assertThat(snapshot.sma20()).isNull();
+        assertThat(snapshot.bollingerSuperior()).isNull();
+        assertThat(snapshot.ema26()).isNull();
+        assertThat(snapshot.macd()).isNull();
+        assertThat(snapshot.vwap()).isNull();
+    }
+
+    @Test
+    void laSenalMacdNecesitaNueveValoresDeMacd() {
+        aplicarPrecios(33);
+        assertThat(indicadores.snapshot().macd()).isNotNull();
+        assertThat(indicadores.snapshot().macdSenal()).isNull();
+
+        indicadores.aplicar(APERTURA_MS + 33 * MINUTO_MS, PRECIOS[33], null);
+        assertThat(indicadores.snapshot().macdSenal()).isNotNull();
+    }
+
+    @Test
+    void unTickNoPosteriorAlUltimoSeIgnora() {
+        aplicarPrecios(20);
+        IndicatorSnapshot antes = indicadores.snapshot();
+
+        assertThat(indicadores.aplicar(APERTURA_MS + 19 * MINUTO_MS, 500, 1_000L)).isFalse();
+        assertThat(indicadores.aplicar(APERTURA_MS + 5 * MINUTO_MS, 500, 1_000L)).isFalse();
+        assertThat(indicadores.aplicar(APERTURA_MS + 20 * MINUTO_MS, Double.NaN, 1_000L)).isFalse();
+
+        assertThat(indicadores.getVersion()).isEqualTo(20);
+        // Sin ticks nuevos el snapshot no se recalcula
+        assertThat(indicadores.snapshot()).isSameAs(antes);
+    }
+
+    @Test
+    void vwapPonderaConElIncrementoDelVolumenAcumulado() {
+        indicadores.aplicar(APERTURA_MS, 10, 100L);
+        indicadores.aplicar(APERTURA_MS + MINUTO_MS, 12, 300L);
+        // Sin volumen no cuenta para el VWAP
+        indicadores.aplicar(APERTURA_MS + 2 * MINUTO_MS, 50, null);
+
+        // (10 × 100 + 12 × 200) / 300
+        assertThat(indicadores.snapshot().vwap()).isCloseTo(34.0 / 3, within(PRECISION));
+    }
+
+    @Test
+    void vwapSeReiniciaConUnaSesionNueva() {
+        indicadores.aplicar(APERTURA_MS, 10, 100L);
+        indicadores.aplicar(APERTURA_MS + MINUTO_MS, 12, 300L);
+
+        indicadores.aplicar(APERTURA_MS + DIA_MS, 20, 50L);
+        assertThat(indicadores.snapshot().vwap()).isCloseTo(20, within(PRECISION));
+
+        indicadores.aplicar(APERTURA_MS + DIA_MS + MINUTO_MS, 22, 100L);
+        assertThat(indicadores.snapshot().vwap()).isCloseTo(21, within(PRECISION));
+    }
+
+    @Test
+    void vwapSeReiniciaSiElVolumenAcumuladoBaja() {
+        indicadores.aplicar(APERTURA_MS, 10, 1_000L);
+        indicadores.aplicar(APERTURA_MS + MINUTO_MS, 12, 2_000L);
+
+        // Reinicio del acumulado del proveedor dentro del mismo día
+        indicadores.aplicar(APERTURA_MS + 2 * MINUTO_MS, 30, 10L);
+
+        assertThat(indicadores.snapshot().vwap()).isCloseTo(30, within(PRECISION));
+    }
+
+    private void aplicarPrecios(int cantidad) {
+        for (int i = 0; i < cantidad; i++) {
+            assertThat(indicadores.aplicar(APERTURA_MS + i * MINUTO_MS, PRECIOS[i], null)).isTrue();
+        }
+    }
+}
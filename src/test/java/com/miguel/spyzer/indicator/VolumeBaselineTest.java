@@ -0,0 +1,141 @@
+package com.miguel.spyzer.indicator;
+
+import com.miguel.spyzer.entities.HistoricalDataPoint;
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.service.OhlcRollupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VolumeBaselineTest {
+
+    private static final ZoneId ZONA_MERCADO = ZoneId.of("America/New_York");
+    private static final LocalDate HOY = LocalDate.now(ZONA_MERCADO);
+
+    private OhlcRollupService ohlcRollupService;
+    private VolumeBaseline volumeBaseline;
+
+    @BeforeEach
+    void setUp() {
+        ohlcRollupService = mock(OhlcRollupService.class);
+        when(ohlcRollupService.obtenerBarras(any(), any(), anyInt())).thenReturn(List.of());
+        volumeBaseline = new VolumeBaseline(ohlcRollupService, 20);
+    }
+
+    @Test
+    void sinDiasCerradosNoHayMedia() {
+        registrar(HOY.minusDays(3), 100);
+        registrar(HOY.minusDays(3), 250);
+
+        assertThat(volumeBaseline.media("SPY")).isNull();
+    }
+
+    @Test
+    void elPrimerTickDeUnDiaNuevoCierraElAnteriorConSuVolumenFinal() {
+        registrar(HOY.minusDays(3), 100);
+        registrar(HOY.minusDays(3), 250);
+        // Un acumulado menor del mismo día (reentrega) no reduce el volumen del día
+        registrar(HOY.minusDays(3), 200);
+        registrar(HOY.minusDays(2), 10);
+
+        assertThat(volumeBaseline.media("SPY")).isEqualTo(250.0);
+
+        registrar(HOY.minusDays(2), 350);
+        registrar(HOY.minusDays(1), 5);
+
+        assertThat(volumeBaseline.media("SPY")).isEqualTo(300.0);
+    }
+
+    @Test
+    void losTicksDeUnDiaYaSuperadoSeIgnoran() {
+        registrar(HOY.minusDays(3), 100);
+        registrar(HOY.minusDays(2), 300);
+        registrar(HOY.minusDays(3), 10_000);
+        registrar(HOY.minusDays(1), 1);
+
+        // Días cerrados: 100 y 300; el tick tardío no reabre ni añade su día
+        assertThat(volumeBaseline.media("SPY")).isEqualTo(200.0);
+    }
+
+    @Test
+    void seSiembraConLasBarrasDiariasSinLaDeHoyNiLasSinVolumen() {
+        when(ohlcRollupService.obtenerBarras(eq("SPY"), any(), anyInt())).thenReturn(List.of(
+                barra(HOY, 9_999L),
+                barra(HOY.minusDays(1), 300L),
+                barra(HOY.minusDays(2), 0L),
+                barra(HOY.minusDays(3), null),
+                barra(HOY.minusDays(4), 100L)));
+
+        assertThat(volumeBaseline.media("SPY")).isEqualTo(200.0);
+        // Días naturales para 20 sesiones, en barras de 1 día
+        verify(ohlcRollupService).obtenerBarras("SPY", OhlcRollupService.Intervalo.parse("1d"), 35);
+    }
+
+    @Test
+    void laSiembraSeQuedaConLosUltimosNDias() {
+        volumeBaseline = new VolumeBaseline(ohlcRollupService, 2);
+        when(ohlcRollupService.obtenerBarras(eq("SPY"), any(), anyInt())).thenReturn(List.of(
+                barra(HOY.minusDays(1), 400L),
+                barra(HOY.minusDays(2), 200L),
+                barra(HOY.minusDays(3), 10_000L)));
+
+        assertThat(volumeBaseline.media("SPY")).isEqualTo(300.0);
+    }
+
+    @Test
+    void unDiaYaSembradoNoSeCuentaDosVecesAlCerrarlo() {
+        when(ohlcRollupService.obtenerBarras(eq("SPY"), any(), anyInt())).thenReturn(List.of(
+                barra(HOY.minusDays(1), 300L),
+                barra(HOY.minusDays(2), 100L)));
+
+        // Ticks de ayer (calentamiento) y el primero de hoy, que cierra ayer
+        registrar(HOY.minusDays(1), 300);
+        registrar(HOY, 10);
+
+        assertThat(volumeBaseline.media("SPY")).isEqualTo(200.0);
+    }
+
+    @Test
+    void siFallaLaSiembraLaMediaSeConstruyeConLosDiasIngeridos() {
+        when(ohlcRollupService.obtenerBarras(eq("SPY"), any(), anyInt())).thenThrow(new IllegalStateException("Redis"));
+
+        registrar(HOY.minusDays(2), 500);
+        registrar(HOY.minusDays(1), 1);
+
+        assertThat(volumeBaseline.media("SPY")).isEqualTo(500.0);
+    }
+
+    private void registrar(LocalDate dia, long volumenAcumulado) {
+        LocalDateTime mediodia = dia.atTime(LocalTime.NOON).atZone(ZONA_MERCADO)
+                .withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        volumeBaseline.registrar(List.of(MarketData.builder()
+                .symbol("SPY")
+                .precio(BigDecimal.TEN)
+                .volumen(volumenAcumulado)
+                .timestamp(mediodia)
+                .build()));
+    }
+
+    private static HistoricalDataPoint barra(LocalDate dia, Long volumen) {
+        return HistoricalDataPoint.builder()
+                .symbol("SPY")
+                .granularidad(HistoricalDataPoint.Granularidad.DIARIA)
+                .ts(HistoricalDataPoint.inicioDia(dia))
+                .volume(volumen)
+                .build();
+    }
+}
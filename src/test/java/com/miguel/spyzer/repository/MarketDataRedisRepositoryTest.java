@@ -0,0 +1,170 @@
+package com.miguel.spyzer.repository;
+
+import com.miguel.spyzer.entities.MarketData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Empaquetado de ticks en registros de 20 bytes y reparto en chunks horarios,
+ * sobre un Redis simulado en memoria.
+ */
+class MarketDataRedisRepositoryTest {
+
+    private static final long HORA_MS = 3_600_000L;
+    // Último milisegundo de una hora y primero de la siguiente
+    private static final long FIN_HORA_MS = Instant.parse("2025-10-17T14:59:59.999Z").toEpochMilli();
+    private static final long HORA = Math.floorDiv(FIN_HORA_MS, HORA_MS);
+
+    private final Map<String, byte[]> chunks = new HashMap<>();
+    private final Map<String, Long> expiraciones = new HashMap<>();
+    private MarketDataRedisRepository repository;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+
+        // Script de APPEND: un tick y su PEXPIREAT por key, descartando offsets no crecientes
+        doAnswer(invocacion -> {
+            List<String> keys = invocacion.getArgument(3);
+            Object[] args = Arrays.copyOfRange(invocacion.getArguments(), 4, invocacion.getArguments().length);
+            if (args.length == 1 && args[0] instanceof Object[] agrupados) {
+                args = agrupados;
+            }
+            List<Object> estados = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] tick = (byte[]) args[2 * i];
+                byte[] actual = chunks.getOrDefault(keys.get(i), new byte[0]);
+                if (actual.length == 0 || ByteBuffer.wrap(tick).getInt()
+                        > ByteBuffer.wrap(actual).getInt(actual.length - MarketDataRedisRepository.TICK_BYTES)) {
+                    byte[] nuevo = Arrays.copyOf(actual, actual.length + tick.length);
+                    System.arraycopy(tick, 0, nuevo, actual.length, tick.length);
+                    chunks.put(keys.get(i), nuevo);
+                }
+                expiraciones.put(keys.get(i), Long.parseLong(new String((byte[]) args[2 * i + 1], StandardCharsets.UTF_8)));
+                estados.add("OK");
+            }
+            return estados;
+        }).when(redisTemplate).execute(any(RedisScript.class), any(), any(), anyList(), any(Object[].class));
+
+        // MGET de los chunks
+        RedisConnection conexion = mock(RedisConnection.class);
+        RedisStringCommands comandos = mock(RedisStringCommands.class);
+        when(conexion.stringCommands()).thenReturn(comandos);
+        when(comandos.mGet(any(byte[][].class))).thenAnswer(invocacion -> {
+            List<byte[]> valores = new ArrayList<>();
+            for (Object key : invocacion.getRawArguments()) {
+                for (byte[] k : key instanceof byte[][] varias ? varias : new byte[][]{(byte[]) key}) {
+                    valores.add(chunks.get(new String(k, StandardCharsets.UTF_8)));
+                }
+            }
+            return valores;
+        });
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(invocacion -> invocacion.<RedisCallback<?>>getArgument(0).doInRedis(conexion));
+
+        repository = new MarketDataRedisRepository(redisTemplate);
+    }
+
+    @Test
+    void empaquetaOffsetPrecioYVolumenEnVeinteBytes() {
+        byte[] tick = MarketDataRedisRepository.empaquetar(3_599_999, new BigDecimal("580.12345"), 1_234_567L);
+
+        assertThat(tick).hasSize(MarketDataRedisRepository.TICK_BYTES);
+        ByteBuffer buffer = ByteBuffer.wrap(tick);
+        assertThat(buffer.getInt()).isEqualTo(3_599_999);
+        // Punto fijo con 4 decimales, redondeo HALF_UP
+        assertThat(buffer.getLong()).isEqualTo(5_801_235L);
+        assertThat(buffer.getLong()).isEqualTo(1_234_567L);
+    }
+
+    @Test
+    void sinVolumenSeGuardaLaMarca() {
+        byte[] tick = MarketDataRedisRepository.empaquetar(0, new BigDecimal("1"), null);
+
+        assertThat(ByteBuffer.wrap(tick).getLong(12)).isEqualTo(MarketDataRedisRepository.NO_VOLUME);
+    }
+
+    @Test
+    void unPrecioQueNoCabeEnPuntoFijoSeRechaza() {
+        assertThatThrownBy(() -> MarketDataRedisRepository.empaquetar(0, new BigDecimal("1E+20"), null))
+                .isInstanceOf(ArithmeticException.class);
+
+        assertThat(repository.addHistoricalDataBatch(List.of(dato(FIN_HORA_MS, "1E+20", null))))
+                .containsKey("SPY");
+        assertThat(chunks).isEmpty();
+    }
+
+    @Test
+    void losTicksDeLosExtremosDeUnaHoraVanAChunksDistintos() {
+        Map<String, String> errores = repository.addHistoricalDataBatch(List.of(
+                dato(FIN_HORA_MS - HORA_MS + 1, "100", 10L),
+                dato(FIN_HORA_MS, "101", 20L),
+                dato(FIN_HORA_MS + 1, "102", null)));
+
+        assertThat(errores).isEmpty();
+        assertThat(chunks.get("ticks:{SPY}:" + HORA)).hasSize(2 * MarketDataRedisRepository.TICK_BYTES);
+        assertThat(chunks.get("ticks:{SPY}:" + (HORA + 1))).hasSize(MarketDataRedisRepository.TICK_BYTES);
+        assertThat(ByteBuffer.wrap(chunks.get("ticks:{SPY}:" + HORA)).getInt(0)).isZero();
+        assertThat(ByteBuffer.wrap(chunks.get("ticks:{SPY}:" + HORA)).getInt(20)).isEqualTo(3_599_999);
+        assertThat(ByteBuffer.wrap(chunks.get("ticks:{SPY}:" + (HORA + 1))).getInt(0)).isZero();
+        // Cada chunk expira 24 horas después del final de su hora
+        assertThat(expiraciones.get("ticks:{SPY}:" + HORA)).isEqualTo((HORA + 1) * HORA_MS + 24 * HORA_MS);
+    }
+
+    @Test
+    void unaLecturaQueCruzaLaHoraDevuelveLosTicksEnOrdenYDentroDelRango() {
+        repository.addHistoricalDataBatch(List.of(dato(FIN_HORA_MS - 1, "99.5", 5L)));
+        repository.addHistoricalDataBatch(List.of(dato(FIN_HORA_MS, "100.25", 10L)));
+        repository.addHistoricalDataBatch(List.of(dato(FIN_HORA_MS + 1, "101", null)));
+        repository.addHistoricalDataBatch(List.of(dato(FIN_HORA_MS + 2, "102", 30L)));
+
+        List<MarketDataRedisRepository.Tick> ticks = repository.getTicks("SPY", FIN_HORA_MS, FIN_HORA_MS + 1);
+
+        assertThat(ticks).containsExactly(
+                new MarketDataRedisRepository.Tick(FIN_HORA_MS, new BigDecimal("100.2500"), 10L),
+                new MarketDataRedisRepository.Tick(FIN_HORA_MS + 1, new BigDecimal("101.0000"), null));
+    }
+
+    @Test
+    void unTickRepetidoNoSeAnadeDosVeces() {
+        repository.addHistoricalDataBatch(List.of(dato(FIN_HORA_MS, "100", 10L)));
+        repository.addHistoricalDataBatch(List.of(dato(FIN_HORA_MS, "100", 10L)));
+
+        assertThat(repository.getTicks("SPY", FIN_HORA_MS - HORA_MS, FIN_HORA_MS + HORA_MS)).hasSize(1);
+    }
+
+    private static MarketData dato(long epochMillis, String precio, Long volumen) {
+        return MarketData.builder()
+                .symbol("spy")
+                .precio(new BigDecimal(precio))
+                .volumen(volumen)
+                .timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()))
+                .build();
+    }
+}
@@ -0,0 +1,179 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.cache.CacheInvalidationBus;
+import com.miguel.spyzer.entities.Alert;
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.indicator.VolumeBaseline;
+import com.miguel.spyzer.repository.AlertRepository;
+import com.miguel.spyzer.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static com.miguel.spyzer.service.AlertIndexTest.alerta;
+import static com.miguel.spyzer.service.AlertIndexTest.trigger;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Estado incremental de PERCENT_MOVE y TRAILING_STOP en AlertIndex.
+ */
+class AlertIndexMovimientosTest {
+
+    // 09:30 en Nueva York del 17/10/2025
+    private static final long APERTURA_MS = Instant.parse("2025-10-17T13:30:00Z").toEpochMilli();
+    private static final long MINUTO_MS = 60_000;
+    private static final long DIA_MS = 24 * 60 * MINUTO_MS;
+
+    private AlertRepository alertRepository;
+    private AlertIndex alertIndex;
+
+    @BeforeEach
+    void setUp() {
+        alertRepository = mock(AlertRepository.class);
+        alertIndex = new AlertIndex(alertRepository, mock(CacheInvalidationBus.class));
+    }
+
+    @Test
+    void percentMoveSeMideDesdeLaAperturaYQuedaCumplidaAunqueElPrecioVuelva() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PERCENT_MOVE, "2"));
+
+        assertThat(tick(0, "101.5", "100")).isFalse();
+        assertThat(tick(1, "102.5", "100")).isTrue();
+        assertThat(tick(2, "100.5", "100")).isTrue();
+        assertThat(alertIndex.movimientosCumplidos("SPY")).containsExactly(1L);
+    }
+
+    @Test
+    void percentMoveSinAperturaUsaElPrimerPrecioDeLaSesionYLaRenuevaCadaDia() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PERCENT_MOVE, "2"));
+
+        tick(0, "100", null);
+        assertThat(alertIndex.registrarTick("SPY", APERTURA_MS + DIA_MS, new BigDecimal("103"), null)).isFalse();
+        assertThat(alertIndex.registrarTick("SPY", APERTURA_MS + DIA_MS + MINUTO_MS, new BigDecimal("100.9"), null))
+                .isTrue();
+
+        assertThat(alertIndex.extraerEstadosPendientes()).singleElement().satisfies(estado -> {
+            assertThat(estado.precioReferencia()).isEqualByComparingTo("103");
+            assertThat(estado.sesionReferencia()).isEqualTo(LocalDate.of(2025, 10, 18));
+        });
+    }
+
+    @Test
+    void trailingStopSeMideDesdeElMaximo() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.TRAILING_STOP, "5"));
+
+        tick(0, "100", null);
+        tick(1, "110", null);
+        assertThat(tick(2, "104.6", null)).isFalse();
+        assertThat(tick(3, "104.4", null)).isTrue();
+        assertThat(tick(4, "112", null)).isTrue();
+    }
+
+    @Test
+    void unTickRepetidoOAnteriorAlUltimoAplicadoSeIgnora() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.TRAILING_STOP, "5"));
+
+        // Vía rápida
+        tick(1, "100", null);
+        tick(2, "110", null);
+        alertIndex.extraerEstadosPendientes();
+        // El stream entrega después los mismos ticks, y una entrada reclamada más antigua
+        tick(1, "100", null);
+        tick(2, "110", null);
+        tick(0, "150", null);
+
+        assertThat(alertIndex.extraerEstadosPendientes()).isEmpty();
+        assertThat(tick(3, "104.4", null)).isTrue();
+    }
+
+    @Test
+    void cambiarElPorcentajeRearmaLaAlertaConservandoLaReferencia() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.TRAILING_STOP, "5"));
+        tick(0, "110", null);
+        tick(1, "104", null);
+
+        Alert alerta = alerta(1L, "SPY", Alert.TipoAlerta.TRAILING_STOP, "10");
+        alertIndex.actualizar(alerta);
+
+        assertThat(alertIndex.movimientosCumplidos("SPY")).isEmpty();
+        assertThat(tick(2, "98.9", null)).isTrue();
+    }
+
+    @Test
+    void laCargaParteDelEstadoGuardadoYUnaRecargaConservaElDeMemoria() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.TRAILING_STOP, "5", new BigDecimal("120"), null));
+        assertThat(tick(0, "113", null)).isTrue();
+
+        cargar(trigger(2L, "QQQ", Alert.TipoAlerta.TRAILING_STOP, "5", new BigDecimal("100"), null));
+        assertThat(alertIndex.registrarTick("QQQ", APERTURA_MS, new BigDecimal("110"), null)).isFalse();
+        // El último checkpoint (100) es anterior al máximo en memoria (110)
+        cargar(trigger(2L, "QQQ", Alert.TipoAlerta.TRAILING_STOP, "5", new BigDecimal("100"), null));
+
+        assertThat(alertIndex.registrarTick("QQQ", APERTURA_MS + MINUTO_MS, new BigDecimal("104"), null)).isTrue();
+    }
+
+    @Test
+    void losEstadosQueNoSePudieronGuardarVuelvenAQuedarPendientes() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.TRAILING_STOP, "5"));
+        tick(0, "110", null);
+
+        List<AlertIndex.EstadoGuardable> pendientes = alertIndex.extraerEstadosPendientes();
+        assertThat(alertIndex.extraerEstadosPendientes()).isEmpty();
+        alertIndex.marcarPendientes(pendientes);
+
+        assertThat(alertIndex.extraerEstadosPendientes()).hasSize(1);
+    }
+
+    @Test
+    void elStreamDisparaLoQueLaViaRapidaYaRegistro() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PERCENT_MOVE, "2"));
+        AlertService alertService = new AlertService(alertRepository, mock(UserRepository.class), alertIndex,
+                mock(VolumeBaseline.class));
+        Alert alerta = alerta(1L, "SPY", Alert.TipoAlerta.PERCENT_MOVE, "2");
+        when(alertRepository.findAllById(anyCollection())).thenReturn(List.of(alerta));
+        when(alertRepository.dispararEnBloque(anyCollection(), any())).thenReturn(1);
+        when(alertRepository.findWithUserByIdInAndTriggeredAt(anyCollection(), any())).thenReturn(List.of(alerta));
+
+        // La vía rápida registra los ticks al recibirlos (AlertEvaluator)
+        tick(0, "100", "100");
+        tick(1, "102.5", "100");
+        // El consumer group "alertas" los entrega de nuevo: se ignoran, pero la alerta sigue cumplida
+        List<Alert> disparadas = alertService.verificarAlertasConEstado(List.of(
+                cotizacion(0, "100", "100"), cotizacion(1, "102.5", "100")));
+
+        assertThat(disparadas).containsExactly(alerta);
+        verify(alertRepository).dispararEnBloque(eq(List.of(1L)), any());
+    }
+
+    private void cargar(AlertRepository.TriggerAlerta... triggers) {
+        when(alertRepository.findTriggersByActivaTrueAndDisparadaFalse()).thenReturn(List.of(triggers));
+        alertIndex.cargarAlArrancar();
+    }
+
+    private boolean tick(int minuto, String precio, String apertura) {
+        return alertIndex.registrarTick("SPY", APERTURA_MS + minuto * MINUTO_MS, new BigDecimal(precio),
+                apertura != null ? new BigDecimal(apertura) : null);
+    }
+
+    private static MarketData cotizacion(int minuto, String precio, String apertura) {
+        return MarketData.builder()
+                .symbol("SPY")
+                .precio(new BigDecimal(precio))
+                .open(new BigDecimal(apertura))
+                .timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(APERTURA_MS + minuto * MINUTO_MS),
+                        ZoneId.systemDefault()))
+                .build();
+    }
+}
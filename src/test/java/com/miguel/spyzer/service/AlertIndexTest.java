@@ -0,0 +1,173 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.cache.CacheInvalidationBus;
+import com.miguel.spyzer.entities.Alert;
+import com.miguel.spyzer.repository.AlertRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AlertIndexTest {
+
+    private AlertRepository alertRepository;
+    private AlertIndex alertIndex;
+
+    @BeforeEach
+    void setUp() {
+        alertRepository = mock(AlertRepository.class);
+        alertIndex = new AlertIndex(alertRepository, mock(CacheInvalidationBus.class));
+    }
+
+    @Test
+    void noEstaListoHastaLaPrimeraCarga() {
+        assertThat(alertIndex.isListo()).isFalse();
+        when(alertRepository.findTriggersByActivaTrueAndDisparadaFalse()).thenReturn(List.of());
+
+        alertIndex.cargarAlArrancar();
+
+        assertThat(alertIndex.isListo()).isTrue();
+    }
+
+    @Test
+    void subidaDevuelveLosTriggersHastaElPrecio() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100"),
+                trigger(2L, "SPY", Alert.TipoAlerta.PRICE_UP, "105"),
+                trigger(3L, "SPY", Alert.TipoAlerta.PRICE_UP, "110"));
+
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("105"))).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("99.99"))).isEmpty();
+    }
+
+    @Test
+    void bajadaConArbolDescendenteDevuelveLosTriggersDesdeElPrecio() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_DOWN, "90"),
+                trigger(2L, "SPY", Alert.TipoAlerta.PRICE_DOWN, "95"),
+                trigger(3L, "SPY", Alert.TipoAlerta.PRICE_DOWN, "100"));
+
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("95"))).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("89"))).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("100.01"))).isEmpty();
+    }
+
+    @Test
+    void igualIgnoraLosCerosFinalesDeLaEscala() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_EQUAL, "200.00"));
+
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("200"))).containsExactly(1L);
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("200.0000"))).containsExactly(1L);
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("200.01"))).isEmpty();
+    }
+
+    @Test
+    void losSimbolosNoSeMezclan() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100"));
+
+        assertThat(alertIndex.candidatos("QQQ", new BigDecimal("500"))).isEmpty();
+    }
+
+    @Test
+    void cuentaLosUmbralesDePrecioDeUnRango() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "101"),
+                trigger(2L, "SPY", Alert.TipoAlerta.PRICE_UP, "120"),
+                trigger(3L, "SPY", Alert.TipoAlerta.PRICE_DOWN, "99"),
+                trigger(4L, "SPY", Alert.TipoAlerta.PRICE_DOWN, "80"),
+                trigger(5L, "SPY", Alert.TipoAlerta.PRICE_EQUAL, "100.50"),
+                trigger(6L, "SPY", Alert.TipoAlerta.PERCENT_MOVE, "100"));
+
+        assertThat(alertIndex.contarUmbralesPrecioEntre("SPY", new BigDecimal("98"), new BigDecimal("102")))
+                .isEqualTo(3);
+        assertThat(alertIndex.contarUmbralesPrecioEntre("SPY", new BigDecimal("102"), new BigDecimal("98")))
+                .isZero();
+    }
+
+    @Test
+    void lasAlertasDisparadasOInactivasSalenDelIndice() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100"),
+                trigger(2L, "SPY", Alert.TipoAlerta.PRICE_UP, "100"));
+
+        Alert disparada = alerta(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100");
+        disparada.setDisparada(true);
+        Alert pausada = alerta(2L, "SPY", Alert.TipoAlerta.PRICE_UP, "100");
+        pausada.setActiva(false);
+        alertIndex.actualizar(List.of(disparada, pausada));
+
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("150"))).isEmpty();
+    }
+
+    @Test
+    void unCambioDeTriggerMueveLaAlertaDeArbol() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100"));
+
+        alertIndex.actualizar(alerta(1L, "SPY", Alert.TipoAlerta.PRICE_DOWN, "90"));
+
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("100"))).isEmpty();
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("90"))).containsExactly(1L);
+    }
+
+    @Test
+    void laRecargaReaplicaLosCambiosConfirmadosMientrasLeeDeBD() {
+        // Lectura de BD anterior a un alta (3) y a un borrado (1) que se confirman durante la carga
+        when(alertRepository.findTriggersByActivaTrueAndDisparadaFalse()).thenAnswer(invocacion -> {
+            alertIndex.actualizar(alerta(3L, "SPY", Alert.TipoAlerta.PRICE_UP, "102"));
+            alertIndex.eliminar(1L);
+            return List.of(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100"),
+                    trigger(2L, "SPY", Alert.TipoAlerta.PRICE_UP, "101"));
+        });
+
+        alertIndex.cargarAlArrancar();
+
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("200"))).containsExactlyInAnyOrder(2L, 3L);
+    }
+
+    @Test
+    void unaRecargaSustituyeElContenidoAnterior() {
+        cargar(trigger(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100"));
+
+        cargar(trigger(2L, "QQQ", Alert.TipoAlerta.PRICE_UP, "100"));
+
+        assertThat(alertIndex.candidatos("SPY", new BigDecimal("200"))).isEmpty();
+        assertThat(alertIndex.candidatos("QQQ", new BigDecimal("200"))).containsExactly(2L);
+    }
+
+    private void cargar(AlertRepository.TriggerAlerta... triggers) {
+        when(alertRepository.findTriggersByActivaTrueAndDisparadaFalse()).thenReturn(List.of(triggers));
+        alertIndex.cargarAlArrancar();
+    }
+
+    static Alert alerta(Long id, String symbol, Alert.TipoAlerta tipo, String valor) {
+        return Alert.builder()
+                .id(id)
+                .symbol(symbol)
+                .tipo(tipo)
+                .valorTrigger(new BigDecimal(valor))
+                .activa(true)
+                .disparada(false)
+                .build();
+    }
+
+    static AlertRepository.TriggerAlerta trigger(Long id, String symbol, Alert.TipoAlerta tipo, String valor) {
+        return trigger(id, symbol, tipo, valor, null, null);
+    }
+
+    static AlertRepository.TriggerAlerta trigger(Long id, String symbol, Alert.TipoAlerta tipo, String valor,
+                                                 BigDecimal precioReferencia, LocalDate sesionReferencia) {
+        return new AlertRepository.TriggerAlerta() {
+            public Long getId() { return id; }
+            public String getSymbol() { return symbol; }
+            public Alert.TipoAlerta getTipo() { return tipo; }
+            public Alert.ModoUmbral getModoUmbral() { return null; }
+            public BigDecimal getValorTrigger() { return new BigDecimal(valor); }
+            public Boolean getActiva() { return true; }
+            public Boolean getDisparada() { return false; }
+            public BigDecimal getPrecioReferencia() { return precioReferencia; }
+            public LocalDate getSesionReferencia() { return sesionReferencia; }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.entities.Alert;
+import com.miguel.spyzer.indicator.VolumeBaseline;
+import com.miguel.spyzer.repository.AlertRepository;
+import com.miguel.spyzer.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.miguel.spyzer.service.AlertIndexTest.alerta;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Disparo en bloque: UPDATE condicional y relectura por marca de solo las
+ * alertas que cambió este disparo.
+ */
+class AlertServiceDisparoTest {
+
+    private static final Map<String, BigDecimal> PRECIOS = Map.of("SPY", new BigDecimal("110"));
+
+    private AlertRepository alertRepository;
+    private AlertIndex alertIndex;
+    private AlertService alertService;
+
+    @BeforeEach
+    void setUp() {
+        alertRepository = mock(AlertRepository.class);
+        alertIndex = mock(AlertIndex.class);
+        alertService = new AlertService(alertRepository, mock(UserRepository.class), alertIndex,
+                mock(VolumeBaseline.class));
+        when(alertIndex.isListo()).thenReturn(true);
+    }
+
+    @Test
+    void devuelveSoloLasAlertasConLaMarcaDeEsteDisparo() {
+        Alert a1 = alerta(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100");
+        Alert a2 = alerta(2L, "SPY", Alert.TipoAlerta.PRICE_UP, "105");
+        Alert a3 = alerta(3L, "SPY", Alert.TipoAlerta.PRICE_UP, "108");
+        when(alertIndex.candidatos("SPY", PRECIOS.get("SPY"))).thenReturn(List.of(1L, 2L, 3L));
+        when(alertRepository.findAllById(anyCollection())).thenReturn(List.of(a1, a2, a3));
+        // La 2 la disparó antes otro evaluador: el UPDATE solo cambia 1 y 3
+        when(alertRepository.dispararEnBloque(anyCollection(), any())).thenReturn(2);
+        when(alertRepository.findWithUserByIdInAndTriggeredAt(anyCollection(), any())).thenReturn(List.of(a1, a3));
+
+        List<Alert> disparadas = alertService.verificarTodasLasAlertas(PRECIOS);
+
+        assertThat(disparadas).containsExactly(a1, a3);
+        ArgumentCaptor<LocalDateTime> marcaUpdate = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> marcaLectura = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(alertRepository).dispararEnBloque(anyCollection(), marcaUpdate.capture());
+        verify(alertRepository).findWithUserByIdInAndTriggeredAt(anyCollection(), marcaLectura.capture());
+        assertThat(marcaLectura.getValue()).isEqualTo(marcaUpdate.getValue());
+        verify(alertIndex).actualizar(List.of(a1, a3));
+    }
+
+    @Test
+    void sinFilasCambiadasNoSeRelee() {
+        Alert a1 = alerta(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100");
+        when(alertIndex.candidatos("SPY", PRECIOS.get("SPY"))).thenReturn(List.of(1L));
+        when(alertRepository.findAllById(anyCollection())).thenReturn(List.of(a1));
+        when(alertRepository.dispararEnBloque(anyCollection(), any())).thenReturn(0);
+
+        assertThat(alertService.verificarTodasLasAlertas(PRECIOS)).isEmpty();
+        verify(alertRepository, never()).findWithUserByIdInAndTriggeredAt(anyCollection(), any());
+    }
+
+    @Test
+    void lasMarcasDeDisparosConsecutivosSonDistintasYCrecientes() {
+        Alert a1 = alerta(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100");
+        when(alertIndex.candidatos("SPY", PRECIOS.get("SPY"))).thenReturn(List.of(1L));
+        when(alertRepository.findAllById(anyCollection())).thenReturn(List.of(a1));
+        when(alertRepository.dispararEnBloque(anyCollection(), any())).thenReturn(0);
+
+        for (int i = 0; i < 3; i++) {
+            alertService.verificarTodasLasAlertas(PRECIOS);
+        }
+
+        ArgumentCaptor<LocalDateTime> marcas = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(alertRepository, times(3)).dispararEnBloque(anyCollection(), marcas.capture());
+        assertThat(marcas.getAllValues()).isSorted().doesNotHaveDuplicates();
+        // Precisión de la columna: se busca por igualdad
+        assertThat(marcas.getAllValues()).allMatch(marca -> marca.getNano() % 1_000 == 0);
+    }
+
+    @Test
+    void lasCandidatasQueNoCruzanSeReindexanYNoSeDisparan() {
+        Alert cruza = alerta(1L, "SPY", Alert.TipoAlerta.PRICE_UP, "100");
+        Alert obsoleta = alerta(2L, "SPY", Alert.TipoAlerta.PRICE_UP, "200");
+        when(alertIndex.candidatos("SPY", PRECIOS.get("SPY"))).thenReturn(List.of(1L, 2L, 3L));
+        // La 3 ya no existe en BD
+        when(alertRepository.findAllById(anyCollection())).thenReturn(List.of(cruza, obsoleta));
+        when(alertRepository.dispararEnBloque(anyCollection(), any())).thenReturn(1);
+        when(alertRepository.findWithUserByIdInAndTriggeredAt(anyCollection(), any())).thenReturn(List.of(cruza));
+
+        alertService.verificarTodasLasAlertas(PRECIOS);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(alertRepository).dispararEnBloque(ids.capture(), any());
+        assertThat(ids.getValue()).containsExactly(1L);
+        verify(alertIndex).actualizar(obsoleta);
+        verify(alertIndex).eliminar(3L);
+    }
+}
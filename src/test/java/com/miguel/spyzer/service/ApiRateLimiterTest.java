@@ -0,0 +1,173 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.service.ApiRateLimiter.Prioridad;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ventana deslizante y carriles ponderados de ApiRateLimiter con un reloj simulado.
+ */
+class ApiRateLimiterTest {
+
+    private static final long SEGUNDO_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 60 s más el margen de 100 ms
+    private static final long VENTANA_NANOS = TimeUnit.MILLISECONDS.toNanos(60_100);
+
+    private final AtomicLong reloj = new AtomicLong(1_000_000_000L);
+    private ApiRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new ApiRateLimiter(new SimpleMeterRegistry(), reloj::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rateLimiter.cerrar();
+    }
+
+    @Test
+    void concedeOchoYElNovenoEsperaAQueElPrimeroSalgaDeLaVentana() {
+        List<CompletableFuture<Void>> rafaga = pedir(Prioridad.ESTANDAR, 8);
+        CompletableFuture<Void> novena = rateLimiter.adquirir(Prioridad.ESTANDAR);
+
+        assertThat(rafaga).allMatch(CompletableFuture::isDone);
+        assertThat(novena).isNotDone();
+
+        avanzar(VENTANA_NANOS - 1);
+        rateLimiter.despachar();
+        assertThat(novena).isNotDone();
+
+        avanzar(1);
+        rateLimiter.despachar();
+        assertThat(novena).isDone();
+        // Los ocho de la ráfaga salen a la vez de la ventana
+        assertThat(rateLimiter.getPermisosDisponibles()).isEqualTo(7);
+    }
+
+    @Test
+    void nuncaHayMasDeOchoPermisosEnSesentaSegundos() {
+        List<Long> instantes = new ArrayList<>();
+        for (Prioridad prioridad : Prioridad.values()) {
+            for (int i = 0; i < 10; i++) {
+                rateLimiter.adquirir(prioridad).thenRun(() -> instantes.add(reloj.get()));
+            }
+        }
+
+        // Despachos cada 1,3 s durante 5 minutos
+        for (int paso = 0; paso < 231; paso++) {
+            avanzar(13 * SEGUNDO_NANOS / 10);
+            rateLimiter.despachar();
+        }
+
+        assertThat(instantes).hasSizeGreaterThan(8);
+        for (int i = 8; i < instantes.size(); i++) {
+            assertThat(instantes.get(i) - instantes.get(i - 8)).isGreaterThanOrEqualTo(TimeUnit.SECONDS.toNanos(60));
+        }
+    }
+
+    @Test
+    void losPermisosVuelvenAlSalirDeLaVentana() {
+        pedir(Prioridad.ESTANDAR, 3);
+        avanzar(30 * SEGUNDO_NANOS);
+        pedir(Prioridad.ESTANDAR, 2);
+
+        assertThat(rateLimiter.getPermisosDisponibles()).isEqualTo(3);
+        avanzar(VENTANA_NANOS - 30 * SEGUNDO_NANOS);
+        assertThat(rateLimiter.getPermisosDisponibles()).isEqualTo(6);
+        avanzar(30 * SEGUNDO_NANOS);
+        assertThat(rateLimiter.getPermisosDisponibles()).isEqualTo(8);
+    }
+
+    @Test
+    void unaPeticionCanceladaNoConsumePermisoNiCreditosDelCarril() {
+        // Ocho de ESTANDAR llenan la ventana y dejan PREMIUM con sus 4 créditos
+        pedir(Prioridad.ESTANDAR, 8);
+        List<CompletableFuture<Void>> canceladas = pedir(Prioridad.PREMIUM, 4);
+        List<Prioridad> orden = new ArrayList<>();
+        for (Prioridad prioridad : List.of(Prioridad.PREMIUM, Prioridad.INTERACTIVA)) {
+            for (int i = 0; i < 4; i++) {
+                rateLimiter.adquirir(prioridad).thenRun(() -> orden.add(prioridad));
+            }
+        }
+        canceladas.forEach(future -> future.cancel(false));
+
+        avanzar(VENTANA_NANOS);
+        rateLimiter.despachar();
+
+        assertThat(orden).hasSize(8);
+        assertThat(orden.subList(0, 4)).containsOnly(Prioridad.PREMIUM);
+        assertThat(rateLimiter.getProfundidadTotal()).isZero();
+    }
+
+    @Test
+    void losCarrilesSeSirvenEnProporcionASuPesoSinDejarNingunoSinPermisos() {
+        // Llena la ventana desde SEGUNDO_PLANO: quedan créditos 4/3/2/0 en la ronda en curso
+        pedir(Prioridad.SEGUNDO_PLANO, 8);
+        Map<Prioridad, List<CompletableFuture<Void>>> pendientes = new EnumMap<>(Prioridad.class);
+        for (Prioridad prioridad : Prioridad.values()) {
+            pendientes.put(prioridad, pedir(prioridad, 30));
+        }
+
+        // 32 permisos: resto de la ronda (4 + 3 + 2), dos rondas de 4 + 3 + 2 + 1 y 3 de PREMIUM
+        for (int ventana = 0; ventana < 4; ventana++) {
+            avanzar(VENTANA_NANOS);
+            rateLimiter.despachar();
+        }
+
+        Map<Prioridad, Long> concedidas = new EnumMap<>(Prioridad.class);
+        pendientes.forEach((prioridad, futures) ->
+                concedidas.put(prioridad, futures.stream().filter(CompletableFuture::isDone).count()));
+        assertThat(concedidas).containsEntry(Prioridad.PREMIUM, 15L)
+                .containsEntry(Prioridad.INTERACTIVA, 9L)
+                .containsEntry(Prioridad.ESTANDAR, 6L)
+                .containsEntry(Prioridad.SEGUNDO_PLANO, 2L);
+    }
+
+    @Test
+    void unCarrilSinCompetenciaUsaTodosLosPermisos() {
+        pedir(Prioridad.ESTANDAR, 8);
+        List<CompletableFuture<Void>> segundoPlano = pedir(Prioridad.SEGUNDO_PLANO, 8);
+
+        avanzar(VENTANA_NANOS);
+        rateLimiter.despachar();
+
+        assertThat(segundoPlano).allMatch(CompletableFuture::isDone);
+    }
+
+    @Test
+    void resetCancelaLasPendientesYVaciaLaVentana() {
+        pedir(Prioridad.ESTANDAR, 8);
+        CompletableFuture<Void> pendiente = rateLimiter.adquirir(Prioridad.ESTANDAR);
+
+        rateLimiter.reset();
+
+        assertThat(pendiente).isCancelled();
+        assertThat(rateLimiter.getPermisosDisponibles()).isEqualTo(8);
+        assertThat(rateLimiter.adquirir(Prioridad.ESTANDAR)).isDone();
+    }
+
+    private List<CompletableFuture<Void>> pedir(Prioridad prioridad, int cantidad) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            futures.add(rateLimiter.adquirir(prioridad));
+        }
+        return futures;
+    }
+
+    private void avanzar(long nanos) {
+        reloj.addAndGet(nanos);
+    }
+}
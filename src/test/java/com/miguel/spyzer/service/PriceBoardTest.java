@@ -0,0 +1,67 @@
+package com.miguel.spyzer.service;
+
+import com.miguel.spyzer.config.SymbolGroupConfig;
+import com.miguel.spyzer.entities.MarketData;
+import com.miguel.spyzer.repository.MarketDataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PriceBoardTest {
+
+    private PriceBoard priceBoard;
+
+    @BeforeEach
+    void setUp() {
+        priceBoard = nuevaPizarra();
+    }
+
+    @Test
+    void losCambiosDesdeUnaVersionSonSoloLosPosteriores() {
+        priceBoard.publicar(List.of(cotizacion("SPY", "580"), cotizacion("QQQ", "500")));
+        long version = priceBoard.getVersion();
+        priceBoard.publicar(List.of(cotizacion("SPY", "581")));
+
+        assertThat(priceBoard.cambiosDesde(version)).containsOnlyKeys("SPY");
+        assertThat(priceBoard.cambiosDesde(0)).containsOnlyKeys("SPY", "QQQ");
+        assertThat(priceBoard.cambiosDesde(priceBoard.getVersion())).isEmpty();
+    }
+
+    @Test
+    void admiteDeltaSoloConLaEpocaDeEstaInstanciaYUnaVersionConocida() {
+        priceBoard.publicar(List.of(cotizacion("SPY", "580")));
+        priceBoard.publicar(List.of(cotizacion("SPY", "581")));
+        PriceBoard.Snapshot snapshot = priceBoard.snapshot();
+        String epoca = priceBoard.getEpoca();
+
+        assertThat(priceBoard.admiteDelta(epoca, 1, snapshot)).isTrue();
+        assertThat(priceBoard.admiteDelta(epoca, 2, snapshot)).isTrue();
+        assertThat(priceBoard.admiteDelta(epoca, 0, snapshot)).isFalse();
+        // Versión de un arranque anterior con más publicaciones que este
+        assertThat(priceBoard.admiteDelta(epoca, 3, snapshot)).isFalse();
+        assertThat(priceBoard.admiteDelta(null, 1, snapshot)).isFalse();
+    }
+
+    @Test
+    void otraInstanciaTieneOtraEpoca() {
+        PriceBoard otra = nuevaPizarra();
+        priceBoard.publicar(List.of(cotizacion("SPY", "580")));
+        otra.publicar(List.of(cotizacion("SPY", "570")));
+
+        assertThat(otra.getEpoca()).isNotEqualTo(priceBoard.getEpoca());
+        assertThat(otra.admiteDelta(priceBoard.getEpoca(), 1, otra.snapshot())).isFalse();
+    }
+
+    private static PriceBoard nuevaPizarra() {
+        return new PriceBoard(mock(MarketDataRepository.class), mock(SymbolGroupConfig.class));
+    }
+
+    private static MarketData cotizacion(String symbol, String precio) {
+        return MarketData.builder().symbol(symbol).precio(new BigDecimal(precio)).build();
+    }
+}